@@ -140,11 +140,10 @@ public class CommandUtils {
    */
   public static void addMessageWithoutSignatureToJSON(JSONObject command) throws JSONException {
     if (command.has(GNSProtocol.SIGNATURE.toString())) {
-      String signature = command.getString(GNSProtocol.SIGNATURE.toString());
-      command.remove(GNSProtocol.SIGNATURE.toString());
-      String commandSansSignature = CanonicalJSON.getCanonicalForm(command);
-      command.put(GNSProtocol.SIGNATURE.toString(), signature).put(GNSProtocol.SIGNATUREFULLMESSAGE.toString(),
-              commandSansSignature);
+      // Render the command as if the signature wasn't there instead of
+      // removing it, rendering and putting it back.
+      command.put(GNSProtocol.SIGNATUREFULLMESSAGE.toString(),
+              CanonicalJSON.getCanonicalForm(command, GNSProtocol.SIGNATURE.toString()));
     }
   }
 
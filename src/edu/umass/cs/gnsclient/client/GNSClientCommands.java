@@ -35,6 +35,9 @@ import java.util.ArrayList;
 import java.util.Set;
 import org.json.JSONException;
 import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectResultPage;
 import java.util.List;
 
 /**
@@ -475,6 +478,222 @@ public class GNSClientCommands
     return gnsClient.execute(GNSCommand.selectRecords(reader, query, fields)).getResultJSONArray();
   }
 
+  /**
+   * Returns the first page of the guid records that match the {@code query}.
+   * Use {@link #selectNextPage(SelectHandleInfo, int)} with the handle in the
+   * page to fetch the next one while {@link SelectResultPage#hasMore()}.
+   *
+   * Each record contains its guid in the "_GUID" key and the requested
+   * {@code fields}. {@code null} means the records only contain the guid.
+   *
+   * Requires that all fields accessed be world readable.
+   *
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return - the first page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectResultPage selectQueryPaged(String query, List<String> fields, int pageSize)
+          throws ClientException, IOException {
+    return toSelectResultPage(gnsClient.execute(GNSCommand.selectQueryPaged(query, fields, pageSize)));
+  }
+
+  /**
+   * Returns the first page of the guid records that match the {@code query}
+   * that {@code reader} can read.
+   * See {@link #selectQueryPaged(String, List, int)}.
+   *
+   * @param reader
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return - the first page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectResultPage selectQueryPaged(GuidEntry reader, String query, List<String> fields,
+          int pageSize) throws ClientException, IOException {
+    return toSelectResultPage(gnsClient.execute(
+            GNSCommand.selectQueryPaged(reader, query, fields, pageSize)));
+  }
+
+  /**
+   * Returns the next page of an earlier paged select.
+   *
+   * @param selectHandle - the handle from the previous page
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return - the next page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs, the handle has expired or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectResultPage selectNextPage(SelectHandleInfo selectHandle, int pageSize)
+          throws ClientException, IOException {
+    return toSelectResultPage(gnsClient.execute(GNSCommand.selectNextPage(selectHandle, pageSize)));
+  }
+
+  /**
+   * Returns the next page of an earlier paged select issued by {@code reader}.
+   *
+   * @param reader
+   * @param selectHandle - the handle from the previous page
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return - the next page
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs, the handle has expired or the page cannot be parsed
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public SelectResultPage selectNextPage(GuidEntry reader, SelectHandleInfo selectHandle, int pageSize)
+          throws ClientException, IOException {
+    return toSelectResultPage(gnsClient.execute(
+            GNSCommand.selectNextPage(reader, selectHandle, pageSize)));
+  }
+
+  private static SelectResultPage toSelectResultPage(CommandPacket packet) throws ClientException {
+    try {
+      return SelectResultPage.fromJSON(packet.getResultJSONObject());
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
+  /**
+   * Returns the number of guid records that match the {@code query}.
+   * The name servers only send back guids so this is much cheaper than
+   * counting the results of {@link #selectQuery(String)}.
+   *
+   * Requires that all fields accessed be world readable.
+   *
+   * @param query
+   * - the query
+   * @return - the number of matching guids
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public int selectCount(String query) throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectCount(query)).getResultInt();
+  }
+
+  /**
+   * Returns the number of guid records that match the {@code query}
+   * that {@code reader} can read. See {@link #selectCount(String)}.
+   *
+   * @param reader
+   * @param query
+   * - the query
+   * @return - the number of matching guids
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public int selectCount(GuidEntry reader, String query) throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectCount(reader, query)).getResultInt();
+  }
+
+  /**
+   * Returns at most {@code limit} of the guid records that match the {@code query}.
+   * {@code fields} works the same way as in {@link #selectRecords(String, List)}
+   * except that {@code null} means the result is a JSONArray of guids.
+   *
+   * Requires that all fields accessed be world readable.
+   *
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param limit The maximum number of records returned
+   * @return - a JSONArray of guids or records
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public JSONArray selectLimit(String query, List<String> fields, int limit)
+          throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectLimit(query, fields, limit)).getResultJSONArray();
+  }
+
+  /**
+   * Returns at most {@code limit} of the guid records that match the {@code query}
+   * that {@code reader} can read. See {@link #selectLimit(String, List, int)}.
+   *
+   * @param reader
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param limit The maximum number of records returned
+   * @return - a JSONArray of guids or records
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public JSONArray selectLimit(GuidEntry reader, String query, List<String> fields, int limit)
+          throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectLimit(reader, query, fields, limit)).getResultJSONArray();
+  }
+
+  /**
+   * Returns the {@code k} guid records that match the {@code query} with the
+   * smallest, or largest if {@code descending}, values of {@code sortField} in that order.
+   * See {@link GNSCommand#selectTopK(String, List, String, int, boolean)}.
+   *
+   * Requires that all fields accessed be world readable.
+   *
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param sortField
+   * @param k The maximum number of records returned
+   * @param descending
+   * @return - a JSONArray of guids or records
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public JSONArray selectTopK(String query, List<String> fields, String sortField, int k,
+          boolean descending) throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectTopK(query, fields, sortField, k, descending))
+            .getResultJSONArray();
+  }
+
+  /**
+   * Returns the {@code k} guid records that match the {@code query} that {@code reader}
+   * can read with the smallest or largest values of {@code sortField}.
+   * See {@link #selectTopK(String, List, String, int, boolean)}.
+   *
+   * @param reader
+   * @param query
+   * - the query
+   * @param fields A list of fields or null meaning only the guids
+   * @param sortField
+   * @param k The maximum number of records returned
+   * @param descending
+   * @return - a JSONArray of guids or records
+   * @throws edu.umass.cs.gnscommon.exceptions.client.ClientException
+   * if a protocol error occurs
+   * @throws java.io.IOException
+   * if a communication error occurs
+   */
+  public JSONArray selectTopK(GuidEntry reader, String query, List<String> fields,
+          String sortField, int k, boolean descending) throws ClientException, IOException {
+    return gnsClient.execute(GNSCommand.selectTopK(reader, query, fields, sortField, k, descending))
+            .getResultJSONArray();
+  }
+
   /**
    * Set up a context aware group guid using a query. Requires a accountGuid
    * and a publicKey which are used to set up the new guid or look it up if it
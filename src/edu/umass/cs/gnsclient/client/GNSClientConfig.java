@@ -87,6 +87,40 @@ public class GNSClientConfig {
      * The port used by the local name server.
      */
     LOCAL_NAME_SERVER_PORT(24398),
+    /**
+     * The maximum number of names the local name server caches.
+     */
+    LOCAL_NAME_SERVER_CACHE_SIZE(100000),
+    /**
+     * How long, in milliseconds, the local name server caches values.
+     */
+    LOCAL_NAME_SERVER_VALUE_CACHE_TTL(10000),
+    /**
+     * How long, in milliseconds, the local name server caches the active
+     * replicas of a name.
+     */
+    LOCAL_NAME_SERVER_ACTIVES_CACHE_TTL(10000),
+    /**
+     * The weight, in percent, of the newest response time in the average
+     * response time the local name server keeps for each active replica.
+     */
+    LOCAL_NAME_SERVER_RESPONSE_TIME_WEIGHT(20),
+    /**
+     * The number of errors in a row after which the local name server stops
+     * sending requests to an active replica for a while.
+     */
+    LOCAL_NAME_SERVER_REPLICA_FAILURES(3),
+    /**
+     * How long, in milliseconds, an active replica with outstanding requests
+     * can go without answering before the local name server stops sending
+     * requests to it for a while.
+     */
+    LOCAL_NAME_SERVER_REPLICA_TIMEOUT(5000),
+    /**
+     * How long, in milliseconds, the local name server stops sending requests
+     * to an active replica that failed.
+     */
+    LOCAL_NAME_SERVER_REPLICA_BACKOFF(10000),
 
     ENABLE_CROSS_ORIGIN_REQUESTS(false);
     
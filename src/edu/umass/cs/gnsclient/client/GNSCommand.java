@@ -2127,6 +2127,282 @@ public class GNSCommand extends CommandPacket {
     );
   }
 
+  /**
+   * Selects the first page of the guid records that match the {@code query}.
+   * The command returns a JSONObject representation of
+   * {@link edu.umass.cs.gnscommon.packets.commandreply.SelectResultPage}
+   * which holds the records in the page and, if there are more, the
+   * handle to pass to {@link #selectNextPage(SelectHandleInfo, int)}.
+   * Requires all fields accessed to be world readable.
+   *
+   * The {@code fields} parameter is a list of the fields that
+   * should be included in the returned records. {@code null}
+   * means the records only contain the guid. A list containing
+   * {@link GNSProtocol#ENTIRE_RECORD} means return all fields.
+   *
+   * The query syntax is described here:
+   * https://gns.name/wiki/index.php?title=Query_Syntax
+   *
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectQueryPaged(String query, List<String> fields, int pageSize)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectQueryPaged,
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.PAGE_SIZE.toString(), pageSize);
+    }
+    return getCommand(CommandType.SelectQueryPaged,
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.PAGE_SIZE.toString(), pageSize);
+  }
+
+  /**
+   * Selects the first page of the guid records that match the {@code query}
+   * that {@code reader} can read. See {@link #selectQueryPaged(String, List, int)}.
+   *
+   * @param reader
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectQueryPaged(GuidEntry reader, String query,
+          List<String> fields, int pageSize)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectQueryPaged, reader,
+              GNSProtocol.GUID.toString(), reader.getGuid(),
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.PAGE_SIZE.toString(), pageSize);
+    }
+    return getCommand(CommandType.SelectQueryPaged, reader,
+            GNSProtocol.GUID.toString(), reader.getGuid(),
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.PAGE_SIZE.toString(), pageSize);
+  }
+
+  /**
+   * Fetches the next page of an earlier
+   * {@link #selectQueryPaged(String, List, int)} using the select handle
+   * that came back with the previous page. The name servers only keep
+   * the rest of the results for a while, so pages should be fetched
+   * promptly.
+   *
+   * @param selectHandle
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectNextPage(SelectHandleInfo selectHandle, int pageSize)
+          throws ClientException {
+    try {
+      return getCommand(CommandType.SelectNextPage,
+              GNSProtocol.SELECT_HANDLE.toString(), selectHandle.toJSONArray(),
+              GNSProtocol.PAGE_SIZE.toString(), pageSize);
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
+  /**
+   * Fetches the next page of an earlier
+   * {@link #selectQueryPaged(GuidEntry, String, List, int)}. Must be
+   * issued by the same reader as the first page.
+   *
+   * @param reader
+   * @param selectHandle
+   * @param pageSize The maximum number of records in a page, zero or less means the server default
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectNextPage(GuidEntry reader, SelectHandleInfo selectHandle,
+          int pageSize)
+          throws ClientException {
+    try {
+      return getCommand(CommandType.SelectNextPage, reader,
+              GNSProtocol.GUID.toString(), reader.getGuid(),
+              GNSProtocol.SELECT_HANDLE.toString(), selectHandle.toJSONArray(),
+              GNSProtocol.PAGE_SIZE.toString(), pageSize);
+    } catch (JSONException e) {
+      throw new ClientException(e);
+    }
+  }
+
+  /**
+   * Counts the guid records that match the {@code query}. The command
+   * returns the count as an integer.
+   * Requires all fields accessed to be world readable.
+   *
+   * The query syntax is described here:
+   * https://gns.name/wiki/index.php?title=Query_Syntax
+   *
+   * @param query
+   * The select query being issued.
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectCount(String query)
+          throws ClientException {
+    return getCommand(CommandType.SelectCount,
+            GNSProtocol.QUERY.toString(), query);
+  }
+
+  /**
+   * Counts the guid records that match the {@code query}
+   * that {@code reader} can read. See {@link #selectCount(String)}.
+   *
+   * @param reader
+   * @param query
+   * The select query being issued.
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectCount(GuidEntry reader, String query)
+          throws ClientException {
+    return getCommand(CommandType.SelectCount, reader,
+            GNSProtocol.GUID.toString(), reader.getGuid(),
+            GNSProtocol.QUERY.toString(), query);
+  }
+
+  /**
+   * Selects at most {@code limit} of the guid records that match the {@code query}.
+   * Which of the matching records are returned is unspecified.
+   * Requires all fields accessed to be world readable.
+   *
+   * The {@code fields} parameter works the same way as in
+   * {@link #selectQueryPaged(String, List, int)} except that {@code null}
+   * means the command returns a JSONArray of guids.
+   *
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param limit The maximum number of records returned
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectLimit(String query, List<String> fields, int limit)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectLimit,
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.LIMIT.toString(), limit);
+    }
+    return getCommand(CommandType.SelectLimit,
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.LIMIT.toString(), limit);
+  }
+
+  /**
+   * Selects at most {@code limit} of the guid records that match the {@code query}
+   * that {@code reader} can read. See {@link #selectLimit(String, List, int)}.
+   *
+   * @param reader
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param limit The maximum number of records returned
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectLimit(GuidEntry reader, String query,
+          List<String> fields, int limit)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectLimit, reader,
+              GNSProtocol.GUID.toString(), reader.getGuid(),
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.LIMIT.toString(), limit);
+    }
+    return getCommand(CommandType.SelectLimit, reader,
+            GNSProtocol.GUID.toString(), reader.getGuid(),
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.LIMIT.toString(), limit);
+  }
+
+  /**
+   * Selects the {@code k} guid records that match the {@code query} and have
+   * the smallest values of {@code sortField}, or the largest if {@code descending}.
+   * The records are returned in that order. Numbers are ordered before strings
+   * and records without the field are never returned.
+   * Requires all fields accessed to be world readable.
+   *
+   * The {@code fields} parameter works the same way as in
+   * {@link #selectLimit(String, List, int)}.
+   *
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param sortField
+   * @param k The maximum number of records returned
+   * @param descending
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectTopK(String query, List<String> fields,
+          String sortField, int k, boolean descending)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectTopK,
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.SORT_FIELD.toString(), sortField,
+              GNSProtocol.LIMIT.toString(), k,
+              GNSProtocol.DESCENDING.toString(), descending);
+    }
+    return getCommand(CommandType.SelectTopK,
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.SORT_FIELD.toString(), sortField,
+            GNSProtocol.LIMIT.toString(), k,
+            GNSProtocol.DESCENDING.toString(), descending);
+  }
+
+  /**
+   * Selects the {@code k} guid records that match the {@code query} that
+   * {@code reader} can read with the smallest or largest values of {@code sortField}.
+   * See {@link #selectTopK(String, List, String, int, boolean)}.
+   *
+   * @param reader
+   * @param query
+   * The select query being issued.
+   * @param fields A list of fields or null meaning only the guids
+   * @param sortField
+   * @param k The maximum number of records returned
+   * @param descending
+   * @return CommandPacket
+   * @throws ClientException
+   */
+  public static final CommandPacket selectTopK(GuidEntry reader, String query,
+          List<String> fields, String sortField, int k, boolean descending)
+          throws ClientException {
+    if (fields == null) {
+      return getCommand(CommandType.SelectTopK, reader,
+              GNSProtocol.GUID.toString(), reader.getGuid(),
+              GNSProtocol.QUERY.toString(), query,
+              GNSProtocol.SORT_FIELD.toString(), sortField,
+              GNSProtocol.LIMIT.toString(), k,
+              GNSProtocol.DESCENDING.toString(), descending);
+    }
+    return getCommand(CommandType.SelectTopK, reader,
+            GNSProtocol.GUID.toString(), reader.getGuid(),
+            GNSProtocol.QUERY.toString(), query,
+            GNSProtocol.FIELDS.toString(), fields,
+            GNSProtocol.SORT_FIELD.toString(), sortField,
+            GNSProtocol.LIMIT.toString(), k,
+            GNSProtocol.DESCENDING.toString(), descending);
+  }
+
   /**
    * Set up a context-aware group guid corresponding to the query. Requires
    * {@code accountGuid} and {@code publicKey} that are used to set up the new
@@ -892,6 +892,81 @@ public enum CommandType {
            GNSProtocol.FIELDS.toString(),
            GNSProtocol.SIGNATURE.toString(),
            GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * A select query that returns its results a page at a time.
+  */
+ SelectQueryPaged(323, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectQueryPaged",
+         CommandResultType.MAP, false, false,
+         "Returns the first page of the records that satisfy the query. "
+         + "For details see http://gns.name/wiki/index.php/Query_Syntax "
+         + "The return value is a JSONObject containing the records, each with its guid in _GUID "
+         + "and the requested fields, and a select handle if there are more records. "
+         + "Use SelectNextPage with the handle to fetch the rest.",
+         new String[]{GNSProtocol.QUERY.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.FIELDS.toString(),
+           GNSProtocol.PAGE_SIZE.toString(),
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * Fetches the next page of an earlier SelectQueryPaged.
+  */
+ SelectNextPage(324, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectNextPage",
+         CommandResultType.MAP, false, false,
+         "Returns the next page of the records of an earlier paged select query "
+         + "by using the select handle returned with the previous page. "
+         + "The return value is the same as for SelectQueryPaged.",
+         new String[]{GNSProtocol.SELECT_HANDLE.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.PAGE_SIZE.toString(),
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * A select query that only returns the number of matching guids.
+  */
+ SelectCount(325, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectCount",
+         CommandResultType.INTEGER, false, false,
+         "Returns the number of records that satisfy the query. "
+         + "For details see http://gns.name/wiki/index.php/Query_Syntax",
+         new String[]{GNSProtocol.QUERY.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * A select query that returns at most a given number of records.
+  */
+ SelectLimit(326, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectLimit",
+         CommandResultType.LIST, false, false,
+         "Returns at most limit of the records that satisfy the query. "
+         + "For details see http://gns.name/wiki/index.php/Query_Syntax "
+         + "The return value is the same as for SelectQuery.",
+         new String[]{GNSProtocol.QUERY.toString(), GNSProtocol.LIMIT.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.FIELDS.toString(),
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
+ /**
+  * A select query that returns the records with the smallest or largest values of a field.
+  */
+ SelectTopK(327, CommandCategory.SELECT, "edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select.SelectTopK",
+         CommandResultType.LIST, false, false,
+         "Returns the limit records that satisfy the query and have the smallest values "
+         + "of the sort field, or the largest if descending is true. "
+         + "Records without the sort field are not returned. "
+         + "For details see http://gns.name/wiki/index.php/Query_Syntax "
+         + "The return value is the same as for SelectQuery, in order.",
+         new String[]{GNSProtocol.QUERY.toString(), GNSProtocol.SORT_FIELD.toString(),
+           GNSProtocol.LIMIT.toString()},
+         // optional parameters
+         new String[]{GNSProtocol.GUID.toString(), // the reader
+           GNSProtocol.FIELDS.toString(),
+           GNSProtocol.DESCENDING.toString(),
+           GNSProtocol.SIGNATURE.toString(),
+           GNSProtocol.SIGNATUREFULLMESSAGE.toString()}),
  
  
   //
@@ -1945,6 +2020,11 @@ public enum CommandType {
         SelectQuery.setChain();
         SelectAndNotify.setChain();
         SelectNotificationStatus.setChain();
+        SelectQueryPaged.setChain();
+        SelectNextPage.setChain();
+        SelectCount.setChain();
+        SelectLimit.setChain();
+        SelectTopK.setChain();
         //
         AddGuid.setChain(LookupGuid, ReplaceUserJSONUnsigned, ReadUnsigned); // what else?
         RemoveGuid.setChain(ReadUnsigned);
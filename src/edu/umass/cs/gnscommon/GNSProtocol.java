@@ -575,6 +575,26 @@ public enum GNSProtocol {
    * The key field for the select notification handle. 
    */
   SELECT_NOTIFICATION_HANDLE("select_notification_handle"),
+  /**
+   * The key field for the handle to fetch the next page of a paged select. 
+   */
+  SELECT_HANDLE("select_handle"),
+  /**
+   * The maximum number of records in a page of a paged select. 
+   */
+  PAGE_SIZE("pageSize"),
+  /**
+   * The maximum number of records returned by a limit or top-k select. 
+   */
+  LIMIT("limit"),
+  /**
+   * The field whose values order the records of a top-k select. 
+   */
+  SORT_FIELD("sortField"),
+  /**
+   * True if a top-k select returns the records with the largest values of the sort field. 
+   */
+  DESCENDING("descending"),
   /** The set of actives field in a command. This is mainly used to specify
    *  the initial set of actives while creating an account or a guid.
    */
@@ -0,0 +1,128 @@
+package edu.umass.cs.gnscommon.packets.commandreply;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One page of the results of a paged select request that is sent back
+ * to an issuer. The page contains the records and, if some name servers
+ * have more records, a select handle that is used to fetch the next page.
+ *
+ * Each record is a JSONObject with the guid in the "_GUID" key and the
+ * requested fields, if any.
+ *
+ * @author westy
+ */
+public class SelectResultPage
+{
+	/**
+	 * The keys for serialization of this object into a JSONObject.
+	 */
+	public static enum Keys
+	{
+		/**
+		 * The records in this page.
+		 */
+		RECORDS,
+		/**
+		 * A handle to fetch the next page. Missing if this is the last page.
+		 */
+		SELECT_HANDLE,
+	}
+
+	/**
+	 * The key of the guid in each record.
+	 */
+	public static final String GUID_KEY = "_GUID";
+
+	private final JSONArray records;
+
+	private final SelectHandleInfo selectHandle;
+
+	/**
+	 * The constructor.
+	 * @param records
+	 * The records in this page.
+	 * @param selectHandle
+	 * The select handle of the name servers that have more records
+	 * or null if this is the last page.
+	 */
+	public SelectResultPage(JSONArray records, SelectHandleInfo selectHandle)
+	{
+		this.records = records;
+		this.selectHandle = selectHandle;
+	}
+
+	/**
+	 *
+	 * @return The records in this page.
+	 */
+	public JSONArray getRecords()
+	{
+		return this.records;
+	}
+
+	/**
+	 *
+	 * @return The guids of the records in this page.
+	 * @throws JSONException
+	 */
+	public JSONArray getGuids() throws JSONException
+	{
+		JSONArray guids = new JSONArray();
+		for(int i=0; i<records.length(); i++)
+		{
+			guids.put(records.getJSONObject(i).getString(GUID_KEY));
+		}
+		return guids;
+	}
+
+	/**
+	 *
+	 * @return The select handle to fetch the next page or null if this is the last page.
+	 */
+	public SelectHandleInfo getSelectHandleInfo()
+	{
+		return this.selectHandle;
+	}
+
+	/**
+	 *
+	 * @return true if there are more pages.
+	 */
+	public boolean hasMore()
+	{
+		return this.selectHandle != null
+				&& !this.selectHandle.getLocalHandlesList().isEmpty();
+	}
+
+	/**
+	 * Converts the object of this class into a JSONObject
+	 * @return The JSONObject corresponding to the object of this class.
+	 * @throws JSONException
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject json = new JSONObject();
+		json.put(Keys.RECORDS.toString(), records);
+		if(hasMore())
+		{
+			json.put(Keys.SELECT_HANDLE.toString(), selectHandle.toJSONArray());
+		}
+		return json;
+	}
+
+	/**
+	 * To create an object of this class using the supplied JSONObject.
+	 * @param json
+	 * @return The object of this class.
+	 * @throws JSONException
+	 */
+	public static SelectResultPage fromJSON(JSONObject json) throws JSONException
+	{
+		SelectHandleInfo selectHandle = json.has(Keys.SELECT_HANDLE.toString()) ?
+				SelectHandleInfo.fromJSONArray(json.getJSONArray(Keys.SELECT_HANDLE.toString())) : null;
+		return new SelectResultPage(json.getJSONArray(Keys.RECORDS.toString()), selectHandle);
+	}
+}
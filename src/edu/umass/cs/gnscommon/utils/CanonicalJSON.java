@@ -44,7 +44,27 @@ public class CanonicalJSON {
    * @return a string
    */
   public static String getCanonicalForm(JSONObject json) {
-    return renderSimpleCanonicalJSON(json);
+    return getCanonicalForm(json, null);
+  }
+
+  /**
+   * Generates the canonical string for a JSON object as if {@code excludedKey}
+   * were not one of its top level keys. This produces the same string as
+   * removing the key, calling {@link #getCanonicalForm(JSONObject)} and
+   * putting the key back, but without modifying {@code json}.
+   *
+   * @param json
+   * @param excludedKey the top level key to skip; can be null
+   * @return a string
+   */
+  public static String getCanonicalForm(JSONObject json, String excludedKey) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      renderCanonicalJSONObject(json, excludedKey, sb);
+    } catch (Exception e) {
+      return null;
+    }
+    return sb.toString();
   }
 
   /**
@@ -61,82 +81,83 @@ public class CanonicalJSON {
     }
   }
 
+  private static void renderCanonicalJSONObject(JSONObject theObject, String excludedKey,
+          StringBuilder sb) throws JSONException {
+    // Sort the keys
+    TreeSet<String> t = new TreeSet<>();
+    Iterator<?> i = theObject.keys();
+    while (i.hasNext()) {
+      t.add((String) i.next());
+    }
+    if (excludedKey != null) {
+      t.remove(excludedKey);
+    }
+    sb.append('{');
+    boolean first = true;
+    for (String key : t) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      canonicalQuote(key, sb);
+      sb.append(':');
+      renderSimpleCanonicalJSON(theObject.get(key), sb);
+    }
+    sb.append('}');
+  }
+
   /* This should be identical to the standard code to render the JSON object,
-   * except it forces the keys for maps to be listed in sorted order. */
-  private static String renderSimpleCanonicalJSON(Object x) {
+   * except it forces the keys for maps to be listed in sorted order.
+   * Everything is appended to one builder so nested values aren't
+   * rendered into intermediate strings that are then copied again.
+   * As before, a value that can't be rendered is rendered as null
+   * without affecting the rest of the string. */
+  private static void renderSimpleCanonicalJSON(Object x, StringBuilder sb) {
+    int start = sb.length();
     try {
       if (x instanceof JSONObject) {
-        JSONObject theObject = (JSONObject) x;
-
-        // Sort the keys
-        TreeSet<String> t = new TreeSet<>();
-        Iterator<?> i = theObject.keys();
-        while (i.hasNext()) {
-          t.add((String) i.next());
-        }
-        Iterator<String> keys = t.iterator();
-
-        StringBuilder sb = new StringBuilder("{");
-        while (keys.hasNext()) {
-          if (sb.length() > 1) {
-            sb.append(',');
-          }
-          Object o = keys.next();
-          sb.append(canonicalQuote(o.toString()));
-          sb.append(':');
-          sb.append(renderSimpleCanonicalJSON(theObject.get(o.toString())));
-        }
-        sb.append('}');
-        return sb.toString();
+        renderCanonicalJSONObject((JSONObject) x, null, sb);
       } else if (x instanceof JSONArray) {
         JSONArray theArray = (JSONArray) x;
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
+        sb.append('[');
         int len = theArray.length();
         for (int i = 0; i < len; i += 1) {
           if (i > 0) {
-            sb.append(",");
+            sb.append(',');
           }
-          sb.append(renderSimpleCanonicalJSON(theArray.get(i)));
+          renderSimpleCanonicalJSON(theArray.get(i), sb);
         }
-        sb.append("]");
-        return sb.toString();
-      } else {
-        if (x == null || x.equals(null)) {
-          return "null";
+        sb.append(']');
+      } else if (x == null || x.equals(null)) {
+        sb.append("null");
+      } else if (x instanceof JSONString) {
+        Object object;
+        try {
+          object = ((JSONString) x).toJSONString();
+        } catch (Exception e) {
+          throw new JSONException(e.getMessage());
         }
-        if (x instanceof JSONString) {
-          Object object;
-          try {
-            object = ((JSONString) x).toJSONString();
-          } catch (Exception e) {
-            throw new JSONException(e.getMessage());
-          }
-          if (object instanceof String) {
-            return (String) object;
-          }
+        if (object instanceof String) {
+          sb.append((String) object);
+        } else {
           throw new JSONException("Bad value from toJSONString: " + object);
         }
-        if (x instanceof Number) {
-          return JSONObject.numberToString((Number) x);
-        }
-        if (x instanceof Boolean || x instanceof JSONObject
-                || x instanceof JSONArray) {
-          return x.toString();
-        }
-        if (x instanceof Map) {
-          return renderSimpleCanonicalJSON(new JSONObject((Map<?, ?>) x));
-        }
-        if (x instanceof Collection) {
-          return renderSimpleCanonicalJSON(new JSONArray((Collection<?>) x));
-        }
-        if (x.getClass().isArray()) {
-          return renderSimpleCanonicalJSON(new JSONArray(x));
-        }
-        return canonicalQuote(x.toString());
+      } else if (x instanceof Number) {
+        sb.append(JSONObject.numberToString((Number) x));
+      } else if (x instanceof Boolean) {
+        sb.append(x.toString());
+      } else if (x instanceof Map) {
+        renderCanonicalJSONObject(new JSONObject((Map<?, ?>) x), null, sb);
+      } else if (x instanceof Collection) {
+        renderSimpleCanonicalJSON(new JSONArray((Collection<?>) x), sb);
+      } else if (x.getClass().isArray()) {
+        renderSimpleCanonicalJSON(new JSONArray(x), sb);
+      } else {
+        canonicalQuote(x.toString(), sb);
       }
     } catch (Exception e) {
-      return null;
+      sb.setLength(start);
+      sb.append("null");
     }
   }
 
@@ -146,7 +167,8 @@ public class CanonicalJSON {
    * text to be delivered in HTML. In JSON text, a string cannot contain a
    * control character or an unescaped quote or backslash.
    * @param string A String
-   * @return A String correctly formatted for insertion in a JSON text.
+   * @param sb the builder the string correctly formatted for insertion in
+   * a JSON text is appended to
    */
 //   This is an exact copy of JSONObject.quote() method from the org.json package.
 //   This method was added to fix the Android behavior of escaping forward slashes
@@ -154,9 +176,10 @@ public class CanonicalJSON {
 //   only if the preceding character is an angular bracket ('<'). 
 //     
 //   Also see MOB-886.
-  private static String canonicalQuote(String string) {
+  private static void canonicalQuote(String string, StringBuilder sb) {
     if (string == null || string.length() == 0) {
-      return "\"\"";
+      sb.append("\"\"");
+      return;
     }
 
     char b;
@@ -164,7 +187,7 @@ public class CanonicalJSON {
     String hhhh;
     int i;
     int len = string.length();
-    StringBuilder sb = new StringBuilder(len + 4);
+    sb.ensureCapacity(sb.length() + len + 4);
 
     sb.append('"');
     for (i = 0; i < len; i += 1) {
@@ -209,6 +232,5 @@ public class CanonicalJSON {
       }
     }
     sb.append('"');
-    return sb.toString();
   }
 }
@@ -0,0 +1,196 @@
+/* Copyright (c) 2017 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnscommon.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A compiled dot notation field name like "flapjack.sally.right".
+ *
+ * The field is split into its keys once, when the FieldPath is created,
+ * and FieldPaths are cached by field name so callers can just use
+ * {@link #get(String)} on every access. Each operation walks the tree
+ * once; in particular {@link #getValue} returns null for a missing field
+ * so there's no need to check {@code containsFieldDotNotation} first.
+ *
+ * Has the same semantics as the methods in {@link JSONDotNotation} except
+ * that a missing field is never an exception. Reads also work on
+ * {@link Map}s, such as the BasicDBObjects mongo returns.
+ *
+ * @author westy
+ */
+public final class FieldPath {
+
+  // Field names come from users so don't let the cache grow without bound.
+  private static final int MAX_CACHED_PATHS = 10000;
+  private static final ConcurrentHashMap<String, FieldPath> CACHE = new ConcurrentHashMap<>();
+
+  private final String field;
+  private final String[] keys;
+  private final List<String> keyList;
+  private volatile List<String> dottedParents;
+
+  private FieldPath(String field) {
+    this.field = field;
+    this.keys = field.split("\\.", -1);
+    this.keyList = Collections.unmodifiableList(Arrays.asList(keys));
+  }
+
+  /**
+   * Returns the (cached) FieldPath for the dotted field.
+   *
+   * @param field
+   * @return a FieldPath
+   */
+  public static FieldPath get(String field) {
+    FieldPath path = CACHE.get(field);
+    if (path == null) {
+      if (CACHE.size() >= MAX_CACHED_PATHS) {
+        CACHE.clear();
+      }
+      path = new FieldPath(field);
+      FieldPath existing = CACHE.putIfAbsent(field, path);
+      if (existing != null) {
+        path = existing;
+      }
+    }
+    return path;
+  }
+
+  /**
+   * @return the dotted field name
+   */
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * @return the number of keys in the path
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * @param i
+   * @return the i'th key in the path
+   */
+  public String getKey(int i) {
+    return keys[i];
+  }
+
+  /**
+   * @return the keys in the path, outermost first
+   */
+  public List<String> getKeys() {
+    return keyList;
+  }
+
+  /**
+   * Returns the field and its dotted parents, field first, like
+   * {@link JSONDotNotation#getDottedParents(String)}.
+   *
+   * @return an unmodifiable list
+   */
+  public List<String> getDottedParents() {
+    if (dottedParents == null) {
+      dottedParents = Collections.unmodifiableList(JSONDotNotation.getDottedParents(field));
+    }
+    return dottedParents;
+  }
+
+  private static Object getChild(Object parent, String key) {
+    if (parent instanceof JSONObject) {
+      return ((JSONObject) parent).opt(key);
+    } else if (parent instanceof Map) {
+      return ((Map<?, ?>) parent).get(key);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value of this field in json or null if there isn't one.
+   *
+   * @param json - a JSONObject or Map
+   * @return the value or null
+   */
+  public Object getValue(Object json) {
+    Object value = json;
+    for (int i = 0; i < keys.length && value != null; i++) {
+      value = getChild(value, keys[i]);
+    }
+    return value;
+  }
+
+  /**
+   * Returns true if json has a value for this field.
+   *
+   * @param json - a JSONObject or Map
+   * @return true if the field is present
+   */
+  public boolean contains(Object json) {
+    return getValue(json) != null;
+  }
+
+  /**
+   * Puts value at this field in destination creating any missing parents.
+   *
+   * @param destination
+   * @param value
+   * @return false if one of the parents is present but isn't a JSONObject
+   * @throws JSONException
+   */
+  public boolean put(JSONObject destination, Object value) throws JSONException {
+    JSONObject parent = destination;
+    for (int i = 0; i < keys.length - 1; i++) {
+      Object child = parent.opt(keys[i]);
+      if (child == null) {
+        parent.put(keys[i], child = new JSONObject());
+      } else if (!(child instanceof JSONObject)) {
+        return false;
+      }
+      parent = (JSONObject) child;
+    }
+    parent.put(keys[keys.length - 1], value);
+    return true;
+  }
+
+  /**
+   * Removes this field from json.
+   *
+   * @param json
+   * @return the value removed or null if the field wasn't present
+   */
+  public Object remove(JSONObject json) {
+    Object parent = json;
+    for (int i = 0; i < keys.length - 1 && parent != null; i++) {
+      parent = getChild(parent, keys[i]);
+    }
+    return parent instanceof JSONObject ? ((JSONObject) parent).remove(keys[keys.length - 1]) : null;
+  }
+
+  @Override
+  public String toString() {
+    return field;
+  }
+}
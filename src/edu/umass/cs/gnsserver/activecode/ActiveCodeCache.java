@@ -0,0 +1,200 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Keeps the active code of guids in memory so that running it
+ * doesn't read the code from the database on every read and write.
+ *
+ * The read and write code of a guid are loaded together and guids without
+ * code are cached too, as most guids don't have any. Setting or clearing
+ * the code of a guid, which updates {@link ActiveCode#ON_READ} or
+ * {@link ActiveCode#ON_WRITE} on every replica, and restoring or removing
+ * its record remove it, see {@link #invalidate}.
+ *
+ * @author westy
+ */
+public class ActiveCodeCache {
+
+  private static final long MAX_GUIDS = Config.getGlobalInt(GNSC.ACTIVE_CODE_CACHE_SIZE);
+
+  // Bumped by every invalidation so code read before it isn't stored after it.
+  private static final AtomicLong GENERATION = new AtomicLong();
+
+  private static final Cache<String, CachedCode> CACHE
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Math.max(MAX_GUIDS, 1))
+          .recordStats()
+          .build();
+
+  private static class CachedCode {
+
+    // Null if there is no code for the action.
+    private final String readCode;
+    private final String writeCode;
+
+    private CachedCode(String readCode, String writeCode) {
+      this.readCode = readCode;
+      this.writeCode = writeCode;
+    }
+  }
+
+  /**
+   * @return true unless the cache is turned off with a size of zero
+   */
+  public static boolean isEnabled() {
+    return MAX_GUIDS > 0;
+  }
+
+  /**
+   * Returns the code of the guid for the action.
+   *
+   * @param guid
+   * @param action {@link ActiveCode#READ_ACTION} or {@link ActiveCode#WRITE_ACTION}
+   * @param db
+   * @return the code or null if the guid has none or it can't be read
+   * @throws IllegalArgumentException if the action isn't valid
+   */
+  public static String getCode(String guid, String action, BasicRecordMap db)
+          throws IllegalArgumentException {
+    String field = ActiveCode.getCodeField(action); // can throw IllegalArgumentException
+    CachedCode cached = isEnabled() ? CACHE.getIfPresent(guid) : null;
+    if (cached == null) {
+      long generation = GENERATION.get();
+      cached = load(guid, db);
+      if (cached == null) {
+        return null;
+      }
+      if (isEnabled() && GENERATION.get() == generation) {
+        CACHE.put(guid, cached);
+        // An invalidation could have come in between the check and the put.
+        if (GENERATION.get() != generation) {
+          CACHE.invalidate(guid);
+        }
+      }
+    }
+    return ActiveCode.ON_READ.equals(field) ? cached.readCode : cached.writeCode;
+  }
+
+  private static CachedCode load(String guid, BasicRecordMap db) {
+    try {
+      ValuesMap codeMap = NameRecord.getNameRecordMultiUserFields(db, guid,
+              ColumnFieldType.USER_JSON, ActiveCode.ON_READ, ActiveCode.ON_WRITE).getValuesMap();
+      return new CachedCode(getString(codeMap, ActiveCode.ON_READ), getString(codeMap, ActiveCode.ON_WRITE));
+    } catch (RecordNotFoundException | FailedDBOperationException | FieldNotFoundException e) {
+      ActiveCodeHandler.getLogger().log(Level.FINE, "Unable to read the active code of {0}: {1}",
+              new Object[]{guid, e});
+      return null;
+    }
+  }
+
+  private static String getString(ValuesMap codeMap, String field) {
+    try {
+      return codeMap != null && codeMap.has(field) ? codeMap.getString(field) : null;
+    } catch (JSONException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param field
+   * @return true if the field holds active code
+   */
+  public static boolean isCodeField(String field) {
+    return ActiveCode.ON_READ.equals(field) || ActiveCode.ON_WRITE.equals(field);
+  }
+
+  /**
+   * @param fields
+   * @return true if one of the fields holds active code
+   */
+  public static boolean containsCodeField(Collection<String> fields) {
+    return fields.contains(ActiveCode.ON_READ) || fields.contains(ActiveCode.ON_WRITE);
+  }
+
+  /**
+   * Removes the code of a guid. Called when it is set or cleared
+   * or when the guid's record is created, restored or removed.
+   *
+   * @param guid
+   */
+  public static void invalidate(String guid) {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    CACHE.invalidate(guid);
+  }
+
+  /**
+   * Removes the code of all guids.
+   */
+  public static void invalidateAll() {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    CACHE.invalidateAll();
+  }
+
+  /**
+   * Returns the statistics of the active code cache for the admin interface.
+   *
+   * @return a JSONObject
+   */
+  public static JSONObject getStats() {
+    CacheStats stats = CACHE.stats();
+    JSONObject json = new JSONObject();
+    try {
+      json.put("size", CACHE.size());
+      json.put("hits", stats.hitCount());
+      json.put("misses", stats.missCount());
+      json.put("hitRate", stats.hitRate());
+      json.put("evictions", stats.evictionCount());
+      json.put("invalidations", GENERATION.get());
+    } catch (JSONException e) {
+      ActiveCodeHandler.getLogger().log(Level.SEVERE, "Unable to format cache stats: {0}", e);
+    }
+    return json;
+  }
+}
@@ -86,6 +86,23 @@ public class ActiveCodeConfig {
 	   */
 	  public static boolean activeCodeEnableDebugging = false;
 	  
+	  /**
+	   * Number of distinct code bodies each worker keeps compiled, 
+	   * and of guids each worker thread keeps evaled code for.
+	   */
+	  public static int activeCodeCacheSize = 1000;
+	  
+	  /**
+	   * True if nonblocking clients talk to their workers through rings
+	   * of shared memory instead of named pipes.
+	   */
+	  public static boolean activeCodeSharedMemoryEnabled = false;
+	  
+	  /**
+	   * Size in bytes of the shared memory ring in each direction
+	   */
+	  public static int activeCodeSharedMemorySize = 1 << 20;
+	  
 	  
 	  private static final String ACTIVE_CODE_WORKER_COUNT = "ACTIVE_CODE_WORKER_COUNT";
 	  
@@ -109,6 +126,12 @@ public class ActiveCodeConfig {
 	  
 	  private static final String ACTIVE_CODE_ENABLE_DEBUGGING = "ACTIVE_CODE_ENABLE_DEBUGGING";
 	  
+	  private static final String ACTIVE_CODE_CACHE_SIZE = "ACTIVE_CODE_CACHE_SIZE";
+	  
+	  private static final String ACTIVE_CODE_SHARED_MEMORY_ENABLED = "ACTIVE_CODE_SHARED_MEMORY_ENABLED";
+	  
+	  private static final String ACTIVE_CODE_SHARED_MEMORY_SIZE = "ACTIVE_CODE_SHARED_MEMORY_SIZE";
+	  
 	
 	/**
 	 * @param allValues
@@ -158,6 +181,18 @@ public class ActiveCodeConfig {
 		    	activeCodeTrustedMode = Boolean.parseBoolean(allValues.getProperty(ACTIVE_CODE_TRUSTED_MODE));
 		    }
 		    
+		    if(allValues.containsKey(ACTIVE_CODE_CACHE_SIZE)) {
+		    	activeCodeCacheSize = Integer.parseInt(allValues.getProperty(ACTIVE_CODE_CACHE_SIZE));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_CODE_SHARED_MEMORY_ENABLED)) {
+		    	activeCodeSharedMemoryEnabled = Boolean.parseBoolean(allValues.getProperty(ACTIVE_CODE_SHARED_MEMORY_ENABLED));
+		    }
+		    
+		    if(allValues.containsKey(ACTIVE_CODE_SHARED_MEMORY_SIZE)) {
+		    	activeCodeSharedMemorySize = Integer.parseInt(allValues.getProperty(ACTIVE_CODE_SHARED_MEMORY_SIZE));
+		    }
+		    
 	  }
 	 
 	/**
@@ -33,18 +33,13 @@ import org.json.JSONObject;
 
 import edu.umass.cs.gigapaxos.PaxosConfig;
 import edu.umass.cs.gnscommon.ResponseCode;
-import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
-import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
-import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveException;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveHandler;
-import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
-import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
@@ -236,30 +231,15 @@ public class ActiveCodeHandler {
     }
     JSONObject newResult = value;
     if (field == null || !InternalField.isInternalField(field)) {
-      NameRecord activeCodeNameRecord = null;
+      String code;
       try {
-        activeCodeNameRecord = NameRecord.getNameRecordMultiUserFields(db, guid,
-                ColumnFieldType.USER_JSON, ActiveCode.getCodeField(action));
-      } catch (RecordNotFoundException | FailedDBOperationException | IllegalArgumentException e) {
+        code = ActiveCodeCache.getCode(guid, action, db);
+      } catch (IllegalArgumentException e) {
         e.printStackTrace();
         return value;
       }
 
-      ValuesMap codeMap = null;
-      try {
-        codeMap = activeCodeNameRecord.getValuesMap();
-      } catch (FieldNotFoundException e) {
-        e.printStackTrace();
-        return value;
-      }
-
-      if (codeMap != null && value != null) {
-        String code;
-        try {
-          code = codeMap.getString(ActiveCode.getCodeField(action));
-        } catch (JSONException | IllegalArgumentException e) {
-          return value;
-        }
+      if (code != null && value != null) {
         // Prepare values for query
         String accessorGuid = header == null ? guid : header.getOriginatingGUID();
         if(header.getSourceAddress() != null){
@@ -276,7 +256,7 @@ public class ActiveCodeHandler {
         if(newResult.has(SOURCE_IP_FIELD)){
         	newResult.remove(SOURCE_IP_FIELD);
         }
-      }else if(codeMap == null){
+      }else if(code == null){
     	  ActiveCodeHandler.getLogger().log(DEBUG_LEVEL,
                   "OOOOOOOOOOOOO no code to run:[guid:{0},field:{1},action:{2},value:{3},header:{4}]",
                   new Object[]{guid, field, action, value, header});
@@ -58,6 +58,12 @@ public class ActiveHandler {
 	private final int numProcess;
 	final AtomicInteger counter = new AtomicInteger();
 	
+	/**
+	 * The number of requests each client has not finished yet,
+	 * requests go to the client with the fewest.
+	 */
+	private final AtomicInteger[] outstanding;
+	
 	
 	/**
 	 * Initialize handler with clients and workers.
@@ -86,7 +92,9 @@ public class ActiveHandler {
 		
 		// initialize single clients and workers
 		clientPool = new Client[numProcess];
+		outstanding = new AtomicInteger[numProcess];
 		for (int i=0; i<numProcess; i++){
+			outstanding[i] = new AtomicInteger();
 			if(blocking){
 				
 				if(pipeEnable){
@@ -129,6 +137,25 @@ public class ActiveHandler {
 		}
 	}
 	
+	/**
+	 * Returns the index of the client with the fewest outstanding
+	 * requests, ties are broken round robin.
+	 */
+	private int selectClient(){
+		int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % numProcess;
+		int best = start;
+		int fewest = outstanding[start].get();
+		for(int i=1; i<numProcess && fewest > 0; i++){
+			int index = (start+i) % numProcess;
+			int count = outstanding[index].get();
+			if(count < fewest){
+				best = index;
+				fewest = count;
+			}
+		}
+		return best;
+	}
+	
 	/**
 	 * This runCode method is used to check whether we need to send this request to
 	 * a worker. If the code is trusted, we could run the request locally without
@@ -161,7 +188,13 @@ public class ActiveHandler {
 			}
 			return value;
 		}
-		return clientPool[counter.getAndIncrement()%numProcess].runCode(header, guid, accessor, code, value, ttl, 2000);
+		int index = selectClient();
+		outstanding[index].incrementAndGet();
+		try {
+			return clientPool[index].runCode(header, guid, accessor, code, value, ttl, 2000);
+		} finally {
+			outstanding[index].decrementAndGet();
+		}
 	}
 	
 	/***************** Test methods ****************/	
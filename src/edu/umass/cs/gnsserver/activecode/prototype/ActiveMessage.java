@@ -3,8 +3,11 @@ package edu.umass.cs.gnsserver.activecode.prototype;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
@@ -34,6 +37,9 @@ public class ActiveMessage implements Message{
 	private String guid;
 	private String accessor;
 	private String code;
+	private String codeDigest;
+	// If false and there is a digest only the digest of the code is sent
+	private boolean codeIncluded = true;
 	private String value;
 	private String targetGuid;
 	private String error;
@@ -67,7 +73,15 @@ public class ActiveMessage implements Message{
 		 * This message is used for worker to send a write query
 		 * to GNS to update a field.
 		 */
-		WRITE_QUERY(3);
+		WRITE_QUERY(3),
+		
+		/**
+		 * This message is sent from worker to GNS if a
+		 * REQUEST only has the digest of code that the
+		 * worker doesn't have, so that GNS sends the 
+		 * REQUEST again with the code.
+		 */
+		CODE_QUERY(4);
 		
 		private final int type;
 		Type(int type){
@@ -121,6 +135,32 @@ public class ActiveMessage implements Message{
 		this(Type.REQUEST, counter.getAndIncrement(), ttl, budget, guid, accessor, code, value, null, null);
 	}
 	
+	/**
+	 * This is a REQUEST message that can be sent without its code,
+	 * see {@link #setCodeIncluded(boolean)}.
+	 * @param guid
+	 * @param accessor
+	 * @param code
+	 * @param codeDigest the value of {@link #digest(String)} for the code
+	 * @param value
+	 * @param ttl
+	 * @param budget 
+	 */
+	public ActiveMessage(String guid, String accessor, String code, String codeDigest, String value, int ttl, long budget){
+		this(guid, accessor, code, value, ttl, budget);
+		this.codeDigest = codeDigest;
+	}
+	
+	/**
+	 * This is a CODE_QUERY message
+	 * @param id the id of the REQUEST
+	 * @param codeDigest the digest of the code the worker doesn't have
+	 */
+	public ActiveMessage(long id, String codeDigest){
+		this(Type.CODE_QUERY, id, 0, 0, null, null, null, null, null, null);
+		this.codeDigest = codeDigest;
+	}
+	
 	/**
 	 * This is a READ_QUERY message
 	 * @param ttl
@@ -192,6 +232,49 @@ public class ActiveMessage implements Message{
 		return code;
 	}
 
+	/**
+	 * @return the digest of the code to be run, or null if the code is always sent
+	 */
+	public String getCodeDigest() {
+		return codeDigest;
+	}
+	
+	/**
+	 * A REQUEST with a digest only carries the digest of its code 
+	 * once this is set to false, the worker then looks the code up
+	 * by its digest. 
+	 * 
+	 * @param codeIncluded
+	 */
+	public void setCodeIncluded(boolean codeIncluded) {
+		this.codeIncluded = codeIncluded;
+	}
+	
+	/**
+	 * @return true if the code is sent with this message
+	 */
+	public boolean isCodeIncluded() {
+		return codeIncluded || codeDigest == null;
+	}
+	
+	/**
+	 * @param code
+	 * @return the hex encoded SHA-256 digest of the code
+	 */
+	public static String digest(String code) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * @return value
 	 */
@@ -228,11 +311,18 @@ public class ActiveMessage implements Message{
 		int length = 0;
 		switch(type){
 		case REQUEST:
-			length = 6*Integer.BYTES // type, ttl, guid length, accessor length, code length, valuesMap size 
+			length = 7*Integer.BYTES // type, ttl, guid length, accessor length, digest length, code length, valuesMap size 
 			+ 2*Long.BYTES // id, budget
 			+ guid.length() // guid
 			+ (accessor!=null?accessor.length():0) // accessor
-			+ code.length();
+			+ (codeDigest!=null?codeDigest.length():0) // digest
+			+ (isCodeIncluded()?code.length():0);
+			break;
+			
+		case CODE_QUERY:
+			length = 2*Integer.BYTES // type, digest length
+			+ Long.BYTES // id
+			+ codeDigest.length();
 			break;
 			
 		case RESPONSE:
@@ -276,7 +366,7 @@ public class ActiveMessage implements Message{
 		
 		byte[] buffer = new byte[this.getEstimatedLengthExceptWithoutValue()+( (valuesMapString==null)?0:valuesMapString.length() )];
 		ByteBuffer bbuf = ByteBuffer.wrap(buffer);
-		byte[] guidBytes,accessorBytes,codeBytes,valuesMapBytes,targetGuidBytes;
+		byte[] guidBytes,accessorBytes,digestBytes,codeBytes,valuesMapBytes,targetGuidBytes;
 		
 		// put type and request id
 		bbuf.putInt(type.getType());
@@ -306,12 +396,23 @@ public class ActiveMessage implements Message{
 			bbuf.put(accessorBytes);
 			exactLength += (Integer.BYTES + accessorBytes.length);
 			
-			// put code, can be null
-			assert(code != null):"code can't be null for active request";
-			codeBytes = code.getBytes(CHARSET);
-			bbuf.putInt( codeBytes.length );
-			bbuf.put(codeBytes);
-			exactLength += (Integer.BYTES + codeBytes.length);
+			// put code digest, can be null
+			digestBytes = (codeDigest!=null)?codeDigest.getBytes(CHARSET):new byte[0];
+			bbuf.putInt(digestBytes.length);
+			bbuf.put(digestBytes);
+			exactLength += (Integer.BYTES + digestBytes.length);
+			
+			// put code, a length of -1 means it's left out
+			if(isCodeIncluded()){
+				assert(code != null):"code can't be null for active request";
+				codeBytes = code.getBytes(CHARSET);
+				bbuf.putInt( codeBytes.length );
+				bbuf.put(codeBytes);
+				exactLength += (Integer.BYTES + codeBytes.length);
+			} else {
+				bbuf.putInt(-1);
+				exactLength += Integer.BYTES;
+			}
 			
 			// put valuesMapString, can be null
 			assert(valuesMapString != null):"valuesMapString can't be null for active request";
@@ -387,6 +488,13 @@ public class ActiveMessage implements Message{
 			bbuf.put(errorBytes);
 			exactLength += (Integer.BYTES + ((error==null)? 0:errorBytes.length));
 			break;
+			
+		case CODE_QUERY:
+			digestBytes = codeDigest.getBytes(CHARSET);
+			bbuf.putInt(digestBytes.length);
+			bbuf.put(digestBytes);
+			exactLength += (Integer.BYTES + digestBytes.length);
+			break;
 		default:
 			break;
 		
@@ -420,7 +528,7 @@ public class ActiveMessage implements Message{
 		this.type = Type.values()[bbuf.getInt()];	
 		this.id = bbuf.getLong();
 		int length = 0;
-		byte[] guidBytes,accessorBytes,codeBytes,targetGuidBytes,valueBytes,errorBytes;
+		byte[] guidBytes,accessorBytes,digestBytes,codeBytes,targetGuidBytes,valueBytes,errorBytes;
 		
 		switch(type){
 		case REQUEST:
@@ -441,11 +549,23 @@ public class ActiveMessage implements Message{
 				accessor = new String(accessorBytes, CHARSET);
 			}
 			
-			// get code
+			// get code digest
 			length = bbuf.getInt();
-			codeBytes = new byte[length];
-			bbuf.get(codeBytes);
-			code = new String(codeBytes, CHARSET);
+			if(length>0){
+				digestBytes = new byte[length];
+				bbuf.get(digestBytes);
+				codeDigest = new String(digestBytes, CHARSET);
+			}
+			
+			// get code, the worker looks it up by its digest if it's left out
+			length = bbuf.getInt();
+			if(length>=0){
+				codeBytes = new byte[length];
+				bbuf.get(codeBytes);
+				code = new String(codeBytes, CHARSET);
+			} else {
+				codeIncluded = false;
+			}
 						
 			// get valuesMap
 			length = bbuf.getInt();
@@ -512,6 +632,13 @@ public class ActiveMessage implements Message{
 			}
 			
 			break;
+			
+		case CODE_QUERY:
+			length = bbuf.getInt();
+			digestBytes = new byte[length];
+			bbuf.get(digestBytes);
+			codeDigest = new String(digestBytes, CHARSET);
+			break;
 		default:
 			break;
 			
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,7 +20,6 @@ import org.json.JSONObject;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
-import edu.umass.cs.gnsserver.activecode.prototype.unblocking.ActiveNonBlockingClient.Monitor;
 import edu.umass.cs.gnsserver.interfaces.ActiveDBInterface;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 
@@ -66,12 +66,12 @@ public class ActiveQueryHandler {
 	private static class ActiveQuerierTask implements Runnable{
 		ActiveMessage am;
 		InternalRequestHeader header;
-		Monitor monitor;
+		Consumer<ActiveMessage> callback;
 		
-		ActiveQuerierTask(ActiveMessage am, InternalRequestHeader header, Monitor monitor){
+		ActiveQuerierTask(ActiveMessage am, InternalRequestHeader header, Consumer<ActiveMessage> callback){
 			this.am = am;
 			this.header = header;
-			this.monitor = monitor;
+			this.callback = callback;
 		}
 		
 		@Override
@@ -115,19 +115,20 @@ public class ActiveQueryHandler {
 			
 			ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL, "################ {0} returns response to worker:{1}", new Object[]{this, response} );
 			
-			monitor.setResult(response, false);
+			callback.accept(response);
 		}
 		
 	}
 	
 	/**
-	 * Submit this task to a thread pool
+	 * Submit this task to a thread pool, the response to the query
+	 * is passed to the callback by a thread of the pool.
 	 * @param am
 	 * @param header
-	 * @param monitor
+	 * @param callback
 	 */
-	public void handleQueryAsync(ActiveMessage am, InternalRequestHeader header, Monitor monitor){
-		queryExecutor.execute(new ActiveQuerierTask( am, header, monitor));				
+	public void handleQueryAsync(ActiveMessage am, InternalRequestHeader header, Consumer<ActiveMessage> callback){
+		queryExecutor.execute(new ActiveQuerierTask( am, header, callback));				
 	}
 	
 	/**
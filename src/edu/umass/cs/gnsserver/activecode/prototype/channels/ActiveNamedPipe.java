@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.json.JSONException;
 
@@ -70,16 +71,48 @@ public class ActiveNamedPipe implements Channel {
 		}
 	}
 
+	@Override
+	public synchronized void sendMessages(List<? extends Message> msgs) throws IOException {
+		byte[][] bufs = new byte[msgs.size()][];
+		int total = 0;
+		for(int i=0; i<bufs.length; i++){
+			bufs[i] = msgs.get(i).toBytes();
+			total += Integer.BYTES+bufs[i].length;
+		}
+		ByteBuffer batch = ByteBuffer.allocate(total);
+		for(byte[] buf:bufs){
+			batch.putInt(buf.length).put(buf);
+		}
+		// a single write for the whole batch, a failure is left to
+		// the sender so it can fail the requests of the batch
+		writer.write(batch.array());
+		writer.flush();
+	}
+	
+	/**
+	 * Reads until the buffer is full, as a large or batched
+	 * write can arrive in several pieces.
+	 * @return false if the pipe is closed before the buffer is full
+	 */
+	private boolean readFully(byte[] buffer) throws IOException {
+		int offset = 0;
+		while(offset < buffer.length){
+			int len = reader.read(buffer, offset, buffer.length-offset);
+			if(len < 0)
+				return false;
+			offset += len;
+		}
+		return true;
+	}
+
 	@Override
 	public Message receiveMessage() throws IOException {
 		Message am = null;
-		int len = -1;
-		if(reader != null)
-			len = reader.read(readerLengthBuffer, 0, readerLengthBuffer.length);
-		if(len>0){
+		if(reader != null && readFully(readerLengthBuffer)){
 			int length = ByteBuffer.wrap(readerLengthBuffer).getInt();
 			byte[] buffer = new byte[length];
-			reader.read(buffer, 0, length);			
+			if(!readFully(buffer))
+				return null;
 			try {
 				am = new ActiveMessage(buffer);
 			} catch (JSONException e) {
@@ -0,0 +1,339 @@
+package edu.umass.cs.gnsserver.activecode.prototype.channels;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONException;
+
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Message;
+
+/**
+ * This is a Channel implementation with a ring of memory mapped file
+ * in each direction, as an alternative to {@link ActiveNamedPipe}.
+ *
+ * <p>The writer copies the length and the bytes of a message right into
+ * the ring of the other end, and publishes a batch of messages by moving
+ * the write position once. The reader copies them out and moves the read
+ * position. Each ring has a single writer at a time, as sending is
+ * synchronized, and a single reading thread.
+ *
+ * <p>A reader with nothing to read spins for a while, then marks itself
+ * waiting and blocks on a named pipe used as a doorbell. A writer only
+ * writes the doorbell if the reader is waiting, so a busy reader gets
+ * no system call at all, and a waiting reader gets one for a whole batch.
+ * The doorbell also tells the reader when the other end is closed or
+ * crashed, just like {@link ActiveNamedPipe} does.
+ *
+ * <p>The ring files are named after the doorbells with {@link #RING_SUFFIX}
+ * and must be created by one end with {@link #createRing} before both ends
+ * open the channel.
+ *
+ * @author gaozy
+ *
+ */
+public class ActiveSharedMemoryChannel implements Channel {
+
+	/**
+	 * Appended to the doorbell file name for the name of the ring file
+	 */
+	public final static String RING_SUFFIX = ".ring";
+
+	/**
+	 * The positions are never wrapped, they count all the bytes written
+	 * or read, and each sits on its own cache line.
+	 */
+	private final static int WRITE_POSITION = 0;
+	private final static int READ_POSITION = 64;
+	private final static int READER_WAITING = 128;
+	private final static int HEADER_SIZE = 192;
+
+	private final static int SPINS = 1000;
+	private final static long MAX_BACKOFF = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private InputStream doorbellReader;
+	private OutputStream doorbellWriter;
+	private final byte[] doorbellBuffer = new byte[64];
+
+	private final MappedByteBuffer in;
+	private final ByteBuffer inData;
+	private final int inCapacity;
+	private long readPosition;
+
+	private final MappedByteBuffer out;
+	private final ByteBuffer outData;
+	private final int outCapacity;
+	private long writePosition;
+
+	private final byte[] lengthBuffer = new byte[Integer.BYTES];
+	private volatile boolean closed = false;
+
+	/**
+	 * A volatile write is compiled by HotSpot to a full fence, which
+	 * keeps the accesses to the mapped memory in order for the other end.
+	 */
+	private volatile int fence;
+
+	/**
+	 * Creates an empty ring file, replacing the ring left by a previous worker.
+	 * @param doorbell the doorbell file of the ring
+	 * @param capacity the number of bytes the ring holds
+	 * @throws IOException
+	 */
+	public static void createRing(String doorbell, int capacity) throws IOException {
+		File file = new File(doorbell+RING_SUFFIX);
+		file.delete();
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+			raf.setLength(HEADER_SIZE+capacity);
+		}
+	}
+
+	/**
+	 * Deletes the ring file of a doorbell.
+	 * @param doorbell
+	 */
+	public static void deleteRing(String doorbell){
+		new File(doorbell+RING_SUFFIX).delete();
+	}
+
+	private static MappedByteBuffer map(String doorbell) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(doorbell+RING_SUFFIX, "rw")){
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		}
+	}
+
+	/**
+	 * @param ifile the doorbell of the ring to read
+	 * @param ofile the doorbell of the ring to write
+	 * @throws IOException if the rings can not be mapped
+	 */
+	public ActiveSharedMemoryChannel(String ifile, String ofile) throws IOException {
+		// opening a named pipe blocks until the other end opens it
+		Thread t = new Thread(new Runnable() {
+	         public void run()
+	         {
+	        	try {
+	        		doorbellReader = new FileInputStream(new File(ifile));
+				} catch (FileNotFoundException e) {
+					e.printStackTrace();
+				}
+	         }
+		});
+		t.start();
+
+		try {
+			doorbellWriter = new FileOutputStream(new File(ofile));
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		in = map(ifile);
+		inData = ((ByteBuffer) in.duplicate().position(HEADER_SIZE)).slice();
+		inCapacity = inData.capacity();
+		readPosition = in.getLong(READ_POSITION);
+
+		out = map(ofile);
+		outData = ((ByteBuffer) out.duplicate().position(HEADER_SIZE)).slice();
+		outCapacity = outData.capacity();
+		writePosition = out.getLong(WRITE_POSITION);
+	}
+
+	private void fence(){
+		fence = 0;
+	}
+
+	/**
+	 * Copies into the ring at the position, wrapping around its end.
+	 */
+	private void put(long position, byte[] src, int length){
+		int offset = (int) (position % outCapacity);
+		int first = Math.min(length, outCapacity-offset);
+		outData.position(offset);
+		outData.put(src, 0, first);
+		if(first < length){
+			outData.position(0);
+			outData.put(src, first, length-first);
+		}
+	}
+
+	/**
+	 * Copies out of the ring at the position, wrapping around its end.
+	 */
+	private void get(long position, byte[] dst, int length){
+		int offset = (int) (position % inCapacity);
+		int first = Math.min(length, inCapacity-offset);
+		inData.position(offset);
+		inData.get(dst, 0, first);
+		if(first < length){
+			inData.position(0);
+			inData.get(dst, first, length-first);
+		}
+	}
+
+	@Override
+	public void sendMessage(Message msg) throws IOException {
+		sendMessages(Collections.singletonList(msg));
+	}
+
+	/**
+	 * Thrown after the other messages of a batch are sent, for the
+	 * messages that are too large for the ring.
+	 */
+	public static class MessageTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+		
+		private final List<Message> messages;
+		
+		MessageTooLargeException(List<Message> messages, int capacity){
+			super(messages.size()+" messages are too large for a channel of "+capacity+" bytes.");
+			this.messages = messages;
+		}
+		
+		/**
+		 * @return the messages that were not sent
+		 */
+		public List<Message> getMessages(){
+			return messages;
+		}
+	}
+
+	@Override
+	public synchronized void sendMessages(List<? extends Message> msgs) throws IOException {
+		// check the sizes first so one large message doesn't stop the batch
+		byte[][] bufs = new byte[msgs.size()][];
+		List<Message> tooLarge = new ArrayList<Message>();
+		for(int i=0; i<bufs.length; i++){
+			byte[] buf = msgs.get(i).toBytes();
+			if(Integer.BYTES+buf.length > outCapacity){
+				tooLarge.add(msgs.get(i));
+			} else {
+				bufs[i] = buf;
+			}
+		}
+
+		long published = writePosition;
+		try {
+			for(byte[] buf:bufs){
+				if(buf == null)
+					continue;
+				int size = Integer.BYTES+buf.length;
+				long backoff = 1;
+				while(outCapacity - (writePosition - out.getLong(READ_POSITION)) < size){
+					if(closed)
+						throw new IOException("Channel is closed.");
+					// let the reader have what is written so far before waiting for it
+					if(published != writePosition){
+						publish();
+						published = writePosition;
+					}
+					LockSupport.parkNanos(backoff);
+					backoff = Math.min(backoff*2, MAX_BACKOFF);
+				}
+				fence();
+
+				ByteBuffer.wrap(lengthBuffer).putInt(buf.length);
+				put(writePosition, lengthBuffer, Integer.BYTES);
+				put(writePosition+Integer.BYTES, buf, buf.length);
+				writePosition += size;
+			}
+		} finally {
+			if(published != writePosition){
+				publish();
+			}
+		}
+		if(!tooLarge.isEmpty()){
+			throw new MessageTooLargeException(tooLarge, outCapacity);
+		}
+	}
+
+	private void publish() throws IOException {
+		fence();
+		out.putLong(WRITE_POSITION, writePosition);
+		// the reader marks itself waiting before it checks the write position again
+		fence();
+		if(out.getInt(READER_WAITING) != 0){
+			doorbellWriter.write(1);
+			doorbellWriter.flush();
+		}
+	}
+
+	@Override
+	public Message receiveMessage() throws IOException {
+		int spins = 0;
+		while(!closed){
+			if(in.getLong(WRITE_POSITION) != readPosition){
+				fence();
+				get(readPosition, lengthBuffer, Integer.BYTES);
+				int length = ByteBuffer.wrap(lengthBuffer).getInt();
+				byte[] buffer = new byte[length];
+				get(readPosition+Integer.BYTES, buffer, length);
+				readPosition += Integer.BYTES+length;
+				fence();
+				in.putLong(READ_POSITION, readPosition);
+
+				Message am = null;
+				try {
+					am = new ActiveMessage(buffer);
+				} catch (JSONException e) {
+					//e.printStackTrace();
+				}
+				return am;
+			}
+
+			if(spins++ < SPINS){
+				if(spins > SPINS/2)
+					Thread.yield();
+				continue;
+			}
+
+			in.putInt(READER_WAITING, 1);
+			fence();
+			if(in.getLong(WRITE_POSITION) == readPosition){
+				// drains all the doorbells rung so far
+				int len = doorbellReader == null ? -1 : doorbellReader.read(doorbellBuffer);
+				if(len < 0){
+					// the other end is closed
+					in.putInt(READER_WAITING, 0);
+					return null;
+				}
+			}
+			in.putInt(READER_WAITING, 0);
+			spins = 0;
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try{
+			if(doorbellReader != null)
+				doorbellReader.close();
+			if(doorbellWriter != null)
+				doorbellWriter.close();
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+}
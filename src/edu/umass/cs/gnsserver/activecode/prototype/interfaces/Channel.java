@@ -1,6 +1,7 @@
 package edu.umass.cs.gnsserver.activecode.prototype.interfaces;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * This interface is used for Active GNS communication.
@@ -37,6 +38,21 @@ public interface Channel {
 	 */
 	public void sendMessage(Message msg) throws IOException;
 	
+	/**
+	 * Sends a batch of messages in order. Channels that can
+	 * write them at once, like named pipe, should override
+	 * this method. The same rules as {@link #sendMessage}
+	 * apply.
+	 * 
+	 * @param msgs the messages to send
+	 * @throws IOException if an I/O error occurs
+	 */
+	public default void sendMessages(List<? extends Message> msgs) throws IOException {
+		for(Message msg:msgs){
+			sendMessage(msg);
+		}
+	}
+	
 	/**
 	 * Receive an ActiveMessage from channel. This method
 	 * blocks until a message is available.
@@ -6,13 +6,20 @@ import java.io.IOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveException;
@@ -21,8 +28,10 @@ import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveQueryHandler;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveDatagramChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveNamedPipe;
+import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveSharedMemoryChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Client;
+import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Message;
 import edu.umass.cs.gnsserver.interfaces.ActiveDBInterface;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.utils.DelayProfiler;
@@ -31,12 +40,18 @@ import edu.umass.cs.utils.DelayProfiler;
  * This is a Client implementation with unix named pipe as the way
  * to communicate with workers.
  * 
- * This client send requests to its worker and register a local monitor
- * to block the sending thread. Until the receiving thread receives the 
- * response or a query, it wakes up the sending thread. This design relies
- * on the fact that if the writer end of a named pipe is closed, the
- * reader end will also be closed, and return a {@code null} value.
- * Therefore, if the worker is crashed, this client will know immediately.
+ * This client send requests to its worker and register a future for
+ * each of them without blocking the sending thread. The receiving thread
+ * completes the future when it receives the response, and hands the 
+ * queries to the query handler, which sends their responses back to the
+ * worker. This design relies on the fact that if the writer end of a
+ * named pipe is closed, the reader end will also be closed, and return a
+ * {@code null} value. Therefore, if the worker is crashed, this client
+ * will know immediately.
+ * 
+ * <p>Messages to the worker are put in a lock-free queue. Whichever
+ * sending thread finds nobody writing drains the queue and writes the
+ * messages to the channel in batches.
  *
  * @author gaozy
  *
@@ -53,11 +68,35 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	private final String ofile;
 	private final int workerNumThread;
 	
-	private ConcurrentHashMap<Long, Monitor> tasks = new ConcurrentHashMap<Long, Monitor>();
+	private ConcurrentHashMap<Long, PendingRequest> tasks = new ConcurrentHashMap<Long, PendingRequest>();
+	
+	private final static int MAX_BATCH_SIZE = 64;
+	private final ConcurrentLinkedQueue<ActiveMessage> outbound = new ConcurrentLinkedQueue<ActiveMessage>();
+	private final AtomicBoolean flushing = new AtomicBoolean();
+	
+	/**
+	 * The digests of the code the worker has been sent, so 
+	 * requests with the same code only need to carry the digest.
+	 * The worker asks for code it doesn't have anymore.
+	 */
+	private final Cache<String, Boolean> workerDigests = CacheBuilder.newBuilder()
+			.maximumSize(Math.max(ActiveCodeConfig.activeCodeCacheSize, 1)).build();
+	
+	/**
+	 * The digest of each code string, weak keys are compared by identity
+	 * so this only saves hashing code that is read from a cache.
+	 */
+	private static final Cache<String, String> digests = CacheBuilder.newBuilder()
+			.weakKeys().maximumSize(Math.max(ActiveCodeConfig.activeCodeCacheSize, 1)).build();
 	
 	private Process workerProc;
 	final private int id;
 	final private boolean pipeEnable;
+	/**
+	 * True if the current worker talks through shared memory, it is
+	 * decided each time a worker starts.
+	 */
+	private boolean sharedMemory;
 	final private boolean crashEnabled = ActiveCodeConfig.activeCrashEnabled;
 	
 	private final int heapSize;
@@ -129,12 +168,33 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		} catch (IOException e1) {
 			e1.printStackTrace();
 		}		
+		// a new worker has no code
+		workerDigests.invalidateAll();
+		sharedMemory = false;
+		if(ActiveCodeConfig.activeCodeSharedMemoryEnabled){
+			try {
+				ActiveSharedMemoryChannel.createRing(ifile, ActiveCodeConfig.activeCodeSharedMemorySize);
+				ActiveSharedMemoryChannel.createRing(ofile, ActiveCodeConfig.activeCodeSharedMemorySize);
+				sharedMemory = true;
+			} catch (IOException e) {
+				// fall back to named pipe
+				e.printStackTrace();
+			}
+		}
 		try {
 			workerProc = startWorker(ofile, ifile, id);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		channel = new ActiveNamedPipe(ifile, ofile);
+		if(sharedMemory){
+			try {
+				channel = new ActiveSharedMemoryChannel(ifile, ofile);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			channel = new ActiveNamedPipe(ifile, ofile);
+		}
 		DelayProfiler.updateDelay("activeRestartWorker", lastWorkerStartedTime);
 	}
 	
@@ -181,9 +241,9 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	@Override
 	public void run() {
 		/**
-		 * This is the receiving thread, it awakes the sending
-		 * thread if it receives the response or query from the
-		 * worker.
+		 * This is the receiving thread, it completes the request
+		 * if it receives the response from the worker, or handles
+		 * the query or code query sent by the worker.
 		 * 
 		 * If a null value is received, it means the worker is
 		 * crashed and the pipe is closed on both end. Therefore,
@@ -195,14 +255,10 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 			ActiveMessage response;
 			try {
 				if( (response = (ActiveMessage) channel.receiveMessage()) != null){					
-					long id = response.getId();
-					Monitor monitor = tasks.get(id);
-					assert(monitor != null):"the corresponding monitor is null!";
 					ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL,
 							"receive a result or query from the worker:{0}",
 							new Object[]{response});
-					
-					monitor.setResult(response, response.type == Type.RESPONSE);
+					handleMessage(response);
 				} else {
 					if(!isRestarting.getAndSet(true)){
 						lastWorkerStartedTime = System.currentTimeMillis();
@@ -210,9 +266,15 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 						this.shutdown();
 						this.initializeChannelAndStartWorker();
 						
-						// release all the requests that waited on its monitor
-						for(Monitor monitor:this.tasks.values()){
-							monitor.setResult(null, true);
+						/**
+						 * Fail all the requests sent to the crashed worker. No need
+						 * to resend them, as it is much likely a malicious request.
+						 */
+						for(Long id:this.tasks.keySet()){
+							PendingRequest request = this.tasks.remove(id);
+							if(request != null){
+								request.future.completeExceptionally(new ActiveException("Worker crashes!"));
+							}
 						}
 						isRestarting.set(false);
 						
@@ -239,6 +301,8 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		if(pipeEnable){
 			(new File(ifile)).delete();
 			(new File(ofile)).delete();
+			ActiveSharedMemoryChannel.deleteRing(ifile);
+			ActiveSharedMemoryChannel.deleteRing(ofile);
 		}
 		
 		channel.close();
@@ -278,6 +342,8 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	    command.add(Boolean.toString(pipeEnable));
 	    command.add("ReconfigurableNode");
 	    command.add(nodeId);
+	    command.add(""+ActiveCodeConfig.activeCodeCacheSize);
+	    command.add(Boolean.toString(sharedMemory));
 	    
 	    ProcessBuilder builder = new ProcessBuilder(command);
 		builder.directory(new File(System.getProperty("user.dir")));
@@ -318,6 +384,7 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		command.add(Boolean.toString(pipeEnable));
 		command.add("ReconfigurableNode");
 	    command.add(nodeId);
+	    command.add(""+ActiveCodeConfig.activeCodeCacheSize);
 	    
 	    ProcessBuilder builder = new ProcessBuilder(command);
 		builder.directory(new File(System.getProperty("user.dir")));
@@ -344,17 +411,82 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 		return am;
 	}
 	
+	private void handleMessage(ActiveMessage response){
+		PendingRequest request = tasks.get(response.getId());
+		if(request == null){
+			// the request has been released when the worker was restarted
+			return;
+		}
+		if(response.type == Type.RESPONSE){
+			tasks.remove(response.getId());
+			request.complete(response);
+		} else if(response.type == Type.CODE_QUERY){
+			// The worker doesn't have the code, send it again with the code
+			ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL,
+					"worker asks for the code of {0}", new Object[]{request.msg});
+			request.msg.setCodeIncluded(true);
+			workerDigests.put(request.msg.getCodeDigest(), true);
+			sendMessage(request.msg);
+		} else {
+			/**
+			 * It's a query, queryHandler handles it on its own threads and
+			 * sends the response back to the worker unless the request has
+			 * been done, e.g., the worker has timed it out.
+			 */
+			queryHandler.handleQueryAsync(response, request.header, result -> {
+				if(!request.future.isDone()){
+					sendMessage(result);
+				}
+			});
+		}
+	}
+	
   /**
    *
    * @param am
    */
-  protected synchronized void sendMessage(ActiveMessage am){
-		try {
-			channel.sendMessage(am);
-			ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL, 
-					"sends request:{0}", new Object[]{am});
-		} catch (IOException e) {
-			e.printStackTrace();
+  protected void sendMessage(ActiveMessage am){
+		outbound.offer(am);
+		/**
+		 * Only one thread writes at a time. A message queued while
+		 * another thread is writing is written by that thread, as it
+		 * checks the queue again after it stops writing.
+		 */
+		List<ActiveMessage> batch = new ArrayList<ActiveMessage>();
+		while(!outbound.isEmpty() && flushing.compareAndSet(false, true)){
+			try {
+				ActiveMessage msg;
+				while(batch.size() < MAX_BATCH_SIZE && (msg = outbound.poll()) != null){
+					batch.add(msg);
+				}
+				channel.sendMessages(batch);
+				ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL, 
+						"sends requests:{0}", new Object[]{batch});
+			} catch (ActiveSharedMemoryChannel.MessageTooLargeException e) {
+				// the rest of the batch has been sent
+				ActiveCodeHandler.getLogger().log(Level.WARNING, "{0} {1}", new Object[]{this, e.getMessage()});
+				failRequests(e.getMessages(), e);
+			} catch (IOException e) {
+				e.printStackTrace();
+				failRequests(batch, e);
+			} finally {
+				batch.clear();
+				flushing.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * Fails the requests whose messages could not be sent, as nothing 
+	 * would ever complete them otherwise.
+	 */
+	private void failRequests(List<? extends Message> msgs, IOException e){
+		for(Message m:msgs){
+			ActiveMessage msg = (ActiveMessage) m;
+			PendingRequest request = tasks.remove(msg.getId());
+			if(request != null){
+				request.future.completeExceptionally(new ActiveException("Failed to send "+msg+": "+e.getMessage()));
+			}
 		}
 	}
 	
@@ -366,13 +498,9 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	/**
 	 * This runCode method sends the request to worker, and
 	 * wait for worker to finish the request. If the worker
-	 * crashed during the request execution, this method
-	 * will resend the request to a new created worker, and
-	 * the new worker will execute this request again. 
-	 * <p>If the worker fails to execute the request, it will 
-	 * send back an error to inform this method that the execution
-	 * gets accomplished with an error. This method will raise
-	 * an ActiveException, and the method which calls this method
+	 * crashed during the request execution, or the worker fails
+	 * to execute the request, this method will raise an 
+	 * ActiveException, and the method which calls this method
 	 * needs to handle this exception.
 	 * 
 	 * @param guid
@@ -386,92 +514,41 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	@Override
 	public JSONObject runCode(InternalRequestHeader header, String guid, String accessor, 
 			String code, JSONObject valuesMap, int ttl, long budget) throws ActiveException {
-		
-		ActiveMessage msg = new ActiveMessage(guid, accessor, code, valuesMap.toString(), ttl, budget);
-		Monitor monitor = new Monitor();
-		tasks.put(msg.getId(), monitor);
-		
-		ActiveMessage response = null;
-		synchronized(monitor){
-			while( !monitor.getDone() ){				
-				try {
-					if(!monitor.getWait()){
-						sendMessage(msg);
-						monitor.setWait();
-					}					
-					monitor.wait();
-				} catch (InterruptedException e) {
-					// this thread is interrupted, do nothing
-					e.printStackTrace();
-				}				
-				
-				response = monitor.getResult();	
-				
-				/**
-				 * If it's a query, queryHandler needs to handle it.
-				 * Otherwise, exit the while loop to process the response.
-				 */
-				if (response != null && response.type != Type.RESPONSE){
-					// submit the task to the worker and wait for the response
-					queryHandler.handleQueryAsync(response, header, monitor);
-					try {
-						monitor.wait();
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-					/**
-					 * This can be awaken by two events:
-					 * <p>1. The response from the queryHandler, then we need to
-					 * send the response back to the worker.
-					 * <p>2. A timeout event happens on the worker, then there 
-					 * is no need for this response any more.
-					 */
-					
-					if(!monitor.getDone()){
-						// If it's not because of the timeout event, then send back the response  
-						ActiveMessage result = monitor.getResult();	
-						sendMessage(result);
-					}else{
-						// If it's because of timeout, then clean up the state and exit the loop
-						break;
-					}
-					
-				}
-			}		
+		try {
+			return sendRequest(header, guid, accessor, code, valuesMap, ttl, budget).join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof ActiveException){
+				throw (ActiveException) e.getCause();
+			}
+			throw new ActiveException(String.valueOf(e.getCause()));
 		}
+	}
+	
+	/**
+	 * Sends the request to worker without waiting for it. The 
+	 * returned future is completed by the receiving thread.
+	 * <p>If the worker fails to execute the request, it will 
+	 * send back an error, and the future completes exceptionally
+	 * with an ActiveException. So does it if the worker crashes.
+	 */
+	private CompletableFuture<JSONObject> sendRequest(InternalRequestHeader header, String guid, String accessor, 
+			String code, JSONObject valuesMap, int ttl, long budget) {
 		
-		response = monitor.getResult();
-		
-		ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL,
-				"receive a response from the worker:{0}",
-				new Object[]{response});
-		
-		if(response == null){
-			/**
-			 * No need to resend the request, as it is much likely
-			 * a malicious request. 
-			 */
-			throw new ActiveException("Worker crashes!");
-		}
-		if(response.getError() != null){
-			throw new ActiveException("Message: " + msg.toString() +
-                                " Response: " + response.toString());
+		String codeDigest = digests.getIfPresent(code);
+		if(codeDigest == null){
+			codeDigest = ActiveMessage.digest(code);
+			digests.put(code, codeDigest);
 		}
-		counter.getAndIncrement();
-		tasks.remove(response.getId());
-		
-		
-		try {
-			// FIXED: it is possible that the returned value is null which causes a NullPointerException when initializing a JSONObject
-			if(response.getValue() == null){
-				// The methods calling ActiveCodeHandler.runCode will check the returned result, if it's null, 
-				// the methods will use the original value. See NSFieldAccess, NSUpdateSupport
-				return null;
-			}
-			return new JSONObject(response.getValue());
-		} catch (JSONException e) {
-			throw new ActiveException("Bad JSON value returned from active code!");
+		ActiveMessage msg = new ActiveMessage(guid, accessor, code, codeDigest, valuesMap.toString(), ttl, budget);
+		if(workerDigests.getIfPresent(codeDigest) != null){
+			msg.setCodeIncluded(false);
+		} else {
+			workerDigests.put(codeDigest, true);
 		}
+		PendingRequest request = new PendingRequest(msg, header);
+		tasks.put(msg.getId(), request);
+		sendMessage(msg);
+		return request.future;
 	}
 	
 	public String toString(){
@@ -479,46 +556,40 @@ public class ActiveNonBlockingClient implements Runnable,Client {
 	}
 	
 	/**
-	 * @author gaozy
-	 *
+	 * A request sent to the worker that has not been responded yet.
 	 */
-	public static class Monitor {
-		boolean isDone;
-		ActiveMessage response;
-		boolean waited;
-		
-		Monitor(){
-			this.isDone = false;
-			this.waited = false;
-		}
-		
-		/**
-		 * @return true if the task is done
-		 */
-		public boolean getDone(){
-			return isDone;
-		}
-		
-		/**
-		 * @param response
-		 * @param isDone
-		 */
-		public synchronized void setResult(ActiveMessage response, boolean isDone){
-			this.response = response;
-			this.isDone = isDone;
-			notifyAll();
-		}
-		
-		ActiveMessage getResult(){
-			return response;
-		}
+	private class PendingRequest {
+		final ActiveMessage msg;
+		final InternalRequestHeader header;
+		final CompletableFuture<JSONObject> future = new CompletableFuture<JSONObject>();
 		
-		void setWait(){
-			waited = true;
+		PendingRequest(ActiveMessage msg, InternalRequestHeader header){
+			this.msg = msg;
+			this.header = header;
 		}
 		
-		boolean getWait(){
-			return waited;
+		void complete(ActiveMessage response){
+			ActiveCodeHandler.getLogger().log(ActiveCodeHandler.DEBUG_LEVEL,
+					"receive a response from the worker:{0}",
+					new Object[]{response});
+			if(response.getError() != null){
+				future.completeExceptionally(new ActiveException("Message: " + msg.toString() +
+						" Response: " + response.toString()));
+				return;
+			}
+			counter.getAndIncrement();
+			// FIXED: it is possible that the returned value is null which causes a NullPointerException when initializing a JSONObject
+			if(response.getValue() == null){
+				// The methods calling ActiveCodeHandler.runCode will check the returned result, if it's null, 
+				// the methods will use the original value. See NSFieldAccess, NSUpdateSupport
+				future.complete(null);
+				return;
+			}
+			try {
+				future.complete(new JSONObject(response.getValue()));
+			} catch (JSONException e) {
+				future.completeExceptionally(new ActiveException("Bad JSON value returned from active code!"));
+			}
 		}
 	}
 	
@@ -4,7 +4,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -13,7 +14,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import javax.script.Invocable;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
@@ -21,19 +23,36 @@ import javax.script.SimpleScriptContext;
 
 import org.json.JSONException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.maxmind.geoip2.DatabaseReader;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Runner;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
+import edu.umass.cs.utils.DelayProfiler;
+import edu.umass.cs.utils.Util;
+import jdk.nashorn.api.scripting.NashornException;
 import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
 
 /**
  * This class implements Runner interface.
- * It has a script engine to execute user code and a in-memory map to cache
- * evaled user code context. 
+ * It has a script engine to execute user code.
+ * 
+ * <p>Each distinct code body is compiled once into a {@link CompiledScript}
+ * that is cached by the digest of the code, so guids with the same code share it
+ * and clients only need to send the code if it isn't cached yet.
+ * Each worker thread evals the compiled code of a guid into its own context and 
+ * invokes the "run" function of that context, so threads never change the context
+ * of the shared engine and don't need to lock. Both caches evict the least recently
+ * used entries once they hold {@link ActiveCodeConfig#activeCodeCacheSize} entries.
+ * 
+ * <p>The time it takes to compile, eval and invoke code is sampled one time in
+ * a hundred into the {@link DelayProfiler} as activeCompile, activeEval and 
+ * activeInvoke, as the profiler synchronizes all the threads that update it.
  * 
  * @author gaozy
  *
@@ -41,10 +60,9 @@ import jdk.nashorn.api.scripting.ScriptObjectMirror;
 public class ActiveNonBlockingRunner implements Runner {
 	
 	final private ScriptEngine engine;
-	final private Invocable invocable;
 	
-	private final HashMap<String, ScriptContext> contexts = new HashMap<String, ScriptContext>();
-	private final HashMap<String, Integer> codeHashes = new HashMap<String, Integer>();
+	private final Cache<String, CompiledScript> compiledScripts;
+	private final ThreadLocal<Map<String, EvaledCode>> contexts;
 	private final Channel channel;
 	private final ConcurrentHashMap<Long, ActiveNonBlockingQuerier> map = new ConcurrentHashMap<Long, ActiveNonBlockingQuerier>();
 	private final DatabaseReader dbReader;
@@ -52,11 +70,45 @@ public class ActiveNonBlockingRunner implements Runner {
 	// This object is used to serialize/deserialize values passing between Java and Javascript
 	private ScriptObjectMirror JSON;
 	
+	/**
+	 * The code of a guid evaled into a context of a worker thread.
+	 */
+	private static class EvaledCode {
+		final String codeDigest;
+		final ScriptObjectMirror run;
+		
+		EvaledCode(String codeDigest, ScriptObjectMirror run){
+			this.codeDigest = codeDigest;
+			this.run = run;
+		}
+	}
+	
+	/**
+	 * Thrown if a request only has the digest of its code and
+	 * this runner doesn't have the code, the client has to send it.
+	 */
+	public static class CodeNotFoundException extends Exception {
+		private static final long serialVersionUID = 1L;
+		
+		CodeNotFoundException(String codeDigest){
+			super("No code with digest "+codeDigest);
+		}
+	}
+	
 	/**
 	 * @param channel 
 	 * @param dbReader 
 	 */
 	public ActiveNonBlockingRunner(Channel channel, DatabaseReader dbReader){
+		this(channel, dbReader, ActiveCodeConfig.activeCodeCacheSize);
+	}
+	
+	/**
+	 * @param channel 
+	 * @param dbReader 
+	 * @param cacheSize the number of compiled code bodies, and of evaled guids per thread, to keep
+	 */
+	public ActiveNonBlockingRunner(Channel channel, DatabaseReader dbReader, final int cacheSize){
 		this.channel = channel;
 		this.dbReader = dbReader;
 		
@@ -70,40 +122,87 @@ public class ActiveNonBlockingRunner implements Runner {
 			throw new RuntimeException("Can not eval JSON");			
 		}
 		
-		invocable = (Invocable) engine;
+		compiledScripts = CacheBuilder.newBuilder().maximumSize(Math.max(cacheSize, 1)).build();
+		contexts = ThreadLocal.withInitial(() -> new LinkedHashMap<String, EvaledCode>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, EvaledCode> eldest) {
+				return size() > cacheSize;
+			}
+		});
 	}
 	
 	/**
-	 * Update cache needs to be synchronized, as some code cache may not be evaled before being used.
+	 * Returns the compiled code, compiling it if no other guid has the same code.
+	 * 
+	 * @param codeDigest
+	 * @param code the code or null if the client only sent its digest
+	 * @return the compiled code
+	 * @throws ScriptException
+	 * @throws CodeNotFoundException if the code is null and hasn't been compiled 
+	 */
+	private CompiledScript getCompiledScript(String codeDigest, String code) throws ScriptException, CodeNotFoundException {
+		CompiledScript compiled = compiledScripts.getIfPresent(codeDigest);
+		if (compiled == null) {
+			if (code == null) {
+				throw new CodeNotFoundException(codeDigest);
+			}
+			// Two threads may compile the same code at once, which is harmless.
+			long t = System.nanoTime();
+			compiled = ((Compilable) engine).compile(code);
+			if (Util.oneIn(100)) {
+				DelayProfiler.updateDelayNano("activeCompile", t);
+			}
+			compiledScripts.put(codeDigest, compiled);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Returns the "run" function of the code of a guid in the context of the current thread,
+	 * evaluating the code if the thread hasn't evaled it for the guid or the code changed.
 	 * 
 	 * @param codeId
-	 * @param code
+	 * @param codeDigest
+	 * @param code the code or null if the client only sent its digest
+	 * @return the run function
 	 * @throws ScriptException
+	 * @throws NoSuchMethodException
+	 * @throws CodeNotFoundException 
 	 */
-	private synchronized void updateCache(String codeId, String code) throws ScriptException {
-	    if (!contexts.containsKey(codeId)) {
-	      // Create a context if one does not yet exist and eval the code
-	      ScriptContext sc = new SimpleScriptContext();
-	      contexts.put(codeId, sc);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    } else if ( codeHashes.get(codeId) != code.hashCode()) {
-	      // The context exists, but we need to eval the new code
-	      ScriptContext sc = contexts.get(codeId);
-	      codeHashes.put(codeId, code.hashCode());
-	      engine.eval(code, sc);
-	    }
+	private ScriptObjectMirror getRunFunction(String codeId, String codeDigest, String code) 
+			throws ScriptException, NoSuchMethodException, CodeNotFoundException {
+		Map<String, EvaledCode> evaled = contexts.get();
+		EvaledCode entry = evaled.get(codeId);
+		if (entry == null || !entry.codeDigest.equals(codeDigest)) {
+			CompiledScript compiled = getCompiledScript(codeDigest, code);
+			long t = System.nanoTime();
+			// A new global for the guid so that it doesn't see what other guids' code defines
+			ScriptContext sc = new SimpleScriptContext();
+			sc.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+			compiled.eval(sc);
+			if (Util.oneIn(100)) {
+				DelayProfiler.updateDelayNano("activeEval", t);
+			}
+			Object run = sc.getAttribute("run", ScriptContext.ENGINE_SCOPE);
+			if (!(run instanceof ScriptObjectMirror) || !((ScriptObjectMirror) run).isFunction()) {
+				throw new NoSuchMethodException("No such function run");
+			}
+			entry = new EvaledCode(codeDigest, (ScriptObjectMirror) run);
+			evaled.put(codeId, entry);
+		}
+		return entry.run;
 	}
 	
 	/**
-	 * This method first update the cache of code, 
-	 * then set the context with the cached code 
-	 * for the script engine, finally invokes the
-	 * "run" method.
+	 * This method gets the "run" function of the code from
+	 * the calling thread's cache, compiling and evaluating
+	 * the code if needed, and invokes it.
 	 * 
 	 * <p>Based on the answer of Nashorn builder on stackoverflow:
 	 * http://stackoverflow.com/questions/30140103/should-i-use-a-separate-scriptengine-and-compiledscript-instances-per-each-threa/30159424#30159424
-	 * there is no need to make this method synchronized any more.
+	 * there is no need to make this method synchronized.
 	 * 
 	 * @param guid
 	 * @param accessor
@@ -117,21 +216,55 @@ public class ActiveNonBlockingRunner implements Runner {
 	 */
         @Override
 	public String runCode(String guid, String accessor, String code, String value, int ttl, long id) 
-			throws ScriptException, NoSuchMethodException {		
+			throws ScriptException, NoSuchMethodException {
+		try {
+			return runCode(guid, accessor, ActiveMessage.digest(code), code, value, ttl, id);
+		} catch (CodeNotFoundException e) {
+			// can't happen as the code is given
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Runs code that is identified by its digest, the code itself 
+	 * is only needed if this runner hasn't compiled it yet.
+	 * 
+	 * @param guid
+	 * @param accessor
+	 * @param codeDigest the value of {@link ActiveMessage#digest(String)} for the code
+	 * @param code the code or null if the client only sent its digest
+	 * @param value
+	 * @param ttl
+	 * @param id
+	 * @return ValuesMap result 
+	 * @throws ScriptException
+	 * @throws NoSuchMethodException
+	 * @throws CodeNotFoundException if the code is null and this runner doesn't have it
+	 */
+	public String runCode(String guid, String accessor, String codeDigest, String code, String value, int ttl, long id) 
+			throws ScriptException, NoSuchMethodException, CodeNotFoundException {
 		
         ActiveNonBlockingQuerier querier = new ActiveNonBlockingQuerier(channel, dbReader, JSON, ttl, guid, id);
 		map.put(id, querier);
 		
-		updateCache(guid, code);
-		engine.setContext(contexts.get(guid));
-				
-		Object ret = invocable.invokeFunction("run", JSON.callMember("parse", value),
-				accessor, querier);		
-		
-		String result = JSON.callMember("stringify", ret).toString();
-		
-		map.remove(id);
-		return result;
+		try {
+			ScriptObjectMirror run = getRunFunction(guid, codeDigest, code);
+			
+			long t = System.nanoTime();
+			Object ret = run.call(null, JSON.callMember("parse", value), accessor, querier);
+			if (Util.oneIn(100)) {
+				DelayProfiler.updateDelayNano("activeInvoke", t);
+			}
+			
+			return JSON.callMember("stringify", ret).toString();
+		} catch (NashornException e) {
+			// Report errors in the code as ScriptExceptions like Invocable.invokeFunction does
+			ScriptException se = new ScriptException(e.getMessage(), e.getFileName(), e.getLineNumber(), e.getColumnNumber());
+			se.initCause(e);
+			throw se;
+		} finally {
+			map.remove(id);
+		}
 	}
 	
 	/**
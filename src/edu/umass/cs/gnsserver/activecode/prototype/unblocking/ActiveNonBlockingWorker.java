@@ -14,9 +14,11 @@ import org.json.JSONException;
 
 import com.maxmind.geoip2.DatabaseReader;
 
+import edu.umass.cs.gnsserver.activecode.ActiveCodeConfig;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage.Type;
 import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveNamedPipe;
+import edu.umass.cs.gnsserver.activecode.prototype.channels.ActiveSharedMemoryChannel;
 import edu.umass.cs.gnsserver.activecode.prototype.interfaces.Channel;
 
 /**
@@ -49,13 +51,15 @@ public class ActiveNonBlockingWorker {
 	
 	
 	/**
-	 * Initialize a worker with a named pipe
+	 * Initialize a worker with a named pipe, or with shared memory 
+	 * rings that use the named pipes as doorbells
 	 * @param ifile
 	 * @param ofile
 	 * @param id 
 	 * @param numThread
+	 * @param sharedMemory 
 	 */
-	protected ActiveNonBlockingWorker(String ifile, String ofile, int id, int numThread, String geoip_file) {
+	protected ActiveNonBlockingWorker(String ifile, String ofile, int id, int numThread, String geoip_file, boolean sharedMemory) {
 		this.id = id;
 		
 		executor = new ThreadPoolExecutor(numThread, numThread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
@@ -76,7 +80,15 @@ public class ActiveNonBlockingWorker {
 			dbReader = null;
 		}
 		
-		channel = new ActiveNamedPipe(ifile, ofile);
+		if(sharedMemory){
+			try {
+				channel = new ActiveSharedMemoryChannel(ifile, ofile);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			channel = new ActiveNamedPipe(ifile, ofile);
+		}
 		runner = new ActiveNonBlockingRunner(channel, dbReader);
 				
 		ActiveNonBlockingWorker.getLogger().log(Level.FINE, "{0} starts running", new Object[]{this});
@@ -138,8 +150,13 @@ public class ActiveNonBlockingWorker {
 			int id = Integer.parseInt(args[2]);
 			int numThread = Integer.parseInt(args[3]);
 			String geoip_file = args[4];
+			// args[6] and args[7] only tell which node started this worker
+			if(args.length > 8){
+				ActiveCodeConfig.activeCodeCacheSize = Integer.parseInt(args[8]);
+			}
+			boolean sharedMemory = args.length > 9 && Boolean.parseBoolean(args[9]);
 			
-			new ActiveNonBlockingWorker(cfile, sfile, id, numThread, geoip_file);
+			new ActiveNonBlockingWorker(cfile, sfile, id, numThread, geoip_file, sharedMemory);
 		}
 	}
 }
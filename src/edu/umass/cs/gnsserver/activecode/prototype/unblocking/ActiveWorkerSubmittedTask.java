@@ -54,7 +54,14 @@ public class ActiveWorkerSubmittedTask implements Runnable {
 		try {
 			channel.sendMessage(response);
 		} catch (IOException e) {
-			throw new RuntimeException();
+			// the response can be too large for the channel, let the client know it failed
+			ActiveNonBlockingWorker.getLogger().log(Level.WARNING, 
+					"failed to send the response to request {0}: {1}", new Object[]{request.getId(), e});
+			try {
+				channel.sendMessage(new ActiveMessage(request.getId(), null, "Failed to send response: "+e.getMessage()));
+			} catch (IOException e1) {
+				throw new RuntimeException(e1);
+			}
 		}	
 	}
 
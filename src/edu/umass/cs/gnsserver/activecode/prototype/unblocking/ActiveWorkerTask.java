@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import javax.script.ScriptException;
 
 import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
+import edu.umass.cs.gnsserver.activecode.prototype.unblocking.ActiveNonBlockingRunner.CodeNotFoundException;
 
 /**
  * This task is the task that truly executes the user code by calling ActiveRunner's runCode method.
@@ -28,9 +29,15 @@ public class ActiveWorkerTask implements Callable<ActiveMessage>  {
 	public ActiveMessage call() {
 		ActiveMessage response = null;
 		try {
+			String codeDigest = request.getCodeDigest() != null ? request.getCodeDigest() 
+					: ActiveMessage.digest(request.getCode());
 			response = new ActiveMessage(request.getId(), 
-					runner.runCode(request.getGuid(), request.getAccessor(), request.getCode(), request.getValue(), request.getTtl(), request.getId()),
+					runner.runCode(request.getGuid(), request.getAccessor(), codeDigest, request.getCode(), 
+							request.getValue(), request.getTtl(), request.getId()),
 					null);
+		} catch (CodeNotFoundException e) {
+			// ask the client to send the request again with the code
+			response = new ActiveMessage(request.getId(), request.getCodeDigest());
 		} catch (NoSuchMethodException | ScriptException e) {
 			ActiveNonBlockingWorker.getLogger().log(Level.FINE, 
 					"get an exception {0} when executing request {1} with code {2}", 
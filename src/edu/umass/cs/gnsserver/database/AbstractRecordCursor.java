@@ -34,4 +34,11 @@ public abstract class AbstractRecordCursor implements RecordCursorInterface {
     throw new UnsupportedOperationException("Not supported yet.");
   }
   
+  /**
+   * Releases any database resources held by the cursor.
+   * Only needed for a cursor that isn't read to the end.
+   */
+  public void close() {
+  }
+  
 }
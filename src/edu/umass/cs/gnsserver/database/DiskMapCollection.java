@@ -10,16 +10,22 @@ package edu.umass.cs.gnsserver.database;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.FieldPath;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import static edu.umass.cs.gnsserver.database.MongoRecords.DBNAMERECORD;
 import edu.umass.cs.utils.Config;
 import edu.umass.cs.utils.DiskMap;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -30,12 +36,20 @@ import org.json.JSONObject;
  * A collection is basically a named separate namespace for documents.
  * A document is a JSONObject.
  *
+ * Documents in the map are treated as immutable snapshots. They are never
+ * modified in place; instead a field update builds a new document that
+ * copies only the objects along the updated path and shares everything
+ * else with the previous snapshot (see {@link #copyForPatch}). This lets
+ * readers use a snapshot without copying it and makes the cost of a
+ * single field update proportional to the path rather than the document.
+ *
  * @author westy
  */
 public class DiskMapCollection {
 
   private DiskMap<String, JSONObject> map;
   private MongoRecords mongoRecords;
+  private final SecondaryIndexes indexes = new SecondaryIndexes(NameRecord.NAME.getName());
 
   /**
    * Create a DiskMapCollection name collection on a given nodeID.
@@ -88,6 +102,66 @@ public class DiskMapCollection {
     };
   }
 
+  /**
+   * Returns the current snapshot of the record named {@code name} without
+   * copying it. The result must not be modified by the caller.
+   *
+   * @param name
+   * @return the record or null if there is no such record
+   */
+  public JSONObject getSnapshot(String name) {
+    return map.get(name);
+  }
+
+  /**
+   * Returns a copy of {@code record} in which the top level object, the
+   * object at {@code mapField} and every object along each of the dotted
+   * {@code keys} have been shallow copied. Everything else is shared with
+   * {@code record}, so the result can be patched at {@code keys} with
+   * {@link edu.umass.cs.gnscommon.utils.JSONDotNotation} without modifying
+   * {@code record}.
+   *
+   * @param record
+   * @param mapField
+   * @param keys
+   * @return the copy
+   * @throws JSONException
+   */
+  public static JSONObject copyForPatch(JSONObject record, String mapField,
+          List<String> keys) throws JSONException {
+    Set<JSONObject> copied = Collections.newSetFromMap(new IdentityHashMap<JSONObject, Boolean>());
+    JSONObject copy = shallowCopy(record, copied);
+    JSONObject valuesMap = shallowCopy(record.getJSONObject(mapField), copied);
+    copy.put(mapField, valuesMap);
+    for (String key : keys) {
+      FieldPath path = FieldPath.get(key);
+      JSONObject parent = valuesMap;
+      for (int i = 0; i < path.size() - 1; i++) {
+        Object child = parent.opt(path.getKey(i));
+        if (!(child instanceof JSONObject)) {
+          // Nothing below here is shared; the patch creates it or fails.
+          break;
+        }
+        JSONObject childCopy = shallowCopy((JSONObject) child, copied);
+        parent.put(path.getKey(i), childCopy);
+        parent = childCopy;
+      }
+    }
+    return copy;
+  }
+
+  private static JSONObject shallowCopy(JSONObject json, Set<JSONObject> copied)
+          throws JSONException {
+    if (copied.contains(json)) {
+      return json;
+    }
+    String[] names = JSONObject.getNames(json);
+    // oddly, empty returns null
+    JSONObject copy = names != null ? new JSONObject(json, names) : new JSONObject();
+    copied.add(copy);
+    return copy;
+  }
+
   /**
    * 
    * @return the diskmap
@@ -104,4 +178,14 @@ public class DiskMapCollection {
     return mongoRecords;
   }
 
+  /**
+   * Returns the in-memory indexes used to answer selects without
+   * flushing the map to mongo.
+   *
+   * @return the indexes
+   */
+  public SecondaryIndexes getIndexes() {
+    return indexes;
+  }
+
 }
@@ -26,7 +26,7 @@ import com.mongodb.util.JSON;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
-import edu.umass.cs.gnscommon.utils.JSONDotNotation;
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.utils.JSONUtils;
 import edu.umass.cs.gnsserver.utils.ValuesMap;
@@ -36,6 +36,10 @@ import edu.umass.cs.utils.DiskMap;
  * Uses a diskmap as the primary database with mongo as the
  * backup for when we need more NoSQL databasey features.
  *
+ * Selects that can use an index created with createIndex are answered
+ * from the map using {@link SecondaryIndexes}; the others flush the map
+ * to mongo and let it evaluate them.
+ *
  * See DiskMapCollection for more details.
  *
  *
@@ -45,9 +49,13 @@ public class DiskMapRecords implements NoSQLRecords {
 
   private static final Logger LOGGER = Logger.getLogger(DiskMapRecords.class.getName());
 
+  // Serializes the read, copy, put and index update of the same record
+  private static final int LOCK_STRIPES = 256;
+
   private Map<String, DiskMapCollection> collections;
   private String mongoNodeID;
   private int mongoPort;
+  private final Object[] locks = new Object[LOCK_STRIPES];
 
   private DiskMapCollection getCollection(String name) {
     DiskMapCollection collection = collections.get(name);
@@ -92,19 +100,39 @@ public class DiskMapRecords implements NoSQLRecords {
     this.collections = new ConcurrentHashMap<>();
     this.mongoNodeID = nodeID;
     this.mongoPort = port;
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  private Object getLock(String name) {
+    return locks[(name.hashCode() & 0x7fffffff) % locks.length];
   }
 
   @Override
   public void insert(String collection, String name, JSONObject value)
           throws FailedDBOperationException, RecordExistsException {
-    getMap(collection).put(name, value);
+    try {
+      // Copy once here so the stored snapshot can't be modified by the caller.
+      JSONObject record = recursiveCopyJSONObject(value);
+      DiskMapCollection diskMapCollection = getCollection(collection);
+      synchronized (getLock(name)) {
+        JSONObject before = diskMapCollection.getIndexes().isEmpty() ? null
+                : diskMapCollection.getSnapshot(name);
+        diskMapCollection.getMap().put(name, record);
+        diskMapCollection.getIndexes().update(name, before, record);
+      }
+    } catch (JSONException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "insert failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to parse json record");
+    }
   }
 
   @Override
   public JSONObject lookupEntireRecord(String collection, String name)
           throws FailedDBOperationException, RecordNotFoundException {
     JSONObject record;
-    if ((record = getMap(collection).get(name)) == null) {
+    if ((record = getCollection(collection).getSnapshot(name)) == null) {
       throw new RecordNotFoundException(name);
     }
     try {
@@ -165,8 +193,9 @@ public class DiskMapRecords implements NoSQLRecords {
     return copy;
   }
 
+  // Also used by EmbeddedRecords
   @SuppressWarnings({"unchecked", "rawtypes"})
-  private static Object recursiveCopyObject(Object value)
+  static Object recursiveCopyObject(Object value)
           throws JSONException {
     if (value instanceof JSONObject) {
       value = recursiveCopyJSONObject((JSONObject) value);
@@ -201,7 +230,30 @@ public class DiskMapRecords implements NoSQLRecords {
           ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
           throws RecordNotFoundException, FailedDBOperationException {
 
-    JSONObject record = lookupEntireRecord(collection, name);
+    JSONObject snapshot = getCollection(collection).getSnapshot(name);
+    if (snapshot == null) {
+      throw new RecordNotFoundException(name);
+    }
+    // Only the requested fields are copied out of the snapshot
+    return extractSomeFields(snapshot, name, nameField, valuesMapField, valuesMapKeys);
+  }
+
+  /**
+   * Extracts the {@code valuesMapKeys} from {@code record} in the format
+   * returned by {@link #lookupSomeFields}. Each value is read with a single
+   * walk down its dotted path and copied, so {@code record} can be a
+   * shared snapshot and is never copied as a whole.
+   * Also used by EmbeddedRecords.
+   *
+   * @param record
+   * @param name
+   * @param nameField
+   * @param valuesMapField
+   * @param valuesMapKeys
+   * @return a hashmap of ColumnField to Objects
+   */
+  static HashMap<ColumnField, Object> extractSomeFields(JSONObject record, String name,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys) {
 //    LOGGER.log(Level.FINE, "Full record " + record.toString());
     HashMap<ColumnField, Object> hashMap = new HashMap<>();
     hashMap.put(nameField, name);
@@ -212,23 +264,22 @@ public class DiskMapRecords implements NoSQLRecords {
         ValuesMap valuesMapOut = new ValuesMap();
         for (int i = 0; i < valuesMapKeys.size(); i++) {
           String userKey = valuesMapKeys.get(i).getName();
-          if (JSONDotNotation.containsFieldDotNotation(userKey, readValuesMap) == false) {
+          Object value = FieldPath.get(userKey).getValue(readValuesMap);
+          if (value == null) {
 //            LOGGER.fine("valuesMap doesn't contain " + userKey);
             continue;
           }
           try {
             switch (valuesMapKeys.get(i).type()) {
               case USER_JSON:
-                Object value = JSONDotNotation.getWithDotNotation(userKey, readValuesMap);
-                LOGGER.log(Level.FINE,
-                        "Object is {0}", new Object[]{value.toString()});
-                valuesMapOut.put(userKey, value);
+                LOGGER.log(Level.FINE, "Object is {0}", value);
+                valuesMapOut.put(userKey, recursiveCopyObject(value));
                 break;
               case LIST_STRING:
                 valuesMapOut.putAsArray(userKey,
-                        JSONUtils.JSONArrayToResultValue(
-                                new JSONArray(JSONDotNotation.getWithDotNotation(userKey,
-                                        readValuesMap).toString())));
+                        JSONUtils.JSONArrayToResultValue(value instanceof JSONArray
+                                ? recursiveCopyJSONArray((JSONArray) value)
+                                : new JSONArray(value.toString())));
                 break;
               default:
                 LOGGER.log(Level.SEVERE,
@@ -256,7 +307,15 @@ public class DiskMapRecords implements NoSQLRecords {
   @Override
   public void removeEntireRecord(String collection, String name) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Remove: {0}", name);
-    getMap(collection).remove(name);
+    DiskMapCollection diskMapCollection = getCollection(collection);
+    synchronized (getLock(name)) {
+      JSONObject before = diskMapCollection.getIndexes().isEmpty() ? null
+              : diskMapCollection.getSnapshot(name);
+      diskMapCollection.getMap().remove(name);
+      if (before != null) {
+        diskMapCollection.getIndexes().update(name, before, null);
+      }
+    }
   }
 
   @Override
@@ -265,8 +324,15 @@ public class DiskMapRecords implements NoSQLRecords {
     JSONObject json = new JSONObject();
     try {
       json.put(NameRecord.NAME.getName(), name);
-      json.put(NameRecord.VALUES_MAP.getName(), valuesMap);
-      getMap(collection).put(name, json);
+      // Copy once here so the stored snapshot can't be modified by the caller.
+      json.put(NameRecord.VALUES_MAP.getName(), recursiveCopyJSONObject(valuesMap));
+      DiskMapCollection diskMapCollection = getCollection(collection);
+      synchronized (getLock(name)) {
+        JSONObject before = diskMapCollection.getIndexes().isEmpty() ? null
+                : diskMapCollection.getSnapshot(name);
+        diskMapCollection.getMap().put(name, json);
+        diskMapCollection.getIndexes().update(name, before, json);
+      }
     } catch (JSONException e) {
 
     }
@@ -277,28 +343,30 @@ public class DiskMapRecords implements NoSQLRecords {
           ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys,
           ArrayList<Object> valuesMapValues) throws FailedDBOperationException {
     LOGGER.log(Level.FINE, "Update fields {0}/{1}", new Object[]{name, valuesMapKeys});
-    JSONObject record;
-    try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-      DatabaseConfig.getLogger().log(Level.FINE, "updateIndividualFields failed: {0}", e.getMessage());
-      throw new FailedDBOperationException(collection, name, "Record not found.");
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
-    if (record == null) {
-      throw new FailedDBOperationException(collection, name, "Record is null.");
-    }
-    if (valuesMapField != null && valuesMapKeys != null) {
+    synchronized (getLock(name)) {
+      JSONObject snapshot = getCollection(collection).getSnapshot(name);
+      LOGGER.log(Level.FINE, "Record before:{0}", snapshot);
+      if (snapshot == null) {
+        DatabaseConfig.getLogger().log(Level.FINE, "updateIndividualFields failed: record not found");
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (valuesMapField == null || valuesMapKeys == null) {
+        return;
+      }
+      JSONObject record;
       try {
+        record = DiskMapCollection.copyForPatch(snapshot, valuesMapField.getName(), getNames(valuesMapKeys));
         JSONObject json = record.getJSONObject(valuesMapField.getName());
         for (int i = 0; i < valuesMapKeys.size(); i++) {
           String fieldName = valuesMapKeys.get(i).getName();
           switch (valuesMapKeys.get(i).type()) {
             case LIST_STRING:
-              JSONDotNotation.putWithDotNotation(json, fieldName, valuesMapValues.get(i));
+              FieldPath.get(fieldName).put(json, recursiveCopyObject(valuesMapValues.get(i)));
               break;
             case USER_JSON:
-              JSONDotNotation.putWithDotNotation(json, fieldName, JSONParse(valuesMapValues.get(i)));
+              // Converts any DBObjects that JSONParse produces once here
+              // instead of on every lookup.
+              FieldPath.get(fieldName).put(json, recursiveCopyObject(JSONParse(valuesMapValues.get(i))));
               break;
             default:
               LOGGER.log(Level.WARNING,
@@ -306,19 +374,27 @@ public class DiskMapRecords implements NoSQLRecords {
               break;
           }
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(valuesMapField.getName(), json);
         LOGGER.log(Level.FINE, "Record after:{0}", record);
       } catch (Exception e) {
         LOGGER.log(Level.SEVERE, "Problem updating json: {0}", e.getMessage());
         throw new FailedDBOperationException(collection, name, "Unable to parse json " + e.getMessage());
       }
+      getMap(collection).put(name, record);
+      getCollection(collection).getIndexes().update(name, snapshot, record);
+    }
+  }
+
+  private static List<String> getNames(List<ColumnField> fields) {
+    List<String> names = new ArrayList<>(fields.size());
+    for (ColumnField field : fields) {
+      names.add(field.getName());
     }
-    getMap(collection).put(name, record);
+    return names;
   }
   // not sure why the JSON.parse doesn't handle things this way but it doesn't
 
-  private Object JSONParse(Object object) {
+  // Also used by EmbeddedRecords
+  static Object JSONParse(Object object) {
     if (object instanceof String || object instanceof Number) {
       return object;
     } else {
@@ -330,34 +406,35 @@ public class DiskMapRecords implements NoSQLRecords {
   public void removeMapKeys(String collection, String name,
           ColumnField mapField, ArrayList<ColumnField> mapKeys)
           throws FailedDBOperationException {
-    JSONObject record = null;
-    try {
-      record = lookupEntireRecord(collection, name);
-    } catch (RecordNotFoundException e) {
-    }
-    LOGGER.log(Level.FINE, "Record before:{0}", record);
-    if (record == null) {
-      DatabaseConfig.getLogger().log(Level.FINE, "removeMapKeys failed. record is null");
-      throw new FailedDBOperationException(collection, name, "Record not found.");
-    }
-    if (mapField != null && mapKeys != null) {
+    synchronized (getLock(name)) {
+      JSONObject snapshot = getCollection(collection).getSnapshot(name);
+      LOGGER.log(Level.FINE, "Record before:{0}", snapshot);
+      if (snapshot == null) {
+        DatabaseConfig.getLogger().log(Level.FINE, "removeMapKeys failed. record is null");
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (mapField == null || mapKeys == null) {
+        return;
+      }
+      JSONObject record = null;
       try {
+        record = DiskMapCollection.copyForPatch(snapshot, mapField.getName(), getNames(mapKeys));
         JSONObject json = record.getJSONObject(mapField.getName());
-        LOGGER.log(Level.FINE, "Json before:{0}", json);
         for (int i = 0; i < mapKeys.size(); i++) {
           String fieldName = mapKeys.get(i).getName();
           LOGGER.log(Level.FINE, "Removing: {0}", fieldName);
-          JSONDotNotation.removeWithDotNotation(fieldName, json);
+          FieldPath.get(fieldName).remove(json);
         }
-        LOGGER.log(Level.FINE, "Json after:{0}", json);
-        record.put(mapField.getName(), json);
         LOGGER.log(Level.FINE, "Record after:{0}", record);
       } catch (JSONException e) {
         LOGGER.log(Level.SEVERE,
                 "Problem updating json: {0}", e.getMessage());
       }
+      if (record != null) {
+        getMap(collection).put(name, record);
+        getCollection(collection).getIndexes().update(name, snapshot, record);
+      }
     }
-    getMap(collection).put(name, record);
   }
 
   @Override
@@ -368,18 +445,50 @@ public class DiskMapRecords implements NoSQLRecords {
 
   @Override
   public AbstractRecordCursor selectRecords(String collection, ColumnField valuesMapField, String key, Object value) throws FailedDBOperationException {
+    try {
+      AbstractRecordCursor cursor = selectFromIndexes(collection,
+              JSONQueryMatcher.forValue(valuesMapField.getName() + "." + key, value), null);
+      if (cursor != null) {
+        return cursor;
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "Not using indexes: {0}", e.getMessage());
+    }
     commit(collection);
     return getMongoRecords(collection).selectRecords(MongoRecords.DBNAMERECORD, valuesMapField, key, value);
   }
 
   @Override
   public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField, String key, String value) throws FailedDBOperationException {
+    try {
+      AbstractRecordCursor cursor = selectFromIndexes(collection,
+              JSONQueryMatcher.forWithin(valuesMapField.getName() + "." + key, value), null);
+      if (cursor != null) {
+        return cursor;
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "Not using indexes: {0}", e.getMessage());
+    }
     commit(collection);
     return getMongoRecords(collection).selectRecordsWithin(MongoRecords.DBNAMERECORD, valuesMapField, key, value);
   }
 
   @Override
   public AbstractRecordCursor selectRecordsNear(String collection, ColumnField valuesMapField, String key, String value, Double maxDistance) throws FailedDBOperationException {
+    String fieldName = valuesMapField.getName() + "." + key;
+    try {
+      JSONQueryMatcher matcher = JSONQueryMatcher.forNear(fieldName, value,
+              maxDistance / MongoRecords.METERS_PER_DEGREE);
+      AbstractRecordCursor cursor = selectFromIndexes(collection, matcher, null);
+      if (cursor != null) {
+        List<String> names = JSONQueryMatcher.getNamesByDistance(cursor,
+                NameRecord.NAME.getName(), fieldName, value);
+        return new EmbeddedRecordCursor(getSnapshotReader(), collection, names.iterator(),
+                matcher, null, true);
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "Not using indexes: {0}", e.getMessage());
+    }
     commit(collection);
     return getMongoRecords(collection).selectRecordsNear(MongoRecords.DBNAMERECORD, valuesMapField, key, value, maxDistance);
   }
@@ -387,15 +496,77 @@ public class DiskMapRecords implements NoSQLRecords {
   @Override
   public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField,
           String query, List<String> projection) throws FailedDBOperationException {
+    try {
+      AbstractRecordCursor cursor = selectFromIndexes(collection,
+              JSONQueryMatcher.parse(MongoRecords.toMongoQuery(query, valuesMapField)),
+              MongoRecords.isEntireRecord(projection) ? null
+              : MongoRecords.getProjectionFields(projection));
+      if (cursor != null) {
+        return cursor;
+      }
+    } catch (JSONException e) {
+      LOGGER.log(Level.FINE, "Not using indexes: {0}", e.getMessage());
+    }
     commit(collection);
     return getMongoRecords(collection).selectRecordsQuery(MongoRecords.DBNAMERECORD, valuesMapField,
             query, projection);
   }
 
+  /**
+   * Returns a cursor over the records that match using the in-memory
+   * indexes or null if none of them apply to the query, in which case the
+   * map has to be flushed so that mongo can evaluate it.
+   */
+  private AbstractRecordCursor selectFromIndexes(String collection, JSONQueryMatcher matcher,
+          List<String> projection) throws JSONException {
+    Collection<String> candidates = getCollection(collection).getIndexes().getCandidates(matcher.getQuery());
+    if (candidates == null) {
+      return null;
+    }
+    // The snapshots are shared so the cursor copies what it returns
+    return new EmbeddedRecordCursor(getSnapshotReader(), collection, candidates.iterator(),
+            matcher, projection, true);
+  }
+
+  private EmbeddedRecordCursor.RecordReader getSnapshotReader() {
+    return (String collection, String name) -> getCollection(collection).getSnapshot(name);
+  }
+
+  /**
+   * Creates the index in mongo and an in-memory index that lets selects
+   * that use it be answered from the map. See {@link SecondaryIndexes} for
+   * the index types.
+   *
+   * @param collection
+   * @param field
+   * @param index
+   */
   @Override
   public void createIndex(String collection, String field, String index) {
     commit(collection);
     getMongoRecords(collection).createIndex(MongoRecords.DBNAMERECORD, field, index);
+    try {
+      getCollection(collection).getIndexes().createIndex(NameRecord.VALUES_MAP.getName() + "." + field,
+              index, () -> getAllSnapshots(collection));
+    } catch (FailedDBOperationException e) {
+      LOGGER.log(Level.SEVERE, "Unable to create {0} index on {1}/{2}: {3}",
+              new Object[]{index, collection, field, e.getMessage()});
+    }
+  }
+
+  /**
+   * Returns a cursor over the current snapshots of all the records. The
+   * names come from mongo after a flush; the values come from the map
+   * because they can be newer.
+   */
+  private AbstractRecordCursor getAllSnapshots(String collection) throws FailedDBOperationException {
+    commit(collection);
+    List<String> names = new ArrayList<>();
+    AbstractRecordCursor cursor = getMongoRecords(collection).getAllRowsIterator(MongoRecords.DBNAMERECORD);
+    while (cursor.hasNext()) {
+      names.add(cursor.nextJSONObject().optString(NameRecord.NAME.getName()));
+    }
+    return new EmbeddedRecordCursor(getSnapshotReader(), collection, names.iterator(), null, null, false);
   }
 
   @Override
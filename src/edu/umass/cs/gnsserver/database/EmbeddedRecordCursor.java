@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.utils.FieldPath;
+
+/**
+ * Provides a cursor that iterates through records that are evaluated in
+ * process, such as those of {@link EmbeddedRecords} or those found with
+ * {@link SecondaryIndexes}. Records are loaded lazily, one ahead of the
+ * caller, so a select doesn't materialize all of its results up front.
+ *
+ * @author westy
+ */
+public class EmbeddedRecordCursor extends AbstractRecordCursor {
+
+  /**
+   * Loads a record by name.
+   */
+  interface RecordReader {
+
+    /**
+     * Returns the record or null if there isn't one.
+     */
+    JSONObject read(String collection, String name) throws FailedDBOperationException;
+  }
+
+  private final RecordReader records;
+  private final String collection;
+  private final Iterator<String> names;
+  private final JSONQueryMatcher matcher;
+  private final List<String> projection;
+  private final boolean copy;
+  private JSONObject next;
+
+  /**
+   * Returns a cursor that iterates through the records named by names
+   * that match the matcher.
+   *
+   * @param records
+   * @param collection
+   * @param names
+   * @param matcher - null matches all records
+   * @param projection - the dotted fields to return, null returns the entire record
+   * @param copy - copy the results because the records read are shared
+   */
+  EmbeddedRecordCursor(RecordReader records, String collection, Iterator<String> names,
+          JSONQueryMatcher matcher, List<String> projection, boolean copy) {
+    this.records = records;
+    this.collection = collection;
+    this.names = names;
+    this.matcher = matcher;
+    this.projection = projection;
+    this.copy = copy;
+  }
+
+  /**
+   * Returns the next row as a JSONObject.
+   *
+   * @return the next row as a JSONObject
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  @Override
+  public JSONObject nextJSONObject() throws FailedDBOperationException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    JSONObject result = next;
+    next = null;
+    return result;
+  }
+
+  /**
+   * Returns true if the iteration has more elements.
+   *
+   * @return true or false
+   * @throws edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException
+   */
+  @Override
+  public boolean hasNext() throws FailedDBOperationException {
+    while (next == null && names.hasNext()) {
+      String name = names.next();
+      // Could have been removed since we started iterating
+      JSONObject record = records.read(collection, name);
+      try {
+        if (record != null && (matcher == null || matcher.matches(record))) {
+          next = projection == null ? record : project(record, projection);
+          if (copy) {
+            next = (JSONObject) DiskMapRecords.recursiveCopyObject(next);
+          }
+        }
+      } catch (JSONException e) {
+        throw new FailedDBOperationException(collection, name,
+                "Unable to evaluate query: " + e.getMessage());
+      }
+    }
+    return next != null;
+  }
+
+  private static JSONObject project(JSONObject record, List<String> fields) throws JSONException {
+    JSONObject result = new JSONObject();
+    for (String field : fields) {
+      FieldPath path = FieldPath.get(field);
+      Object value = path.getValue(record);
+      if (value != null) {
+        path.put(result, value);
+      }
+    }
+    return result;
+  }
+}
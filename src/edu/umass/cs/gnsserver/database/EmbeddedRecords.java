@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2017
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.FieldPath;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+import edu.umass.cs.utils.Config;
+
+/**
+ * An embedded NoSQLRecords implementation that needs no database process.
+ *
+ * Each collection is a {@link LogStructuredStore} under
+ * EMBEDDED_DB_DIRECTORY/nodeID/collection holding the records as JSON
+ * strings keyed by name. Selects are evaluated in process by
+ * {@link JSONQueryMatcher} which understands the same query language as
+ * {@link MongoRecords}, using {@link SecondaryIndexes} created with
+ * createIndex when they apply. How often writes are forced to disk is set
+ * by EMBEDDED_DB_SYNC_INTERVAL_MS.
+ *
+ * To use this set ENABLE_DISKMAP to false and NOSQL_RECORDS_CLASS to
+ * edu.umass.cs.gnsserver.database.EmbeddedRecords.
+ *
+ * @author westy
+ */
+public class EmbeddedRecords implements NoSQLRecords {
+
+  private static final Logger LOGGER = Logger.getLogger(EmbeddedRecords.class.getName());
+
+  // Serializes read-modify-write updates of the same record
+  private static final int LOCK_STRIPES = 256;
+
+  private final File directory;
+  private final int syncIntervalMillis;
+  private final Map<String, LogStructuredStore> collections = new ConcurrentHashMap<>();
+  private final Map<String, SecondaryIndexes> indexes = new ConcurrentHashMap<>();
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  /**
+   *
+   * @param nodeID
+   */
+  public EmbeddedRecords(String nodeID) {
+    this(nodeID, -1);
+  }
+
+  /**
+   * The port is ignored; it's here so that this can be created the same
+   * way as the other NoSQLRecords.
+   *
+   * @param nodeID
+   * @param port
+   */
+  public EmbeddedRecords(String nodeID, int port) {
+    this.directory = new File(Config.getGlobalString(GNSC.EMBEDDED_DB_DIRECTORY),
+            nodeID.replaceAll("[^A-Za-z0-9_.-]", "_"));
+    this.syncIntervalMillis = Config.getGlobalInt(GNSC.EMBEDDED_DB_SYNC_INTERVAL_MS);
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  private LogStructuredStore getStore(String collection) throws FailedDBOperationException {
+    LogStructuredStore store = collections.get(collection);
+    if (store == null) {
+      synchronized (collections) {
+        if ((store = collections.get(collection)) == null) {
+          try {
+            store = new LogStructuredStore(new File(directory, collection), syncIntervalMillis);
+          } catch (IOException e) {
+            throw new FailedDBOperationException(collection, directory.getPath(),
+                    "Unable to open store: " + e.getMessage());
+          }
+          collections.put(collection, store);
+        }
+      }
+    }
+    return store;
+  }
+
+  private SecondaryIndexes getIndexes(String collection) {
+    return indexes.computeIfAbsent(collection, c -> new SecondaryIndexes(NameRecord.NAME.getName()));
+  }
+
+  private Object getLock(String name) {
+    return locks[(name.hashCode() & 0x7fffffff) % locks.length];
+  }
+
+  /**
+   * Returns the record or null if there isn't one.
+   * Also used by EmbeddedRecordCursor.
+   *
+   * @param collection
+   * @param name
+   * @return the record or null
+   * @throws FailedDBOperationException
+   */
+  JSONObject read(String collection, String name) throws FailedDBOperationException {
+    try {
+      String value = getStore(collection).get(name);
+      return value == null ? null : new JSONObject(value);
+    } catch (IOException | JSONException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "read failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to read record: " + e.getMessage());
+    }
+  }
+
+  private void write(String collection, String name, JSONObject record) throws FailedDBOperationException {
+    try {
+      getStore(collection).put(name, record.toString());
+    } catch (IOException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "write failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, name, "Unable to write record: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void insert(String collection, String name, JSONObject value)
+          throws FailedDBOperationException, RecordExistsException {
+    synchronized (getLock(name)) {
+      if (getStore(collection).containsKey(name)) {
+        throw new RecordExistsException(collection, name);
+      }
+      write(collection, name, value);
+      getIndexes(collection).update(name, null, value);
+    }
+  }
+
+  @Override
+  public JSONObject lookupEntireRecord(String collection, String name)
+          throws FailedDBOperationException, RecordNotFoundException {
+    JSONObject record = read(collection, name);
+    if (record == null) {
+      throw new RecordNotFoundException(name);
+    }
+    return record;
+  }
+
+  @Override
+  public HashMap<ColumnField, Object> lookupSomeFields(String collection, String name,
+          ColumnField nameField, ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys)
+          throws RecordNotFoundException, FailedDBOperationException {
+    return DiskMapRecords.extractSomeFields(lookupEntireRecord(collection, name), name,
+            nameField, valuesMapField, valuesMapKeys);
+  }
+
+  @Override
+  public boolean contains(String collection, String name) throws FailedDBOperationException {
+    return getStore(collection).containsKey(name);
+  }
+
+  @Override
+  public void removeEntireRecord(String collection, String name) throws FailedDBOperationException {
+    LOGGER.log(Level.FINE, "Remove: {0}", name);
+    synchronized (getLock(name)) {
+      SecondaryIndexes collectionIndexes = getIndexes(collection);
+      JSONObject before = collectionIndexes.isEmpty() ? null : read(collection, name);
+      try {
+        getStore(collection).remove(name);
+      } catch (IOException e) {
+        throw new FailedDBOperationException(collection, name, "Unable to remove record: " + e.getMessage());
+      }
+      if (before != null) {
+        collectionIndexes.update(name, before, null);
+      }
+    }
+  }
+
+  @Override
+  public void updateEntireRecord(String collection, String name, ValuesMap valuesMap)
+          throws FailedDBOperationException {
+    LOGGER.log(Level.FINE, "Update record {0}/{1}", new Object[]{name, valuesMap});
+    JSONObject json = new JSONObject();
+    try {
+      json.put(NameRecord.NAME.getName(), name);
+      json.put(NameRecord.VALUES_MAP.getName(), valuesMap);
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(collection, name, "Unable to parse json " + e.getMessage());
+    }
+    synchronized (getLock(name)) {
+      SecondaryIndexes collectionIndexes = getIndexes(collection);
+      JSONObject before = collectionIndexes.isEmpty() ? null : read(collection, name);
+      write(collection, name, json);
+      collectionIndexes.update(name, before, json);
+    }
+  }
+
+  @Override
+  public void updateIndividualFields(String collection, String name,
+          ColumnField valuesMapField, ArrayList<ColumnField> valuesMapKeys,
+          ArrayList<Object> valuesMapValues) throws FailedDBOperationException {
+    LOGGER.log(Level.FINE, "Update fields {0}/{1}", new Object[]{name, valuesMapKeys});
+    synchronized (getLock(name)) {
+      JSONObject record = read(collection, name);
+      if (record == null) {
+        DatabaseConfig.getLogger().log(Level.FINE, "updateIndividualFields failed: record not found");
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (valuesMapField == null || valuesMapKeys == null) {
+        return;
+      }
+      SecondaryIndexes collectionIndexes = getIndexes(collection);
+      JSONObject before;
+      try {
+        before = collectionIndexes.isEmpty() ? null
+                : (JSONObject) DiskMapRecords.recursiveCopyObject(record);
+        JSONObject json = record.getJSONObject(valuesMapField.getName());
+        for (int i = 0; i < valuesMapKeys.size(); i++) {
+          String fieldName = valuesMapKeys.get(i).getName();
+          switch (valuesMapKeys.get(i).type()) {
+            case LIST_STRING:
+              FieldPath.get(fieldName).put(json,
+                      DiskMapRecords.recursiveCopyObject(valuesMapValues.get(i)));
+              break;
+            case USER_JSON:
+              FieldPath.get(fieldName).put(json,
+                      DiskMapRecords.recursiveCopyObject(DiskMapRecords.JSONParse(valuesMapValues.get(i))));
+              break;
+            default:
+              LOGGER.log(Level.WARNING,
+                      "Ignoring unknown format: {0}", valuesMapKeys.get(i).type());
+              break;
+          }
+        }
+      } catch (Exception e) {
+        LOGGER.log(Level.SEVERE, "Problem updating json: {0}", e.getMessage());
+        throw new FailedDBOperationException(collection, name, "Unable to parse json " + e.getMessage());
+      }
+      write(collection, name, record);
+      collectionIndexes.update(name, before, record);
+    }
+  }
+
+  @Override
+  public void removeMapKeys(String collection, String name,
+          ColumnField mapField, ArrayList<ColumnField> mapKeys)
+          throws FailedDBOperationException {
+    synchronized (getLock(name)) {
+      JSONObject record = read(collection, name);
+      if (record == null) {
+        DatabaseConfig.getLogger().log(Level.FINE, "removeMapKeys failed. record is null");
+        throw new FailedDBOperationException(collection, name, "Record not found.");
+      }
+      if (mapField == null || mapKeys == null) {
+        return;
+      }
+      SecondaryIndexes collectionIndexes = getIndexes(collection);
+      JSONObject before = null;
+      try {
+        before = collectionIndexes.isEmpty() ? null
+                : (JSONObject) DiskMapRecords.recursiveCopyObject(record);
+        JSONObject json = record.getJSONObject(mapField.getName());
+        for (ColumnField mapKey : mapKeys) {
+          LOGGER.log(Level.FINE, "Removing: {0}", mapKey.getName());
+          FieldPath.get(mapKey.getName()).remove(json);
+        }
+      } catch (JSONException e) {
+        LOGGER.log(Level.SEVERE, "Problem updating json: {0}", e.getMessage());
+      }
+      write(collection, name, record);
+      if (before != null) {
+        collectionIndexes.update(name, before, record);
+      }
+    }
+  }
+
+  @Override
+  public AbstractRecordCursor getAllRowsIterator(String collection) throws FailedDBOperationException {
+    return new EmbeddedRecordCursor(this::read, collection, getStore(collection).keySet().iterator(),
+            null, null, false);
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecords(String collection, ColumnField valuesMapField,
+          String key, Object value) throws FailedDBOperationException {
+    String fieldName = valuesMapField.getName() + "." + key;
+    try {
+      return select(collection, JSONQueryMatcher.forValue(fieldName, value), null);
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(collection, fieldName, "Unable to parse value: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsWithin(String collection, ColumnField valuesMapField,
+          String key, String value) throws FailedDBOperationException {
+    String fieldName = valuesMapField.getName() + "." + key;
+    try {
+      return select(collection, JSONQueryMatcher.forWithin(fieldName, value), null);
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(collection, fieldName, "Unable to parse box: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsNear(String collection, ColumnField valuesMapField,
+          String key, String value, Double maxDistance) throws FailedDBOperationException {
+    String fieldName = valuesMapField.getName() + "." + key;
+    try {
+      JSONQueryMatcher matcher = JSONQueryMatcher.forNear(fieldName, value,
+              maxDistance / MongoRecords.METERS_PER_DEGREE);
+      List<String> names = JSONQueryMatcher.getNamesByDistance(select(collection, matcher, null),
+              NameRecord.NAME.getName(), fieldName, value);
+      return new EmbeddedRecordCursor(this::read, collection, names.iterator(), matcher, null, false);
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(collection, fieldName, "Unable to parse point: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public AbstractRecordCursor selectRecordsQuery(String collection, ColumnField valuesMapField,
+          String query, List<String> projection) throws FailedDBOperationException {
+    JSONQueryMatcher matcher;
+    try {
+      matcher = JSONQueryMatcher.parse(MongoRecords.toMongoQuery(query, valuesMapField));
+    } catch (JSONException e) {
+      DatabaseConfig.getLogger().log(Level.FINE, "selectRecordsQuery failed: {0}", e.getMessage());
+      throw new FailedDBOperationException(collection, query, e.getMessage());
+    }
+    return select(collection, matcher, MongoRecords.isEntireRecord(projection) ? null
+            : MongoRecords.getProjectionFields(projection));
+  }
+
+  private AbstractRecordCursor select(String collection, JSONQueryMatcher matcher,
+          List<String> projection) throws FailedDBOperationException {
+    Collection<String> candidates;
+    try {
+      candidates = getIndexes(collection).getCandidates(matcher.getQuery());
+    } catch (JSONException e) {
+      throw new FailedDBOperationException(collection, matcher.getQuery().toString(), e.getMessage());
+    }
+    return new EmbeddedRecordCursor(this::read, collection,
+            candidates != null ? candidates.iterator() : getStore(collection).keySet().iterator(),
+            matcher, projection, false);
+  }
+
+  /**
+   * Creates an in-memory index on the valuesMap field. See
+   * {@link SecondaryIndexes} for the index types. Indexes aren't persisted
+   * so they need to be created again after a restart.
+   *
+   * @param collection
+   * @param field
+   * @param index
+   */
+  @Override
+  public void createIndex(String collection, String field, String index) {
+    try {
+      getIndexes(collection).createIndex(NameRecord.VALUES_MAP.getName() + "." + field, index,
+              () -> getAllRowsIterator(collection));
+    } catch (FailedDBOperationException e) {
+      LOGGER.log(Level.SEVERE, "Unable to create {0} index on {1}/{2}: {3}",
+              new Object[]{index, collection, field, e.getMessage()});
+    }
+  }
+
+  @Override
+  public void printAllEntries(String collection) throws FailedDBOperationException {
+    AbstractRecordCursor cursor = getAllRowsIterator(collection);
+    while (cursor.hasNext()) {
+      System.out.println(cursor.nextJSONObject());
+    }
+  }
+
+  /**
+   * Syncs and closes all the collections.
+   */
+  public void close() {
+    for (Map.Entry<String, LogStructuredStore> entry : collections.entrySet()) {
+      try {
+        entry.getValue().close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Problem closing {0}: {1}", new Object[]{entry.getKey(), e.getMessage()});
+      }
+    }
+    collections.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "EmbeddedRecords{" + directory + "}";
+  }
+}
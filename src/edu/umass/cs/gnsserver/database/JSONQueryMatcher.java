@@ -0,0 +1,667 @@
+/*
+ * Copyright (C) 2017
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.mongodb.util.JSON;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
+/**
+ * Evaluates queries written in the mongo query language against
+ * JSONObject records in process. This lets record stores that don't
+ * have a mongo instance behind them (see {@link EmbeddedRecords}) support
+ * the same select queries as {@link MongoRecords}.
+ *
+ * Supports the logical operators $and, $or and $nor and the field
+ * operators $eq, $ne, $gt, $gte, $lt, $lte, $in, $nin, $exists, $regex,
+ * $not, $all, $size, $elemMatch, $geoWithin (with $box) and $near (with
+ * $maxDistance on legacy coordinate pairs). As in mongo a condition on a
+ * field whose value is an array matches if any element matches.
+ *
+ * @author westy
+ */
+public class JSONQueryMatcher {
+
+  private static final Set<String> FIELD_OPERATORS = new HashSet<>(Arrays.asList(
+          "$eq", "$ne", "$gt", "$gte", "$lt", "$lte", "$in", "$nin", "$exists", "$regex",
+          "$options", "$not", "$all", "$size", "$elemMatch", "$geoWithin", "$within",
+          "$near", "$maxDistance"));
+
+  private final JSONObject query;
+
+  private JSONQueryMatcher(JSONObject query) {
+    this.query = query;
+  }
+
+  /**
+   * Creates a matcher from a query object.
+   *
+   * @param query
+   * @return a matcher
+   */
+  public static JSONQueryMatcher fromQuery(JSONObject query) {
+    return new JSONQueryMatcher(query);
+  }
+
+  /**
+   * Creates a matcher by parsing a query string in the mongo query
+   * language. Use {@link MongoRecords#toMongoQuery} first to convert a GNS
+   * select query.
+   *
+   * @param mongoQuery
+   * @return a matcher
+   * @throws JSONException if the query can't be parsed or uses an
+   * unsupported operator
+   */
+  public static JSONQueryMatcher parse(String mongoQuery) throws JSONException {
+    Object parsed;
+    try {
+      // The mongo parser handles the relaxed syntax (unquoted keys, $regex)
+      // that GNS queries use; it doesn't need a running mongo.
+      parsed = DiskMapRecords.recursiveCopyObject(JSON.parse(mongoQuery));
+    } catch (RuntimeException e) {
+      throw new JSONException("Unable to parse query " + mongoQuery + ": " + e.getMessage());
+    }
+    if (!(parsed instanceof JSONObject)) {
+      throw new JSONException("Query is not an object: " + mongoQuery);
+    }
+    checkDocument((JSONObject) parsed);
+    return new JSONQueryMatcher((JSONObject) parsed);
+  }
+
+  /**
+   * Throws an exception if the query uses anything this class doesn't
+   * support so callers can find out before they evaluate it.
+   */
+  private static void checkDocument(JSONObject query) throws JSONException {
+    Iterator<?> keys = query.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      if ("$and".equals(key) || "$or".equals(key) || "$nor".equals(key)) {
+        for (Object clause : asList(query.get(key))) {
+          checkDocument(asObject(clause));
+        }
+      } else if (key.startsWith("$")) {
+        throw new JSONException("Unsupported query operator " + key);
+      } else {
+        checkCondition(query.get(key));
+      }
+    }
+  }
+
+  private static void checkCondition(Object condition) throws JSONException {
+    if (!isOperatorObject(condition)) {
+      return;
+    }
+    JSONObject operators = (JSONObject) condition;
+    Iterator<?> keys = operators.keys();
+    while (keys.hasNext()) {
+      String operator = (String) keys.next();
+      Object argument = operators.get(operator);
+      if (!FIELD_OPERATORS.contains(operator)) {
+        throw new JSONException("Unsupported query operator " + operator);
+      } else if ("$not".equals(operator)) {
+        checkCondition(argument);
+      } else if ("$elemMatch".equals(operator)) {
+        if (isOperatorObject(argument)) {
+          checkCondition(argument);
+        } else {
+          checkDocument(asObject(argument));
+        }
+      } else if (("$geoWithin".equals(operator) || "$within".equals(operator))
+              && !asObject(argument).has("$box")) {
+        throw new JSONException("Unsupported $geoWithin shape " + argument);
+      } else if ("$near".equals(operator) && toPoint(argument) == null) {
+        throw new JSONException("Unsupported $near argument " + argument);
+      }
+    }
+  }
+
+  /**
+   * Returns a matcher for the records where field has value, or contains
+   * value if field is an array, as with mongo.
+   *
+   * @param field - the dotted field
+   * @param value
+   * @return a matcher
+   * @throws JSONException
+   */
+  public static JSONQueryMatcher forValue(String field, Object value) throws JSONException {
+    return new JSONQueryMatcher(new JSONObject().put(field, DiskMapRecords.recursiveCopyObject(value)));
+  }
+
+  /**
+   * Returns a matcher for the records where field is a point inside box.
+   *
+   * @param field - the dotted field
+   * @param box - a JSON array of two points
+   * @return a matcher
+   * @throws JSONException
+   */
+  public static JSONQueryMatcher forWithin(String field, String box) throws JSONException {
+    return new JSONQueryMatcher(new JSONObject().put(field, new JSONObject().put("$geoWithin",
+            new JSONObject().put("$box", new JSONArray(box)))));
+  }
+
+  /**
+   * Returns a matcher for the records where field is a point within
+   * maxDistance degrees of point.
+   *
+   * @param field - the dotted field
+   * @param point - a JSON array of two numbers
+   * @param maxDistance
+   * @return a matcher
+   * @throws JSONException
+   */
+  public static JSONQueryMatcher forNear(String field, String point, double maxDistance)
+          throws JSONException {
+    JSONArray tuple = new JSONArray(point);
+    if (toPoint(tuple) == null) {
+      throw new JSONException("Not a point: " + point);
+    }
+    return new JSONQueryMatcher(new JSONObject().put(field,
+            new JSONObject().put("$near", tuple).put("$maxDistance", maxDistance)));
+  }
+
+  /**
+   * Returns the names of the records in cursor ordered by the distance of
+   * field from point, closest first, which is the order mongo returns
+   * $near results in.
+   *
+   * @param cursor
+   * @param nameField
+   * @param field - the dotted field
+   * @param point - a JSON array of two numbers
+   * @return the names
+   * @throws FailedDBOperationException
+   * @throws JSONException
+   */
+  static List<String> getNamesByDistance(RecordCursorInterface cursor, String nameField,
+          String field, String point) throws FailedDBOperationException, JSONException {
+    double[] center = toPoint(new JSONArray(point));
+    final Map<String, Double> distances = new HashMap<>();
+    while (cursor.hasNext()) {
+      JSONObject record = cursor.nextJSONObject();
+      double distance = Double.MAX_VALUE;
+      for (Object value : resolve(record, field)) {
+        double[] location = toPoint(value);
+        if (location != null) {
+          distance = Math.min(distance, distance(location, center));
+        }
+      }
+      distances.put(record.getString(nameField), distance);
+    }
+    List<String> names = new ArrayList<>(distances.keySet());
+    names.sort(Comparator.comparing(distances::get));
+    return names;
+  }
+
+  /**
+   * @return the query object
+   */
+  public JSONObject getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns true if the record satisfies the query.
+   *
+   * @param record
+   * @return true if the record matches
+   * @throws JSONException if the query uses an unsupported operator
+   */
+  public boolean matches(JSONObject record) throws JSONException {
+    return matchesDocument(query, record);
+  }
+
+  private static boolean matchesDocument(JSONObject query, JSONObject record) throws JSONException {
+    Iterator<?> keys = query.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      Object condition = query.get(key);
+      switch (key) {
+        case "$and":
+          for (Object clause : asList(condition)) {
+            if (!matchesDocument(asObject(clause), record)) {
+              return false;
+            }
+          }
+          break;
+        case "$or": {
+          boolean any = false;
+          for (Object clause : asList(condition)) {
+            if (matchesDocument(asObject(clause), record)) {
+              any = true;
+              break;
+            }
+          }
+          if (!any) {
+            return false;
+          }
+          break;
+        }
+        case "$nor":
+          for (Object clause : asList(condition)) {
+            if (matchesDocument(asObject(clause), record)) {
+              return false;
+            }
+          }
+          break;
+        default:
+          if (key.startsWith("$")) {
+            throw new JSONException("Unsupported query operator " + key);
+          }
+          if (!matchesCondition(resolve(record, key), condition)) {
+            return false;
+          }
+      }
+    }
+    return true;
+  }
+
+  private static boolean matchesCondition(List<Object> values, Object condition) throws JSONException {
+    if (isOperatorObject(condition)) {
+      JSONObject operators = (JSONObject) condition;
+      Iterator<?> keys = operators.keys();
+      while (keys.hasNext()) {
+        String operator = (String) keys.next();
+        if (!matchesOperator(values, operator, operators.get(operator), operators)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (condition instanceof Pattern) {
+      return matchesPattern(values, (Pattern) condition);
+    } else {
+      return matchesEquals(values, condition);
+    }
+  }
+
+  private static boolean matchesOperator(List<Object> values, String operator, Object argument,
+          JSONObject operators) throws JSONException {
+    switch (operator) {
+      case "$eq":
+        return matchesEquals(values, argument);
+      case "$ne":
+        return !matchesEquals(values, argument);
+      case "$gt":
+        return matchesComparison(values, argument, 1, false);
+      case "$gte":
+        return matchesComparison(values, argument, 1, true);
+      case "$lt":
+        return matchesComparison(values, argument, -1, false);
+      case "$lte":
+        return matchesComparison(values, argument, -1, true);
+      case "$in":
+        return matchesIn(values, asList(argument));
+      case "$nin":
+        return !matchesIn(values, asList(argument));
+      case "$exists":
+        return !values.isEmpty() == isTrue(argument);
+      case "$regex":
+        return matchesPattern(values, argument instanceof Pattern ? (Pattern) argument
+                : Pattern.compile(argument.toString(), getPatternFlags(operators.optString("$options"))));
+      case "$options":
+      case "$maxDistance":
+        // handled along with $regex and $near
+        return true;
+      case "$not":
+        return !matchesCondition(values, argument);
+      case "$all":
+        for (Object element : asList(argument)) {
+          if (!matchesEquals(values, element)) {
+            return false;
+          }
+        }
+        return true;
+      case "$size":
+        for (Object value : values) {
+          if (value instanceof JSONArray && argument instanceof Number
+                  && ((JSONArray) value).length() == ((Number) argument).intValue()) {
+            return true;
+          }
+        }
+        return false;
+      case "$elemMatch":
+        return matchesElemMatch(values, argument);
+      case "$geoWithin":
+      case "$within":
+        return matchesWithin(values, asObject(argument));
+      case "$near":
+        return matchesNear(values, argument, operators.opt("$maxDistance"));
+      default:
+        throw new JSONException("Unsupported query operator " + operator);
+    }
+  }
+
+  private static boolean matchesEquals(List<Object> values, Object argument) throws JSONException {
+    if (argument instanceof Pattern) {
+      return matchesPattern(values, (Pattern) argument);
+    }
+    if (isNull(argument) && values.isEmpty()) {
+      // as in mongo null matches missing fields
+      return true;
+    }
+    for (Object value : expandArrays(values)) {
+      if (valuesEqual(value, argument)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesIn(List<Object> values, List<Object> arguments) throws JSONException {
+    for (Object argument : arguments) {
+      if (matchesEquals(values, argument)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesComparison(List<Object> values, Object argument, int sign,
+          boolean orEqual) throws JSONException {
+    for (Object value : expandArrays(values)) {
+      Integer comparison = compare(value, argument);
+      if (comparison != null && (Integer.signum(comparison) == sign || (orEqual && comparison == 0))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesPattern(List<Object> values, Pattern pattern) throws JSONException {
+    for (Object value : expandArrays(values)) {
+      if (value instanceof String && pattern.matcher((String) value).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesElemMatch(List<Object> values, Object argument) throws JSONException {
+    for (Object value : values) {
+      if (!(value instanceof JSONArray)) {
+        continue;
+      }
+      JSONArray array = (JSONArray) value;
+      for (int i = 0; i < array.length(); i++) {
+        Object element = array.get(i);
+        if (isOperatorObject(argument)) {
+          List<Object> single = new ArrayList<>(1);
+          single.add(element);
+          if (matchesCondition(single, argument)) {
+            return true;
+          }
+        } else if (element instanceof JSONObject
+                && matchesDocument(asObject(argument), (JSONObject) element)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesWithin(List<Object> values, JSONObject shape) throws JSONException {
+    if (!shape.has("$box")) {
+      throw new JSONException("Unsupported $geoWithin shape " + shape);
+    }
+    JSONArray box = shape.getJSONArray("$box");
+    double x1 = box.getJSONArray(0).getDouble(0);
+    double y1 = box.getJSONArray(0).getDouble(1);
+    double x2 = box.getJSONArray(1).getDouble(0);
+    double y2 = box.getJSONArray(1).getDouble(1);
+    for (Object value : values) {
+      double[] point = toPoint(value);
+      if (point != null
+              && point[0] >= Math.min(x1, x2) && point[0] <= Math.max(x1, x2)
+              && point[1] >= Math.min(y1, y2) && point[1] <= Math.max(y1, y2)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesNear(List<Object> values, Object argument, Object maxDistance)
+          throws JSONException {
+    double[] center = toPoint(argument);
+    if (center == null) {
+      throw new JSONException("Unsupported $near argument " + argument);
+    }
+    for (Object value : values) {
+      double[] point = toPoint(value);
+      if (point != null && (!(maxDistance instanceof Number)
+              || distance(point, center) <= ((Number) maxDistance).doubleValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the flat (legacy coordinate pair) distance between two points.
+   *
+   * @param a
+   * @param b
+   * @return the distance in degrees
+   */
+  static double distance(double[] a, double[] b) {
+    return Math.hypot(a[0] - b[0], a[1] - b[1]);
+  }
+
+  /**
+   * Converts a legacy coordinate pair [x, y] or a GeoJSON point into a
+   * point.
+   *
+   * @param value
+   * @return the point or null if value isn't one
+   */
+  static double[] toPoint(Object value) {
+    if (value instanceof JSONObject) {
+      value = ((JSONObject) value).opt("coordinates");
+    }
+    if (value instanceof JSONArray && ((JSONArray) value).length() == 2) {
+      JSONArray array = (JSONArray) value;
+      if (array.opt(0) instanceof Number && array.opt(1) instanceof Number) {
+        return new double[]{((Number) array.opt(0)).doubleValue(),
+          ((Number) array.opt(1)).doubleValue()};
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns all the values at the dotted {@code path} in {@code record}.
+   * As in mongo, arrays along the path are traversed, so there can be more
+   * than one value. An empty list means the field doesn't exist.
+   *
+   * @param record
+   * @param path
+   * @return the values
+   */
+  static List<Object> resolve(JSONObject record, String path) {
+    List<Object> values = new ArrayList<>(1);
+    resolve(record, path.split("\\."), 0, values);
+    return values;
+  }
+
+  private static void resolve(Object current, String[] path, int index, List<Object> values) {
+    if (index == path.length) {
+      values.add(current);
+    } else if (current instanceof JSONObject) {
+      Object child = ((JSONObject) current).opt(path[index]);
+      if (child != null) {
+        resolve(child, path, index + 1, values);
+      }
+    } else if (current instanceof JSONArray) {
+      JSONArray array = (JSONArray) current;
+      if (isIndex(path[index])) {
+        Object child = array.opt(Integer.parseInt(path[index]));
+        if (child != null) {
+          resolve(child, path, index + 1, values);
+        }
+      } else {
+        for (int i = 0; i < array.length(); i++) {
+          if (array.opt(i) instanceof JSONObject) {
+            resolve(array.opt(i), path, index, values);
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isIndex(String string) {
+    if (string.isEmpty() || string.length() > 9) {
+      return false;
+    }
+    for (int i = 0; i < string.length(); i++) {
+      if (!Character.isDigit(string.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<Object> expandArrays(List<Object> values) throws JSONException {
+    List<Object> expanded = new ArrayList<>(values);
+    for (Object value : values) {
+      if (value instanceof JSONArray) {
+        JSONArray array = (JSONArray) value;
+        for (int i = 0; i < array.length(); i++) {
+          expanded.add(array.get(i));
+        }
+      }
+    }
+    return expanded;
+  }
+
+  /**
+   * Compares two scalar values the way mongo does within a type.
+   *
+   * @param a
+   * @param b
+   * @return the comparison or null if the values aren't comparable
+   */
+  static Integer compare(Object a, Object b) {
+    if (a instanceof Number && b instanceof Number) {
+      return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+    } else if (a instanceof String && b instanceof String) {
+      return ((String) a).compareTo((String) b);
+    } else if (a instanceof Boolean && b instanceof Boolean) {
+      return ((Boolean) a).compareTo((Boolean) b);
+    }
+    return null;
+  }
+
+  private static boolean valuesEqual(Object a, Object b) throws JSONException {
+    if (isNull(a) || isNull(b)) {
+      return isNull(a) && isNull(b);
+    } else if (a instanceof Number && b instanceof Number) {
+      return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+    } else if (a instanceof JSONObject && b instanceof JSONObject) {
+      JSONObject first = (JSONObject) a;
+      JSONObject second = (JSONObject) b;
+      if (first.length() != second.length()) {
+        return false;
+      }
+      Iterator<?> keys = first.keys();
+      while (keys.hasNext()) {
+        String key = (String) keys.next();
+        if (!second.has(key) || !valuesEqual(first.get(key), second.get(key))) {
+          return false;
+        }
+      }
+      return true;
+    } else if (a instanceof JSONArray && b instanceof JSONArray) {
+      JSONArray first = (JSONArray) a;
+      JSONArray second = (JSONArray) b;
+      if (first.length() != second.length()) {
+        return false;
+      }
+      for (int i = 0; i < first.length(); i++) {
+        if (!valuesEqual(first.get(i), second.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return a.equals(b);
+  }
+
+  private static boolean isOperatorObject(Object condition) {
+    if (!(condition instanceof JSONObject)) {
+      return false;
+    }
+    Iterator<?> keys = ((JSONObject) condition).keys();
+    return keys.hasNext() && ((String) keys.next()).startsWith("$");
+  }
+
+  private static boolean isNull(Object value) {
+    return value == null || JSONObject.NULL.equals(value);
+  }
+
+  private static boolean isTrue(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof Number) {
+      return ((Number) value).doubleValue() != 0;
+    }
+    return !isNull(value);
+  }
+
+  private static int getPatternFlags(String options) {
+    int flags = 0;
+    if (options.contains("i")) {
+      flags |= Pattern.CASE_INSENSITIVE;
+    }
+    if (options.contains("m")) {
+      flags |= Pattern.MULTILINE;
+    }
+    if (options.contains("s")) {
+      flags |= Pattern.DOTALL;
+    }
+    if (options.contains("x")) {
+      flags |= Pattern.COMMENTS;
+    }
+    return flags;
+  }
+
+  private static List<Object> asList(Object value) throws JSONException {
+    if (!(value instanceof JSONArray)) {
+      throw new JSONException("Expected an array but found " + value);
+    }
+    JSONArray array = (JSONArray) value;
+    List<Object> list = new ArrayList<>(array.length());
+    for (int i = 0; i < array.length(); i++) {
+      list.add(array.get(i));
+    }
+    return list;
+  }
+
+  private static JSONObject asObject(Object value) throws JSONException {
+    if (!(value instanceof JSONObject)) {
+      throw new JSONException("Expected an object but found " + value);
+    }
+    return (JSONObject) value;
+  }
+}
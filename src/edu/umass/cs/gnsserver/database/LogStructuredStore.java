@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2017
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * A simple single-file, append-only key value store.
+ *
+ * Every put or delete is appended to the log and an in-memory key directory
+ * maps each live key to the position of its latest value, so a read is a
+ * single positional read. The log is scanned to rebuild the key directory
+ * on startup; a partially written entry at the tail (from a crash) is
+ * truncated. When more than half of the log is garbage it is compacted
+ * by copying the live entries into a new file which then replaces the old
+ * one.
+ *
+ * Writes are forced to disk according to the sync interval given to the
+ * constructor: 0 forces every write before it returns, a positive
+ * interval forces writes in the background at most that many milliseconds
+ * after they happen and a negative interval leaves it up to the OS.
+ *
+ * Each entry looks like this:
+ * [int length][int crc][byte op][int key length][key bytes][value bytes]
+ * where length and crc cover everything after the crc.
+ *
+ * @author westy
+ */
+public class LogStructuredStore {
+
+  private static final String LOG_FILE = "data.log";
+  private static final String COMPACT_FILE = "data.log.compact";
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  // length + crc
+  private static final int HEADER_SIZE = 8;
+  // Don't bother compacting small logs
+  private static final long MIN_COMPACTION_SIZE = 16 * 1024 * 1024;
+
+  private static class Location {
+
+    private final long position;
+    private final int size;
+
+    Location(long position, int size) {
+      this.position = position;
+      this.size = size;
+    }
+  }
+
+  private final File directory;
+  private final int syncIntervalMillis;
+  private final ConcurrentHashMap<String, Location> keyDir = new ConcurrentHashMap<>();
+  // Readers and appenders hold the read lock, compaction swaps files under the write lock.
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Object appendLock = new Object();
+  private final ScheduledExecutorService syncer;
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private long end;
+  private long garbage;
+  private volatile boolean dirty;
+
+  /**
+   * Opens (or creates) the store in directory.
+   *
+   * @param directory
+   * @param syncIntervalMillis
+   * @throws IOException
+   */
+  public LogStructuredStore(File directory, int syncIntervalMillis) throws IOException {
+    this.directory = directory;
+    this.syncIntervalMillis = syncIntervalMillis;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    // A leftover from a compaction that didn't finish
+    Files.deleteIfExists(new File(directory, COMPACT_FILE).toPath());
+    open();
+    recover();
+    if (syncIntervalMillis > 0) {
+      syncer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "LogStructuredStore-sync-" + directory.getName());
+        thread.setDaemon(true);
+        return thread;
+      });
+      syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+              TimeUnit.MILLISECONDS);
+    } else {
+      syncer = null;
+    }
+  }
+
+  private void open() throws IOException {
+    file = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+    channel = file.getChannel();
+  }
+
+  private void recover() throws IOException {
+    long size = channel.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (position + HEADER_SIZE <= size) {
+      header.clear();
+      readFully(header, position);
+      header.flip();
+      int length = header.getInt();
+      int crc = header.getInt();
+      if (length <= 0 || position + HEADER_SIZE + length > size) {
+        break;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      readFully(body, position + HEADER_SIZE);
+      if (crc(body.array()) != crc) {
+        break;
+      }
+      body.flip();
+      byte op = body.get();
+      byte[] key = new byte[body.getInt()];
+      body.get(key);
+      Location old;
+      int entrySize = HEADER_SIZE + length;
+      if (op == PUT) {
+        old = keyDir.put(new String(key, StandardCharsets.UTF_8), new Location(position, entrySize));
+      } else {
+        old = keyDir.remove(new String(key, StandardCharsets.UTF_8));
+        garbage += entrySize;
+      }
+      if (old != null) {
+        garbage += old.size;
+      }
+      position += entrySize;
+    }
+    if (position < size) {
+      DatabaseConfig.getLogger().log(Level.WARNING,
+              "Truncating {0} bytes of incomplete log entries in {1}",
+              new Object[]{size - position, directory});
+      channel.truncate(position);
+      channel.force(true);
+    }
+    end = position;
+  }
+
+  /**
+   * Returns the value of key or null if there isn't one.
+   *
+   * @param key
+   * @return the value or null
+   * @throws IOException
+   */
+  public String get(String key) throws IOException {
+    lock.readLock().lock();
+    try {
+      Location location = keyDir.get(key);
+      if (location == null) {
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(location.size);
+      readFully(buffer, location.position);
+      buffer.flip();
+      buffer.position(HEADER_SIZE + 1);
+      int keyLength = buffer.getInt();
+      int offset = HEADER_SIZE + 1 + 4 + keyLength;
+      return new String(buffer.array(), offset, location.size - offset, StandardCharsets.UTF_8);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns true if there is a value for key.
+   *
+   * @param key
+   * @return true if key is present
+   */
+  public boolean containsKey(String key) {
+    return keyDir.containsKey(key);
+  }
+
+  /**
+   * Returns a live view of the keys in the store.
+   *
+   * @return the keys
+   */
+  public Set<String> keySet() {
+    return keyDir.keySet();
+  }
+
+  /**
+   * Sets the value of key.
+   *
+   * @param key
+   * @param value
+   * @throws IOException
+   */
+  public void put(String key, String value) throws IOException {
+    append(PUT, key, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Removes key. Does nothing if key isn't present.
+   *
+   * @param key
+   * @throws IOException
+   */
+  public void remove(String key) throws IOException {
+    if (keyDir.containsKey(key)) {
+      append(DELETE, key, new byte[0]);
+    }
+  }
+
+  private void append(byte op, String key, byte[] value) throws IOException {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int length = 1 + 4 + keyBytes.length + value.length;
+    ByteBuffer body = ByteBuffer.allocate(length);
+    body.put(op).putInt(keyBytes.length).put(keyBytes).put(value);
+    ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + length);
+    entry.putInt(length).putInt(crc(body.array())).put(body.array());
+    entry.flip();
+    boolean compact;
+    lock.readLock().lock();
+    try {
+      synchronized (appendLock) {
+        long position = end;
+        while (entry.hasRemaining()) {
+          position += channel.write(entry, position);
+        }
+        Location old;
+        if (op == PUT) {
+          old = keyDir.put(key, new Location(end, HEADER_SIZE + length));
+        } else {
+          old = keyDir.remove(key);
+          garbage += HEADER_SIZE + length;
+        }
+        if (old != null) {
+          garbage += old.size;
+        }
+        end = position;
+        compact = end > MIN_COMPACTION_SIZE && garbage > end / 2;
+      }
+      if (syncIntervalMillis == 0) {
+        channel.force(false);
+      } else {
+        dirty = true;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (compact) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the log so that it only contains the live entries.
+   *
+   * @throws IOException
+   */
+  public void compact() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (garbage == 0) {
+        return;
+      }
+      long before = end;
+      File compactFile = new File(directory, COMPACT_FILE);
+      long position = 0;
+      try (RandomAccessFile compacted = new RandomAccessFile(compactFile, "rw")) {
+        FileChannel out = compacted.getChannel();
+        out.truncate(0);
+        Iterator<Map.Entry<String, Location>> iterator = keyDir.entrySet().iterator();
+        while (iterator.hasNext()) {
+          Map.Entry<String, Location> entry = iterator.next();
+          ByteBuffer buffer = ByteBuffer.allocate(entry.getValue().size);
+          readFully(buffer, entry.getValue().position);
+          buffer.flip();
+          entry.setValue(new Location(position, entry.getValue().size));
+          while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+          }
+        }
+        out.force(true);
+      }
+      channel.close();
+      file.close();
+      Files.move(compactFile.toPath(), new File(directory, LOG_FILE).toPath(),
+              StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      open();
+      end = position;
+      garbage = 0;
+      DatabaseConfig.getLogger().log(Level.FINE, "Compacted {0} from {1} to {2} bytes",
+              new Object[]{directory, before, end});
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Forces all writes to disk.
+   *
+   * @throws IOException
+   */
+  public void sync() throws IOException {
+    lock.readLock().lock();
+    try {
+      dirty = false;
+      channel.force(false);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void syncQuietly() {
+    if (dirty) {
+      try {
+        sync();
+      } catch (IOException e) {
+        DatabaseConfig.getLogger().log(Level.WARNING, "Unable to sync {0}: {1}",
+                new Object[]{directory, e.getMessage()});
+      }
+    }
+  }
+
+  /**
+   * Syncs and closes the store.
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (syncer != null) {
+      syncer.shutdownNow();
+    }
+    lock.writeLock().lock();
+    try {
+      if (syncIntervalMillis >= 0) {
+        channel.force(true);
+      }
+      channel.close();
+      file.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all keys and deletes the log.
+   *
+   * @throws IOException
+   */
+  public void clear() throws IOException {
+    lock.writeLock().lock();
+    try {
+      keyDir.clear();
+      channel.truncate(0);
+      channel.force(true);
+      end = 0;
+      garbage = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of " + directory + "/" + LOG_FILE);
+      }
+      position += read;
+    }
+  }
+
+  private static int crc(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+}
@@ -147,4 +147,12 @@ public class MongoRecordCursor extends AbstractRecordCursor {
               "Original mongo exception:" + e.getMessage());
     }
   }
+
+  /**
+   * Closes the underlying mongo cursor.
+   */
+  @Override
+  public void close() {
+    cursor.close();
+  }
 }
@@ -47,6 +47,7 @@ import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
@@ -312,7 +313,8 @@ public class MongoRecords implements NoSQLRecords {
         ValuesMap valuesMap = new ValuesMap();
         for (int i = 0; i < valuesMapKeys.size(); i++) {
           String userKey = valuesMapKeys.get(i).getName();
-          if (containsFieldDotNotation(userKey, bson) == false) {
+          Object value = FieldPath.get(userKey).getValue(bson);
+          if (value == null) {
             DatabaseConfig.getLogger().log(Level.FINE,
                     "{0} DBObject doesn't contain {1}", new Object[]{dbName, userKey});
 
@@ -321,14 +323,13 @@ public class MongoRecords implements NoSQLRecords {
           try {
             switch (valuesMapKeys.get(i).type()) {
               case USER_JSON:
-                Object value = getWithDotNotation(userKey, bson);
                 DatabaseConfig.getLogger().log(Level.FINE,
-                        "{0} Object is {1}", new Object[]{dbName, value.toString()});
+                        "{0} Object is {1}", new Object[]{dbName, value});
                 valuesMap.put(userKey, value);
                 break;
               case LIST_STRING:
                 valuesMap.putAsArray(userKey,
-                        JSONUtils.JSONArrayToResultValue(new JSONArray(getWithDotNotation(userKey, bson).toString())));
+                        JSONUtils.JSONArrayToResultValue(new JSONArray(value.toString())));
                 break;
               default:
                 DatabaseConfig.getLogger().log(Level.SEVERE,
@@ -353,33 +354,6 @@ public class MongoRecords implements NoSQLRecords {
     }
   }
 
-  private Object getWithDotNotation(String key, BasicDBObject bson) throws JSONException {
-    if (key.contains(".")) {
-      int indexOfDot = key.indexOf(".");
-      String subKey = key.substring(0, indexOfDot);
-      BasicDBObject subBson = (BasicDBObject) bson.get(subKey);
-      if (subBson == null) {
-        throw new JSONException(subKey + " is null");
-      }
-      try {
-        return getWithDotNotation(key.substring(indexOfDot + 1), subBson);
-      } catch (JSONException e) {
-        throw new JSONException(subKey + "." + e.getMessage());
-      }
-    } else {
-      Object result = bson.get(key);
-      return result;
-    }
-  }
-
-  private boolean containsFieldDotNotation(String key, BasicDBObject bson) {
-    try {
-      return getWithDotNotation(key, bson) != null;
-    } catch (JSONException e) {
-      return false;
-    }
-  }
-
   @Override
   public boolean contains(String collectionName, String guid) throws FailedDBOperationException {
     db.requestStart();
@@ -651,7 +625,7 @@ public class MongoRecords implements NoSQLRecords {
     return box;
   }
 
-  private final static double METERS_PER_DEGREE = 111.12 * 1000; // at the equator
+  final static double METERS_PER_DEGREE = 111.12 * 1000; // at the equator
 
   @Override
   public MongoRecordCursor selectRecordsNear(String collectionName, ColumnField valuesMapField, String key, String value,
@@ -704,11 +678,7 @@ public class MongoRecords implements NoSQLRecords {
     DBCollection collection = db.getCollection(collectionName);
     DBCursor cursor = null;
     try {
-      if (projection == null
-              // this handles the special case of the user wanting all fields 
-              // in the projection
-              || (!projection.isEmpty()
-              && projection.get(0).equals(GNSProtocol.ENTIRE_RECORD.toString()))) {
+      if (isEntireRecord(projection)) {
         cursor = collection.find(parseMongoQuery(query, valuesMapField));
       } else {
         cursor = collection.find(parseMongoQuery(query, valuesMapField), generateProjection(projection));
@@ -725,7 +695,31 @@ public class MongoRecords implements NoSQLRecords {
     return new MongoRecordCursor(cursor, mongoCollectionSpecs.getCollectionSpec(collectionName).getPrimaryKey());
   }
 
-  private DBObject parseMongoQuery(String query, ColumnField valuesMapField) {
+  /**
+   * Returns true if the projection of a select query means the entire
+   * record.
+   * Also used by {@link EmbeddedRecords} and {@link DiskMapRecords}.
+   *
+   * @param projection
+   * @return true if the entire record should be returned
+   */
+  static boolean isEntireRecord(List<String> projection) {
+    return projection == null
+            // this handles the special case of the user wanting all fields 
+            // in the projection
+            || (!projection.isEmpty()
+            && projection.get(0).equals(GNSProtocol.ENTIRE_RECORD.toString()));
+  }
+
+  /**
+   * Converts a GNS select query into the mongo query language.
+   * Also used by {@link EmbeddedRecords} which evaluates the same language.
+   *
+   * @param query
+   * @param valuesMapField
+   * @return the mongo query string
+   */
+  static String toMongoQuery(String query, ColumnField valuesMapField) {
     // convert something like this: ~fred : ($gt: 0) into the queryable 
     // format, namely this: {~nr_valuesMap.fred : ($gt: 0)}
     String edittedQuery = query;
@@ -736,7 +730,11 @@ public class MongoRecords implements NoSQLRecords {
     // Filter out HRN records
     String guidFilter = "{" + NameRecord.VALUES_MAP.getName()
             + "." + AccountAccess.GUID_INFO + ": { $exists: true}}";
-    edittedQuery = buildAndQuery(guidFilter, edittedQuery);
+    return buildAndQuery(guidFilter, edittedQuery);
+  }
+
+  private DBObject parseMongoQuery(String query, ColumnField valuesMapField) {
+    String edittedQuery = toMongoQuery(query, valuesMapField);
     try {
       DatabaseConfig.getLogger().log(Level.FINE, "{0} Edited query = {1}",
               new Object[]{dbName, edittedQuery});
@@ -769,22 +767,38 @@ public static String buildAndQuery(String... querys) {
   private DBObject generateProjection(List<String> fields) {
     // produces { field1: true, field2: true ... }
     DBObject result = new BasicDBObject();
+    for (String field : getProjectionFields(fields)) {
+      result.put(field, "true");
+    }
+    return result;
+  }
+
+  /**
+   * Returns the full (dotted) names of the fields that a select with the
+   * given user projection returns.
+   * Also used by {@link EmbeddedRecords}.
+   *
+   * @param fields
+   * @return a list of dotted field names
+   */
+  static List<String> getProjectionFields(List<String> fields) {
+    List<String> result = new ArrayList<>();
     // Always return the guid
-    result.put(NameRecord.NAME.getName(), "true");
+    result.add(NameRecord.NAME.getName());
     // Put this in so the upstream receiver knows that it is a GUID record
-    result.put(NameRecord.VALUES_MAP.getName() + "." + AccountAccess.GUID_INFO, "true");
+    result.add(NameRecord.VALUES_MAP.getName() + "." + AccountAccess.GUID_INFO);
     
     
     // aditya: We also read the ACL fields here. We only need to read the read acls for 
     // select requests. Although, by reading the prefix of READ_WHITELIST we read 
     // the full ACL. 
-    result.put(NameRecord.VALUES_MAP.getName() + "." 
-    				+ MetaDataTypeName.READ_WHITELIST.getPrefix(), "true");
+    result.add(NameRecord.VALUES_MAP.getName() + "." 
+    				+ MetaDataTypeName.READ_WHITELIST.getPrefix());
     
     
     // Add all the fields in the projection
     for (String field : fields) {
-      result.put(NameRecord.VALUES_MAP.getName() + "." + field, "true");
+      result.add(NameRecord.VALUES_MAP.getName() + "." + field);
     }
     return result;
   }
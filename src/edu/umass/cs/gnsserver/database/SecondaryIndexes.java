@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2017
+ * University of Massachusetts
+ * All Rights Reserved
+ *
+ * Initial developer(s): Westy.
+ */
+package edu.umass.cs.gnsserver.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+
+/**
+ * In-process secondary indexes over the records of one collection.
+ *
+ * Indexes are created with the same index types that mongo uses:
+ * "hashed" creates a hash index which supports equality and $in, "2d" and
+ * "2dsphere" create a grid index which supports $geoWithin with $box and
+ * $near, and anything else (1, -1 ...) creates a sorted index which
+ * supports equality, $in and ranges. Indexes map field values to record
+ * names and are kept up to date by calling {@link #update} with the
+ * before and after versions of every record that is written.
+ *
+ * {@link #getCandidates} uses the indexes to find the names of the records
+ * that might match a query. The candidates are a superset of the matching
+ * records so callers still need to check each one with a
+ * {@link JSONQueryMatcher}. Indexes only live in memory.
+ *
+ * @author westy
+ */
+public class SecondaryIndexes {
+
+  /**
+   * Reads all the records of a collection to populate a new index.
+   */
+  public interface RecordScanner {
+
+    /**
+     * Returns a cursor over all the records.
+     *
+     * @return a cursor
+     * @throws FailedDBOperationException
+     */
+    AbstractRecordCursor getAllRows() throws FailedDBOperationException;
+  }
+
+  // The size in degrees of a cell in the geo index grid.
+  private static final double GRID_CELL_SIZE = 1.0;
+  // Queries that cover more cells than this scan the whole geo index.
+  private static final int MAX_GRID_CELLS = 4096;
+
+  private final String nameField;
+  private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * @param nameField - the field that holds the name of a record
+   */
+  public SecondaryIndexes(String nameField) {
+    this.nameField = nameField;
+  }
+
+  /**
+   * @return true if there are no indexes
+   */
+  public boolean isEmpty() {
+    return indexes.isEmpty();
+  }
+
+  /**
+   * Creates an index on the dotted field path and populates it with the
+   * current records. Does nothing if there is already an index on path.
+   *
+   * @param path
+   * @param type - the mongo index type
+   * @param scanner
+   * @throws FailedDBOperationException
+   */
+  public void createIndex(String path, String type, RecordScanner scanner)
+          throws FailedDBOperationException {
+    Index index;
+    if ("2d".equals(type) || "2dsphere".equals(type)) {
+      index = new GeoIndex(path);
+    } else if ("hashed".equals(type)) {
+      index = new ValueIndex(path, new HashMap<>());
+    } else {
+      index = new ValueIndex(path, new TreeMap<>(VALUE_ORDER));
+    }
+    synchronized (index) {
+      // Register it first so writes that happen during the scan
+      // block on the index and are applied after it.
+      if (indexes.putIfAbsent(path, index) != null) {
+        return;
+      }
+      try {
+        AbstractRecordCursor cursor = scanner.getAllRows();
+        while (cursor.hasNext()) {
+          JSONObject record = cursor.nextJSONObject();
+          index.add(record.optString(nameField), record);
+        }
+      } catch (FailedDBOperationException | RuntimeException e) {
+        indexes.remove(path);
+        throw e;
+      }
+    }
+    DatabaseConfig.getLogger().log(Level.INFO, "Created {0} index on {1} with {2} entries",
+            new Object[]{type, path, index.size()});
+  }
+
+  /**
+   * Updates the indexes after a write. Before is null for a new record
+   * and after is null for a removed one.
+   *
+   * @param name
+   * @param before
+   * @param after
+   */
+  public void update(String name, JSONObject before, JSONObject after) {
+    for (Index index : indexes.values()) {
+      synchronized (index) {
+        if (before != null) {
+          index.remove(name, before);
+        }
+        if (after != null) {
+          index.add(name, after);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the names of the records that might match query or null if
+   * the indexes can't narrow it down.
+   *
+   * @param query
+   * @return the candidate names or null
+   * @throws JSONException
+   */
+  public Collection<String> getCandidates(JSONObject query) throws JSONException {
+    if (indexes.isEmpty()) {
+      return null;
+    }
+    Collection<String> best = null;
+    Iterator<?> keys = query.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      Collection<String> candidates = null;
+      if ("$and".equals(key)) {
+        JSONArray clauses = query.getJSONArray(key);
+        for (int i = 0; i < clauses.length(); i++) {
+          candidates = smallest(candidates, getCandidates(clauses.getJSONObject(i)));
+        }
+      } else if ("$or".equals(key)) {
+        JSONArray clauses = query.getJSONArray(key);
+        Set<String> union = new LinkedHashSet<>();
+        for (int i = 0; i < clauses.length() && union != null; i++) {
+          Collection<String> clause = getCandidates(clauses.getJSONObject(i));
+          if (clause == null) {
+            union = null;
+          } else {
+            union.addAll(clause);
+          }
+        }
+        candidates = union;
+      } else if (!key.startsWith("$")) {
+        Index index = indexes.get(key);
+        if (index != null) {
+          synchronized (index) {
+            candidates = index.find(query.get(key));
+          }
+        }
+      }
+      best = smallest(best, candidates);
+    }
+    return best;
+  }
+
+  private static Collection<String> smallest(Collection<String> a, Collection<String> b) {
+    if (a == null) {
+      return b;
+    } else if (b == null) {
+      return a;
+    }
+    return a.size() <= b.size() ? a : b;
+  }
+
+  private static abstract class Index {
+
+    final String path;
+
+    Index(String path) {
+      this.path = path;
+    }
+
+    abstract void add(String name, JSONObject record);
+
+    abstract void remove(String name, JSONObject record);
+
+    /**
+     * Returns the names of the records that might match the condition on
+     * this field or null if this index can't be used for it.
+     */
+    abstract Collection<String> find(Object condition) throws JSONException;
+
+    abstract int size();
+
+    static void add(Map<Object, Set<String>> map, Object key, String name) {
+      Set<String> names = map.get(key);
+      if (names == null) {
+        map.put(key, names = new HashSet<>());
+      }
+      names.add(name);
+    }
+
+    static void remove(Map<Object, Set<String>> map, Object key, String name) {
+      Set<String> names = map.get(key);
+      if (names != null && names.remove(name) && names.isEmpty()) {
+        map.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Orders numbers, then strings, then booleans.
+   */
+  private static final Comparator<Object> VALUE_ORDER = (Object a, Object b) -> {
+    int rank = Integer.compare(rank(a), rank(b));
+    return rank != 0 ? rank : JSONQueryMatcher.compare(a, b);
+  };
+
+  private static int rank(Object value) {
+    return value instanceof Number ? 0 : value instanceof String ? 1 : 2;
+  }
+
+  /**
+   * Returns the value as an index key or null if it isn't a scalar.
+   * Numbers are all stored as doubles since that's how they're compared.
+   */
+  private static Object toKey(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    } else if (value instanceof String || value instanceof Boolean) {
+      return value;
+    }
+    return null;
+  }
+
+  private static class ValueIndex extends Index {
+
+    private final Map<Object, Set<String>> map;
+
+    ValueIndex(String path, Map<Object, Set<String>> map) {
+      super(path);
+      this.map = map;
+    }
+
+    private Set<Object> getKeys(JSONObject record) {
+      Set<Object> keys = new HashSet<>();
+      for (Object value : JSONQueryMatcher.resolve(record, path)) {
+        if (value instanceof JSONArray) {
+          // Like a mongo multikey index
+          JSONArray array = (JSONArray) value;
+          for (int i = 0; i < array.length(); i++) {
+            Object key = toKey(array.opt(i));
+            if (key != null) {
+              keys.add(key);
+            }
+          }
+        } else {
+          Object key = toKey(value);
+          if (key != null) {
+            keys.add(key);
+          }
+        }
+      }
+      return keys;
+    }
+
+    @Override
+    void add(String name, JSONObject record) {
+      for (Object key : getKeys(record)) {
+        add(map, key, name);
+      }
+    }
+
+    @Override
+    void remove(String name, JSONObject record) {
+      for (Object key : getKeys(record)) {
+        remove(map, key, name);
+      }
+    }
+
+    @Override
+    Collection<String> find(Object condition) throws JSONException {
+      Object key = toKey(condition);
+      if (key != null) {
+        return lookup(key);
+      }
+      if (!(condition instanceof JSONObject)) {
+        return null;
+      }
+      JSONObject operators = (JSONObject) condition;
+      if (operators.has("$eq") && toKey(operators.get("$eq")) != null) {
+        return lookup(toKey(operators.get("$eq")));
+      }
+      if (operators.has("$in")) {
+        JSONArray values = operators.getJSONArray("$in");
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < values.length(); i++) {
+          if ((key = toKey(values.get(i))) == null) {
+            return null;
+          }
+          result.addAll(lookup(key));
+        }
+        return result;
+      }
+      if (map instanceof TreeMap) {
+        return range(operators);
+      }
+      return null;
+    }
+
+    private Collection<String> lookup(Object key) {
+      Set<String> names = map.get(key);
+      return names == null ? new ArrayList<>() : new ArrayList<>(names);
+    }
+
+    private Collection<String> range(JSONObject operators) throws JSONException {
+      Object low = null;
+      Object high = null;
+      boolean lowInclusive = true;
+      boolean highInclusive = true;
+      if (operators.has("$gt") || operators.has("$gte")) {
+        lowInclusive = !operators.has("$gt");
+        low = toKey(operators.get(lowInclusive ? "$gte" : "$gt"));
+        if (low == null) {
+          return null;
+        }
+      }
+      if (operators.has("$lt") || operators.has("$lte")) {
+        highInclusive = !operators.has("$lt");
+        high = toKey(operators.get(highInclusive ? "$lte" : "$lt"));
+        if (high == null) {
+          return null;
+        }
+      }
+      if (low == null && high == null) {
+        return null;
+      }
+      // Comparisons only match values of the same type
+      Object type = low != null ? low : high;
+      TreeMap<Object, Set<String>> tree = (TreeMap<Object, Set<String>>) map;
+      Map<Object, Set<String>> subMap;
+      if (low != null && high != null) {
+        if (rank(low) != rank(high) || VALUE_ORDER.compare(low, high) > 0) {
+          return new ArrayList<>();
+        }
+        subMap = tree.subMap(low, lowInclusive, high, highInclusive);
+      } else if (low != null) {
+        subMap = tree.tailMap(low, lowInclusive);
+      } else {
+        subMap = tree.headMap(high, highInclusive).descendingMap();
+      }
+      List<String> result = new ArrayList<>();
+      for (Map.Entry<Object, Set<String>> entry : subMap.entrySet()) {
+        if (rank(entry.getKey()) != rank(type)) {
+          break;
+        }
+        result.addAll(entry.getValue());
+      }
+      return result;
+    }
+
+    @Override
+    int size() {
+      return map.size();
+    }
+  }
+
+  /**
+   * A uniform grid over legacy coordinate pairs (or GeoJSON points).
+   */
+  private static class GeoIndex extends Index {
+
+    private final Map<Object, Set<String>> cells = new HashMap<>();
+
+    GeoIndex(String path) {
+      super(path);
+    }
+
+    private static long cell(double x, double y) {
+      long cellX = (long) Math.floor(x / GRID_CELL_SIZE);
+      long cellY = (long) Math.floor(y / GRID_CELL_SIZE);
+      return (cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+    private Set<Object> getCells(JSONObject record) {
+      Set<Object> result = new HashSet<>();
+      for (Object value : JSONQueryMatcher.resolve(record, path)) {
+        double[] point = JSONQueryMatcher.toPoint(value);
+        if (point != null) {
+          result.add(cell(point[0], point[1]));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    void add(String name, JSONObject record) {
+      for (Object cell : getCells(record)) {
+        add(cells, cell, name);
+      }
+    }
+
+    @Override
+    void remove(String name, JSONObject record) {
+      for (Object cell : getCells(record)) {
+        remove(cells, cell, name);
+      }
+    }
+
+    @Override
+    Collection<String> find(Object condition) throws JSONException {
+      if (!(condition instanceof JSONObject)) {
+        return null;
+      }
+      JSONObject operators = (JSONObject) condition;
+      JSONObject within = operators.optJSONObject("$geoWithin");
+      if (within == null) {
+        within = operators.optJSONObject("$within");
+      }
+      if (within != null && within.has("$box")) {
+        JSONArray box = within.getJSONArray("$box");
+        return findInBox(box.getJSONArray(0).getDouble(0), box.getJSONArray(0).getDouble(1),
+                box.getJSONArray(1).getDouble(0), box.getJSONArray(1).getDouble(1));
+      }
+      if (operators.has("$near") && operators.opt("$maxDistance") instanceof Number) {
+        double[] center = JSONQueryMatcher.toPoint(operators.get("$near"));
+        double distance = ((Number) operators.get("$maxDistance")).doubleValue();
+        if (center != null) {
+          return findInBox(center[0] - distance, center[1] - distance,
+                  center[0] + distance, center[1] + distance);
+        }
+      }
+      return null;
+    }
+
+    private Collection<String> findInBox(double x1, double y1, double x2, double y2) {
+      long lowX = (long) Math.floor(Math.min(x1, x2) / GRID_CELL_SIZE);
+      long highX = (long) Math.floor(Math.max(x1, x2) / GRID_CELL_SIZE);
+      long lowY = (long) Math.floor(Math.min(y1, y2) / GRID_CELL_SIZE);
+      long highY = (long) Math.floor(Math.max(y1, y2) / GRID_CELL_SIZE);
+      Set<String> result = new HashSet<>();
+      if ((highX - lowX + 1) * (highY - lowY + 1) > Math.min(MAX_GRID_CELLS, cells.size())) {
+        // cheaper to look at every occupied cell
+        for (Map.Entry<Object, Set<String>> entry : cells.entrySet()) {
+          long cell = (Long) entry.getKey();
+          long cellX = cell >> 32;
+          long cellY = (int) cell;
+          if (cellX >= lowX && cellX <= highX && cellY >= lowY && cellY <= highY) {
+            result.addAll(entry.getValue());
+          }
+        }
+      } else {
+        for (long x = lowX; x <= highX; x++) {
+          for (long y = lowY; y <= highY; y++) {
+            Set<String> names = cells.get((x << 32) | (y & 0xffffffffL));
+            if (names != null) {
+              result.addAll(names);
+            }
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    int size() {
+      return cells.size();
+    }
+  }
+}
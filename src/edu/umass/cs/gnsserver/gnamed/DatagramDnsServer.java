@@ -0,0 +1,273 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import edu.umass.cs.gnscommon.utils.ThreadUtils;
+import edu.umass.cs.gnsserver.main.GNSConfig;
+import edu.umass.cs.gnsserver.utils.Shutdownable;
+import edu.umass.cs.utils.Config;
+
+/**
+ * A DNS server that serves requests through UDP using a non blocking
+ * {@link DatagramChannel}.
+ *
+ * One thread receives the queries into buffers from a {@link DnsBufferPool}
+ * and hands them to a fixed number of worker threads, set with
+ * {@link GNSConfig.GNSC#DNS_SERVER_WORKER_THREADS}, which answer them with
+ * a {@link LookupWorker}. Queries that arrive while all the workers are busy
+ * and their queue is full are dropped; the clients retry them.
+ *
+ * Workers that race a GNS lookup against a DNS lookup run both on a shared
+ * pool of {@link GNSConfig.GNSC#DNS_SERVER_LOOKUP_THREADS} threads.
+ *
+ * Supports EDNS0 so responses can be as large as
+ * {@link GNSConfig.GNSC#DNS_EDNS_PAYLOAD_SIZE} if the client allows it.
+ *
+ * @author westy
+ */
+public abstract class DatagramDnsServer extends Thread implements Shutdownable {
+
+  // How often the latency histogram is logged.
+  private static final long STATS_INTERVAL = 60000; // In ms.
+
+  private final DatagramChannel channel;
+  private final Selector selector;
+  private final ThreadPoolExecutor executor;
+  private final ThreadPoolExecutor lookupExecutor;
+  private final DnsBufferPool bufferPool;
+  private final int ednsPayloadSize;
+  private final DnsLatencyHistogram latencies = new DnsLatencyHistogram();
+  private final AtomicLong droppedQueries = new AtomicLong();
+  private volatile boolean running = true;
+
+  /**
+   * Creates a new <code>DatagramDnsServer</code> object bound to the given IP/port.
+   *
+   * @param addr IP to bind (0.0.0.0 is acceptable)
+   * @param port port to bind (53 is default for DNS)
+   * @param name the name of the receiving thread
+   * @throws IOException
+   */
+  public DatagramDnsServer(InetAddress addr, int port, String name) throws IOException {
+    super(name);
+    this.ednsPayloadSize = Math.max(Config.getGlobalInt(GNSConfig.GNSC.DNS_EDNS_PAYLOAD_SIZE), 512);
+    int workers = Math.max(Config.getGlobalInt(GNSConfig.GNSC.DNS_SERVER_WORKER_THREADS), 1);
+    int queueSize = Math.max(Config.getGlobalInt(GNSConfig.GNSC.DNS_SERVER_QUEUE_SIZE), 1);
+    // Every queued query holds a buffer so the pool only needs to be that large.
+    this.bufferPool = new DnsBufferPool(ednsPayloadSize, queueSize + 2 * workers);
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), (Runnable r) -> {
+              Thread thread = new Thread(r, getName() + "Worker" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    // Each worker runs at most two lookups at once so by default they never wait.
+    int lookupThreads = Config.getGlobalInt(GNSConfig.GNSC.DNS_SERVER_LOOKUP_THREADS) > 0
+            ? Config.getGlobalInt(GNSConfig.GNSC.DNS_SERVER_LOOKUP_THREADS) : 2 * workers;
+    final AtomicInteger lookupThreadCount = new AtomicInteger();
+    this.lookupExecutor = new ThreadPoolExecutor(lookupThreads, lookupThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(lookupThreads), (Runnable r) -> {
+              Thread thread = new Thread(r, getName() + "Lookup" + lookupThreadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            // If all the lookup threads are busy the worker does the lookup itself.
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    // Bind last so that nothing else can fail with the port taken.
+    this.channel = DatagramChannel.open();
+    Selector opened = null;
+    try {
+      this.channel.bind(new InetSocketAddress(addr, port));
+      this.channel.configureBlocking(false);
+      opened = Selector.open();
+      this.channel.register(opened, SelectionKey.OP_READ);
+    } catch (IOException e) {
+      if (opened != null) {
+        opened.close();
+      }
+      channel.close();
+      throw e;
+    }
+    this.selector = opened;
+  }
+
+  /**
+   * Returns the worker that answers the query in {@code query}.
+   *
+   * @param query a buffer from {@link #getBufferPool} that holds the query;
+   * the worker releases it
+   * @param client the address the query came from
+   * @param receivedNanos when the query was received
+   * @return a LookupWorker
+   */
+  protected abstract LookupWorker createWorker(ByteBuffer query, InetSocketAddress client,
+          long receivedNanos);
+
+  /**
+   * @return the port the server is bound to
+   */
+  public int getLocalPort() {
+    return channel.socket().getLocalPort();
+  }
+
+  /**
+   * @return the executor that runs the GNS and DNS lookups of the workers
+   */
+  public ExecutorService getLookupExecutor() {
+    return lookupExecutor;
+  }
+
+  /**
+   * @return the pool of the buffers of the queries and responses
+   */
+  public DnsBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * @return the largest response, in bytes, this server sends to EDNS0 clients
+   */
+  public int getEdnsPayloadSize() {
+    return ednsPayloadSize;
+  }
+
+  /**
+   * @return the time it took to answer the queries
+   */
+  public DnsLatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * @return the number of queries dropped because the workers were too busy
+   */
+  public long getDroppedQueries() {
+    return droppedQueries.get();
+  }
+
+  @Override
+  public void run() {
+    long lastStats = System.currentTimeMillis();
+    while (running) {
+      try {
+        selector.select(1000);
+        selector.selectedKeys().clear();
+        receiveQueries();
+      } catch (ClosedChannelException | ClosedSelectorException e) {
+        break;
+      } catch (IOException e) {
+        if (!running) {
+          break;
+        }
+        NameResolution.getLogger().log(Level.SEVERE,
+                "Error in {0} (will sleep for 3 seconds and try again): {1}", new Object[]{getName(), e});
+        ThreadUtils.sleep(3000);
+      }
+      if (System.currentTimeMillis() - lastStats > STATS_INTERVAL) {
+        lastStats = System.currentTimeMillis();
+        NameResolution.getLogger().log(Level.FINE, "{0} queries={1} dropped={2} latencies: {3}",
+                new Object[]{getName(), latencies.getCount(), droppedQueries.get(), latencies});
+      }
+    }
+  }
+
+  // Reads all the queries that are waiting in the channel.
+  private void receiveQueries() throws IOException {
+    while (true) {
+      ByteBuffer query = bufferPool.acquire();
+      InetSocketAddress client = (InetSocketAddress) channel.receive(query);
+      if (client == null) {
+        bufferPool.release(query);
+        return;
+      }
+      long receivedNanos = System.nanoTime();
+      query.flip();
+      try {
+        executor.execute(createWorker(query, client, receivedNanos));
+      } catch (RejectedExecutionException e) {
+        bufferPool.release(query);
+        if (droppedQueries.incrementAndGet() % 1000 == 1) {
+          NameResolution.getLogger().log(Level.WARNING,
+                  "{0} is overloaded, {1} queries dropped so far",
+                  new Object[]{getName(), droppedQueries.get()});
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends a response to a client. Can be called by several workers at once.
+   *
+   * @param response
+   * @param client
+   * @param receivedNanos when the query was received
+   */
+  public void sendResponse(byte[] response, InetSocketAddress client, long receivedNanos) {
+    ByteBuffer buffer = response.length <= bufferPool.getBufferSize() ? bufferPool.acquire()
+            : ByteBuffer.allocateDirect(response.length);
+    try {
+      buffer.put(response).flip();
+      // A non blocking send drops the response if the socket's buffer is full,
+      // just like the network could.
+      if (channel.send(buffer, client) == 0) {
+        NameResolution.getLogger().log(Level.FINE, "Response to {0} dropped", client);
+      } else {
+        NameResolution.getLogger().log(Level.FINE, "Response sent to {0}", client);
+      }
+    } catch (IOException e) {
+      NameResolution.getLogger().log(Level.SEVERE, "Failed to send response{0}", e);
+    } finally {
+      bufferPool.release(buffer);
+      latencies.record(System.nanoTime() - receivedNanos);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    executor.shutdown();
+    lookupExecutor.shutdownNow();
+    try {
+      selector.close();
+      channel.close();
+    } catch (IOException e) {
+      NameResolution.getLogger().log(Level.FINE, "Problem closing {0}: {1}", new Object[]{getName(), e});
+    }
+  }
+}
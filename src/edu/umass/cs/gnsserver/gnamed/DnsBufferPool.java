@@ -0,0 +1,86 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers that hold the DNS datagrams a
+ * {@link DatagramDnsServer} receives and sends so that serving
+ * a query doesn't allocate buffers.
+ *
+ * @author westy
+ */
+public class DnsBufferPool {
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  /**
+   * @param bufferSize - the capacity of each buffer
+   * @param maxPooled - the maximum number of idle buffers that are kept
+   */
+  public DnsBufferPool(int bufferSize, int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * @return the capacity of each buffer
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Returns a cleared buffer from the pool or a new one if the pool is empty.
+   *
+   * @return a buffer
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(bufferSize);
+    }
+    pooled.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool. The buffer must not be used afterwards.
+   *
+   * @param buffer
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer == null || buffer.capacity() != bufferSize) {
+      return;
+    }
+    if (pooled.incrementAndGet() <= maxPooled) {
+      buffers.offer(buffer);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+}
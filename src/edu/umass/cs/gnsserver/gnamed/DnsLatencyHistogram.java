@@ -0,0 +1,112 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of the time it takes to answer DNS queries.
+ *
+ * Bucket i counts the queries that took less than 2^i microseconds
+ * and at least half of that, so recording is just an atomic increment
+ * and the buckets cover everything from a microsecond to over an hour.
+ *
+ * @author westy
+ */
+public class DnsLatencyHistogram {
+
+  private static final int BUCKETS = 33;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  /**
+   * Records the latency of one query.
+   *
+   * @param nanos
+   */
+  public void record(long nanos) {
+    long micros = Math.max(nanos / 1000, 0);
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+    counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+  }
+
+  /**
+   * @return the number of queries recorded
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns an upper bound, in microseconds, of the latency of the given
+   * fraction of the queries.
+   *
+   * @param fraction - between 0 and 1, for instance 0.99
+   * @return the latency in microseconds or 0 if nothing was recorded
+   */
+  public long getPercentile(double fraction) {
+    long[] snapshot = snapshot();
+    long count = 0;
+    for (long bucketCount : snapshot) {
+      count += bucketCount;
+    }
+    long needed = (long) Math.ceil(count * fraction);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= needed && seen > 0) {
+        return 1L << i;
+      }
+    }
+    return 0;
+  }
+
+  private long[] snapshot() {
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Returns the non empty buckets like "<1024us:17 <2048us:3" and the
+   * median and 99th percentile.
+   *
+   * @return a string
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    long[] snapshot = snapshot();
+    for (int i = 0; i < BUCKETS; i++) {
+      if (snapshot[i] > 0) {
+        result.append('<').append(1L << i).append("us:").append(snapshot[i]).append(' ');
+      }
+    }
+    result.append("p50<").append(getPercentile(0.5)).append("us p99<")
+            .append(getPercentile(0.99)).append("us");
+    return result.toString();
+  }
+}
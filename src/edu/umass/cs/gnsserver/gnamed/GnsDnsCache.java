@@ -0,0 +1,304 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Caches the answers the DNS gateway builds from GNS records so that
+ * hot names are answered without reading the record store.
+ *
+ * An answer is kept for the smallest TTL of its records, at most
+ * {@link GNSC#DNS_GNS_CACHE_MAX_TTL} seconds, and the TTLs of the records
+ * served from the cache count down. NXDOMAIN answers and answers without
+ * records are kept for {@link GNSC#DNS_GNS_NEGATIVE_CACHE_TTL} seconds.
+ *
+ * Answers are indexed by the name of the domain's HRN record and by its guid.
+ * Updating, creating or removing either of these records on this name server
+ * removes the answer, see {@link #invalidateName}. Changes made on other name
+ * servers are only seen once the answer expires.
+ *
+ * @author westy
+ */
+public class GnsDnsCache {
+
+  private static final long MAX_ENTRIES = Config.getGlobalInt(GNSC.DNS_GNS_CACHE_SIZE);
+
+  private static final long MAX_TTL = Config.getGlobalInt(GNSC.DNS_GNS_CACHE_MAX_TTL);
+
+  private static final long NEGATIVE_TTL = Config.getGlobalInt(GNSC.DNS_GNS_NEGATIVE_CACHE_TTL);
+
+  private static final int[] SECTIONS = {Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL};
+
+  // The keys of the answers that came from each record.
+  private static final ConcurrentHashMap<String, Set<String>> KEYS_BY_NAME
+          = new ConcurrentHashMap<>();
+
+  // Bumped by every invalidation so answers read before it aren't stored after it.
+  private static final AtomicLong GENERATION = new AtomicLong();
+
+  private static final Cache<String, CachedAnswer> CACHE
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Math.max(MAX_ENTRIES, 1))
+          // Entries also expire by their own TTL, see get.
+          .expireAfterWrite(Math.max(Math.max(MAX_TTL, NEGATIVE_TTL), 1), TimeUnit.SECONDS)
+          .removalListener(new RemovalListener<String, CachedAnswer>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, CachedAnswer> notification) {
+              if (notification.getCause() != RemovalCause.REPLACED) {
+                unindex(notification.getKey(), notification.getValue().names);
+              }
+            }
+          })
+          .recordStats()
+          .build();
+
+  private static class CachedAnswer {
+
+    private final int rcode;
+    // The records of each of the SECTIONS.
+    private final Record[][] records;
+    private final long created;
+    private final long expires;
+    private final List<String> names;
+
+    private CachedAnswer(int rcode, Record[][] records, long ttl, List<String> names) {
+      this.rcode = rcode;
+      this.records = records;
+      this.created = System.currentTimeMillis();
+      this.expires = created + ttl * 1000;
+      this.names = names;
+    }
+  }
+
+  /**
+   * @return true unless the cache is turned off with a size of zero
+   */
+  public static boolean isEnabled() {
+    return MAX_ENTRIES > 0;
+  }
+
+  private static String getKey(String domainName, int type) {
+    // Not normalized since the HRN record is looked up by the exact name, so
+    // differently cased queries can have different answers.
+    return domainName + "/" + type;
+  }
+
+  /**
+   * Returns the generation to pass to {@link #put}. Read it before
+   * reading the records that the answer is made from.
+   *
+   * @return the current generation
+   */
+  public static long getGeneration() {
+    return GENERATION.get();
+  }
+
+  /**
+   * Returns the cached answer to {@code query} or null.
+   *
+   * @param query
+   * @param domainName - the absolute domain name in the query
+   * @param type - the type in the query
+   * @return a response to the query or null
+   */
+  public static Message get(Message query, String domainName, int type) {
+    if (!isEnabled()) {
+      return null;
+    }
+    String key = getKey(domainName, type);
+    CachedAnswer answer = CACHE.getIfPresent(key);
+    if (answer == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    if (now >= answer.expires) {
+      CACHE.asMap().remove(key, answer);
+      return null;
+    }
+    if (answer.rcode != Rcode.NOERROR) {
+      return NameResolution.errorMessage(query, answer.rcode);
+    }
+    long elapsed = (now - answer.created) / 1000;
+    Message response = NameResolution.newResponse(query);
+    try {
+      for (int i = 0; i < SECTIONS.length; i++) {
+        for (Record record : answer.records[i]) {
+          response.addRecord(withTTL(record, Math.max(record.getTTL() - elapsed, 0)), SECTIONS[i]);
+        }
+      }
+    } catch (IOException e) {
+      NameResolution.getLogger().log(Level.WARNING, "Unable to use cached answer for {0}: {1}",
+              new Object[]{domainName, e});
+      return null;
+    }
+    return response;
+  }
+
+  /**
+   * Caches the response that was built from the GNS for a query. The response
+   * is dropped if anything was invalidated since {@code generation}.
+   *
+   * @param domainName - the absolute domain name in the query
+   * @param type - the type in the query
+   * @param response
+   * @param guid - the guid the records came from or null if the domain doesn't exist
+   * @param generation - the value of {@link #getGeneration} before the records were read
+   */
+  public static void put(String domainName, int type, Message response, String guid,
+          long generation) {
+    if (!isEnabled() || GENERATION.get() != generation) {
+      return;
+    }
+    int rcode = response.getRcode();
+    if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN) {
+      return;
+    }
+    Record[][] records = new Record[SECTIONS.length][];
+    long ttl = MAX_TTL;
+    for (int i = 0; i < SECTIONS.length; i++) {
+      records[i] = rcode == Rcode.NOERROR ? response.getSectionArray(SECTIONS[i]) : new Record[0];
+      for (Record record : records[i]) {
+        ttl = Math.min(ttl, record.getTTL());
+      }
+    }
+    if (records[0].length == 0) {
+      // NXDOMAIN or no answer.
+      ttl = NEGATIVE_TTL;
+    }
+    if (ttl <= 0) {
+      return;
+    }
+    List<String> names = new ArrayList<>(2);
+    names.add(domainName);
+    if (guid != null) {
+      names.add(guid);
+    }
+    String key = getKey(domainName, type);
+    // Index the key first so that an invalidation that comes in
+    // before the put finishes can't miss the entry.
+    for (String name : names) {
+      KEYS_BY_NAME.computeIfAbsent(name, k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+    CACHE.put(key, new CachedAnswer(rcode, records, ttl, Collections.unmodifiableList(names)));
+    if (GENERATION.get() != generation) {
+      CACHE.invalidate(key);
+    }
+  }
+
+  /**
+   * Removes the answers that came from the record {@code name}, a guid
+   * or the HRN of a domain. Called when the record is updated, created
+   * or removed on this name server.
+   *
+   * @param name
+   */
+  public static void invalidateName(String name) {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    Set<String> keys = KEYS_BY_NAME.remove(name);
+    if (keys != null) {
+      CACHE.invalidateAll(keys);
+    }
+  }
+
+  /**
+   * Removes all answers.
+   */
+  public static void invalidateAll() {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    CACHE.invalidateAll();
+  }
+
+  private static void unindex(String key, List<String> names) {
+    for (String name : names) {
+      KEYS_BY_NAME.computeIfPresent(name, (k, keys) -> {
+        keys.remove(key);
+        return keys.isEmpty() ? null : keys;
+      });
+    }
+  }
+
+  // Records are immutable so this copies the record with its TTL rewritten in wire format.
+  private static Record withTTL(Record record, long ttl) throws IOException {
+    if (record.getTTL() == ttl) {
+      return record;
+    }
+    byte[] wire = record.toWire(Section.ANSWER);
+    // The TTL follows the owner name, the type and the class.
+    int offset = record.getName().length() + 4;
+    for (int i = 0; i < 4; i++) {
+      wire[offset + i] = (byte) (ttl >>> (24 - 8 * i));
+    }
+    return Record.fromWire(wire, Section.ANSWER);
+  }
+
+  /**
+   * Returns the statistics of the DNS gateway cache for the admin interface.
+   *
+   * @return a JSONObject
+   */
+  public static JSONObject getStats() {
+    CacheStats stats = CACHE.stats();
+    JSONObject json = new JSONObject();
+    try {
+      json.put("size", CACHE.size());
+      json.put("hits", stats.hitCount());
+      json.put("misses", stats.missCount());
+      json.put("hitRate", stats.hitRate());
+      json.put("evictions", stats.evictionCount());
+      json.put("invalidations", GENERATION.get());
+    } catch (JSONException e) {
+      NameResolution.getLogger().log(Level.SEVERE, "Unable to format cache stats: {0}", e);
+    }
+    return json;
+  }
+}
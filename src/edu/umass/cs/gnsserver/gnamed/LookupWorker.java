@@ -23,21 +23,20 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler
 import edu.umass.cs.utils.DelayProfiler;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.xbill.DNS.Flags;
 import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.Cache;
@@ -62,27 +61,31 @@ public class LookupWorker implements Runnable {
   private final SimpleResolver dnsServer;
   private final SimpleResolver gnsServer;
   private final Cache dnsCache;
-  private final DatagramSocket socket;
-  private final DatagramPacket incomingPacket;
-  private final byte[] incomingData;
+  private final DatagramDnsServer server;
+  private final ByteBuffer incomingBuffer;
+  private final InetSocketAddress client;
+  private final long receivedNanos;
   private final ClientRequestHandlerInterface handler;
 
   /**
    * Creates a new <code>LookupWorker</code> object which handles the parallel GNS and DNS requesting.
    *
-   * @param socket
-   * @param incomingPacket
-   * @param incomingData
+   * @param server the server that received the query and sends the response
+   * @param incomingBuffer the query; released to the server's buffer pool once it has been read
+   * @param client the address of the client that sent the query
+   * @param receivedNanos when the query was received
    * @param dnsServer (might be null meaning don't send requests to a DNS server)
    * @param gnsServer (might be null gns requests are resolved locally)
    * @param dnsCache (might be null meaning DNS responses are not cached)
    * @param handler
    */
-  public LookupWorker(DatagramSocket socket, DatagramPacket incomingPacket, byte[] incomingData, SimpleResolver gnsServer,
+  public LookupWorker(DatagramDnsServer server, ByteBuffer incomingBuffer, InetSocketAddress client,
+          long receivedNanos, SimpleResolver gnsServer,
           SimpleResolver dnsServer, Cache dnsCache, ClientRequestHandlerInterface handler) {
-    this.socket = socket;
-    this.incomingPacket = incomingPacket;
-    this.incomingData = incomingData;
+    this.server = server;
+    this.incomingBuffer = incomingBuffer;
+    this.client = client;
+    this.receivedNanos = receivedNanos;
     this.dnsServer = dnsServer;
     this.dnsCache = dnsCache;
     this.gnsServer = gnsServer;
@@ -99,6 +102,9 @@ public class LookupWorker implements Runnable {
     Message response;
     int maxLength;
 
+    byte[] incomingData = new byte[incomingBuffer.remaining()];
+    incomingBuffer.get(incomingData);
+    server.getBufferPool().release(incomingBuffer);
     // create a Message from the query data;
     try {
       query = new Message(incomingData);
@@ -114,7 +120,12 @@ public class LookupWorker implements Runnable {
       return;
     }
     if (query.getOPT() != null) {
-      maxLength = Math.max(query.getOPT().getPayloadSize(), 512);
+      // EDNS0: the client can take responses up to its payload size, but we
+      // never send more than we advertise.
+      maxLength = Math.min(Math.max(query.getOPT().getPayloadSize(), 512), server.getEdnsPayloadSize());
+      if (response.getOPT() == null) {
+        response.addRecord(new OPTRecord(server.getEdnsPayloadSize(), 0, 0), Section.ADDITIONAL);
+      }
     } else {
       maxLength = 512;
     }
@@ -153,7 +164,7 @@ public class LookupWorker implements Runnable {
 
     // If we're not consulting the DNS server as well just send the query to GNS.
     if (dnsServer == null) {
-      Message result = NameResolution.lookupGnsServer(incomingPacket.getAddress(), query, handler);
+      Message result = NameResolution.lookupGnsServer(client.getAddress(), query, handler);
       DelayProfiler.updateDelay("generateReply", startTime);
       return result;
     }
@@ -187,10 +198,10 @@ public class LookupWorker implements Runnable {
               new LookupTask(dnsQuery, dnsServer, false, /* isGNS */ handler));
     }
 
-    // A little bit of overkill for two tasks, but it's really not that much longer (if any) than
-    // the altenative. Plus it's cool and trendy to use futures.
-    ExecutorService executor = Executors.newFixedThreadPool(2);
-    ExecutorCompletionService<Message> completionService = new ExecutorCompletionService<>(executor);
+    // The lookups run on the server's shared lookup threads so that a query
+    // doesn't have to start threads of its own.
+    ExecutorCompletionService<Message> completionService
+            = new ExecutorCompletionService<>(server.getLookupExecutor());
     List<Future<Message>> futures = new ArrayList<>(2);
     for (Callable<Message> task : tasks) {
       futures.add(completionService.submit(task));
@@ -198,24 +209,31 @@ public class LookupWorker implements Runnable {
     Message successResponse = null;
     Message errorResponse = null;
     // loop throught the tasks getting results as they complete
-    for (int i=0; i<tasks.size(); i++) { // this is just doing things twice btw
-      try {
-        Message result = completionService.take().get();
-        if (result.getHeader().getRcode() == Rcode.NOERROR) {
-          successResponse = result;
+    try {
+      for (int i = 0; i < tasks.size(); i++) { // this is just doing things twice btw
+        try {
+          Message result = completionService.take().get();
+          if (result.getHeader().getRcode() == Rcode.NOERROR) {
+            successResponse = result;
+            break;
+          } else {
+            // squirrel this away for later in case we get no successes
+            errorResponse = result;
+          }
+        } catch (ExecutionException e) {
+          NameResolution.getLogger().log(Level.WARNING, "Problem handling lookup task: {0}", e);
+        } catch (InterruptedException e) {
+          NameResolution.getLogger().log(Level.WARNING, "Lookup task interrupted: {0}", e);
+          Thread.currentThread().interrupt();
           break;
-        } else {
-          // squirrel this away for later in case we get no successes
-          errorResponse = result;
         }
-      } catch (ExecutionException e) {
-        NameResolution.getLogger().log(Level.WARNING, "Problem handling lookup task: {0}", e);
-      } catch (InterruptedException e) {
-        NameResolution.getLogger().log(Level.WARNING, "Lookup task interrupted: {0}", e);
+      }
+    } finally {
+      // The losing lookup isn't needed anymore so free its thread.
+      for (Future<Message> future : futures) {
+        future.cancel(true);
       }
     }
-    // Shutdown the executor threadpool
-    executor.shutdown();
     if (successResponse != null) {
       // Cache the successful response
       try {
@@ -252,15 +270,7 @@ public class LookupWorker implements Runnable {
    * @param responseBytes
    */
   private void sendResponse(byte[] responseBytes) {
-    DatagramPacket outgoingPacket = new DatagramPacket(responseBytes, responseBytes.length, incomingPacket.getAddress(), incomingPacket.getPort());
-    try {
-      socket.send(outgoingPacket);
-      NameResolution.getLogger().log(Level.FINE,
-              "Response sent to {0} {1}", new Object[]{incomingPacket.getAddress().toString(),
-                incomingPacket.getPort()});
-    } catch (IOException e) {
-      NameResolution.getLogger().log(Level.SEVERE, "Failed to send response{0}", e);
-    }
+    server.sendResponse(responseBytes, client, receivedNanos);
   }
 
   private int getCred(int section, boolean isAuth) {
@@ -159,19 +159,20 @@ public class NameResolution {
     if(Type.string(fieldName) ==null || domainName==null){
     	return errorMessage(query, Rcode.NXDOMAIN);
     }
+    // Hot names are answered from the cache without reading any records.
+    Message cached = GnsDnsCache.get(query, domainName, fieldName);
+    if (cached != null) {
+      NameResolution.getLogger().log(Level.FINE, "Cached GNS answer for domain {0}, type {1}", new Object[]{domainName, Type.string(fieldName)});
+      return cached;
+    }
+    long generation = GnsDnsCache.getGeneration();
     NameResolution.getLogger().log(Level.FINE, "Trying GNS lookup for domain {0}, type {1}", new Object[]{domainName, Type.string(fieldName)});
     
     /**
      *  Create a response message, build the header first.
      *  The response is constructed later after GNS query.
      */
-    Message response = new Message(query.getHeader().getID());
-    response.getHeader().setFlag(Flags.QR);
-    if (query.getHeader().getFlag(Flags.RD)) {
-      response.getHeader().setFlag(Flags.RA);
-    }
-    response.addRecord(query.getQuestion(), Section.QUESTION);
-    response.getHeader().setFlag(Flags.AA);
+    Message response = newResponse(query);
 
     /**
      * Request DNS fields of an alias and prepare a DNS response message 
@@ -201,10 +202,23 @@ public class NameResolution {
      */
 	  long resolveStart = System.currentTimeMillis();      
 	  
-	  JSONObject fieldResponseJson = lookupGuidField(addr.getHostAddress().toString(), query.getHeader().getID(), domainName, null, fields, handler);
+	  String guid;
+	  try {
+		  guid = lookupGuid(domainName, handler);
+	  } catch (FailedDBOperationException e) {
+		  NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed: {1}", new Object[]{domainName, e});
+		  // Not an answer about the name so it isn't cached.
+		  return errorMessage(query, Rcode.SERVFAIL);
+	  }
+	  JSONObject fieldResponseJson = guid == null ? null 
+			  : lookupFieldsOfGuid(addr == null ? null : addr.getHostAddress(), query.getHeader().getID(), guid, fields, handler);
 	  if (fieldResponseJson == null) {
 	    NameResolution.getLogger().log(Level.FINE, "GNS lookup for domain {0} failed.", domainName);
-	    return errorMessage(query, Rcode.NXDOMAIN);
+	    if (guid != null) {
+	      // The guid's record couldn't be read so this may not last.
+	      return errorMessage(query, Rcode.NXDOMAIN);
+	    }
+	    return cacheAndReturn(domainName, fieldName, errorMessage(query, Rcode.NXDOMAIN), null, generation);
 	  }
 	  NameResolution.getLogger().log(Level.FINE, "fieldResponse all fields (NS, MX, CNAME, A): {0}", fieldResponseJson.toString());
 	  
@@ -227,7 +241,7 @@ public class NameResolution {
 				}	    		  
 	    	  } else {
 	    		// I don't have the requested A record, you must ask a wrong guy
-	    		return errorMessage(query, Rcode.NXDOMAIN);
+	    		return cacheAndReturn(domainName, fieldName, errorMessage(query, Rcode.NXDOMAIN), guid, generation);
 	    	  }
 	      }
 		  break;
@@ -245,7 +259,7 @@ public class NameResolution {
 		    	  }
 	    	  } else{
 	    		  // I don't have the requested A record, you must ask a wrong guy
-	    		  return errorMessage(query, Rcode.NXDOMAIN);
+	    		  return cacheAndReturn(domainName, fieldName, errorMessage(query, Rcode.NXDOMAIN), guid, generation);
 	    	  }
 	    	  //Get NS record if we can
 	    	  JSONObject obj = getNSRecordsFromNSField(fieldResponseJson, domainName);
@@ -284,7 +298,7 @@ public class NameResolution {
 	    		  }
 	    	  } else{
 	    		// I don't have the requested MX record, you must ask a wrong guy
-	    		  return errorMessage(query, Rcode.NXDOMAIN);
+	    		  return cacheAndReturn(domainName, fieldName, errorMessage(query, Rcode.NXDOMAIN), guid, generation);
 	    	  }
 	    	  //Get NS record if we can
 	    	  obj = getNSRecordsFromNSField(fieldResponseJson, domainName);
@@ -322,7 +336,7 @@ public class NameResolution {
 	              
 	    	  } else {
 	    		// I don't have the requested CNAME record, you must ask a wrong guy
-	    		 return errorMessage(query, Rcode.NXDOMAIN);
+	    		 return cacheAndReturn(domainName, fieldName, errorMessage(query, Rcode.NXDOMAIN), guid, generation);
 	    	  }
 	      }
     	  break;
@@ -334,6 +348,28 @@ public class NameResolution {
       
     DelayProfiler.updateDelay("ResolveName", resolveStart);
     NameResolution.getLogger().log(Level.FINER, "Outgoing response from GNS: {0}", response.toString());
+    return cacheAndReturn(domainName, fieldName, response, guid, generation);
+  }
+
+  private static Message cacheAndReturn(String domainName, int type, Message response, String guid, long generation) {
+    GnsDnsCache.put(domainName, type, response, guid, generation);
+    return response;
+  }
+
+  /**
+   * Creates a response to the query that has the question but no records.
+   *
+   * @param query
+   * @return a Message
+   */
+  static Message newResponse(Message query) {
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    if (query.getHeader().getFlag(Flags.RD)) {
+      response.getHeader().setFlag(Flags.RA);
+    }
+    response.addRecord(query.getQuestion(), Section.QUESTION);
+    response.getHeader().setFlag(Flags.AA);
     return response;
   }
 
@@ -541,71 +577,93 @@ public class NameResolution {
     /**
      * 1. Lookup guid for the domain name
      */
-    String guid = null;
-    final ValuesMap result;
+    String guid;
+    try {
+      guid = lookupGuid(domain, handler);
+    } catch (FailedDBOperationException e) {
+      NameResolution.getLogger().log(Level.FINE,
+              "Unable to lookup the guid for {0}: {1}", new Object[]{domain, e});
+      return null;
+    }
+    
+    /**
+     * 2. Lookup the record
+     */
+    if(guid != null){
+    	return lookupFieldsOfGuid(addr, id, guid, fields, handler);
+    }else{
+    	NameResolution.getLogger().log(Level.FINE,
+                "No guid for {0} is found", new Object[]{domain});
+    	return null;
+    }
+  }
+  
+  /**
+   * Looks up the guid of a domain name.
+   * 
+   * @param domain - the HRN of the guid
+   * @param handler
+   * @return the guid or null if the domain doesn't exist
+   * @throws FailedDBOperationException if the domain couldn't be looked up
+   */
+  private static String lookupGuid(String domain, ClientRequestHandlerInterface handler) 
+		  throws FailedDBOperationException {
     try{
-	    result = NSFieldAccess.lookupJSONFieldLocalNoAuth(null, domain,
+	    ValuesMap result = NSFieldAccess.lookupJSONFieldLocalNoAuth(null, domain,
 	            HRN_GUID, handler.getApp(), false);
 	    if (result != null) {
-	        guid = result.getString(HRN_GUID);
+	        return result.getString(HRN_GUID);
 	    }
-    } catch (FailedDBOperationException | JSONException e) {
+    } catch (JSONException e) {
     	NameResolution.getLogger().log(Level.FINE,
                 "No guid for {0}: {1}", new Object[]{domain, e});
-    	return null;
     }
-    
-    /**
-     * 2. Lookup the record
-     */
-    JSONObject value = null;
-    if(guid != null){
-    	// Generate a DNS header for local read 
-    	InternalRequestHeader header = new InternalRequestHeader(){
+    return null;
+  }
+  
+  /**
+   * Looks up the fields of a guid.
+   * 
+   * @return a JSONObject containing the fields and values or null
+   */
+  private static JSONObject lookupFieldsOfGuid(String addr, int id, String guid, ArrayList<String> fields, ClientRequestHandlerInterface handler) {
+    // Generate a DNS header for local read 
+    InternalRequestHeader header = new InternalRequestHeader(){
 
-			@Override
-			public long getOriginatingRequestID() {
-				return id;
-			}
+		@Override
+		public long getOriginatingRequestID() {
+			return id;
+		}
 
-			@Override
-			public String getOriginatingGUID() {
-				try {
-					return result.getString(HRN_GUID);
-				} catch (JSONException e) {
-					return null;
-				}
-			}
+		@Override
+		public String getOriginatingGUID() {
+			return guid;
+		}
 
-			@Override
-			public int getTTL() {
-				return InternalRequestHeader.DEFAULT_TTL;
-			}
+		@Override
+		public int getTTL() {
+			return InternalRequestHeader.DEFAULT_TTL;
+		}
 
-			@Override
-			public boolean hasBeenCoordinatedOnce() {
-				// DNS request does not need coordination
-				return false;
-			}
-			
-			@Override
-			public String getSourceAddress(){
-				return addr;
-			}
-    		
-    	};
-    	try {
-			value = NSFieldAccess.lookupFieldsLocalNoAuth(header, guid, fields, ColumnFieldType.USER_JSON, handler);
-		} catch (FailedDBOperationException e) {
-			NameResolution.getLogger().log(Level.FINE,
-	                "Fetching record failed for {0}: {1}", new Object[]{domain, e});
+		@Override
+		public boolean hasBeenCoordinatedOnce() {
+			// DNS request does not need coordination
+			return false;
 		}
-    }else{
-    	NameResolution.getLogger().log(Level.FINE,
-                "No guid for {0} is found", new Object[]{domain});
-    }
-    return value;
-    
+		
+		@Override
+		public String getSourceAddress(){
+			return addr;
+		}
+    	
+    };
+    try {
+		return NSFieldAccess.lookupFieldsLocalNoAuth(header, guid, fields, ColumnFieldType.USER_JSON, handler);
+	} catch (FailedDBOperationException e) {
+		NameResolution.getLogger().log(Level.FINE,
+                "Fetching record failed for {0}: {1}", new Object[]{guid, e});
+		return null;
+	}
   }
 
   /**
@@ -20,23 +20,16 @@
 package edu.umass.cs.gnsserver.gnamed;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.UnknownHostException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 
 import org.xbill.DNS.Cache;
 import org.xbill.DNS.SimpleResolver;
 
-import edu.umass.cs.gnscommon.utils.ThreadUtils;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
 import edu.umass.cs.gnsserver.main.GNSConfig;
-import edu.umass.cs.gnsserver.utils.Shutdownable;
 import edu.umass.cs.utils.Config;
 
 /**
@@ -50,13 +43,11 @@ import edu.umass.cs.utils.Config;
  * @author Westy
  * @version 1.0
  */
-public class UdpDnsServer extends Thread implements Shutdownable {
+public class UdpDnsServer extends DatagramDnsServer {
 
   private final SimpleResolver dnsServer;
   private final SimpleResolver gnsServer;
   private final Cache dnsCache;
-  private final DatagramSocket sock;
-  private ExecutorService executor = null;
   private final String dnsServerIP; // just stored for informational purposes
   private final String gnsServerIP; // just stored for informational purposes
   private final ClientRequestHandlerInterface handler;
@@ -74,22 +65,26 @@ public class UdpDnsServer extends Thread implements Shutdownable {
    * @param gnsServerIP
    * @param handler
    * @throws SecurityException 
-   * @throws java.net.SocketException
-   * @throws java.net.UnknownHostException
+   * @throws java.io.IOException
    */
   public UdpDnsServer(InetAddress addr, int port, String dnsServerIP, String gnsServerIP,
-          ClientRequestHandlerInterface handler) throws SecurityException, SocketException, UnknownHostException {
-    this.dnsServer = dnsServerIP != null ? 
-    		// If running the server as a managed DNS server, then set the dnsServer 
-    		// to null so that it does not respond to the recursive request.
-    		(Config.getGlobalBoolean(GNSConfig.GNSC.IS_MANAGED_DNS)? null:new SimpleResolver(dnsServerIP)) 
-    		: null;
-    this.gnsServer = gnsServerIP != null ? new SimpleResolver(gnsServerIP) : null;
+          ClientRequestHandlerInterface handler) throws SecurityException, IOException {
+    super(addr, port, UdpDnsServer.class.getSimpleName());
+    try {
+      this.dnsServer = dnsServerIP != null ? 
+      		// If running the server as a managed DNS server, then set the dnsServer 
+      		// to null so that it does not respond to the recursive request.
+      		(Config.getGlobalBoolean(GNSConfig.GNSC.IS_MANAGED_DNS)? null:new SimpleResolver(dnsServerIP)) 
+      		: null;
+      this.gnsServer = gnsServerIP != null ? new SimpleResolver(gnsServerIP) : null;
+    } catch (IOException | RuntimeException e) {
+      // The superclass has already bound the port.
+      shutdown();
+      throw e;
+    }
     this.dnsCache = dnsServerIP != null ? new Cache() : null;
     this.dnsServerIP = dnsServerIP;
     this.gnsServerIP = gnsServerIP;
-    this.sock = new DatagramSocket(port, addr);
-    this.executor = Executors.newFixedThreadPool(5);
     this.handler = handler;
   }
 
@@ -97,35 +92,13 @@ public class UdpDnsServer extends Thread implements Shutdownable {
   public void run() {
     NameResolution.getLogger().log(Level.INFO,
             "Starting local DNS Server on port {0}{1}fallback DNS server at {2}",
-            new Object[]{sock.getLocalPort(),
+            new Object[]{getLocalPort(),
               gnsServerIP != null ? (" with GNS server at " + gnsServerIP + " and ") : " with ", dnsServerIP});
-    while (true) {
-      try {
-        final short udpLength = 512;
-        while (true) {
-          byte[] incomingData = new byte[udpLength];
-          DatagramPacket incomingPacket = new DatagramPacket(incomingData, incomingData.length);
-          // Read the incoming request
-          incomingPacket.setLength(incomingData.length);
-          try {
-            sock.receive(incomingPacket);
-          } catch (InterruptedIOException e) {
-            continue;
-          }
-          executor.execute(new LookupWorker(sock, incomingPacket, incomingData, gnsServer, dnsServer, dnsCache, handler));
-        }
-      } catch (IOException e) {
-        NameResolution.getLogger().log(Level.SEVERE, 
-                "Error in UDP Server (will sleep for 3 seconds and try again): {0}", e);
-        ThreadUtils.sleep(3000);
-      }
-    }
+    super.run();
   }
 
   @Override
-  public void shutdown() {
-    if (executor != null) {
-      executor.shutdown();
-    }
+  protected LookupWorker createWorker(ByteBuffer query, InetSocketAddress client, long receivedNanos) {
+    return new LookupWorker(this, query, client, receivedNanos, gnsServer, dnsServer, dnsCache, handler);
   }
 }
@@ -27,6 +27,9 @@ import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnsserver.main.GNSConfig;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidInfo;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
+import edu.umass.cs.gnsserver.activecode.ActiveCodeCache;
+import edu.umass.cs.gnsserver.gnamed.GnsDnsCache;
 import edu.umass.cs.gnsserver.gnsapp.packet.Packet;
 import edu.umass.cs.gnsserver.gnsapp.packet.admin.AdminRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.admin.DumpRequestPacket;
@@ -166,12 +169,18 @@ public class AppAdminServer extends Thread implements Shutdownable {
               AdminRequestPacket adminRequestPacket = new AdminRequestPacket(incomingJSON);
               switch (adminRequestPacket.getOperation()) {
                 case CLEARCACHE:
-                  GNSConfig.getLogger().log(Level.WARNING,
-                          "NSListenerAdmin ({0}) : Ignoring CLEARCACHE request", app.getNodeID());
+                  GNSConfig.getLogger().log(Level.INFO,
+                          "NSListenerAdmin ({0}) : Clearing public key, select result, DNS and active code caches", app.getNodeID());
+                  NSAuthentication.invalidateAllPublicKeys();
+                  SelectResultCache.invalidateAll();
+                  GnsDnsCache.invalidateAll();
+                  ActiveCodeCache.invalidateAll();
                   break;
                 case DUMPCACHE:
-                  GNSConfig.getLogger().log(Level.WARNING,
-                          "NSListenerAdmin ({0}) : Ignoring DUMPCACHE request", app.getNodeID());
+                  GNSConfig.getLogger().log(Level.INFO,
+                          "NSListenerAdmin ({0}) : Public key cache {1} select result cache {2} DNS cache {3} active code cache {4}",
+                          new Object[]{app.getNodeID(), NSAuthentication.getPublicKeyCacheStats(),
+                            SelectResultCache.getStats(), GnsDnsCache.getStats(), ActiveCodeCache.getStats()});
                   break;
 
               }
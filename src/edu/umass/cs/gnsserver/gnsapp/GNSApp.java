@@ -21,8 +21,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.BindException;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
-import java.net.SocketException;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -30,6 +28,7 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -52,12 +51,14 @@ import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.packets.AdminCommandPacket;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.ResponsePacket;
+import edu.umass.cs.gnsserver.activecode.ActiveCodeCache;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
 import edu.umass.cs.gnsserver.database.ColumnField;
 import edu.umass.cs.gnsserver.database.MongoRecords;
 import edu.umass.cs.gnsserver.database.NoSQLRecords;
 import edu.umass.cs.gnsserver.extensions.sanitycheck.AbstractSanityCheck;
 import edu.umass.cs.gnsserver.gnamed.DnsTranslator;
+import edu.umass.cs.gnsserver.gnamed.GnsDnsCache;
 import edu.umass.cs.gnsserver.gnamed.UdpDnsServer;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.AdminListener;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandler;
@@ -653,6 +654,14 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
     GNSConfig.getLogger().log(Level.FINE,
             "{0} updating {1} with state [{2}]",
             new Object[]{this, name, state}); //Util.truncate(state, 32, 32)});
+    // Creating, deleting or replacing the record can change the guid's public key.
+    NSAuthentication.invalidatePublicKey(name);
+    // It can also add a record to or remove one from the results of any select.
+    SelectResultCache.invalidateAll();
+    // And it can create or remove a domain or change its DNS records.
+    GnsDnsCache.invalidateName(name);
+    // Or set or clear the guid's active code.
+    ActiveCodeCache.invalidate(name);
     try {
       if (state == null) {
         // If state is null the only thing it means is that we need to
@@ -924,8 +933,7 @@ public class GNSApp extends AbstractReconfigurablePaxosApp<String> implements
     return contextServiceGNSClient;
   }
 
-  private void startDNS() throws SecurityException, SocketException,
-          UnknownHostException {
+  private void startDNS() throws SecurityException, IOException {
     try {
       if (Config.getGlobalBoolean(GNSConfig.GNSC.DNS_GNS_ONLY)) {
         dnsTranslator = new DnsTranslator(
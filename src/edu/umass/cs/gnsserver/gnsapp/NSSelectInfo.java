@@ -19,9 +19,12 @@
  */
 package edu.umass.cs.gnsserver.gnsapp;
 
+import edu.umass.cs.gnscommon.packets.commandreply.LocalSelectHandleInfo;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
@@ -32,6 +35,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -53,6 +57,12 @@ public class NSSelectInfo {
   
   private final List<NotificationStatsToIssuer> notificationStatusList;
   
+  // The handles of the name servers that have more records for a paged select.
+  private final List<LocalSelectHandleInfo> nextPageHandles;
+  
+  // Completed with the response for the client once all the servers have answered.
+  private final CompletableFuture<SelectResponsePacket> completion;
+  
 
   /**
    * NSSelectInfo constructor.
@@ -74,6 +84,19 @@ public class NSSelectInfo {
       
   	  this.recordResponses = new ConcurrentHashMap<String, JSONObject>();
   	  this.notificationStatusList = new LinkedList<NotificationStatsToIssuer>();
+  	  this.nextPageHandles = new LinkedList<LocalSelectHandleInfo>();
+  	  this.completion = new CompletableFuture<SelectResponsePacket>();
+  }
+  
+  /**
+   * Returns the future that is completed with the response to send to the
+   * client once all the servers have responded or one of them has failed.
+   * 
+   * @return the future
+   */
+  public CompletableFuture<SelectResponsePacket> getCompletion()
+  {
+	  return completion;
   }
   
   	/**
@@ -152,6 +175,36 @@ public class NSSelectInfo {
 	  return this.notificationStatusList;
   }
 
+  /**
+   * Records the handles of a name server that has more records for a paged select.
+   * 
+   * @param selectHandle - null if the name server has no more records
+   */
+  public void addNextPageHandle(SelectHandleInfo selectHandle)
+  {
+	  synchronized(nextPageHandles)
+	  {
+		  if(selectHandle != null)
+		  {
+			  nextPageHandles.addAll(selectHandle.getLocalHandlesList());
+		  }
+	  }
+  }
+  
+  /**
+   * 
+   * @return Returns the handle to fetch the next page of a paged select
+   * or null if none of the name servers have more records.
+   */
+  public SelectHandleInfo getNextPageHandle()
+  {
+	  synchronized(nextPageHandles)
+	  {
+		  return nextPageHandles.isEmpty() ? null 
+				  : new SelectHandleInfo(new LinkedList<LocalSelectHandleInfo>(nextPageHandles));
+	  }
+  }
+
   /**
    * Returns that responses that have been see for this query.
    *
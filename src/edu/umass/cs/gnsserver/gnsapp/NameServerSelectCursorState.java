@@ -0,0 +1,183 @@
+package edu.umass.cs.gnsserver.gnsapp;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+
+/**
+ * This class stores the open cursors of paged selects at a name server.
+ *
+ * Each cursor is leased. A cursor that isn't used again before its lease
+ * expires is closed and forgotten, so a client that stops fetching pages
+ * doesn't hold on to database resources.
+ *
+ * A cursor is checked out while a page is read from it, which also
+ * keeps two concurrent requests for the same handle from sharing it.
+ *
+ * @author westy
+ */
+public class NameServerSelectCursorState
+{
+	private static final long GC_INTERVAL			= 1000; // In ms.
+
+	private final ConcurrentHashMap<Long, CursorLease> cursors;
+
+	private final long leaseMillis;
+
+	private final Random rand;
+
+	private final ScheduledThreadPoolExecutor gcExecutor;
+
+	/**
+	 * A cursor of a paged select and the request that created it.
+	 */
+	public static class CursorLease
+	{
+		private final AbstractRecordCursor cursor;
+		private final SelectRequestPacket request;
+		private volatile long expiry;
+
+		/**
+		 * @param cursor
+		 * @param request - the request that created the cursor
+		 */
+		public CursorLease(AbstractRecordCursor cursor, SelectRequestPacket request)
+		{
+			this.cursor = cursor;
+			this.request = request;
+		}
+
+		/**
+		 * @return the cursor
+		 */
+		public AbstractRecordCursor getCursor()
+		{
+			return this.cursor;
+		}
+
+		/**
+		 * @return the request that created the cursor
+		 */
+		public SelectRequestPacket getRequest()
+		{
+			return this.request;
+		}
+	}
+
+	/**
+	 * Creates an object that keeps the paged select cursors at this name server.
+	 *
+	 * @param leaseMillis - how long an unused cursor is kept
+	 */
+	public NameServerSelectCursorState(long leaseMillis)
+	{
+		this.cursors = new ConcurrentHashMap<Long, CursorLease>();
+		this.leaseMillis = leaseMillis;
+		this.rand = new Random();
+
+		this.gcExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, NameServerSelectCursorState.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.gcExecutor.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				closeExpiredCursors();
+			}
+		}, GC_INTERVAL, GC_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stores the {@code lease} under a new handle and starts its lease.
+	 * This function is thread-safe.
+	 *
+	 * @param lease
+	 * @return the local handle id
+	 */
+	public long addCursor(CursorLease lease)
+	{
+		lease.expiry = System.currentTimeMillis() + leaseMillis;
+		long handleId;
+		do
+		{
+			handleId = rand.nextLong();
+		}
+		while(cursors.putIfAbsent(handleId, lease) != null);
+		return handleId;
+	}
+
+	/**
+	 * Stores a checked out {@code lease} under its old handle and renews its lease.
+	 *
+	 * @param handleId
+	 * @param lease
+	 */
+	public void returnCursor(long handleId, CursorLease lease)
+	{
+		lease.expiry = System.currentTimeMillis() + leaseMillis;
+		cursors.put(handleId, lease);
+	}
+
+	/**
+	 * Checks out the cursor with the supplied local handle id.
+	 * The caller must either return it with {@link #returnCursor}
+	 * or close it.
+	 *
+	 * @param handleId
+	 * @return the lease or null if the lease expired or
+	 * the cursor is checked out by someone else
+	 */
+	public CursorLease checkoutCursor(long handleId)
+	{
+		return cursors.remove(handleId);
+	}
+
+	/**
+	 *
+	 * @return the number of open cursors
+	 */
+	public int size()
+	{
+		return cursors.size();
+	}
+
+	private void closeExpiredCursors()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<Long, CursorLease>> iter = cursors.entrySet().iterator();
+		while(iter.hasNext())
+		{
+			Map.Entry<Long, CursorLease> entry = iter.next();
+			CursorLease lease = entry.getValue();
+			if(lease.expiry < now && cursors.remove(entry.getKey(), lease))
+			{
+				AbstractSelector.LOGGER.log(Level.FINE, "Closing expired select cursor {0}",
+						entry.getKey());
+				try
+				{
+					lease.getCursor().close();
+				} catch(RuntimeException e)
+				{
+					AbstractSelector.LOGGER.log(Level.FINE, "Problem closing select cursor {0}: {1}",
+							new Object[]{entry.getKey(), e});
+				}
+			}
+		}
+	}
+}
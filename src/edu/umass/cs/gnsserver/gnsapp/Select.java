@@ -35,15 +35,32 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,10 +78,13 @@ import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.packets.commandreply.LocalSelectHandleInfo;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import edu.umass.cs.gnsserver.database.AbstractRecordCursor;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.AclCheckResult;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectOperation;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
 import edu.umass.cs.gnsserver.gnsapp.packet.SelectResponsePacket;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
@@ -118,13 +138,69 @@ public class Select extends AbstractSelector
 	// for any name server.
 	private final NameServerSelectNotificationState pendingNotifications;
 	
+	// for any name server, the open cursors of paged selects.
+	private final NameServerSelectCursorState pagedCursors;
+	
+	// The key of the sort value that name servers add to top-k records.
+	private static final String SORT_VALUE = "_sortValue";
+	
 	
 	private final Random randomIdGen = new Random();
 	
 	private final ConcurrentMap<Integer, NSSelectInfo> pendingQueries
           = new ConcurrentHashMap<Integer, NSSelectInfo>();
-	private final ConcurrentMap<Integer, SelectResponsePacket> queryResult
-          = new ConcurrentHashMap<Integer, SelectResponsePacket>();
+	
+	// Fails select requests that some name server never answers.
+	private static final ScheduledThreadPoolExecutor TIMEOUT_EXECUTOR 
+			= new ScheduledThreadPoolExecutor(1, new ThreadFactory() 
+			{
+				@Override
+				public Thread newThread(Runnable r) 
+				{
+					Thread thread = new Thread(r, Select.class.getSimpleName() + "Timeout");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	static 
+	{
+		TIMEOUT_EXECUTOR.setRemoveOnCancelPolicy(true);
+	}
+	
+	// Checks the ACLs of and projects the records of select scans. It is bounded 
+	// so that a large select can't take all the threads of the name server.
+	private static final ForkJoinPool ACL_CHECK_POOL = new ForkJoinPool(
+			Config.getGlobalInt(GNSC.SELECT_ACL_CHECK_THREADS) > 0 
+			? Config.getGlobalInt(GNSC.SELECT_ACL_CHECK_THREADS) 
+					: Runtime.getRuntime().availableProcessors());
+	
+	// Batches with fewer records than this are checked by the scanning thread.
+	private static final int MIN_RECORDS_PER_TASK = 32;
+	
+	/**
+	 * What the ACL checks of one select scan share. The query fields are 
+	 * parsed and the reader's guid info and groups are looked up only once 
+	 * for all the records of the scan.
+	 */
+	private static class SelectScan
+	{
+		private final SelectRequestPacket request;
+		private final GNSApplicationInterface<String> app;
+		private final List<String> queryFields;
+		// Null if the select has no reader.
+		private final NSAuthentication.AccessorInfo accessor;
+		
+		private SelectScan(SelectRequestPacket request, GNSApplicationInterface<String> app, 
+				List<String> queryFields)
+		{
+			this.request = request;
+			this.app = app;
+			this.queryFields = Collections.unmodifiableList(queryFields);
+			this.accessor = request.getReader() == null ? null 
+					: new NSAuthentication.AccessorInfo(null, request.getReader(), app);
+		}
+	}
 	
 	/**
 	 * The select constructor. 
@@ -134,6 +210,9 @@ public class Select extends AbstractSelector
 		initSelectResponseProcessor();
 		
 		pendingNotifications = new NameServerSelectNotificationState();
+		
+		pagedCursors = new NameServerSelectCursorState(
+				Config.getGlobalInt(GNSC.SELECT_CURSOR_LEASE_IN_SECONDS) * 1000L);
 	}
 	
 	/**
@@ -219,6 +298,33 @@ public class Select extends AbstractSelector
           SelectRequestPacket packet, GNSApplicationInterface<String> app) 
         		  throws JSONException, UnknownHostException, FailedDBOperationException, 
         		  InternalRequestException
+  {  
+	  // Client messaging is delegated to gigapaxos which sends the response 
+	  // when execute returns, so we have to wait for our own query here. 
+	  // Requests time out on their own so this doesn't wait forever.
+	  try 
+	  {
+		  return sendSelectRequestFromClient(header, packet, app).get();
+	  } catch (InterruptedException e) 
+	  {
+		  Thread.currentThread().interrupt();
+	  } catch (ExecutionException e) 
+	  {
+		  LOGGER.log(Level.SEVERE, "Exception while processing select request: {0}", e.getCause());
+	  }
+	  return null;
+  }
+  
+  /**
+   * Sends a select request from a client to the name servers.
+   * 
+   * The returned future is completed with the response for the client when the last
+   * name server answers, when one of them fails or when the request times out.
+   * It is completed with null if the request could not be sent.
+   */
+  private CompletableFuture<SelectResponsePacket> sendSelectRequestFromClient(
+		  InternalRequestHeader header, SelectRequestPacket packet, 
+		  GNSApplicationInterface<String> app)
   {  
 	  switch(packet.getSelectOperation())
 	  {
@@ -226,34 +332,40 @@ public class Select extends AbstractSelector
 	  		case NEAR:
 	  		case WITHIN:
 	  		case QUERY:
-	  		{
-	  			return processSelectRequestFromClient(header, packet, app);
-	  			//break;
-	  		}
 	  		case SELECT_NOTIFY:
+	  		case QUERY_PAGED:
+	  		case COUNT:
+	  		case LIMIT:
+	  		case TOP_K:
 	  		{
 	  			return processSelectRequestFromClient(header, packet, app);
-	  			//break;
 	  		}
 	  		case NOTIFICATION_STATUS:
+	  		case NEXT_PAGE:
 	  		{
-	  			return processNotificationStatusFromClient(header, packet, app);
-	  			//break;
+	  			return processSelectHandleRequestFromClient(header, packet, app);
 	  		}
 	  		default:
 	  			break;
 	  }
-	  return null;
+	  return CompletableFuture.completedFuture(null);
   }
   
   
-  private SelectResponsePacket processSelectRequestFromClient(InternalRequestHeader header,
-          SelectRequestPacket packet, GNSApplicationInterface<String> app)
+  private CompletableFuture<SelectResponsePacket> processSelectRequestFromClient(
+		  InternalRequestHeader header, SelectRequestPacket packet, 
+		  GNSApplicationInterface<String> app)
   {
 	  Set<InetSocketAddress> serverAddresses = new HashSet<>(PaxosConfig.getActives().values());
 	  
+	  if(packet.getSelectOperation() == SelectOperation.QUERY_PAGED)
+	  {
+		  packet.setPageSize(getPageSizePerServer(packet.getPageSize(), serverAddresses.size()));
+	  }
+	  
 	  // store the info for later
-	  int queryId = addQueryInfo(serverAddresses, packet);
+	  NSSelectInfo info = addQueryInfo(serverAddresses, packet);
+	  int queryId = info.getId();
 	  
 	  InetSocketAddress returnAddress = new InetSocketAddress(app.getNodeAddress().getAddress(),
             ReconfigurationConfig.getClientFacingPort(app.getNodeAddress().getPort()));
@@ -277,35 +389,21 @@ public class Select extends AbstractSelector
                   new Object[]{app.getNodeID(), outgoingJSON, offsetAddress, address});
 			  app.sendToAddress(offsetAddress, outgoingJSON);
 		  }
-		  
-		  // Wait for responses, otherwise you are violating Replicable.execute(.)'s semantics.
-		  synchronized (pendingQueries) 
-		  {
-			  while (pendingQueries.containsKey(queryId)) 
-			  {
-				  try
-				  {
-					  pendingQueries.wait(SELECT_REQUEST_TIMEOUT);
-				  } catch (InterruptedException e) {
-					  e.printStackTrace();
-				  }
-			  }
-		  }
-		  if (queryResult.containsKey(queryId)) 
-		  {
-			  
-			  return queryResult.remove(queryId);
-		  }
 	  }
 	  catch (IOException | JSONException  e) 
 	  {
 		  LOGGER.log(Level.SEVERE, "Exception while sending select request: {0}", e);
+		  info.getCompletion().complete(null);
 	  }
-	  return null;
+	  return info.getCompletion();
   }
   
   
-  private SelectResponsePacket processNotificationStatusFromClient
+  /**
+   * Sends a request that carries a select handle, such as a notification status
+   * or next page request, to the name servers in the handle.
+   */
+  private CompletableFuture<SelectResponsePacket> processSelectHandleRequestFromClient
   					(InternalRequestHeader header, 
   							SelectRequestPacket packet, GNSApplicationInterface<String> app)
   {
@@ -320,8 +418,11 @@ public class Select extends AbstractSelector
 	  // These should be server-to-server addresses
 	  Set<InetSocketAddress> serverAddresses = getServerAddressFromHandles(localHandlesList);
 	  
+	  int pageSizePerServer = getPageSizePerServer(packet.getPageSize(), localHandlesList.size());
+	  
 	  // store the info for later
-	  int queryId = addQueryInfo(serverAddresses, packet);
+	  NSSelectInfo info = addQueryInfo(serverAddresses, packet);
+	  int queryId = info.getId();
 	  
 	  //FIXME: aditya: COMMENT: not sure why we are not sending here on server-server port. s
 	  InetSocketAddress returnAddress = new InetSocketAddress(
@@ -334,6 +435,9 @@ public class Select extends AbstractSelector
 		  // selectAndNotify was forwarded to.
 		  LocalSelectHandleInfo currLocalHandle =  localHandlesList.get(i);
 		  SelectRequestPacket currPacket = 
+				  packet.getSelectOperation() == SelectOperation.NEXT_PAGE ?
+				  SelectRequestPacket.makeNextPageRequest
+				  	(packet.getReader(), null, currLocalHandle, pageSizePerServer) :
 				  SelectRequestPacket.makeSelectNotificationStatusRequest
 				  	(packet.getReader(), null, currLocalHandle);
 		  
@@ -356,32 +460,14 @@ public class Select extends AbstractSelector
 			  app.sendToAddress(offsetAddress, messageJSON);
 		  } catch (IOException | JSONException e) 
 		  {
-			  LOGGER.log(Level.WARNING, "{0} processNotificationStatusFromClient: "
+			  LOGGER.log(Level.WARNING, "{0} processSelectHandleRequestFromClient: "
 			  			+ "Sending message {1} to node {2} failed."
 			  			, new Object[]{app , messageJSON, 
 			  					offsetAddress});
 		  }
 	  }
 	  
-	  // Wait for responses, otherwise you are violating Replicable.execute(.)'s semantics.
-	  synchronized (pendingQueries)
-	  {
-		  while (pendingQueries.containsKey(queryId)) 
-		  {
-			  try
-			  {
-				  pendingQueries.wait(SELECT_REQUEST_TIMEOUT);
-			  } catch (InterruptedException e) {
-				  e.printStackTrace();
-			  }
-		  }
-	  }
-	  
-	  if (queryResult.containsKey(queryId)) 
-	  {
-		  return queryResult.remove(queryId);
-	  }
-	  return null;
+	  return info.getCompletion();
   }
   
   
@@ -398,6 +484,19 @@ public class Select extends AbstractSelector
   }
   
   
+  // Splits a page between the name servers that are asked for records, 
+  // so a page has about pageSize records.
+  private static int getPageSizePerServer(int pageSize, int numServers)
+  {
+	  int maxPageSize = Config.getGlobalInt(GNSC.SELECT_PAGE_SIZE);
+	  if(pageSize <= 0 || pageSize > maxPageSize)
+	  {
+		  pageSize = maxPageSize;
+	  }
+	  return Math.max(1, (pageSize + numServers - 1) / Math.max(1, numServers));
+  }
+  
+  
   private AbstractRecordCursor getDBCursor(SelectRequestPacket request, 
 		  											GNSApplicationInterface<String> app) 
 		  													throws FailedDBOperationException
@@ -427,10 +526,14 @@ public class Select extends AbstractSelector
 		        break;
 		    case QUERY:
 		    case SELECT_NOTIFY:
+		    case QUERY_PAGED:
+		    case COUNT:
+		    case LIMIT:
+		    case TOP_K:
 		        LOGGER.log(Level.FINE, "NS{0} query: {1} {2}",
 		                new Object[]{app.getNodeID(), request.getQuery(), request.getProjection()});
 		        cursor = NameRecord.selectRecordsQuery(app.getDB(), request.getQuery(), 
-		        														request.getProjection());
+		        														getDBProjection(request));
 		        break;
 		    default:
 		        break;
@@ -439,6 +542,24 @@ public class Select extends AbstractSelector
   }
   
   
+  // A top-k select needs the sort field from the database even if 
+  // the user didn't ask for it. It is removed again by the projection.
+  private static List<String> getDBProjection(SelectRequestPacket request)
+  {
+	  List<String> projection = request.getProjection();
+	  if(request.getSelectOperation() != SelectOperation.TOP_K || projection == null 
+			  || (!projection.isEmpty() 
+					  && projection.get(0).equals(GNSProtocol.ENTIRE_RECORD.toString()))
+			  || projection.contains(request.getSortField()))
+	  {
+		  return projection;
+	  }
+	  List<String> result = new ArrayList<>(projection);
+	  result.add(request.getSortField());
+	  return result;
+  }
+  
+  
   /**
    * Handle a select request from the collecting NS. This is what other NSs do when they
    * get a SelectRequestPacket from the NS that originally received the packet 
@@ -467,8 +588,11 @@ public class Select extends AbstractSelector
 			  case NEAR:
 			  case WITHIN:
 			  case QUERY:
+			  case COUNT:
+			  case LIMIT:
+			  case TOP_K:
 			  {
-				  response = processSelectRequestFromNSForReturningGUIDs(request, app);
+				  response = processCacheableSelectRequestFromNS(request, app);
 				  break;
 			  }
 			  case SELECT_NOTIFY:
@@ -481,6 +605,13 @@ public class Select extends AbstractSelector
 				  response = processSelectRequestFromNSForNotificationStatus(request, app);
 				  break;
 			  }
+			  case QUERY_PAGED:
+			  case NEXT_PAGE:
+			  {
+				  response = processSelectRequestFromNSForPage(request, app);
+				  break;
+			  }
+			  
 			  default:
 				  break;
 		  }
@@ -510,6 +641,79 @@ public class Select extends AbstractSelector
   }
   
   
+  /**
+   * Answers a select whose records only depend on the records at this name server 
+   * from the {@link SelectResultCache} if it can. Otherwise evaluates it and caches 
+   * the records until one of the fields they depend on is updated.
+   */
+  private SelectResponsePacket processCacheableSelectRequestFromNS
+  			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
+  					throws FailedDBOperationException
+  {
+	  if(!SelectResultCache.isEnabled())
+	  {
+		  return processSelectRequestFromNSForRecords(request, app);
+	  }
+	  String cacheKey = SelectResultCache.getKey(app.getNodeID(), request);
+	  JSONArray cachedRecords = SelectResultCache.get(cacheKey);
+	  if(cachedRecords != null)
+	  {
+		  LOGGER.log(Level.FINE, "NS {0} select result cache hit for {1}",
+				  new Object[]{app.getNodeID(), request.getSummary()});
+		  return SelectResponsePacket.makeSuccessPacketForFullRecords(
+				  request.getRequestID(), request.getClientAddress(),
+				  request.getNsQueryId(), app.getNodeAddress(), cachedRecords);
+	  }
+	  // Read before the database so an update during the scan keeps it out of the cache.
+	  long generation = SelectResultCache.getGeneration();
+	  SelectResponsePacket response = processSelectRequestFromNSForRecords(request, app);
+	  if(ResponseCode.NO_ERROR.equals(response.getResponseCode()))
+	  {
+		  SelectResultCache.put(cacheKey, response.getRecords(), 
+				  getFieldsOfRecords(request), generation);
+	  }
+	  return response;
+  }
+  
+  private SelectResponsePacket processSelectRequestFromNSForRecords
+  			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
+  					throws FailedDBOperationException
+  {
+	  switch(request.getSelectOperation())
+	  {
+	  		case COUNT:
+	  		case LIMIT:
+	  		case TOP_K:
+	  			return processSelectRequestFromNSForAggregate(request, app);
+	  		default:
+	  			return processSelectRequestFromNSForReturningGUIDs(request, app);
+	  }
+  }
+  
+  // Returns the fields that the records a name server returns for a select 
+  // depend on or null if they can depend on any field.
+  private List<String> getFieldsOfRecords(SelectRequestPacket request)
+  {
+	  List<String> fields = getFieldsForQueryType(request);
+	  if(fields.isEmpty())
+	  {
+		  // We couldn't tell which fields the query reads.
+		  return null;
+	  }
+	  List<String> projection = request.getProjection();
+	  if(projection != null)
+	  {
+		  if(!projection.isEmpty() 
+				  && projection.get(0).equals(GNSProtocol.ENTIRE_RECORD.toString()))
+		  {
+			  return null;
+		  }
+		  fields.addAll(projection);
+	  }
+	  return fields;
+  }
+  
+  
   private SelectResponsePacket processSelectRequestFromNSForReturningGUIDs
   			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
   					throws FailedDBOperationException
@@ -520,20 +724,252 @@ public class Select extends AbstractSelector
   	  // iterator approach. 
 	  
 	  JSONArray resultRecords = new JSONArray();
+	  SelectScan scan = makeSelectScan(request, app);
+	  int fetchSize = Config.getGlobalInt(GNSC.SELECT_FETCH_SIZE);
+	  try
+	  {
+		  while (cursor != null && cursor.hasNext()) 
+		  {
+			  for(JSONObject record: readAndConvertRecords(cursor, fetchSize, 
+					  record -> {
+						  record = aclCheckForRecord(scan, record);
+						  return record == null ? null : makeResultRecord(app, request, record, null);
+					  }))
+			  {
+				  resultRecords.put(record);
+			  }
+		  }
+	  }
+	  finally
+	  {
+		  if(cursor != null)
+		  {
+			  cursor.close();
+		  }
+	  }
 	  
-	  while (cursor != null && cursor.hasNext()) 
+	  return SelectResponsePacket.makeSuccessPacketForFullRecords(
+			  request.getRequestID(), request.getClientAddress(),
+			  request.getNsQueryId(), app.getNodeAddress(), resultRecords);
+  }
+  
+  
+  /**
+   * Reads the next page of a paged select from this name server's cursor. 
+   * The cursor is opened by a QUERY_PAGED request and kept, under a lease, 
+   * as long as it has more records so that NEXT_PAGE requests can continue it.
+   */
+  private SelectResponsePacket processSelectRequestFromNSForPage
+  			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
+  					throws FailedDBOperationException
+  {
+	  NameServerSelectCursorState.CursorLease lease;
+	  long handleId = -1;
+	  if(request.getSelectOperation() == SelectOperation.NEXT_PAGE)
 	  {
-		  JSONObject record = cursor.nextJSONObject();
-		  
-		  record = aclCheckForRecord(request, record, app);
-		  if(record!=null)
+		  LocalSelectHandleInfo localSelectHandle = request.getLocalSelectHandleInfo();
+		  assert(localSelectHandle != null);
+		  handleId = localSelectHandle.getLocalHandleId();
+		  lease = pagedCursors.checkoutCursor(handleId);
+		  if(lease == null)
 		  {
-			  record = performProjectionForUserRequestedAttributes(
-					  app, request, record);
-			  
-			  if(record!=null)
+			  return SelectResponsePacket.makeFailPacket(request.getRequestID(), 
+					  request.getClientAddress(), request.getNsQueryId(), app.getNodeAddress(), 
+					  "Select cursor expired or in use on " + app.getNodeID());
+		  }
+		  // Only the reader that issued the select can read the rest of it.
+		  if(!Objects.equals(lease.getRequest().getReader(), request.getReader()))
+		  {
+			  pagedCursors.returnCursor(handleId, lease);
+			  return SelectResponsePacket.makeFailPacket(request.getRequestID(), 
+					  request.getClientAddress(), request.getNsQueryId(), app.getNodeAddress(), 
+					  "Select handle was issued to another reader");
+		  }
+	  }
+	  else
+	  {
+		  lease = new NameServerSelectCursorState.CursorLease(getDBCursor(request, app), request);
+	  }
+	  
+	  AbstractRecordCursor cursor = lease.getCursor();
+	  // The ACL checks and projection come from the request that opened the cursor.
+	  SelectRequestPacket query = lease.getRequest();
+	  int pageSize = request.getPageSize() > 0 ? request.getPageSize() 
+			  : Config.getGlobalInt(GNSC.SELECT_PAGE_SIZE);
+	  
+	  JSONArray resultRecords = new JSONArray();
+	  SelectScan scan = makeSelectScan(query, app);
+	  boolean hasMore = false;
+	  try
+	  {
+		  while (cursor != null && resultRecords.length() < pageSize && cursor.hasNext()) 
+		  {
+			  // Never read more than fit in the page so the rest stay in the cursor.
+			  for(JSONObject record: readAndConvertRecords(cursor, pageSize - resultRecords.length(), 
+					  record -> {
+						  record = aclCheckForRecord(scan, record);
+						  return record == null ? null : makePageRecord(app, query, record);
+					  }))
+			  {
 				  resultRecords.put(record);
+			  }
+		  }
+		  hasMore = cursor != null && cursor.hasNext();
+	  }
+	  catch(FailedDBOperationException | RuntimeException e)
+	  {
+		  // The cursor is neither leased out again nor closed by anyone else.
+		  if(cursor != null)
+		  {
+			  cursor.close();
+		  }
+		  throw e;
+	  }
+	  
+	  SelectHandleInfo nextPageHandle = null;
+	  if(hasMore)
+	  {
+		  if(handleId == -1)
+		  {
+			  handleId = pagedCursors.addCursor(lease);
+		  }
+		  else
+		  {
+			  pagedCursors.returnCursor(handleId, lease);
+		  }
+		  List<LocalSelectHandleInfo> list = new LinkedList<LocalSelectHandleInfo>();
+		  list.add(new LocalSelectHandleInfo(handleId, app.getNodeAddress()));
+		  nextPageHandle = new SelectHandleInfo(list);
+	  }
+	  else if(cursor != null)
+	  {
+		  cursor.close();
+	  }
+	  
+	  return SelectResponsePacket.makeSuccessPacketForPage(
+			  request.getRequestID(), request.getClientAddress(),
+			  request.getNsQueryId(), app.getNodeAddress(), resultRecords, nextPageHandle);
+  }
+  
+  // Converts a record that passed the ACL checks into what a page returns
+  // to the user. Pages only carry the guid if no fields were requested.
+  private JSONObject makePageRecord(GNSApplicationInterface<String> app, 
+		  SelectRequestPacket query, JSONObject record)
+  {
+	  try
+	  {
+		  if(query.getProjection() == null)
+		  {
+			  return new JSONObject().put("_GUID", record.getString(NameRecord.NAME.getName()));
+		  }
+		  record = performProjectionForUserRequestedAttributes(app, query, record);
+		  return record == null ? null : massageRecord(record);
+	  } catch (JSONException e) 
+	  {
+		  LOGGER.log(Level.FINE, "{0} Problem getting guid from json: {1}",
+				  new Object[]{app.getNodeID(), e.getMessage()});
+		  return null;
+	  }
+  }
+  
+  
+  /**
+   * Evaluates a count, limit or top-k select at this name server so that it only 
+   * sends back the records that can be in the answer. A count sends just the guids, 
+   * because guids that are replicated on several name servers must only be counted 
+   * once by the collecting name server. A limit stops reading the cursor after 
+   * {@code limit} records and a top-k keeps the best {@code k} records in a 
+   * bounded heap. The collecting name server applies the limit again to the 
+   * merged records, which contain the answer.
+   */
+  private SelectResponsePacket processSelectRequestFromNSForAggregate
+  			(SelectRequestPacket request, GNSApplicationInterface<String> app) 
+  					throws FailedDBOperationException
+  {
+	  SelectOperation operation = request.getSelectOperation();
+	  int limit = operation == SelectOperation.COUNT ? Integer.MAX_VALUE 
+			  : Math.max(0, request.getLimit());
+	  
+	  FieldPath sortPath = operation == SelectOperation.TOP_K 
+			  ? FieldPath.get(request.getSortField()) : null;
+	  Comparator<JSONObject> order = null;
+	  PriorityQueue<JSONObject> topK = null;
+	  if(operation == SelectOperation.TOP_K)
+	  {
+		  order = getTopKOrder(request.isDescending());
+		  // The head of the heap is the worst record that is kept.
+		  topK = new PriorityQueue<JSONObject>(Math.max(1, Math.min(limit, 1024)), 
+				  Collections.reverseOrder(order));
+	  }
+	  
+	  JSONArray resultRecords = new JSONArray();
+	  AbstractRecordCursor cursor = limit > 0 ? getDBCursor(request, app) : null;
+	  try
+	  {
+		  SelectScan scan = makeSelectScan(request, app);
+		  int fetchSize = Config.getGlobalInt(GNSC.SELECT_FETCH_SIZE);
+		  Function<JSONObject, JSONObject> converter = record -> {
+			  Object sortValue = null;
+			  if(sortPath != null)
+			  {
+				  JSONObject valuesMap = record.optJSONObject(NameRecord.VALUES_MAP.getName());
+				  sortValue = valuesMap == null ? null : sortPath.getValue(valuesMap);
+				  // Records without the field have no place in the order.
+				  if(sortValue == null)
+				  {
+					  return null;
+				  }
+			  }
 			  
+			  if(operation == SelectOperation.COUNT)
+			  {
+				  // Counting doesn't return any fields so only the query fields are checked.
+				  record = aclCheckForQueryAttributes(scan, record) ? record : null;
+			  }
+			  else
+			  {
+				  record = aclCheckForRecord(scan, record);
+			  }
+			  return record == null ? null : makeResultRecord(app, request, record, sortValue);
+		  };
+		  
+		  while (cursor != null && (topK != null || resultRecords.length() < limit) 
+				  && cursor.hasNext()) 
+		  {
+			  // A limit doesn't read more records than it can still use.
+			  int batchSize = topK == null ? Math.min(fetchSize, limit - resultRecords.length()) 
+					  : fetchSize;
+			  for(JSONObject record: readAndConvertRecords(cursor, batchSize, converter))
+			  {
+				  if(topK == null)
+				  {
+					  resultRecords.put(record);
+				  }
+				  else if(topK.size() < limit)
+				  {
+					  topK.add(record);
+				  }
+				  else if(order.compare(record, topK.peek()) < 0)
+				  {
+					  topK.poll();
+					  topK.add(record);
+				  }
+			  }
+		  }
+	  }
+	  finally
+	  {
+		  if(cursor != null)
+		  {
+			  cursor.close();
+		  }
+	  }
+	  
+	  if(topK != null)
+	  {
+		  for(JSONObject record: topK)
+		  {
+			  resultRecords.put(record);
 		  }
 	  }
 	  
@@ -542,6 +978,65 @@ public class Select extends AbstractSelector
 			  request.getNsQueryId(), app.getNodeAddress(), resultRecords);
   }
   
+  // Converts a record that passed the ACL checks into what a select, other than a
+  // paged one, sends to the collecting name server. Only the guid is sent if no 
+  // fields were requested because that is all the collecting name server uses. 
+  // A top-k record also carries its sort value because the projection may have 
+  // removed the sort field.
+  private JSONObject makeResultRecord(GNSApplicationInterface<String> app, 
+		  SelectRequestPacket request, JSONObject record, Object sortValue)
+  {
+	  try
+	  {
+		  if(request.getProjection() == null)
+		  {
+			  record = new JSONObject().put(NameRecord.NAME.getName(), 
+					  record.getString(NameRecord.NAME.getName()));
+		  }
+		  else
+		  {
+			  record = performProjectionForUserRequestedAttributes(app, request, record);
+		  }
+		  if(record != null && sortValue != null)
+		  {
+			  record.put(SORT_VALUE, sortValue);
+		  }
+		  return record;
+	  } catch (JSONException e) 
+	  {
+		  LOGGER.log(Level.FINE, "{0} Problem getting guid from json: {1}",
+				  new Object[]{app.getNodeID(), e.getMessage()});
+		  return null;
+	  }
+  }
+  
+  // Orders top-k records by their sort values, then by guid so that 
+  // every name server breaks ties the same way.
+  private static Comparator<JSONObject> getTopKOrder(boolean descending)
+  {
+	  Comparator<JSONObject> ascending = (a, b) -> 
+	  			compareSortValues(a.opt(SORT_VALUE), b.opt(SORT_VALUE));
+	  return (descending ? ascending.reversed() : ascending)
+			  .thenComparing(record -> record.optString(NameRecord.NAME.getName()));
+  }
+  
+  // Numbers are ordered by value and come before strings, which come 
+  // before any other values. Those are ordered by their string form.
+  private static int compareSortValues(Object a, Object b)
+  {
+	  if(a instanceof Number && b instanceof Number)
+	  {
+		  return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+	  }
+	  int rankA = a instanceof Number ? 0 : a instanceof String ? 1 : 2;
+	  int rankB = b instanceof Number ? 0 : b instanceof String ? 1 : 2;
+	  if(rankA != rankB)
+	  {
+		  return Integer.compare(rankA, rankB);
+	  }
+	  return String.valueOf(a).compareTo(String.valueOf(b));
+  }
+  
   
   private SelectResponsePacket processSelectRequestFromNSForSelectNotify(
 		  		SelectRequestPacket request, GNSApplicationInterface<String> app) 
@@ -558,34 +1053,32 @@ public class Select extends AbstractSelector
   	  
   	  List<NotificationSendingStats> notificationStatsList = new LinkedList<NotificationSendingStats>();
   	  
+  	  SelectScan scan = makeSelectScan(request, app);
+  	  int fetchSize = Config.getGlobalInt(GNSC.SELECT_FETCH_SIZE);
   	  while (cursor != null && cursor.hasNext()) 
   	  {
-  		  JSONObject record = cursor.nextJSONObject();
-  		  
-  		  record = aclCheckForRecord(request, record, app);
-  		  if(record != null)
+  		  for(JSONObject record: readAndConvertRecords(cursor, fetchSize - currList.size(), 
+  				  record -> {
+  					  record = aclCheckForRecord(scan, record);
+  					  return record == null ? null 
+  							  : performProjectionForUserRequestedAttributes(app, request, record);
+  				  }))
   		  {
-  			  record = performProjectionForUserRequestedAttributes(
-					  app, request, record);
-  			  
-  			  if(record!=null)
+  			  try
+  			  {
+  				  String guid = record.getString(NameRecord.NAME.getName());
+  				  SelectGUIDInfo selectGUIDInfo = new SelectGUIDInfo(guid, record);
+  				  currList.add(selectGUIDInfo);
+  			  } catch (JSONException e) 
   			  {
-  				  try
-  				  {
-  					  String guid = record.getString(NameRecord.NAME.getName());
-  					  SelectGUIDInfo selectGUIDInfo = new SelectGUIDInfo(guid, record);
-  					  currList.add(selectGUIDInfo);
-  				  } catch (JSONException e) 
-  				  {
-  					  // This JSON exception is because of problem in reading NameRecord.NAME.
-  					  // which should not happen
-  					  LOGGER.log(Level.INFO, "JSONException in processing a record {0}", 
-								new Object[]{e.getMessage()});
-  				  }
+  				  // This JSON exception is because of problem in reading NameRecord.NAME.
+  				  // which should not happen
+  				  LOGGER.log(Level.INFO, "JSONException in processing a record {0}", 
+							new Object[]{e.getMessage()});
   			  }
   		  }
   		  
-  		  if(currList.size() >= Config.getGlobalInt(GNSC.SELECT_FETCH_SIZE))
+  		  if(currList.size() >= fetchSize)
   		  {  
   			  // Sending the actual notification.
   			  // Based on the implementation, this function could block for very long.
@@ -716,25 +1209,105 @@ public class Select extends AbstractSelector
 				totalFailed, totalPending);
   }
   
+  private SelectScan makeSelectScan(SelectRequestPacket request, 
+		  GNSApplicationInterface<String> app)
+  {
+	  return new SelectScan(request, app, getFieldsForQueryType(request));
+  }
+  
+  /**
+   * Reads up to {@code maxRecords} records from {@code cursor} and converts them
+   * with {@code converter}, which checks their ACLs and projects them. Large batches
+   * are converted in parallel on {@link #ACL_CHECK_POOL}. The converted records are 
+   * returned in the order of the cursor, without the ones converted to null.
+   *
+   * @param cursor
+   * @param maxRecords
+   * @param converter
+   * @return the converted records
+   * @throws FailedDBOperationException
+   */
+  private static List<JSONObject> readAndConvertRecords(AbstractRecordCursor cursor, 
+		  int maxRecords, Function<JSONObject, JSONObject> converter) 
+				  throws FailedDBOperationException
+  {
+	  List<JSONObject> records = new ArrayList<JSONObject>();
+	  while (records.size() < maxRecords && cursor.hasNext())
+	  {
+		  records.add(cursor.nextJSONObject());
+	  }
+	  
+	  List<JSONObject> result = new ArrayList<JSONObject>(records.size());
+	  if(records.size() < 2 * MIN_RECORDS_PER_TASK)
+	  {
+		  for(JSONObject record: records)
+		  {
+			  JSONObject converted = converter.apply(record);
+			  if(converted != null)
+			  {
+				  result.add(converted);
+			  }
+		  }
+		  return result;
+	  }
+	  
+	  int numTasks = Math.min(ACL_CHECK_POOL.getParallelism(), 
+			  records.size() / MIN_RECORDS_PER_TASK);
+	  int perTask = (records.size() + numTasks - 1) / numTasks;
+	  List<Callable<List<JSONObject>>> tasks = new ArrayList<Callable<List<JSONObject>>>();
+	  for(int start = 0; start < records.size(); start += perTask)
+	  {
+		  List<JSONObject> chunk = records.subList(start, Math.min(start + perTask, records.size()));
+		  tasks.add(() -> {
+			  List<JSONObject> converted = new ArrayList<JSONObject>(chunk.size());
+			  for(JSONObject record: chunk)
+			  {
+				  JSONObject convertedRecord = converter.apply(record);
+				  if(convertedRecord != null)
+				  {
+					  converted.add(convertedRecord);
+				  }
+			  }
+			  return converted;
+		  });
+	  }
+	  try
+	  {
+		  for(Future<List<JSONObject>> future: ACL_CHECK_POOL.invokeAll(tasks))
+		  {
+			  result.addAll(future.get());
+		  }
+	  } catch (InterruptedException | ExecutionException e) 
+	  {
+		  if(e instanceof InterruptedException)
+		  {
+			  Thread.currentThread().interrupt();
+		  }
+		  FailedDBOperationException failed = new FailedDBOperationException(null, null, 
+				  "Unable to check the ACLs of select records: " + e);
+		  failed.initCause(e);
+		  throw failed;
+	  }
+	  return result;
+  }
+  
   /**
    * Checks if {@code record} satisfies ACL checks. Also, removes fields from {@code record} 
    * that the query issuer is not allowed to read. 
    *
-   * @param packet
+   * @param scan
    * @param record
-   * @param app
    * @return
    * The JSONObject corresponding to the record after removing private fields. Returns null
    * if ACL check on query fields fails or there is an exception.
    */
-  private JSONObject aclCheckForRecord(SelectRequestPacket packet, JSONObject record,
-		  GNSApplicationInterface<String> app) 
+  private JSONObject aclCheckForRecord(SelectScan scan, JSONObject record) 
   {
 	  // First we check if the query issuer is in read ACLs for all query attributes
-	  boolean satisfy =aclCheckForQueryAttributes(packet, record, app);
+	  boolean satisfy =aclCheckForQueryAttributes(scan, record);
 	  if(satisfy)
 	  {
-		  return aclCheckForProjectionFields(packet, record, app);
+		  return aclCheckForProjectionFields(scan, record);
 	  }
 	  else
 	  {
@@ -818,24 +1391,34 @@ public class Select extends AbstractSelector
    * This function checks that the query issuer has read access to all query fields for 
    * {@code record}.
    * 
-   * @param packet
+   * @param scan
    * @param record
-   * @param app
    * @return
    * true if the acl check on query fields is satisfied. Otherwise, false.
    */
-  private boolean aclCheckForQueryAttributes(SelectRequestPacket packet, JSONObject record,
-		  	GNSApplicationInterface<String> app) 
+  private boolean aclCheckForQueryAttributes(SelectScan scan, JSONObject record) 
   {
+	  GNSApplicationInterface<String> app = scan.app;
 	  try 
 	  {
 		  String guid = record.getString(NameRecord.NAME.getName());
-		  List<String> queryFields = getFieldsForQueryType(packet);
+		  List<String> queryFields = scan.queryFields;
 		  
 		  NameRecord nr = new NameRecord(app.getDB(), record);
         
-		  ResponseCode responseCode = NSAuthentication.signatureAndACLCheck(null, guid, null, 
-				queryFields, packet.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, app, true, nr);
+		  ResponseCode responseCode;
+		  if(scan.accessor == null || queryFields.isEmpty())
+		  {
+			  responseCode = NSAuthentication.signatureAndACLCheck(null, guid, null, queryFields, 
+					  scan.request.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, app, true, nr);
+		  }
+		  else
+		  {
+			  // Same as signatureAndACLCheck without the signature check but
+			  // the reader is only looked up once for the whole select.
+			  responseCode = getResponseCode(NSAuthentication.aclCheck(null, guid, queryFields, 
+					  scan.accessor, MetaDataTypeName.READ_WHITELIST, app, nr).values());
+		  }
 		  
 		  LOGGER.log(Level.FINE, "{0} ACL check for select: guid={0} queryFields={1} responsecode={3}",
                 new Object[]{app.getNodeID(), guid, queryFields, responseCode});
@@ -853,40 +1436,70 @@ public class Select extends AbstractSelector
 	  return false;
   }
   
+  // Returns the first error of the ACL checks of some fields or NO_ERROR.
+  private static ResponseCode getResponseCode(Collection<AclCheckResult> results)
+  {
+	  for(AclCheckResult result: results)
+	  {
+		  if(result.getResponseCode().isExceptionOrError())
+		  {
+			  return result.getResponseCode();
+		  }
+	  }
+	  return ResponseCode.NO_ERROR;
+  }
+  
   /**
    * This filters individual fields if the cannot be accessed by the reader.
    *
-   * @param packet
+   * @param scan
    * @param record
-   * @param app
    * @return
    * the JSONObject after removing fields that don't satisfy ACL checks.
    */
-  private JSONObject aclCheckForProjectionFields(SelectRequestPacket packet, JSONObject record,
-		  GNSApplicationInterface<String> app) 
+  private JSONObject aclCheckForProjectionFields(SelectScan scan, JSONObject record) 
   {
+	  GNSApplicationInterface<String> app = scan.app;
 	  try 
 	  {
 		  String guid = record.getString(NameRecord.NAME.getName());
 		  // Look at the keys in the values map
 		  JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
+		  List<String> fields = new ArrayList<>();
 		  Iterator<?> keys = valuesMap.keys();
 		  while (keys.hasNext()) 
 		  {
 			  String field = (String) keys.next();
 			  if (!InternalField.isInternalField(field)) 
 			  {
-				  LOGGER.log(Level.FINE, "{0} Checking: {1}", new Object[]{app.getNodeID(), field});
-				  ResponseCode responseCode = NSAuthentication.signatureAndACLCheck(null, guid, field, 
-						  null, packet.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, app, true, 
-						  new NameRecord(app.getDB(), record));
-            
-				  if (!responseCode.isOKResult()) 
-				  {
-					  LOGGER.log(Level.FINE, "{0} Removing: {1}", new Object[]{app.getNodeID(), field});
-					  // removing the offending field
-					  keys.remove();
-				  }
+				  fields.add(field);
+			  }
+		  }
+		  if(fields.isEmpty())
+		  {
+			  return record;
+		  }
+		  LOGGER.log(Level.FINE, "{0} Checking: {1}", new Object[]{app.getNodeID(), fields});
+		  NameRecord nr = new NameRecord(app.getDB(), record);
+		  
+		  Map<String, AclCheckResult> results = null;
+		  if(scan.accessor != null)
+		  {
+			  // All the fields are checked against the metadata in one pass.
+			  results = NSAuthentication.aclCheck(null, guid, fields, scan.accessor, 
+					  MetaDataTypeName.READ_WHITELIST, app, nr);
+		  }
+		  for(String field: fields)
+		  {
+			  ResponseCode responseCode = results != null ? results.get(field).getResponseCode()
+					  : NSAuthentication.signatureAndACLCheck(null, guid, field, null, 
+							  scan.request.getReader(), null, null, MetaDataTypeName.READ_WHITELIST, 
+							  app, true, nr);
+			  if (!responseCode.isOKResult()) 
+			  {
+				  LOGGER.log(Level.FINE, "{0} Removing: {1}", new Object[]{app.getNodeID(), field});
+				  // removing the offending field
+				  valuesMap.remove(field);
 			  }
 		  }
       } catch (JSONException | InvalidKeyException | InvalidKeySpecException 
@@ -912,7 +1525,18 @@ public class Select extends AbstractSelector
       		return new ArrayList<>(Arrays.asList(request.getKey()));
       	case QUERY:
       	case SELECT_NOTIFY:
+      	case QUERY_PAGED:
+      	case COUNT:
+      	case LIMIT:
       		return getFieldsFromQuery(request.getQuery());
+      	case TOP_K:
+      		// Ordering by a field reads it, so the reader needs access to it too.
+      		List<String> fields = getFieldsFromQuery(request.getQuery());
+      		if(!fields.contains(request.getSortField()))
+      		{
+      			fields.add(request.getSortField());
+      		}
+      		return fields;
       	default:
       		return new ArrayList<>();
 	  }
@@ -974,23 +1598,8 @@ public class Select extends AbstractSelector
 		  // and this is the non-null response that needs to go to the client.
 		  if(response != null)
 		  {
-			  // Put the result where the coordinator can see it.
-			  queryResult.put(packet.getNsQueryId(), response);
-			  // and let the coordinator know the value is there
-			  if (GNSApp.DELEGATE_CLIENT_MESSAGING) 
-			  {
-				  synchronized (pendingQueries) 
-				  {
-					  // Must be done after setting result in QUERY_RESULT,
-					  // Otherwise, the waiting thread will wake up and 
-					  // find the query is not in progress but will not find any result
-					  // so will return a wrong response. A wait()
-					  // can wake spuriously without the notify() as mentioned
-					  // in the documentation of these functions.
-					  pendingQueries.remove(packet.getNsQueryId());
-					  pendingQueries.notify();
-				  }
-			  }
+			  // Let whoever is waiting on this query have the response.
+			  info.getCompletion().complete(response);
 		  }
 	  } 
 	  else 
@@ -1003,23 +1612,7 @@ public class Select extends AbstractSelector
 		  // The query has failed at one of the name servers.
 		  // So, we just send an error response to the client
 		  // and remove the query state.
-		  // Put the result where the coordinator can see it.
-		  queryResult.put(packet.getNsQueryId(), packet);
-		  // and let the coordinator know the value is there
-		  if (GNSApp.DELEGATE_CLIENT_MESSAGING) 
-		  {
-			  synchronized (pendingQueries) 
-			  {
-				  // Must be done after setting result in QUERY_RESULT,
-				  // Otherwise, the waiting thread will wake up and 
-				  // find the query is not in progress but will not find any result
-				  // so will return a wrong response. A wait()
-				  // can wake spuriously without the notify() as mentioned
-				  // in the documentation of these functions.
-				  pendingQueries.remove(packet.getNsQueryId());
-				  pendingQueries.notify();
-			  }
-		  }
+		  info.getCompletion().complete(packet);
 	  }
   }
   
@@ -1045,6 +1638,9 @@ public class Select extends AbstractSelector
 	  		case NEAR:
 			case WITHIN:
 			case QUERY:
+			case COUNT:
+			case LIMIT:
+			case TOP_K:
 			{
 				response = processSelectResponseForReturningGUIDs(packet, info, replica);
 			  	break;
@@ -1059,6 +1655,12 @@ public class Select extends AbstractSelector
 				response = processSelectResponseForNotificationStatus(packet, info, replica);
 			  	break;
 			}
+			case QUERY_PAGED:
+			case NEXT_PAGE:
+			{
+				response = processSelectResponseForPage(packet, info, replica);
+			  	break;
+			}
 			default:
 			{
 				break;
@@ -1105,7 +1707,7 @@ public class Select extends AbstractSelector
 	  }
 	  if (allServersResponded) 
 	  {  
-		  Set<JSONObject> allRecords = info.getResponsesAsSet();
+		  Set<JSONObject> allRecords = getRecordsInAnswer(info);
 		  Set<String> guids = extractGuidsFromRecords(allRecords);
 		  LOGGER.log(Level.FINE,
 	              "NS{0} guids:{1} All servers responded",
@@ -1141,6 +1743,73 @@ public class Select extends AbstractSelector
   }
   
   
+  // Returns the merged records that are in the answer. For a limit or top-k select
+  // these are the first records, in order for a top-k, and for the others all of them.
+  private static Set<JSONObject> getRecordsInAnswer(NSSelectInfo info)
+  {
+	  SelectRequestPacket request = info.getSelectRequestPacket();
+	  switch(request.getSelectOperation())
+	  {
+	  		case LIMIT:
+	  		case TOP_K:
+	  		{
+	  			List<JSONObject> records = info.getResponsesAsList();
+	  			if(request.getSelectOperation() == SelectOperation.TOP_K)
+	  			{
+	  				Collections.sort(records, getTopKOrder(request.isDescending()));
+	  			}
+	  			int limit = Math.min(Math.max(0, request.getLimit()), records.size());
+	  			return new LinkedHashSet<>(records.subList(0, limit));
+	  		}
+	  		default:
+	  			return info.getResponsesAsSet();
+	  }
+  }
+  
+  
+  /**
+   * Merges the pages from the name servers of a paged select. Returns a SelectResponsePacket 
+   * with the merged page and the handles of the name servers that have more records
+   * if all name servers have responded. Otherwise, returns null for pending requests. 
+   */
+  private SelectResponsePacket processSelectResponseForPage(
+		  SelectResponsePacket packet, NSSelectInfo info, GNSApplicationInterface<String> app) 
+				  	throws JSONException
+  {
+	  JSONArray jsonArray = packet.getRecords();
+	  int length = jsonArray.length();
+	  for (int i = 0; i < length; i++)
+	  {
+		  // Pages are already converted by the name servers so all we do is 
+		  // remove the duplicates of guids that are replicated on several of them.
+		  JSONObject record = jsonArray.getJSONObject(i);
+		  info.addRecordResponseIfNotSeenYet(record.getString("_GUID"), record);  
+	  }
+	  info.addNextPageHandle(packet.getSelectHandleInfo());
+	  
+	  boolean allServersResponded;
+	  synchronized (info) 
+	  {
+		  // Remove the NS Address from the list to keep track of who has responded
+		  info.removeServerAddress(packet.getNSAddress());
+		  allServersResponded = info.allServersResponded();
+	  }
+	  if (allServersResponded) 
+	  {
+		  return SelectResponsePacket.makeSuccessPacketForPage(packet.getRequestID(), 
+				  null, -1, null, new JSONArray(info.getResponsesAsList()), 
+				  info.getNextPageHandle());
+	  }
+	  else 
+	  {
+		  LOGGER.log(Level.FINE,
+				  "NS{0} servers yet to respond:{1}",
+				  	new Object[]{app.getNodeID(), info.serversYetToRespond()});
+	  }
+	  return null;
+  }
+  
+  
   private SelectResponsePacket processSelectResponseForSelectNotify
   		(SelectResponsePacket packet, NSSelectInfo info, 
   				GNSApplicationInterface<String> app)
@@ -1297,29 +1966,34 @@ public class Select extends AbstractSelector
     List<JSONObject> result = new ArrayList<>();
     for (JSONObject record : records) {
       try {
-        JSONObject newRecord = new JSONObject();
-        // add the _GUID record
-        newRecord.put("_GUID", record.getString(NameRecord.NAME.getName()));
-        //Now add all the non-internal records from the valuesMap
-        JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
-        Iterator<?> keyIter = valuesMap.keys();
-        while (keyIter.hasNext()) {
-          String key = (String) keyIter.next();
-          if (!InternalField.isInternalField(key)) {
-            newRecord.put(key, valuesMap.get(key));
-          }
-        }
-        result.add(newRecord);
+        result.add(massageRecord(record));
       } catch (JSONException e) {
       }
     }
     return result;
   }
 
+  // Converts one record, see filterAndMassageRecords.
+  protected JSONObject massageRecord(JSONObject record) throws JSONException {
+    JSONObject newRecord = new JSONObject();
+    // add the _GUID record
+    newRecord.put("_GUID", record.getString(NameRecord.NAME.getName()));
+    //Now add all the non-internal records from the valuesMap
+    JSONObject valuesMap = record.getJSONObject(NameRecord.VALUES_MAP.getName());
+    Iterator<?> keyIter = valuesMap.keys();
+    while (keyIter.hasNext()) {
+      String key = (String) keyIter.next();
+      if (!InternalField.isInternalField(key)) {
+        newRecord.put(key, valuesMap.get(key));
+      }
+    }
+    return newRecord;
+  }
+
   // Pulls the guids out of the record to return to the user for "old-style" 
   // select calls.
   protected  Set<String> extractGuidsFromRecords(Set<JSONObject> records) {
-    Set<String> result = new HashSet<>();
+    Set<String> result = new LinkedHashSet<>();
     for (JSONObject json : records) {
       try 
       {
@@ -1331,22 +2005,44 @@ public class Select extends AbstractSelector
     return result;
   }
 
-  private int addQueryInfo(Set<InetSocketAddress> serverAddresses, 
+  private NSSelectInfo addQueryInfo(Set<InetSocketAddress> serverAddresses, 
 		  								SelectRequestPacket selectPacket) 
   {
-	  int id;
-	  synchronized(pendingQueries)
+	  NSSelectInfo info;
+	  do 
+	  {
+		  info = new NSSelectInfo(randomIdGen.nextInt(), serverAddresses, selectPacket);
+	  }
+	  while (pendingQueries.putIfAbsent(info.getId(), info) != null);
+	  
+	  final NSSelectInfo addedInfo = info;
+	  ScheduledFuture<?> timeout = TIMEOUT_EXECUTOR.schedule(new Runnable() 
 	  {
-		  do 
+		  @Override
+		  public void run() 
 		  {
-			  id = randomIdGen.nextInt();
+			  Set<InetSocketAddress> waitingFor;
+			  synchronized (addedInfo) 
+			  {
+				  waitingFor = new HashSet<>(addedInfo.serversYetToRespond());
+			  }
+			  if (addedInfo.getCompletion().complete(SelectResponsePacket.makeFailPacket(
+					  selectPacket.getRequestID(), null, -1, null, 
+					  "Select timed out waiting for " + waitingFor)))
+			  {
+				  LOGGER.log(Level.WARNING, "Select {0} timed out waiting for {1}", 
+						  new Object[]{addedInfo.getId(), waitingFor});
+			  }
 		  }
-		  while (pendingQueries.containsKey(id));
-		  //Add query info
-		  NSSelectInfo info = new NSSelectInfo(id, serverAddresses, selectPacket);
-		  pendingQueries.put(id, info);
-	  }
-	  return id;
+	  }, SELECT_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+	  
+	  // However the query completes its state goes away.
+	  info.getCompletion().whenComplete((response, e) -> 
+	  {
+		  timeout.cancel(false);
+		  pendingQueries.remove(addedInfo.getId(), addedInfo);
+	  });
+	  return info;
   }
   
   
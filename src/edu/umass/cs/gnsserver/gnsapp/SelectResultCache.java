@@ -0,0 +1,301 @@
+/* Copyright (c) 2017 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Caches the records that a name server returns for a select so that
+ * repeating the select, like the refresh of a context aware group guid
+ * or a dashboard polling the same query, doesn't scan the database again.
+ *
+ * A result is keyed by the name server, the reader and the normalized
+ * select and remembers the fields its records depend on. Updating one of
+ * those fields on this name server removes it, see {@link #invalidateFields}.
+ * Updating an internal field, such as an ACL, or creating or removing a
+ * record removes all results.
+ *
+ * @author westy
+ */
+public class SelectResultCache {
+
+  private static final long MAX_RECORDS = Config.getGlobalInt(GNSC.SELECT_RESULT_CACHE_SIZE);
+
+  // The keys of the results that depend on each top level field.
+  private static final ConcurrentHashMap<String, Set<String>> KEYS_BY_FIELD
+          = new ConcurrentHashMap<>();
+
+  // The keys of the results that can depend on any field.
+  private static final Set<String> KEYS_FOR_ALL_FIELDS = ConcurrentHashMap.newKeySet();
+
+  // Bumped by every invalidation so results read before it aren't stored after it.
+  private static final AtomicLong GENERATION = new AtomicLong();
+
+  private static final Cache<String, CachedResult> CACHE
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          // Large results count for more than small ones.
+          .maximumWeight(Math.max(MAX_RECORDS, 1))
+          .weigher(new Weigher<String, CachedResult>() {
+            @Override
+            public int weigh(String key, CachedResult result) {
+              return result.records.length() + 1;
+            }
+          })
+          .expireAfterWrite(Config.getGlobalInt(GNSC.SELECT_RESULT_CACHE_EXPIRY_IN_SECONDS),
+                  TimeUnit.SECONDS)
+          .removalListener(new RemovalListener<String, CachedResult>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, CachedResult> notification) {
+              // A replaced result has the same key and so the same fields.
+              if (notification.getCause() != RemovalCause.REPLACED) {
+                unindex(notification.getKey(), notification.getValue().fields);
+              }
+            }
+          })
+          .recordStats()
+          .build();
+
+  private static class CachedResult {
+
+    private final JSONArray records;
+    // Null means the records can depend on any field.
+    private final Set<String> fields;
+
+    private CachedResult(JSONArray records, Set<String> fields) {
+      this.records = records;
+      this.fields = fields;
+    }
+  }
+
+  /**
+   * @return true unless the cache is turned off with a size of zero
+   */
+  public static boolean isEnabled() {
+    return MAX_RECORDS > 0;
+  }
+
+  /**
+   * Returns the key of the result of {@code request} at the name server {@code nodeID}.
+   * Selects that differ only in the white space of their query have the same key.
+   *
+   * @param nodeID
+   * @param request
+   * @return the key
+   */
+  public static String getKey(Object nodeID, SelectRequestPacket request) {
+    StringBuilder key = new StringBuilder();
+    for (Object part : new Object[]{nodeID, request.getSelectOperation(), request.getReader(),
+      normalizeQuery(request.getQuery()), request.getKey(), request.getValue(),
+      request.getOtherValue(), request.getLimit(), request.getSortField(), request.isDescending()}) {
+      key.append(JSONObject.quote(String.valueOf(part))).append(',');
+    }
+    List<String> projection = request.getProjection();
+    key.append(projection == null ? "null" : new JSONArray(projection).toString());
+    return key.toString();
+  }
+
+  // Collapses white space that isn't inside a quoted string.
+  private static String normalizeQuery(String query) {
+    if (query == null) {
+      return null;
+    }
+    StringBuilder result = new StringBuilder(query.length());
+    char quote = 0;
+    boolean space = false;
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+      if (quote == 0 && Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+      if (space && result.length() > 0) {
+        result.append(' ');
+      }
+      space = false;
+      result.append(c);
+      if (quote != 0 && c == '\\' && i + 1 < query.length()) {
+        result.append(query.charAt(++i));
+      } else if (quote == 0 && (c == '"' || c == '\'')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the generation to pass to {@link #put}. Read it before
+   * reading the records that are going to be cached.
+   *
+   * @return the current generation
+   */
+  public static long getGeneration() {
+    return GENERATION.get();
+  }
+
+  /**
+   * Returns the cached records or null.
+   *
+   * @param key
+   * @return a JSONArray or null
+   */
+  public static JSONArray get(String key) {
+    CachedResult result = CACHE.getIfPresent(key);
+    return result == null ? null : result.records;
+  }
+
+  /**
+   * Caches the records of a select. The records are dropped if anything was
+   * invalidated since {@code generation} because they might be stale.
+   * The records must not be modified afterwards.
+   *
+   * @param key
+   * @param records
+   * @param fields - the fields the records depend on or null for any field
+   * @param generation - the value of {@link #getGeneration} before the records were read
+   */
+  public static void put(String key, JSONArray records, Collection<String> fields, long generation) {
+    if (!isEnabled() || GENERATION.get() != generation) {
+      return;
+    }
+    Set<String> topLevelFields = null;
+    if (fields != null) {
+      topLevelFields = ConcurrentHashMap.newKeySet();
+      for (String field : fields) {
+        topLevelFields.add(getTopLevelField(field));
+      }
+    }
+    // Index the key first so that an invalidation that comes in
+    // before the put finishes can't miss the entry.
+    if (topLevelFields == null) {
+      KEYS_FOR_ALL_FIELDS.add(key);
+    } else {
+      for (String field : topLevelFields) {
+        KEYS_BY_FIELD.computeIfAbsent(field, k -> ConcurrentHashMap.newKeySet()).add(key);
+      }
+    }
+    CACHE.put(key, new CachedResult(records,
+            topLevelFields == null ? null : Collections.unmodifiableSet(topLevelFields)));
+    if (GENERATION.get() != generation) {
+      CACHE.invalidate(key);
+    }
+  }
+
+  /**
+   * Removes the results that depend on any of the fields. Called after the
+   * fields of a record on this name server have been updated.
+   *
+   * @param fields
+   */
+  public static void invalidateFields(Collection<String> fields) {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    for (String field : fields) {
+      if (InternalField.isInternalField(field)) {
+        // ACLs and other meta data change who can read what.
+        invalidateAll();
+        return;
+      }
+    }
+    for (String field : fields) {
+      Set<String> keys = KEYS_BY_FIELD.remove(getTopLevelField(field));
+      if (keys != null) {
+        CACHE.invalidateAll(keys);
+      }
+    }
+    CACHE.invalidateAll(KEYS_FOR_ALL_FIELDS);
+  }
+
+  /**
+   * Removes all results. Called when records are created or removed.
+   */
+  public static void invalidateAll() {
+    if (!isEnabled()) {
+      return;
+    }
+    GENERATION.incrementAndGet();
+    CACHE.invalidateAll();
+  }
+
+  // A write to "a.b" changes "a" and everything under it, so results are
+  // indexed and invalidated by the first key of the field.
+  private static String getTopLevelField(String field) {
+    int dot = field.indexOf('.');
+    return dot == -1 ? field : field.substring(0, dot);
+  }
+
+  private static void unindex(String key, Set<String> fields) {
+    if (fields == null) {
+      KEYS_FOR_ALL_FIELDS.remove(key);
+      return;
+    }
+    for (String field : fields) {
+      KEYS_BY_FIELD.computeIfPresent(field, (k, keys) -> {
+        keys.remove(key);
+        return keys.isEmpty() ? null : keys;
+      });
+    }
+  }
+
+  /**
+   * Returns the statistics of the select result cache for the admin interface.
+   *
+   * @return a JSONObject
+   */
+  public static JSONObject getStats() {
+    CacheStats stats = CACHE.stats();
+    JSONObject json = new JSONObject();
+    try {
+      json.put("size", CACHE.size());
+      json.put("hits", stats.hitCount());
+      json.put("misses", stats.missCount());
+      json.put("hitRate", stats.hitRate());
+      json.put("evictions", stats.evictionCount());
+      json.put("invalidations", GENERATION.get());
+    } catch (JSONException e) {
+      AbstractSelector.LOGGER.log(Level.SEVERE, "Unable to format cache stats: {0}", e);
+    }
+    return json;
+  }
+}
@@ -48,6 +48,7 @@ import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.utils.RandomString;
 import edu.umass.cs.gnsserver.gnsapp.GNSCommandInternal;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSAuthentication;
 import edu.umass.cs.gnsserver.gnsapp.clientSupport.NSFieldAccess;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
 import edu.umass.cs.gnsserver.main.GNSConfig;
@@ -789,6 +790,7 @@ public class AccountAccess {
       guidInfo.noteUpdate();
       if (updateGuidInfoNoAuthentication(header, commandPacket,
               guidInfo, handler)) {
+        NSAuthentication.invalidatePublicKey(guid);
         return new CommandResponse(ResponseCode.NO_ERROR,
                 GNSProtocol.OK_RESPONSE.toString() + " "
                 + "Public key has been updated.");
@@ -1115,6 +1117,7 @@ public class AccountAccess {
     } else {
       // Step 4.5 - delete the cache guid info cache entry
       GUID_INFO_CACHE.invalidate(accountInfo.getGuid());
+      NSAuthentication.invalidatePublicKey(accountInfo.getGuid());
       // Step 5 - If all the above stuff worked we delete the account guid record
       ResponseCode deleteGuidResponseCode;
       try {
@@ -1616,6 +1619,7 @@ public class AccountAccess {
     } else {
       // Step 3.5 - delete the cache entry
       GUID_INFO_CACHE.invalidate(guidInfo.getGuid());
+      NSAuthentication.invalidatePublicKey(guidInfo.getGuid());
 
       // Step 4 - If all the above stuff worked we delete the guid record
       ResponseCode deleteGuidResponseCode;
@@ -48,6 +48,7 @@ import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectResultPage;
 import edu.umass.cs.gnscommon.utils.Base64;
 import edu.umass.cs.gnsserver.database.ColumnFieldType;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
@@ -814,6 +815,8 @@ public class FieldAccess {
 		case NEAR:
 		case WITHIN:
 		case QUERY:
+		case LIMIT:
+		case TOP_K:
 		{
 			if (selectResponse != null ) 
 	    	{
@@ -825,6 +828,19 @@ public class FieldAccess {
 	    					selectResponse.getErrorMessage());
 	    	}
 		}
+		case COUNT:
+		{
+			if (selectResponse != null )
+			  {
+				  if(selectResponse.getResponseCode().equals(ResponseCode.NO_ERROR))
+					  return new CommandResponse(ResponseCode.NO_ERROR, 
+							  Integer.toString(selectResponse.getRecords().length()));
+				  else
+					  return new CommandResponse(selectResponse.getResponseCode(), 
+							  selectResponse.getErrorMessage());
+			  }
+			break;
+		}
 		case SELECT_NOTIFY:
 		case NOTIFICATION_STATUS:
 		{
@@ -837,6 +853,22 @@ public class FieldAccess {
 					  return new CommandResponse(selectResponse.getResponseCode(), 
 							  selectResponse.getErrorMessage());
 			  }
+			break;
+		}
+		case QUERY_PAGED:
+		case NEXT_PAGE:
+		{
+			if (selectResponse != null )
+			  {
+				  if(selectResponse.getResponseCode().equals(ResponseCode.NO_ERROR))
+					  return new CommandResponse(ResponseCode.NO_ERROR, 
+							  new SelectResultPage(selectResponse.getRecords(), 
+									  selectResponse.getSelectHandleInfo()).toJSONObject().toString());
+				  else
+					  return new CommandResponse(selectResponse.getResponseCode(), 
+							  selectResponse.getErrorMessage());
+			  }
+			break;
 		}
 		default:
 			break;
@@ -887,6 +919,190 @@ public class FieldAccess {
       }
   }
 
+  /**
+   * Sends a select request to the servers to retrieve the first page of the records 
+   * matching the query and a handle for fetching the rest.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param query
+   * @param projection
+   * @param pageSize - the maximum number of records in a page, zero or less means the default
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectQueryPaged(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket,
+		            String reader, String query, List<String> projection, int pageSize,
+		             String signature, String message,
+		             ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  if (Select.queryContainsEvil(query)) 
+	  {
+		  return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+				  GNSProtocol.BAD_RESPONSE.toString() + " "
+						  + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+						  + " Bad query operators in " + query);
+	  }
+      SelectResponsePacket selectResp;
+      try 
+      {
+    	  SelectRequestPacket packet = SelectRequestPacket.makePagedQueryRequest
+      											(reader, query, projection, pageSize);
+      	  selectResp = executeSelectHelper(header, commandPacket, packet, reader, 
+      		  										signature, message, handler.getApp());
+      	return getCommandResponseForSelect(packet, selectResp);
+      } catch (IOException | JSONException | FailedDBOperationException e) 
+      {
+    	  ClientException cle = new ClientException(e);
+      		return new CommandResponse(cle.getCode(), "selectQueryPaged failed. "+cle.getMessage());
+      }
+  }
+  
+  /**
+   * Sends a request to the servers in the {@code selectHandle} to retrieve the next 
+   * page of an earlier paged select.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param selectHandle
+   * @param pageSize - the maximum number of records in a page, zero or less means the default
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectNextPage(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket, String reader, SelectHandleInfo selectHandle, 
+		  		  int pageSize, String signature, String message,
+		  		  ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  SelectResponsePacket selectResp;
+	  try 
+	  {
+		  SelectRequestPacket packet = SelectRequestPacket.makeNextPageRequest
+				  									(reader, selectHandle, null, pageSize);
+		  selectResp = executeSelectHelper(header, commandPacket, packet, reader, 
+				  									signature, message, handler.getApp());
+		  return getCommandResponseForSelect(packet, selectResp);
+	  } catch (IOException | JSONException | FailedDBOperationException e) 
+	  {
+		  ClientException cle = new ClientException(e);
+		  return new CommandResponse(cle.getCode(), "selectNextPage failed. "+cle.getMessage());
+	  }
+  }
+
+  /**
+   * Sends a select request to the servers to count the guids matching the query.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param query
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectCount(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket, String reader, String query,
+		  		  String signature, String message,
+		  		  ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  return selectAggregate(header, commandPacket, 
+			  SelectRequestPacket.makeCountRequest(reader, query), 
+			  signature, message, handler);
+  }
+  
+  /**
+   * Sends a select request to the servers to retrieve at most {@code limit} 
+   * of the guids matching the query.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param query
+   * @param projection
+   * @param limit
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectLimit(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket, String reader, String query, 
+		  		  List<String> projection, int limit, String signature, String message,
+		  		  ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  return selectAggregate(header, commandPacket, 
+			  SelectRequestPacket.makeLimitRequest(reader, query, projection, limit), 
+			  signature, message, handler);
+  }
+  
+  /**
+   * Sends a select request to the servers to retrieve the {@code k} guids matching 
+   * the query with the smallest, or largest if {@code descending}, values of {@code sortField}.
+   *
+   * @param header
+   * @param commandPacket
+   * @param reader
+   * @param query
+   * @param projection
+   * @param sortField
+   * @param k
+   * @param descending
+   * @param signature
+   * @param message
+   * @param handler
+   * @return a command response
+   * @throws InternalRequestException
+   */
+  public static CommandResponse selectTopK(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket, String reader, String query, 
+		  		  List<String> projection, String sortField, int k, boolean descending, 
+		  		  String signature, String message,
+		  		  ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  return selectAggregate(header, commandPacket, 
+			  SelectRequestPacket.makeTopKRequest(reader, query, projection, sortField, k, descending), 
+			  signature, message, handler);
+  }
+  
+  // Sends a count, limit or top-k select request.
+  private static CommandResponse selectAggregate(InternalRequestHeader header, 
+		  		  CommandPacket commandPacket, SelectRequestPacket packet, 
+		  		  String signature, String message,
+		  		  ClientRequestHandlerInterface handler) throws InternalRequestException 
+  {
+	  if (Select.queryContainsEvil(packet.getQuery())) 
+	  {
+		  return new CommandResponse(ResponseCode.OPERATION_NOT_SUPPORTED,
+				  GNSProtocol.BAD_RESPONSE.toString() + " "
+						  + GNSProtocol.OPERATION_NOT_SUPPORTED.toString()
+						  + " Bad query operators in " + packet.getQuery());
+	  }
+	  SelectResponsePacket selectResp;
+	  try 
+	  {
+		  selectResp = executeSelectHelper(header, commandPacket, packet, packet.getReader(), 
+				  									signature, message, handler.getApp());
+		  return getCommandResponseForSelect(packet, selectResp);
+	  } catch (IOException | JSONException | FailedDBOperationException e) 
+	  {
+		  ClientException cle = new ClientException(e);
+		  return new CommandResponse(cle.getCode(), packet.getSelectOperation() 
+				  + " select failed. " + cle.getMessage());
+	  }
+  }
+
   /**
    * Sends a select request to the server to setup a context aware group guid and retrieve all the guids matching the query.
    *
@@ -1108,12 +1324,11 @@ public class FieldAccess {
                   MetaDataTypeName.READ_WHITELIST, app)
                   .getResponseCode();
         } else if (fields != null) {
-          for (String aField : fields) {
-            AclCheckResult aclResult = NSAuthentication
-                    .aclCheck(header, guid, aField,
-                            header.getQueryingGUID(),
-                            MetaDataTypeName.READ_WHITELIST,
-                            app);
+          for (AclCheckResult aclResult : NSAuthentication
+                  .aclCheck(header, guid, fields,
+                          header.getQueryingGUID(),
+                          MetaDataTypeName.READ_WHITELIST,
+                          app).values()) {
             if (aclResult.getResponseCode()
                     .isExceptionOrError()) {
               errorCode = aclResult.getResponseCode();
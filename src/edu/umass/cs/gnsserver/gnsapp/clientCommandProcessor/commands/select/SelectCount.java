@@ -0,0 +1,74 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A query that returns the number of guids that satisfy the given query.
+ * The name servers only send back the guids so the cost doesn't
+ * depend on the size of the records.
+ *
+ * @author westy
+ */
+public class SelectCount extends AbstractCommand {
+
+  /**
+   *
+   * @param module
+   */
+  public SelectCount(CommandModule module) {
+    super(module);
+  }
+
+  /**
+   *
+   * @return the command type
+   */
+  @Override
+  public CommandType getCommandType() {
+    return CommandType.SelectCount;
+  }
+
+  @Override
+  public CommandResponse execute(InternalRequestHeader header, CommandPacket commandPacket, ClientRequestHandlerInterface handler) throws JSONException, InternalRequestException {
+    JSONObject json = commandPacket.getCommand();
+    String reader = json.optString(GNSProtocol.GUID.toString(), null);
+    String query = json.getString(GNSProtocol.QUERY.toString());
+
+    String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
+    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    return FieldAccess.selectCount(header, commandPacket, reader, query,
+            signature, message, handler);
+  }
+
+}
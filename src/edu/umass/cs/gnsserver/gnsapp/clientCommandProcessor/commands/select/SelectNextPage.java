@@ -0,0 +1,77 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Returns the next page of an earlier {@link SelectQueryPaged} using the
+ * select handle that came back with the previous page.
+ *
+ * @author westy
+ */
+public class SelectNextPage extends AbstractCommand {
+
+  /**
+   *
+   * @param module
+   */
+  public SelectNextPage(CommandModule module) {
+    super(module);
+  }
+
+  /**
+   *
+   * @return the command type
+   */
+  @Override
+  public CommandType getCommandType() {
+    return CommandType.SelectNextPage;
+  }
+
+  @Override
+  public CommandResponse execute(InternalRequestHeader header, CommandPacket commandPacket, ClientRequestHandlerInterface handler) throws JSONException, InternalRequestException {
+    JSONObject json = commandPacket.getCommand();
+    String reader = json.optString(GNSProtocol.GUID.toString(), null);
+    SelectHandleInfo selectHandle = SelectHandleInfo.fromJSONArray(
+            json.getJSONArray(GNSProtocol.SELECT_HANDLE.toString()));
+    // Zero or less means use the default page size
+    int pageSize = json.optInt(GNSProtocol.PAGE_SIZE.toString(), -1);
+
+    String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
+    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    return FieldAccess.selectNextPage(header, commandPacket, reader, selectHandle, pageSize,
+            signature, message, handler);
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.select;
+
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.ClientRequestHandlerInterface;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.CommandResponse;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.FieldAccess;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.CommandModule;
+import edu.umass.cs.gnscommon.CommandType;
+import edu.umass.cs.gnscommon.GNSProtocol;
+import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commands.AbstractCommand;
+import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+
+import edu.umass.cs.gnsserver.utils.JSONUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A query that returns the first page of the records that satisfy the given query
+ * along with a handle for fetching the rest with {@link SelectNextPage}.
+ * The FIELDS parameter works the same way as in {@link SelectQuery} except
+ * that an older style request without it returns records that only contain the guid.
+ *
+ * @author westy
+ */
+public class SelectQueryPaged extends AbstractCommand {
+
+  /**
+   *
+   * @param module
+   */
+  public SelectQueryPaged(CommandModule module) {
+    super(module);
+  }
+
+  /**
+   *
+   * @return the command type
+   */
+  @Override
+  public CommandType getCommandType() {
+    return CommandType.SelectQueryPaged;
+  }
+
+  @Override
+  public CommandResponse execute(InternalRequestHeader header, CommandPacket commandPacket, ClientRequestHandlerInterface handler) throws JSONException, InternalRequestException {
+    JSONObject json = commandPacket.getCommand();
+    String reader = json.optString(GNSProtocol.GUID.toString(), null);
+    String query = json.getString(GNSProtocol.QUERY.toString());
+    // Zero or less means use the default page size
+    int pageSize = json.optInt(GNSProtocol.PAGE_SIZE.toString(), -1);
+
+    String signature = json.optString(GNSProtocol.SIGNATURE.toString(), null);
+    String message = json.optString(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), null);
+    // Same special case handling of the fields argument as SelectQuery
+    ArrayList<String> fields;
+    if (!json.has(GNSProtocol.FIELDS.toString())) {
+      fields = null;
+    } else if (GNSProtocol.ENTIRE_RECORD.toString().equals(json.optString(GNSProtocol.FIELDS.toString()))) {
+      fields = new ArrayList<>(Arrays.asList(GNSProtocol.ENTIRE_RECORD.toString()));
+    } else {
+      fields = JSONUtils.JSONArrayToArrayListString(json.getJSONArray(GNSProtocol.FIELDS.toString()));
+    }
+    return FieldAccess.selectQueryPaged(header, commandPacket, reader, query, fields, pageSize,
+            signature, message, handler);
+  }
+
+}
@@ -33,6 +33,7 @@ import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -46,6 +47,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 import edu.umass.cs.gnscommon.GNSProtocol;
@@ -71,20 +74,104 @@ import edu.umass.cs.utils.Util;
  */
 public class NSAccessSupport {
 
-  private static KeyFactory keyFactory;
-  // arun: at least as many instances as cores for parallelism.
-  private static Signature[] signatureInstances = new Signature[2 * Runtime.getRuntime().availableProcessors()];
+  // Per-thread crypto instances. None of these JCA objects are thread-safe,
+  // but giving each thread its own copy means verification never has to
+  // serialize through a shared monitor.
+  private static final ThreadLocal<KeyFactory> keyFactories
+          = new ThreadLocal<KeyFactory>() {
+    @Override
+    protected KeyFactory initialValue() {
+      try {
+        return KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        throw new RuntimeException(e);
+      }
+    }
+  };
 
-  static {
-    try {
-      keyFactory = KeyFactory.getInstance(GNSProtocol.RSA_ALGORITHM.toString());
-      for (int i = 0; i < signatureInstances.length; i++) {
-        signatureInstances[i] = Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+  private static final ThreadLocal<Signature> signatureInstances
+          = new ThreadLocal<Signature>() {
+    @Override
+    protected Signature initialValue() {
+      try {
+        return Signature.getInstance(GNSProtocol.SIGNATURE_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        throw new RuntimeException(e);
       }
-    } catch (NoSuchAlgorithmException e) {
-      ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
     }
-  }
+  };
+
+  private static final ThreadLocal<MessageDigest> mds
+          = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        throw new RuntimeException(e);
+      }
+    }
+  };
+
+  private static final ThreadLocal<Cipher> ciphers
+          = new ThreadLocal<Cipher>() {
+    @Override
+    protected Cipher initialValue() {
+      try {
+        return Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        throw new RuntimeException(e);
+      }
+    }
+  };
+
+  /**
+   * The maximum number of decoded public keys kept in {@link #PUBLIC_KEYS}.
+   */
+  private static final int PUBLIC_KEY_CACHE_SIZE = 10000;
+
+  /**
+   * Decoded public keys keyed by their base64 string so that we don't
+   * base64 decode and X509 parse the same key on every request.
+   */
+  private static final Cache<String, PublicKey> PUBLIC_KEYS
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(PUBLIC_KEY_CACHE_SIZE).build();
+
+  /**
+   * Signatures that have already been verified keyed by a digest of the
+   * (public key, signature, message) triple. Only successful verifications
+   * are remembered so a hit can be safely short-circuited.
+   */
+  private static final Cache<String, Boolean> VERIFIED_SIGNATURES
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.VERIFIED_SIGNATURE_CACHE_SIZE))
+          .expireAfterWrite(Config.getGlobalInt(GNSC.VERIFIED_SIGNATURE_CACHE_EXPIRY_IN_SECONDS),
+                  TimeUnit.SECONDS)
+          .build();
+
+  // Not GNSProtocol.DIGEST_ALGORITHM because the cache key needs to be
+  // collision resistant.
+  private static final String VERIFIED_SIGNATURE_DIGEST_ALGORITHM = "SHA-256";
+
+  private static final ThreadLocal<MessageDigest> verifiedSignatureDigests
+          = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance(VERIFIED_SIGNATURE_DIGEST_ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to initialize for authentication:{0}", e);
+        throw new RuntimeException(e);
+      }
+    }
+  };
 
   /**
    * Verifies that the signature corresponds to the message using the public key.
@@ -100,8 +187,8 @@ public class NSAccessSupport {
    */
   public static boolean verifySignature(String accessorPublicKey, String signature, String message) throws
           InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
-    byte[] publickeyBytes = Base64.decode(accessorPublicKey);
-    if (publickeyBytes == null) { // bogus public key
+    PublicKey publicKey = getPublicKey(accessorPublicKey);
+    if (publicKey == null) { // bogus public key
       ClientSupportConfig.getLogger().log(Level.FINE, "&&&&Base 64 decoding is bogus!!!");
       return false;
     }
@@ -110,11 +197,25 @@ public class NSAccessSupport {
             new Object[]{Util.truncate(accessorPublicKey, 16, 16),
               Util.truncate(signature, 16, 16),
               Util.truncate(message, 16, 16)});
+    String verifiedKey = getVerifiedSignatureKey(accessorPublicKey, signature, message);
+    // The profiler synchronizes so the counts are sampled like the delay.
+    if (VERIFIED_SIGNATURES.getIfPresent(verifiedKey) != null) {
+      if (Util.oneIn(100)) {
+        DelayProfiler.updateCount("verifiedSignatureCacheHits", 100);
+      }
+      return true;
+    }
+    if (Util.oneIn(100)) {
+      DelayProfiler.updateCount("verifiedSignatureCacheMisses", 100);
+    }
     long t = System.nanoTime();
-    boolean result = verifySignatureInternal(publickeyBytes, signature, message);
+    boolean result = verifySignatureInternal(publicKey, signature, message);
     if (Util.oneIn(100)) {
       DelayProfiler.updateDelayNano("verification", t);
     }
+    if (result) {
+      VERIFIED_SIGNATURES.put(verifiedKey, true);
+    }
 
     ClientSupportConfig.getLogger().log(Level.FINE,
             "public_key:{0} {1} as author of message:{2}",
@@ -124,18 +225,56 @@ public class NSAccessSupport {
     return result;
   }
 
-  private static int sigIndex = 0;
+  /**
+   * Returns the key under which a successful verification of
+   * {@code signature} over {@code message} by {@code accessorPublicKey} is
+   * remembered. The message is digested so that large commands don't bloat
+   * the cache.
+   *
+   * @param accessorPublicKey
+   * @param signature
+   * @param message
+   * @return the cache key
+   * @throws UnsupportedEncodingException
+   */
+  private static String getVerifiedSignatureKey(String accessorPublicKey, String signature, String message)
+          throws UnsupportedEncodingException {
+    MessageDigest md = verifiedSignatureDigests.get();
+    md.update(accessorPublicKey.getBytes("UTF-8"));
+    md.update((byte) 0);
+    md.update(signature.getBytes("UTF-8"));
+    md.update((byte) 0);
+    md.update(message.getBytes("UTF-8"));
+    return Base64.encodeToString(md.digest(), false);
+  }
 
-  private synchronized static Signature getSignatureInstance() {
-    return signatureInstances[sigIndex++ % signatureInstances.length];
+  /**
+   * Returns the decoded public key for {@code accessorPublicKey}, possibly
+   * from the cache.
+   *
+   * @param accessorPublicKey
+   * @return the public key or null if the key string can't be base64 decoded
+   * @throws InvalidKeySpecException
+   */
+  private static PublicKey getPublicKey(String accessorPublicKey) throws InvalidKeySpecException {
+    PublicKey publicKey = PUBLIC_KEYS.getIfPresent(accessorPublicKey);
+    if (publicKey == null) {
+      byte[] publickeyBytes = Base64.decode(accessorPublicKey);
+      if (publickeyBytes == null) {
+        return null;
+      }
+      publicKey = keyFactories.get().generatePublic(new X509EncodedKeySpec(publickeyBytes));
+      PUBLIC_KEYS.put(accessorPublicKey, publicKey);
+    }
+    return publicKey;
   }
 
-  private static synchronized boolean verifySignatureInternal(byte[] publickeyBytes, String signature, String message)
+  private static boolean verifySignatureInternal(PublicKey publicKey, String signature, String message)
           throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException {
 
     if (Config.getGlobalBoolean(GNSC.ENABLE_SECRET_KEY)) {
       try {
-        return verifySignatureInternalSecretKey(publickeyBytes, signature, message);
+        return verifySignatureInternalSecretKey(publicKey, signature, message);
       } catch (Exception e) {
         // This provided backward support for clients that don't have ENABLE_SECRET_KEY on by
         // falling through to non-secret method.
@@ -147,69 +286,24 @@ public class NSAccessSupport {
     }
 
     // Non-secret method kept for backwards compatbility with older clients.
-    X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publickeyBytes);
-    PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
-
-    Signature sigInstance = getSignatureInstance();
-    synchronized (sigInstance) {
-      sigInstance.initVerify(publicKey);
-      // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
-      // secret key version
-      sigInstance.update(message.getBytes("UTF-8"));
-      // Non secret uses ISO-8859-1, but the iOS client uses hex so 
-      // we need to keep this for now.
-      try {
-        return sigInstance.verify(DatatypeConverter.parseHexBinary(signature));
-        // This will get thrown if the signature is not a hex string.
-      } catch (IllegalArgumentException e) {
-        return false;
-      }
-      //return sigInstance.verify(ByteUtils.hexStringToByteArray(signature));
-    }
-  }
-
-  private static final MessageDigest[] mds = new MessageDigest[Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < mds.length; i++) {
-      try {
-        mds[i] = MessageDigest.getInstance(GNSProtocol.DIGEST_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
-    }
-  }
-  private static int mdIndex = 0;
-
-  private static MessageDigest getMessageDigestInstance() {
-    return mds[mdIndex++ % mds.length];
-  }
-
-  private static final Cipher[] ciphers = new Cipher[2 * Runtime.getRuntime().availableProcessors()];
-
-  static {
-    for (int i = 0; i < ciphers.length; i++) {
-      try {
-        ciphers[i] = Cipher.getInstance(GNSProtocol.SECRET_KEY_ALGORITHM.toString());
-      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-        e.printStackTrace();
-        System.exit(1);
-      }
+    Signature sigInstance = signatureInstances.get();
+    sigInstance.initVerify(publicKey);
+    // iOS client uses UTF-8 - should switch to ISO-8859-1 to be consistent with
+    // secret key version
+    sigInstance.update(message.getBytes("UTF-8"));
+    // Non secret uses ISO-8859-1, but the iOS client uses hex so 
+    // we need to keep this for now.
+    try {
+      return sigInstance.verify(DatatypeConverter.parseHexBinary(signature));
+      // This will get thrown if the signature is not a hex string.
+    } catch (IllegalArgumentException e) {
+      return false;
     }
   }
 
-  private static int cipherIndex = 0;
-
-  private static Cipher getCipherInstance() {
-    return ciphers[cipherIndex++ % ciphers.length];
-  }
-
-  private static synchronized boolean verifySignatureInternalSecretKey(byte[] publickeyBytes, String signature, String message)
+  private static boolean verifySignatureInternalSecretKey(PublicKey publicKey, String signature, String message)
           throws InvalidKeyException, SignatureException, UnsupportedEncodingException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
 
-    PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publickeyBytes));
-
     // FIXME: The reason why we use CHARSET should be more throughly documented here.
     byte[] sigBytes = signature.getBytes(GNSProtocol.CHARSET.toString());
     byte[] bytes = message.getBytes(GNSProtocol.CHARSET.toString());
@@ -223,16 +317,10 @@ public class NSAccessSupport {
     bbuf.get(skCertEncoded);
     SecretKey secretKey = SessionKeys.getSecretKeyFromCertificate(skCertEncoded, publicKey);
 
-    MessageDigest md = getMessageDigestInstance();
-    byte[] digest;
-    synchronized (md) {
-      digest = md.digest(bytes);
-    }
-    Cipher cipher = getCipherInstance();
-    synchronized (cipher) {
-      cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-      return Arrays.equals(sign, cipher.doFinal(digest));
-    }
+    byte[] digest = mds.get().digest(bytes);
+    Cipher cipher = ciphers.get();
+    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+    return Arrays.equals(sign, cipher.doFinal(digest));
   }
 
   /**
@@ -308,6 +396,35 @@ public class NSAccessSupport {
 	  }
   }
 
+  /**
+   * Returns true if one of the groups is a member of the ACL given by publicKeys.
+   * This is the in memory version of {@link #hierarchicalAccessGroupCheck} for
+   * callers that already have the ACL from the guid's metadata.
+   *
+   * @param publicKeys - the ACL as returned by {@link #lookupPublicKeysFromAcl}
+   * @param groups - the groups the accessor is a member of
+   * @return true if access is allowed
+   */
+  public static boolean aclContainsGroup(JSONArray publicKeys, Set<String> groups) {
+    if (publicKeys == null || groups.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < publicKeys.length(); i++) {
+      String publicKey = publicKeys.optString(i, null);
+      if (publicKey == null || GNSProtocol.EVERYONE.toString().equals(publicKey)) {
+        continue;
+      }
+      try {
+        if (groups.contains(SharedGuidUtils.createGuidStringFromBase64PublicKey(publicKey))) {
+          return true;
+        }
+      } catch (IllegalArgumentException e) {
+        // ignore any bogus publicKeys
+      }
+    }
+    return false;
+  }
+
    /**
 	 * return the first index of item in arr, -1 means not found the item in
 	* arr
@@ -26,10 +26,16 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.text.ParseException;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
+import edu.umass.cs.gnscommon.utils.FieldPath;
 import edu.umass.cs.gnscommon.utils.JSONDotNotation;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,6 +43,7 @@ import org.json.JSONObject;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.ResponseCode;
@@ -49,6 +56,9 @@ import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.GuidI
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
+import edu.umass.cs.gnsserver.main.GNSConfig.GNSC;
+import edu.umass.cs.utils.Config;
+import edu.umass.cs.utils.DelayProfiler;
 
 /**
  *
@@ -56,8 +66,34 @@ import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
  */
 public class NSAuthentication {
 
+  /**
+   * Public keys of guids on this server keyed by guid.
+   */
   private static final Cache<String, String> PUBLIC_KEY_CACHE
-          = CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(1000).build();
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.PUBLIC_KEY_CACHE_SIZE))
+          .expireAfterWrite(Config.getGlobalInt(GNSC.PUBLIC_KEY_CACHE_EXPIRY_IN_SECONDS),
+                  TimeUnit.SECONDS)
+          .recordStats()
+          .build();
+
+  // For the average time it takes to read a public key on a cache miss.
+  private static final AtomicLong PUBLIC_KEY_LOAD_COUNT = new AtomicLong();
+  private static final AtomicLong PUBLIC_KEY_LOAD_NANOS = new AtomicLong();
+
+  /**
+   * Guids that we recently failed to find so that repeated requests for
+   * bogus guids don't each cost a database read.
+   */
+  private static final Cache<String, Boolean> UNKNOWN_GUID_CACHE
+          = CacheBuilder.newBuilder()
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .maximumSize(Config.getGlobalInt(GNSC.PUBLIC_KEY_CACHE_SIZE))
+          .expireAfterWrite(Config.getGlobalInt(GNSC.PUBLIC_KEY_NEGATIVE_CACHE_EXPIRY_IN_SECONDS),
+                  TimeUnit.SECONDS)
+          .recordStats()
+          .build();
 
   /**
    * Does access and signature checking for a field OR fields in a guid.
@@ -147,12 +183,18 @@ public class NSAuthentication {
         return aclResult.getResponseCode();
       }
     } else if (fields != null) {
-      // Check each field individually; if any field doesn't pass the entire access fails.
-      for (String aField : fields) {
-        aclResult = aclCheck(header, guid, aField, accessorGuid, access, gnsApp, alreadyReadNRs);
-        if (aclResult.getResponseCode().isExceptionOrError()) {
-          return aclResult.getResponseCode();
+      // Check all the fields in one pass; if any field doesn't pass the entire access fails.
+      for (AclCheckResult fieldResult : aclCheck(header, guid, fields, accessorGuid, access,
+              gnsApp, alreadyReadNRs).values()) {
+        if (fieldResult.getResponseCode().isExceptionOrError()) {
+          return fieldResult.getResponseCode();
         }
+        aclResult = fieldResult;
+      }
+      if (aclResult == null) {
+        ClientSupportConfig.getLogger().log(Level.SEVERE, "Name {0} : Fields is empty",
+                new Object[]{guid});
+        return ResponseCode.ACCESS_ERROR;
       }
       // If one field or fields is not null then this is also an access error.
     } else {
@@ -251,6 +293,180 @@ public class NSAuthentication {
     }
   }
   
+  /**
+   * Check the acl to insure that {@code accessorGuid} can access each of {@code targetGuid}'s {@code fields}.
+   *
+   * Unlike calling {@link #aclCheck(InternalRequestHeader, String, String, String, MetaDataTypeName,
+   * GNSApplicationInterface, NameRecord...)} for each field this reads the metadata of the guid
+   * once and evaluates the ACLs of all the fields and their dotted parents against it.
+   * The lookups of the accessor's guid info and groups are also done at most once.
+   *
+   * @param header
+   * @param targetGuid
+   * @param fields
+   * @param accessorGuid
+   * @param access
+   * @param gnsApp
+   * @param alreadyReadNRs
+   * @return the result of the ACL check for each field in the order of {@code fields}
+   * @throws FailedDBOperationException
+   */
+  public static Map<String, AclCheckResult> aclCheck(InternalRequestHeader header, String targetGuid,
+          List<String> fields, String accessorGuid, MetaDataTypeName access,
+          GNSApplicationInterface<String> gnsApp,
+          NameRecord... alreadyReadNRs) throws FailedDBOperationException {
+    return aclCheck(header, targetGuid, fields, new AccessorInfo(header, accessorGuid, gnsApp),
+            access, gnsApp, alreadyReadNRs);
+  }
+
+  /**
+   * Like {@link #aclCheck(InternalRequestHeader, String, List, String, MetaDataTypeName,
+   * GNSApplicationInterface, NameRecord...)} but uses {@code accessorInfo} for the lookups of
+   * the accessor's guid info and groups. Checking many guids with the same
+   * {@code accessorInfo}, like a select does, looks them up at most once.
+   *
+   * @param header
+   * @param targetGuid
+   * @param fields
+   * @param accessorInfo
+   * @param access
+   * @param gnsApp
+   * @param alreadyReadNRs
+   * @return the result of the ACL check for each field in the order of {@code fields}
+   * @throws FailedDBOperationException
+   */
+  public static Map<String, AclCheckResult> aclCheck(InternalRequestHeader header, String targetGuid,
+          List<String> fields, AccessorInfo accessorInfo, MetaDataTypeName access,
+          GNSApplicationInterface<String> gnsApp,
+          NameRecord... alreadyReadNRs) throws FailedDBOperationException {
+    String accessorGuid = accessorInfo.getAccessorGuid();
+    ClientSupportConfig.getLogger().log(Level.FINE,
+            "@@@@@@@@@@@@@@@@ACL Check guid={0} keys={1} accessor={2} access={3}",
+            new Object[]{targetGuid, fields, accessorGuid, access});
+    Map<String, AclCheckResult> results = new LinkedHashMap<>();
+    if (accessorGuid.equals(targetGuid)) {
+      // Access to all of our own fields is always allowed so one key lookup answers every field.
+      String publicKey = lookupPublicKeyLocallyWithCacheing(targetGuid, gnsApp, alreadyReadNRs);
+      AclCheckResult result = publicKey == null
+              ? new AclCheckResult("", ResponseCode.BAD_GUID_ERROR)
+              : new AclCheckResult(publicKey, ResponseCode.NO_ERROR);
+      for (String field : fields) {
+        results.put(field, result);
+      }
+      return results;
+    }
+    JSONObject metaData = NSAccessSupport.getMetaDataForACLCheck(targetGuid, gnsApp.getDB(),
+            alreadyReadNRs);
+    if (metaData == null) {
+      ClientSupportConfig.getLogger().log(Level.WARNING, "User {0} access problem for {1}'s {2} fields: no meta data exists",
+              new Object[]{targetGuid, fields, access.toString()});
+      AclCheckResult result = new AclCheckResult("", ResponseCode.BAD_GUID_ERROR);
+      for (String field : fields) {
+        results.put(field, result);
+      }
+      return results;
+    }
+    // Fields that share an ACL give the same answer so only evaluate each ACL once.
+    Map<JSONArray, String> publicKeysForAcl = new IdentityHashMap<>();
+    for (String field : fields) {
+      if (results.containsKey(field)) {
+        continue;
+      }
+      // Note that field can be GNSProtocol.ENTIRE_RECORD.toString() here
+      JSONArray publicKeys = NSAccessSupport.lookupPublicKeysFromAcl(access, targetGuid,
+              FieldPath.get(field).getKeys(), metaData);
+      String publicKey;
+      if (publicKeys != null && publicKeysForAcl.containsKey(publicKeys)) {
+        publicKey = publicKeysForAcl.get(publicKeys);
+      } else {
+        publicKey = lookupPublicKeyFromAcl(field, publicKeys, accessorInfo);
+        if (publicKeys != null) {
+          publicKeysForAcl.put(publicKeys, publicKey);
+        }
+      }
+      results.put(field, publicKey == null
+              ? new AclCheckResult("", ResponseCode.ACCESS_ERROR)
+              : new AclCheckResult(publicKey, ResponseCode.NO_ERROR));
+    }
+    return results;
+  }
+
+  /**
+   * Finds the accessor's public key for one field given that field's ACL,
+   * falling back to the EVERYONE flag and then to group membership just like
+   * the single field {@link #aclCheck}.
+   */
+  private static String lookupPublicKeyFromAcl(String field, JSONArray publicKeys,
+          AccessorInfo accessorInfo) throws FailedDBOperationException {
+    String publicKey = SharedGuidUtils.findPublicKeyForGuid(accessorInfo.accessorGuid, publicKeys);
+    if (publicKey == null && NSAccessSupport.indexOfItemInJSONArray(publicKeys, GNSProtocol.EVERYONE.toString()) >= 0) {
+      GuidInfo accessorGuidInfo = accessorInfo.getGuidInfo();
+      if (accessorGuidInfo != null) {
+        publicKey = accessorGuidInfo.getPublicKey();
+      }
+    }
+    if (publicKey == null && publicKeys != null) {
+      GuidInfo accessorGuidInfo = accessorInfo.getGuidInfo();
+      if (accessorGuidInfo != null && NSAccessSupport.aclContainsGroup(publicKeys, accessorInfo.getGroups())) {
+        publicKey = accessorGuidInfo.getPublicKey();
+      }
+    }
+    if (publicKey == null) {
+      ClientSupportConfig.getLogger().log(Level.FINE,
+              "================> Public key not found: accessor={0} field={1} public keys={2}",
+              new Object[]{accessorInfo.accessorGuid, field, publicKeys});
+    }
+    return publicKey;
+  }
+
+  /**
+   * Lazily looks up, at most once, the information about an accessor that
+   * the ACL fallbacks need. Can be shared by threads that check the
+   * ACLs of different guids for the same accessor.
+   */
+  public static class AccessorInfo {
+
+    private final InternalRequestHeader header;
+    private final String accessorGuid;
+    private final GNSApplicationInterface<String> gnsApp;
+    private GuidInfo guidInfo;
+    private boolean guidInfoLookedUp = false;
+    private Set<String> groups;
+
+    /**
+     * @param header
+     * @param accessorGuid
+     * @param gnsApp
+     */
+    public AccessorInfo(InternalRequestHeader header, String accessorGuid, GNSApplicationInterface<String> gnsApp) {
+      this.header = header;
+      this.accessorGuid = accessorGuid;
+      this.gnsApp = gnsApp;
+    }
+
+    /**
+     * @return the accessor guid
+     */
+    public String getAccessorGuid() {
+      return accessorGuid;
+    }
+
+    synchronized GuidInfo getGuidInfo() throws FailedDBOperationException {
+      if (!guidInfoLookedUp) {
+        guidInfo = AccountAccess.lookupGuidInfoAnywhere(header, accessorGuid, gnsApp.getRequestHandler());
+        guidInfoLookedUp = true;
+      }
+      return guidInfo;
+    }
+
+    synchronized Set<String> getGroups() throws FailedDBOperationException {
+      if (groups == null) {
+        groups = NSGroupAccess.lookupGroups(header, accessorGuid, gnsApp.getRequestHandler());
+      }
+      return groups;
+    }
+  }
+
   /**
    * Attempts to look up the public key for a accessorGuid using the
    * ACL of the guid for the given field.
@@ -321,9 +537,20 @@ public class NSAuthentication {
     if ((result = PUBLIC_KEY_CACHE.getIfPresent(guid)) != null) {
       return result;
     }
-    GuidInfo guidInfo;
-    if ((guidInfo = AccountAccess.lookupGuidInfoLocally(null, guid, gnsApp.getRequestHandler())) == null) {
+    if (UNKNOWN_GUID_CACHE.getIfPresent(guid) != null) {
+      ClientSupportConfig.getLogger().log(Level.FINE, "Name {0} : BAD_GUID_ERROR (cached)", new Object[]{guid});
+      return null;
+    }
+    long startTime = System.nanoTime();
+    GuidInfo guidInfo = AccountAccess.lookupGuidInfoLocally(null, guid, gnsApp.getRequestHandler());
+    PUBLIC_KEY_LOAD_COUNT.incrementAndGet();
+    PUBLIC_KEY_LOAD_NANOS.addAndGet(System.nanoTime() - startTime);
+    DelayProfiler.updateDelayNano("publicKeyCacheLoad", startTime);
+    if (guidInfo == null) {
       ClientSupportConfig.getLogger().log(Level.FINE, "Name {0} : BAD_GUID_ERROR", new Object[]{guid});
+      if (Config.getGlobalInt(GNSC.PUBLIC_KEY_NEGATIVE_CACHE_EXPIRY_IN_SECONDS) > 0) {
+        UNKNOWN_GUID_CACHE.put(guid, true);
+      }
       return null;
     } else {
       result = guidInfo.getPublicKey();
@@ -331,6 +558,51 @@ public class NSAuthentication {
       return result;
     }
   }
+
+  /**
+   * Removes any cached public key or negative entry for the guid.
+   * Called when a guid is created, removed or has its public key reset.
+   *
+   * @param guid
+   */
+  public static void invalidatePublicKey(String guid) {
+    PUBLIC_KEY_CACHE.invalidate(guid);
+    UNKNOWN_GUID_CACHE.invalidate(guid);
+  }
+
+  /**
+   * Removes all cached public keys and negative entries.
+   */
+  public static void invalidateAllPublicKeys() {
+    PUBLIC_KEY_CACHE.invalidateAll();
+    UNKNOWN_GUID_CACHE.invalidateAll();
+  }
+
+  /**
+   * Returns the statistics of the public key cache for the admin interface.
+   *
+   * @return a JSONObject
+   */
+  public static JSONObject getPublicKeyCacheStats() {
+    CacheStats stats = PUBLIC_KEY_CACHE.stats();
+    CacheStats negativeStats = UNKNOWN_GUID_CACHE.stats();
+    JSONObject json = new JSONObject();
+    try {
+      json.put("size", PUBLIC_KEY_CACHE.size());
+      json.put("hits", stats.hitCount());
+      json.put("misses", stats.missCount());
+      json.put("hitRate", stats.hitRate());
+      json.put("evictions", stats.evictionCount());
+      json.put("negativeSize", UNKNOWN_GUID_CACHE.size());
+      json.put("negativeHits", negativeStats.hitCount());
+      long loads = PUBLIC_KEY_LOAD_COUNT.get();
+      json.put("loads", loads);
+      json.put("averageLoadMillis", loads == 0 ? 0 : PUBLIC_KEY_LOAD_NANOS.get() / 1000000.0 / loads);
+    } catch (JSONException e) {
+      ClientSupportConfig.getLogger().log(Level.SEVERE, "Unable to format cache stats: {0}", e);
+    }
+    return json;
+  }
   
   
   private static String lookupPublicKeyFromReadRecords(String guid, NameRecord... readRecords)
@@ -132,9 +132,10 @@ public class NSFieldAccess {
         }
       }
       if (nameRecord != null) {
+        ValuesMap valuesMap = nameRecord.getValuesMap();
         ClientSupportConfig.getLogger().log(Level.FINE, "VALUES MAP={0}",
-                new Object[]{nameRecord.getValuesMap().toString()});
-        return nameRecord.getValuesMap();
+                new Object[]{valuesMap});
+        return valuesMap;
       }
     } catch (RecordNotFoundException e) {
       ClientSupportConfig.getLogger().log(Level.FINE, "Record not found for name: {0} Key = {1}",
@@ -332,7 +333,7 @@ public class NSFieldAccess {
         ClientSupportConfig.getLogger().log(Level.FINE, "@@@@@@ Field {0} in {1}"
                 + " not found on this server but was found thru remote query. "
                 + "Returning {2}",
-                new Object[]{field, guid, result.toString()});
+                new Object[]{field, guid, result});
       }
     }
     return result;
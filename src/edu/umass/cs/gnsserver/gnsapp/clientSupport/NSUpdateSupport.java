@@ -14,13 +14,17 @@ import edu.umass.cs.gnscommon.exceptions.server.FieldNotFoundException;
 import edu.umass.cs.gnscommon.exceptions.server.InternalRequestException;
 import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
 import edu.umass.cs.gnscommon.packets.CommandPacket;
+import edu.umass.cs.gnsserver.activecode.ActiveCodeCache;
 import edu.umass.cs.gnsserver.activecode.ActiveCodeHandler;
 import edu.umass.cs.gnsserver.database.ColumnFieldType;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.InternalField;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.MetaDataTypeName;
 import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.UpdateOperation;
 import edu.umass.cs.gnsserver.gnsapp.GNSApplicationInterface;
+import edu.umass.cs.gnsserver.gnsapp.SelectResultCache;
+import edu.umass.cs.gnsserver.gnamed.GnsDnsCache;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.BasicRecordMap;
 import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
 import edu.umass.cs.gnsserver.interfaces.InternalRequestHeader;
@@ -34,6 +38,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
@@ -110,8 +115,8 @@ public class NSUpdateSupport {
           errorCode = NSAuthentication.aclCheck(header, guid, field, header.getQueryingGUID(), MetaDataTypeName.WRITE_WHITELIST, app).getResponseCode();
         } else if (userJSON != null) {
           List<String> fields = userJSON.getKeys();
-          for (String aField : fields) {
-            AclCheckResult aclResult = NSAuthentication.aclCheck(header, guid, aField, header.getQueryingGUID(), MetaDataTypeName.WRITE_WHITELIST, app);
+          for (AclCheckResult aclResult : NSAuthentication.aclCheck(header, guid, fields,
+                  header.getQueryingGUID(), MetaDataTypeName.WRITE_WHITELIST, app).values()) {
             if (aclResult.getResponseCode().isExceptionOrError()) {
               errorCode = aclResult.getResponseCode();
             }
@@ -180,6 +185,26 @@ public class NSUpdateSupport {
     }
     // Apply updateEntireValuesMap to record in the database
     nameRecord.updateNameRecord(field, updateValue, oldValue, argument, newValue, operation);
+    // A ResetKey updates the guid info on every replica so don't keep using the old key.
+    if (AccountAccess.GUID_INFO.equals(field)
+            || (field == null && newValue != null && newValue.has(AccountAccess.GUID_INFO))) {
+      NSAuthentication.invalidatePublicKey(guid);
+    }
+    // Cached selects that read the updated fields are now stale.
+    if (field != null) {
+      SelectResultCache.invalidateFields(Collections.singletonList(field));
+    } else if (newValue != null) {
+      SelectResultCache.invalidateFields(newValue.getKeys());
+    } else {
+      SelectResultCache.invalidateAll();
+    }
+    // So are the DNS answers made from the guid's records.
+    GnsDnsCache.invalidateName(guid);
+    // And the guid's active code if this sets or clears it.
+    if (field != null ? ActiveCodeCache.isCodeField(field)
+            : newValue == null || ActiveCodeCache.containsCodeField(newValue.getKeys())) {
+      ActiveCodeCache.invalidate(guid);
+    }
     
     // This is for MOB-893 - logging updates
     if(Config.getGlobalBoolean(GNSConfig.GNSC.ENABLE_UPDATE_LOGGING))
@@ -39,4 +39,31 @@ public enum SelectOperation
    * other name servers.
    */
   NOTIFICATION_STATUS,
+  
+  /**
+   * General purpose query that returns its results a page at a time. 
+   */
+  QUERY_PAGED,
+  
+  /**
+   * The operation for fetching the next page of an earlier QUERY_PAGED 
+   * from the name servers that still have records.
+   */
+  NEXT_PAGE,
+  
+  /**
+   * General purpose query that only returns the number of matching GUIDs.
+   */
+  COUNT,
+  
+  /**
+   * General purpose query that returns at most a given number of records.
+   */
+  LIMIT,
+  
+  /**
+   * General purpose query that returns the given number of records 
+   * with the smallest or largest values of a field.
+   */
+  TOP_K,
 }
\ No newline at end of file
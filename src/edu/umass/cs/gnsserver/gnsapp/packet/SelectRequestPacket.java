@@ -52,6 +52,10 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	private final static String NOTIFICATION_STR 				= "notifcationMesg";
 	private final static String SELECT_HANDLE 					= "selectHandle";
 	private final static String LOCAL_SELECT_HANDLE 			= "localSelectHandle";
+	private final static String PAGE_SIZE 						= "pageSize";
+	private final static String LIMIT 							= "limit";
+	private final static String SORT_FIELD 						= "sortField";
+	private final static String DESCENDING 						= "descending";
   
   
 	private SelectOperation selectOperation;
@@ -72,6 +76,14 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	// used for notification status select operation. 
 	private SelectHandleInfo selectHandle = null;  
 	
+	// used for paged select operations. 
+	private int pageSize = -1;
+	
+	// used for count, limit and top-k select operations. 
+	private int limit = -1;
+	private String sortField = null;
+	private boolean descending = false;
+	
   /**
    * Constructs a new SelectRequestPacket
    * 
@@ -172,6 +184,100 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 			  reader, null, null, null, selectHandle, localSelectHandle);
   }
   
+  /**
+   * Creates a request to search all name servers for GUIDs that match the given query
+   * that returns the first {@code pageSize} records and a handle for the rest.
+   * 
+   * @param reader
+   * @param query
+   * @param projection
+   * @param pageSize
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makePagedQueryRequest(String reader, 
+		  String query, List<String> projection, int pageSize) 
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.QUERY_PAGED, 
+    		reader, query, projection, null, null, null);
+	  packet.setPageSize(pageSize);
+	  return packet;
+  }
+  
+  /**
+   * Creates a SelectRequestPacket for a NEXT_PAGE select operation. 
+   * 
+   * @param reader
+   * @param selectHandle
+   * @param localSelectHandle 
+   * @param pageSize
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makeNextPageRequest
+  					(String reader, SelectHandleInfo selectHandle, 
+  					LocalSelectHandleInfo localSelectHandle, int pageSize)
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.NEXT_PAGE,
+			  reader, null, null, null, selectHandle, localSelectHandle);
+	  packet.setPageSize(pageSize);
+	  return packet;
+  }
+  
+  /**
+   * Creates a request to count the GUIDs that match the given query.
+   * 
+   * @param reader
+   * @param query
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makeCountRequest(String reader, String query) 
+  {
+	  return new SelectRequestPacket(SelectOperation.COUNT, 
+    		reader, query, null, null, null, null);
+  }
+  
+  /**
+   * Creates a request to search all name servers for at most {@code limit}
+   * GUIDs that match the given query.
+   * 
+   * @param reader
+   * @param query
+   * @param projection
+   * @param limit
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makeLimitRequest(String reader, 
+		  String query, List<String> projection, int limit) 
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.LIMIT, 
+    		reader, query, projection, null, null, null);
+	  packet.limit = limit;
+	  return packet;
+  }
+  
+  /**
+   * Creates a request to search all name servers for the {@code k} GUIDs 
+   * that match the given query and have the smallest, or largest 
+   * if {@code descending} is true, values of {@code sortField}.
+   * 
+   * @param reader
+   * @param query
+   * @param projection
+   * @param sortField
+   * @param k
+   * @param descending
+   * @return a SelectRequestPacket
+   */
+  public static SelectRequestPacket makeTopKRequest(String reader, 
+		  String query, List<String> projection, String sortField, int k, boolean descending) 
+  {
+	  SelectRequestPacket packet = new SelectRequestPacket(SelectOperation.TOP_K, 
+    		reader, query, projection, null, null, null);
+	  packet.limit = k;
+	  packet.sortField = sortField;
+	  packet.descending = descending;
+	  return packet;
+  }
+  
   /**
    * Constructs new SelectRequestPacket from a JSONObject
    *
@@ -208,6 +314,11 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 			  	
 	  this.localSelectHandle = json.has(LOCAL_SELECT_HANDLE) ?
 			  	LocalSelectHandleInfo.fromJSONObject(json.getJSONObject(LOCAL_SELECT_HANDLE)):null;
+	  
+	  this.pageSize = json.optInt(PAGE_SIZE, -1);
+	  this.limit = json.optInt(LIMIT, -1);
+	  this.sortField = json.optString(SORT_FIELD, null);
+	  this.descending = json.optBoolean(DESCENDING, false);
 	
   }
 
@@ -266,6 +377,22 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
 	  {
 		  json.put(LOCAL_SELECT_HANDLE, this.localSelectHandle.toJSONObject());
 	  }
+	  
+	  if(this.pageSize != -1)
+	  {
+		  json.put(PAGE_SIZE, this.pageSize);
+	  }
+	  
+	  if(this.limit != -1)
+	  {
+		  json.put(LIMIT, this.limit);
+	  }
+	  
+	  if(this.sortField != null)
+	  {
+		  json.put(SORT_FIELD, this.sortField);
+		  json.put(DESCENDING, this.descending);
+	  }
   }
 
   /**
@@ -435,6 +562,55 @@ public class SelectRequestPacket extends BasicPacketWithNSReturnAddress implemen
   }
   
   
+  /**
+   * 
+   * @return Returns the maximum number of records in a page
+   * or -1 if this isn't a paged select. 
+   */
+  public int getPageSize()
+  {
+	  return this.pageSize;
+  }
+  
+  /**
+   * Sets the maximum number of records in a page.
+   * 
+   * @param pageSize
+   */
+  public void setPageSize(int pageSize)
+  {
+	  this.pageSize = pageSize;
+  }
+  
+  /**
+   * 
+   * @return Returns the maximum number of records of a limit or top-k select 
+   * or -1 if there is no limit. 
+   */
+  public int getLimit()
+  {
+	  return this.limit;
+  }
+  
+  /**
+   * 
+   * @return Returns the field a top-k select is ordered by
+   * or null if this isn't a top-k select. 
+   */
+  public String getSortField()
+  {
+	  return this.sortField;
+  }
+  
+  /**
+   * 
+   * @return Returns true if a top-k select returns the largest values of the sort field. 
+   */
+  public boolean isDescending()
+  {
+	  return this.descending;
+  }
+  
   /**
    *
    * @return the summary object
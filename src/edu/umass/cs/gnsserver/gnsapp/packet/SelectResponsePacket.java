@@ -22,6 +22,7 @@ package edu.umass.cs.gnsserver.gnsapp.packet;
 import edu.umass.cs.gigapaxos.interfaces.ClientRequest;
 import edu.umass.cs.gnscommon.ResponseCode;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
 
 import java.net.InetSocketAddress;
 
@@ -44,12 +45,15 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
 	private final static String NSQUERYID 				= "nsQueryId";
 	private final static String RESPONSECODE 			= "code";
 	private final static String ERRORSTRING 			= "error";
+	private final static String SELECT_HANDLE 			= "selectHandle";
 	
 	private long requestId;
 	private int nsQueryId;
 	private JSONArray records;
 	// Only used in SelectNotify command.
 	private NotificationStatsToIssuer notificationStats;
+	// Only used in paged selects, null once all the records have been returned.
+	private SelectHandleInfo selectHandle;
   
 	private ResponseCode responseCode;
 	private String errorMessage;
@@ -93,6 +97,29 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
 			  null, ResponseCode.NO_ERROR, null);
   }
   
+  /**
+   * Used by a NameServer to send a page of records back to the collecting NameServer
+   * and by the collecting NameServer to return the merged page.
+   *
+   * @param id
+   * @param lnsAddress
+   * @param nsQueryId
+   * @param nsAddress
+   * @param records
+   * @param selectHandle - the handle to fetch the next page, null if there are no more records
+   * @return a SelectResponsePacket
+   */
+  public static SelectResponsePacket makeSuccessPacketForPage(
+          long id, InetSocketAddress lnsAddress,
+          int nsQueryId, InetSocketAddress nsAddress, JSONArray records,
+          SelectHandleInfo selectHandle) 
+  {
+	  SelectResponsePacket packet = new SelectResponsePacket(id, lnsAddress, nsQueryId, 
+			  nsAddress, records, null, ResponseCode.NO_ERROR, null);
+	  packet.selectHandle = selectHandle;
+	  return packet;
+  }
+  
   /**
    * Used by a NameServer to a send response with notification stats back to 
    * an entry-point name server. 
@@ -155,6 +182,8 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
     			(json.optJSONObject(NOTIFICATION_STATS));
     }
     this.errorMessage = json.optString(ERRORSTRING, null);
+    this.selectHandle = json.has(SELECT_HANDLE) ? 
+    		SelectHandleInfo.fromJSONArray(json.getJSONArray(SELECT_HANDLE)) : null;
 
   }
 
@@ -185,6 +214,9 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
     if (errorMessage != null) {
     	json.put(ERRORSTRING, errorMessage);
     }
+    if (selectHandle != null) {
+    	json.put(SELECT_HANDLE, selectHandle.toJSONArray());
+    }
     return json;
   }
 
@@ -275,4 +307,14 @@ public class SelectResponsePacket extends BasicPacketWithReturnAddressAndNsAddre
   {
 	  return this.notificationStats;
   }
-}
\ No newline at end of file
+  
+  /**
+   * 
+   * @return the handle to fetch the next page of a paged select or null
+   * if there are no more records. 
+   */
+  public SelectHandleInfo getSelectHandleInfo()
+  {
+	  return this.selectHandle;
+  }
+}
@@ -357,16 +357,12 @@ public class GNSHttpServer {
 
   private static void processSignature(JSONObject jsonCommand) throws JSONException {
     if (jsonCommand.has(GNSProtocol.SIGNATURE.toString())) {
-      // Squirrel away the signature.
-      String signature = jsonCommand.getString(GNSProtocol.SIGNATURE.toString());
-      // Pull it out of the command because we don't want to have it there when we check the message.
-      jsonCommand.remove(GNSProtocol.SIGNATURE.toString());
       // Convert it to a conanical string (the message) that we can use later to check against the signature.
-      String commandSansSignature = CanonicalJSON.getCanonicalForm(jsonCommand);
-      // Put the decoded signature back as well as the message that we're going to
-      // later compare the signature against.
-      jsonCommand.put(GNSProtocol.SIGNATURE.toString(), signature).put(GNSProtocol.SIGNATUREFULLMESSAGE.toString(),
-              commandSansSignature);
+      // The signature is skipped because we don't want to have it there when we check the message.
+      String commandSansSignature = CanonicalJSON.getCanonicalForm(jsonCommand,
+              GNSProtocol.SIGNATURE.toString());
+      // Add the message that we're going to later compare the signature against.
+      jsonCommand.put(GNSProtocol.SIGNATUREFULLMESSAGE.toString(), commandSansSignature);
 
     }
   }
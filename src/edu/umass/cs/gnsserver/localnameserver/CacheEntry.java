@@ -24,30 +24,56 @@ import java.util.Set;
 
 /**
  * Represents the cache entry used at the local name server to cache records.
+ *
+ * The value and the active replicas are each kept in an immutable snapshot
+ * together with when they were cached and for how long, so updates and
+ * reads don't need to lock the entry.
  */
 public class CacheEntry implements Comparable<CacheEntry> {
 
+  // Something cached with the time it was cached and how long it stays valid.
+  private static final class Timestamped<T> {
+
+    private final T data;
+    private final long timestamp;
+    private final int timeToLive;
+
+    private Timestamped(T data, int timeToLive) {
+      this.data = data;
+      this.timestamp = System.currentTimeMillis();
+      this.timeToLive = timeToLive;
+    }
+
+    private boolean isValid() {
+      return data != null && System.currentTimeMillis() - timestamp < timeToLive;
+    }
+  }
+
+  private static final Timestamped<String> NO_VALUE = new Timestamped<>(null, 0);
+  private static final Timestamped<Set<InetSocketAddress>> NO_ACTIVES = new Timestamped<>(null, 0);
+
   /**
    * The GUID.
    */
-  private String name;
+  private final String name;
   /**
-   * Time interval (in milliseconds) that the resource record may be cached before it should be discarded (default to zero)
-   * Notice that we have ONE TTL for the entire cache entry which means one TTL for the whole record.
+   * The value, when it was inserted and its time to live in milliseconds.
+   * Notice that we have ONE TTL for the entire value which means one TTL for the whole record.
    */
-  private int timeToLive = LocalNameServer.DEFAULT_VALUE_CACHE_TTL;
+  private volatile Timestamped<String> value = NO_VALUE;
   /**
-   * Time stamp (in milleseconds) when the value for each field was inserted into record.
+   * The active replicas, when they were inserted and their time to live in milliseconds.
    */
-  private long valueTimestamp;
+  private volatile Timestamped<Set<InetSocketAddress>> activeNameServers = NO_ACTIVES;
+
   /**
-   * The value.
+   * Constructs an empty cache entry for a name.
+   *
+   * @param name
    */
-  private String value = null;
-
-  private Set<InetSocketAddress> activeNameServers;
-
-  private long activeNameServersTimestamp;
+  public CacheEntry(String name) {
+    this.name = name;
+  }
 
   /**
    * Constructs a cache entry for a name.
@@ -56,11 +82,8 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @param value
    */
   public CacheEntry(String name, String value) {
-    this.name = name;
-    this.value = value;
-    this.valueTimestamp = System.currentTimeMillis();
-    this.activeNameServers = null;
-    this.activeNameServersTimestamp = 0;
+    this(name);
+    updateCacheEntry(value);
   }
 
   /**
@@ -70,31 +93,27 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @param activeNameServers
    */
   public CacheEntry(String name, Set<InetSocketAddress> activeNameServers) {
-    this.name = name;
-    this.activeNameServers = activeNameServers;
-    this.activeNameServersTimestamp = System.currentTimeMillis();
-    this.value = null;
-    this.valueTimestamp = 0;
+    this(name);
+    updateCacheEntry(activeNameServers);
   }
 
   /**
-   * Updates a cache entry with a new value.
+   * Updates a cache entry with a new value that is valid for the value TTL.
    *
    * @param value
    */
-  public synchronized void updateCacheEntry(String value) {
-    this.value = value;
-    this.valueTimestamp = System.currentTimeMillis();
+  public void updateCacheEntry(String value) {
+    this.value = new Timestamped<>(value, LocalNameServer.getValueCacheTTL());
   }
 
   /**
-   * Updates a cache entry with a new list of active replicas.
+   * Updates a cache entry with a new list of active replicas that is
+   * valid for the actives TTL.
    *
    * @param activeNameServers
    */
-  public synchronized void updateCacheEntry(Set<InetSocketAddress> activeNameServers) {
-    this.activeNameServers = activeNameServers;
-    this.activeNameServersTimestamp = System.currentTimeMillis();
+  public void updateCacheEntry(Set<InetSocketAddress> activeNameServers) {
+    this.activeNameServers = new Timestamped<>(activeNameServers, LocalNameServer.getActivesCacheTTL());
   }
 
   /**
@@ -102,11 +121,8 @@ public class CacheEntry implements Comparable<CacheEntry> {
    *
    * @return true or false value regarding cache being valid
    */
-  public synchronized boolean isValidValue() {
-    if (value == null) {
-      return false;
-    }
-    return (System.currentTimeMillis() - valueTimestamp) < timeToLive;
+  public boolean isValidValue() {
+    return value.isValid();
   }
 
   /**
@@ -114,11 +130,28 @@ public class CacheEntry implements Comparable<CacheEntry> {
    *
    * @return true or false value regarding cache being valid
    */
-  public synchronized boolean isValidActives() {
-    if (activeNameServers == null) {
-      return false;
-    }
-    return (System.currentTimeMillis() - activeNameServersTimestamp) < timeToLive;
+  public boolean isValidActives() {
+    return activeNameServers.isValid();
+  }
+
+  /**
+   * Returns the value if it has not expired.
+   *
+   * @return the value or null
+   */
+  public String getValueIfValid() {
+    Timestamped<String> current = value;
+    return current.isValid() ? current.data : null;
+  }
+
+  /**
+   * Returns the active replicas if they have not expired.
+   *
+   * @return the active replicas or null
+   */
+  public Set<InetSocketAddress> getActiveNameServersIfValid() {
+    Timestamped<Set<InetSocketAddress>> current = activeNameServers;
+    return current.isValid() ? current.data : null;
   }
 
   /**
@@ -127,8 +160,8 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @param key
    * @return a long
    */
-  public synchronized long timeSinceValueCached(String key) {
-    return (int) (System.currentTimeMillis() - valueTimestamp);
+  public long timeSinceValueCached(String key) {
+    return (int) (System.currentTimeMillis() - value.timestamp);
   }
 
   /**
@@ -137,8 +170,8 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @param key
    * @return a long
    */
-  public synchronized long timeSinceActivesCached(String key) {
-    return (int) (System.currentTimeMillis() - activeNameServersTimestamp);
+  public long timeSinceActivesCached(String key) {
+    return (int) (System.currentTimeMillis() - activeNameServers.timestamp);
   }
 
   /**
@@ -147,26 +180,29 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @return string representation of the cache entry
    */
   @Override
-  public synchronized String toString() {
+  public String toString() {
+    Timestamped<String> currentValue = value;
+    Timestamped<Set<InetSocketAddress>> currentActives = activeNameServers;
     StringBuilder result = new StringBuilder();
     result.append("Name:").append(name);
-    result.append("\nValue:").append(value);
-    if (value != null) {
-      result.append(" (age: ").append(System.currentTimeMillis() - valueTimestamp).append("ms)");
-      if (!isValidValue()) {
+    result.append("\nValue:").append(currentValue.data);
+    if (currentValue.data != null) {
+      result.append(" (age: ").append(System.currentTimeMillis() - currentValue.timestamp).append("ms)");
+      if (!currentValue.isValid()) {
         result.append("\n    ***Expired***");
       }
     }
-    result.append("\nActives: ").append(activeNameServers);
-    if (activeNameServers != null) {
-      result.append("  (age: ").append(System.currentTimeMillis() - activeNameServersTimestamp).append("ms)");
-      if (!isValidActives()) {
+    result.append("\nActives: ").append(currentActives.data);
+    if (currentActives.data != null) {
+      result.append("  (age: ").append(System.currentTimeMillis() - currentActives.timestamp).append("ms)");
+      if (!currentActives.isValid()) {
         result.append("\n    ***Expired***");
       }
     }
-    result.append("\n    TTL:").append(timeToLive).append("ms");
-    result.append("\n    Value Timestamp: ").append(valueTimestamp);
-    result.append("\n    Actives Timestamp: ").append(activeNameServersTimestamp);
+    result.append("\n    Value TTL:").append(currentValue.timeToLive).append("ms");
+    result.append("\n    Actives TTL:").append(currentActives.timeToLive).append("ms");
+    result.append("\n    Value Timestamp: ").append(currentValue.timestamp);
+    result.append("\n    Actives Timestamp: ").append(currentActives.timestamp);
 
     return result.toString();
   }
@@ -192,12 +228,21 @@ public class CacheEntry implements Comparable<CacheEntry> {
   }
 
   /**
-   * Returns the TTL.
+   * Returns the TTL of the value.
    *
    * @return the ttl
    */
   public int getTimeToLive() {
-    return timeToLive;
+    return value.timeToLive;
+  }
+
+  /**
+   * Returns the TTL of the active replicas.
+   *
+   * @return the ttl
+   */
+  public int getActivesTimeToLive() {
+    return activeNameServers.timeToLive;
   }
 
   /**
@@ -206,7 +251,7 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @return the timestamp
    */
   public long getValueTimestamp() {
-    return valueTimestamp;
+    return value.timestamp;
   }
 
   /**
@@ -215,7 +260,7 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @return the value
    */
   public String getValue() {
-    return value;
+    return value.data;
   }
 
   /**
@@ -224,7 +269,7 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @return the set of active replicas
    */
   public Set<InetSocketAddress> getActiveNameServers() {
-    return activeNameServers;
+    return activeNameServers.data;
   }
 
   /**
@@ -233,7 +278,7 @@ public class CacheEntry implements Comparable<CacheEntry> {
    * @return the active replicas timestamp
    */
   public long getActiveNameServersTimestamp() {
-    return activeNameServersTimestamp;
+    return activeNameServers.timestamp;
   }
 
 }
@@ -116,6 +116,10 @@ public class CommandRetransmitter implements SchedulableProtocolTask<InetSocketA
     LOG.log(Level.FINE, 
             "{0} Sending to {1} {2}", new Object[]{this.refreshKey(), address, json});
     activesAlreadyContacted.add(address);
+    LNSRequestInfo requestInfo = handler.getRequestInfo(requestId);
+    if (requestInfo != null) {
+      handler.getReplicaSelector().requestSent(requestInfo, address);
+    }
     GenericMessagingTask<InetSocketAddress, ?> mtasks[] = new GenericMessagingTask<>(address, json).toArray();
     return mtasks;
   }
@@ -143,13 +143,18 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
     }
   };
 
-  private NearestServerSelector redirector = new NearestServerSelector() {
+  // Records which replica each request goes to so the response time can be measured.
+  private NearestServerSelector getRedirector(LNSRequestInfo requestInfo) {
+    return new NearestServerSelector() {
 
-    @Override
-    public InetSocketAddress getNearest(Set<InetSocketAddress> servers) {
-      return (handler).getClosestReplica(servers);
-    }
-  };
+      @Override
+      public InetSocketAddress getNearest(Set<InetSocketAddress> servers) {
+        InetSocketAddress replica = handler.getClosestReplica(servers);
+        handler.getReplicaSelector().requestSent(requestInfo, replica);
+        return replica;
+      }
+    };
+  }
 
   /**
    * Handles a command packet that has come in from a client.
@@ -177,7 +182,7 @@ public class LNSPacketDemultiplexer<NodeIDType> extends AbstractJSONPacketDemult
 //            || requestInfo.getCommandName().equals(GNSCommandProtocol.SELECT)) {
       this.asyncLNSClient.sendRequestAnycast(packet, callback);
     } else {
-      this.asyncLNSClient.sendRequest(packet, callback, redirector);
+      this.asyncLNSClient.sendRequest(packet, callback, getRedirector(requestInfo));
     }
   }
   
@@ -282,6 +287,7 @@ private static CommandPacket removeSenderInfo(JSONObject json) throws JSONExcept
         GNSConfig.getLogger().log(Level.INFO, "{0} about to remove {1}",
                 new Object[]{this, id + ""});
         handler.removeRequestInfo(id);
+        handler.getReplicaSelector().responseReceived(sentInfo, returnPacket != null);
         // update cache - if the service name isn't missing (invalid)
         // and if it is a READ command
         // FIXME: THIS ISN'T GOING TO WORK WITHOUT MORE INFO ABOUT THE
@@ -59,6 +59,12 @@ public class LNSRequestInfo {
   
   private final InetSocketAddress sender;
 
+  /**
+   * The active replica the request was last sent to and when, see {@link ReplicaSelector}.
+   */
+  private InetSocketAddress replica = null;
+  private long replicaSentNanos;
+
   /**
    *
    * @param lnsReqId
@@ -180,6 +186,38 @@ public class LNSRequestInfo {
     this.success = success;
   }
 
+  /**
+   * Returns the active replica the request was last sent to.
+   *
+   * @return the replica or null if it hasn't been sent or has been answered
+   */
+  public synchronized InetSocketAddress getReplica() {
+    return replica;
+  }
+
+  /**
+   * Returns when the request was sent to the replica, in nanoseconds.
+   *
+   * @return the time
+   */
+  public synchronized long getReplicaSentNanos() {
+    return replicaSentNanos;
+  }
+
+  /**
+   * Sets the active replica the request was sent to.
+   *
+   * @param replica
+   * @param sentNanos - the value of {@link System#nanoTime()} when it was sent
+   * @return the replica it was sent to before or null
+   */
+  public synchronized InetSocketAddress setReplica(InetSocketAddress replica, long sentNanos) {
+    InetSocketAddress previous = this.replica;
+    this.replica = replica;
+    this.replicaSentNanos = sentNanos;
+    return previous;
+  }
+
   @Override
   public String toString() {
     return this.getCommandType().name() + ":" + this.getServiceName() + ":" + this.lnsReqID;
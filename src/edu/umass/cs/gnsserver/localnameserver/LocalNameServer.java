@@ -28,6 +28,8 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,7 @@ import org.json.JSONObject;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 import edu.umass.cs.gigapaxos.interfaces.Request;
 import edu.umass.cs.gnsclient.client.GNSClientConfig;
@@ -84,6 +87,26 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
    */
   public static final int DEFAULT_VALUE_CACHE_TTL = 10000; // milleseconds
 
+  /**
+   * Returns how long values are kept in the cache, see
+   * {@link GNSClientConfig.GNSCC#LOCAL_NAME_SERVER_VALUE_CACHE_TTL}.
+   *
+   * @return the time in milliseconds
+   */
+  public static int getValueCacheTTL() {
+    return Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_VALUE_CACHE_TTL);
+  }
+
+  /**
+   * Returns how long active replicas are kept in the cache, see
+   * {@link GNSClientConfig.GNSCC#LOCAL_NAME_SERVER_ACTIVES_CACHE_TTL}.
+   *
+   * @return the time in milliseconds
+   */
+  public static int getActivesCacheTTL() {
+    return Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_ACTIVES_CACHE_TTL);
+  }
+
   /**
    * The logger.
    */
@@ -93,6 +116,12 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
           = new ConcurrentHashMap<>(10, 0.75f, 3);
 
   private final Cache<String, CacheEntry> cache;
+  // Guava only counts whether an entry is present so these count whether it is still valid.
+  private final LongAdder valueHits = new LongAdder();
+  private final LongAdder valueMisses = new LongAdder();
+  private final LongAdder activesHits = new LongAdder();
+  private final LongAdder activesMisses = new LongAdder();
+  private final ReplicaSelector replicaSelector;
   private JSONMessenger<InetSocketAddress> messenger;
   // FIXME: Eventually need separate servers for ssl and clear
   //private JSONMessenger<InetSocketAddress> sslServer;
@@ -133,12 +162,20 @@ public class LocalNameServer implements RequestHandlerInterface, Shutdownable {
 
     this.nodeConfig = nodeConfig;
     this.crNodeConfig = new LNSConsistentReconfigurableNodeConfig(nodeConfig);
+    this.replicaSelector = new ReplicaSelector(nodeConfig::getPingLatency);
     this.demultiplexer = new LNSPacketDemultiplexer<>(this, new AsyncLNSClient(
             ReconfigurationConfig.getReconfiguratorAddresses()));
     // FIXME: Eventually need separate servers for ssl and clear
     //LNSPacketDemultiplexer<String> sslDemultiplexer = new LNSPacketDemultiplexer<>(this, asyncClient);
 
-    this.cache = CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(1000).build();
+    this.cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .maximumSize(Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_CACHE_SIZE))
+            // Entries that nobody asks for anymore only hold expired data,
+            // as every entry is cached for one of these TTLs.
+            .expireAfterAccess(Math.max(getValueCacheTTL(), getActivesCacheTTL()), TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
     try {
       JSONNIOTransport<InetSocketAddress> gnsNiot = new JSONNIOTransport<>(
               address, crNodeConfig, demultiplexer, sslMode);
@@ -350,10 +387,10 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
   }
 
   /**
-   * Selects the closest Name Server from a set of Name Servers.
+   * Selects the Name Server that is expected to answer first from a set of Name Servers.
    *
    * @param servers
-   * @return id of closest server or INVALID_NAME_SERVER_ID if one can't be found
+   * @return id of closest server or null if one can't be found
    */
   @Override
   public InetSocketAddress getClosestReplica(Set<InetSocketAddress> servers) {
@@ -361,9 +398,9 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
   }
 
   /**
-   * Selects the closest Name Server from a set of Name Servers.
+   * Selects the Name Server that is expected to answer first from a set of Name Servers,
+   * see {@link ReplicaSelector}.
    * excludeNameServers is a set of Name Servers from the first list to not consider.
-   * If the local server is one of the serverIds and not excluded this will return it.
    *
    * @param serverIds
    * @param excludeServers
@@ -371,26 +408,21 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
    */
   @Override
   public InetSocketAddress getClosestReplica(Set<InetSocketAddress> serverIds, Set<InetSocketAddress> excludeServers) {
-    if (serverIds == null || serverIds.isEmpty()) {
-      return null;
-    }
-
-    long lowestLatency = Long.MAX_VALUE;
-    InetSocketAddress serverAddress = null;
-    for (InetSocketAddress serverId : serverIds) {
-      if (excludeServers != null && excludeServers.contains(serverId)) {
-        continue;
-      }
-      long pingLatency = nodeConfig.getPingLatency(serverId);
-      if (pingLatency != LNSNodeConfig.INVALID_PING_LATENCY && pingLatency < lowestLatency) {
-        lowestLatency = pingLatency;
-        serverAddress = serverId;
-      }
-    }
+    InetSocketAddress serverAddress = replicaSelector.select(serverIds, excludeServers);
     LOGGER.log(Level.FINE, "Closest server is {0}", serverAddress);
     return serverAddress;
   }
 
+  /**
+   * Returns the selector that learns the response times of the active replicas.
+   *
+   * @return the replica selector
+   */
+  @Override
+  public ReplicaSelector getReplicaSelector() {
+    return replicaSelector;
+  }
+
   /**
    * Updates the value in the cache.
    *
@@ -399,13 +431,12 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
    */
   @Override
   public void updateCacheEntry(String name, String value) {
-    CacheEntry cacheEntry = cache.getIfPresent(name);
-    if (cacheEntry != null) {
-      cacheEntry.updateCacheEntry(value);
-    } else {
-      CacheEntry entry = new CacheEntry(name, value);
-      cache.put(entry.getName(), entry);
-    }
+    getOrCreateCacheEntry(name).updateCacheEntry(value);
+  }
+
+  // Concurrent updates of the value and the actives of a name share one entry.
+  private CacheEntry getOrCreateCacheEntry(String name) {
+    return cache.asMap().computeIfAbsent(name, CacheEntry::new);
   }
 
   /**
@@ -417,11 +448,9 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
   @Override
   public String getValueIfValid(String name) {
     CacheEntry cacheEntry = cache.getIfPresent(name);
-    if (cacheEntry != null && cacheEntry.isValidValue()) {
-      return cacheEntry.getValue();
-    } else {
-      return null;
-    }
+    String value = cacheEntry != null ? cacheEntry.getValueIfValid() : null;
+    (value != null ? valueHits : valueMisses).increment();
+    return value;
   }
 
   /**
@@ -432,13 +461,7 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
    */
   @Override
   public void updateCacheEntry(String name, Set<InetSocketAddress> actives) {
-    CacheEntry cacheEntry = cache.getIfPresent(name);
-    if (cacheEntry != null) {
-      cacheEntry.updateCacheEntry(actives);
-    } else {
-      CacheEntry entry = new CacheEntry(name, actives);
-      cache.put(entry.getName(), entry);
-    }
+    getOrCreateCacheEntry(name).updateCacheEntry(actives);
   }
 
   @Override
@@ -455,11 +478,9 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
   @Override
   public Set<InetSocketAddress> getActivesIfValid(String name) {
     CacheEntry cacheEntry = cache.getIfPresent(name);
-    if (cacheEntry != null && cacheEntry.isValidActives()) {
-      return cacheEntry.getActiveNameServers();
-    } else {
-      return null;
-    }
+    Set<InetSocketAddress> actives = cacheEntry != null ? cacheEntry.getActiveNameServersIfValid() : null;
+    (actives != null ? activesHits : activesMisses).increment();
+    return actives;
   }
 
   /**
@@ -481,6 +502,28 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
     return cache.getIfPresent(name) != null;
   }
 
+  /**
+   * Returns the statistics of the cache.
+   *
+   * @return a JSONObject
+   */
+  public JSONObject getCacheStats() {
+    CacheStats stats = cache.stats();
+    JSONObject json = new JSONObject();
+    try {
+      json.put("size", cache.size());
+      json.put("valueHits", valueHits.sum());
+      json.put("valueMisses", valueMisses.sum());
+      json.put("activesHits", activesHits.sum());
+      json.put("activesMisses", activesMisses.sum());
+      json.put("evictions", stats.evictionCount());
+      json.put("replicas", replicaSelector.getStats());
+    } catch (JSONException e) {
+      LOGGER.log(Level.SEVERE, "Unable to format cache stats: {0}", e);
+    }
+    return json;
+  }
+
   /**
    * Invokes the protocolExecutor to handle an event.
    * Returns true if the event was handled.
@@ -548,7 +591,7 @@ edu.umass.cs.gnsserver.localnameserver.LocalNameServer
       cacheString.append(entry.getValue());
       cacheString.append("\n");
     }
-    LOGGER.log(Level.INFO, "Cache Test: \n{0}", cacheString.toString());
+    LOGGER.log(Level.INFO, "Cache Test: \n{0}\n{1}", new Object[]{cacheString.toString(), getCacheStats()});
   }
 
 }
@@ -0,0 +1,265 @@
+/*
+ *
+ *  Copyright (c) 2015 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.gnsclient.client.GNSClientConfig;
+import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSNodeConfig;
+import edu.umass.cs.utils.Config;
+
+/**
+ * Chooses the active replica the local name server sends a request to
+ * from what it learns by sending them requests.
+ *
+ * For each active replica it keeps an exponentially weighted average of the
+ * time it took to answer requests and the number of requests it hasn't
+ * answered yet. A request goes to the healthy replica with the lowest average
+ * times one more than its outstanding requests, so an overloaded replica gets
+ * less traffic as soon as its requests start piling up. Replicas that haven't
+ * answered anything yet are rated by their ping latency.
+ *
+ * A replica is unhealthy after it returns
+ * {@link GNSClientConfig.GNSCC#LOCAL_NAME_SERVER_REPLICA_FAILURES} errors in
+ * a row, or doesn't answer anything for
+ * {@link GNSClientConfig.GNSCC#LOCAL_NAME_SERVER_REPLICA_TIMEOUT} ms while it
+ * has outstanding requests. Unhealthy replicas are only used when there is no
+ * other choice until {@link GNSClientConfig.GNSCC#LOCAL_NAME_SERVER_REPLICA_BACKOFF}
+ * ms have passed, then they get another try.
+ *
+ * @author westy
+ */
+public class ReplicaSelector {
+
+  // The weight of the newest response time in the average.
+  private final double weight;
+  private final int maxFailures;
+  private final long timeoutNanos;
+  private final long backoffNanos;
+  private final ToLongFunction<InetSocketAddress> pingLatency;
+  private final ConcurrentHashMap<InetSocketAddress, ReplicaStats> replicas = new ConcurrentHashMap<>();
+
+  private static class ReplicaStats {
+
+    // In ms, negative until the first response.
+    private double responseTime = -1;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    // When the replica last answered or, if it had nothing to answer then, was sent a request.
+    private volatile long lastProgressNanos;
+    // Compared with the difference of nano times since they can be negative.
+    private volatile long unhealthyUntilNanos;
+
+    // Healthy as of the time of the caller, which may be before this is created.
+    private ReplicaStats(long nowNanos) {
+      this.lastProgressNanos = nowNanos;
+      this.unhealthyUntilNanos = nowNanos;
+    }
+
+    private synchronized double getResponseTime() {
+      return responseTime;
+    }
+
+    private synchronized void addResponseTime(double millis, double weight) {
+      responseTime = responseTime < 0 ? millis : weight * millis + (1 - weight) * responseTime;
+    }
+
+    private void decrementOutstanding() {
+      // Requests forgotten by checkTimeout can still be answered.
+      outstanding.updateAndGet(count -> Math.max(count - 1, 0));
+    }
+  }
+
+  /**
+   * Creates a ReplicaSelector.
+   *
+   * @param pingLatency - returns the ping latency of a replica in ms or
+   * {@link LNSNodeConfig#INVALID_PING_LATENCY} if it is unknown
+   */
+  public ReplicaSelector(ToLongFunction<InetSocketAddress> pingLatency) {
+    this.pingLatency = pingLatency;
+    this.weight = Math.min(Math.max(
+            Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_RESPONSE_TIME_WEIGHT), 1), 100) / 100.0;
+    this.maxFailures = Math.max(Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_REPLICA_FAILURES), 1);
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_REPLICA_TIMEOUT));
+    this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(
+            Config.getGlobalInt(GNSClientConfig.GNSCC.LOCAL_NAME_SERVER_REPLICA_BACKOFF));
+  }
+
+  private ReplicaStats getStats(InetSocketAddress replica, long now) {
+    return replicas.computeIfAbsent(replica, k -> new ReplicaStats(now));
+  }
+
+  /**
+   * Returns the replica in {@code servers} that is expected to answer first.
+   *
+   * @param servers
+   * @param excludeServers - servers not to consider, can be null
+   * @return a replica or null if there are no servers that aren't excluded
+   */
+  public InetSocketAddress select(Set<InetSocketAddress> servers, Set<InetSocketAddress> excludeServers) {
+    if (servers == null || servers.isEmpty()) {
+      return null;
+    }
+    long now = System.nanoTime();
+    InetSocketAddress best = null;
+    double bestScore = Double.MAX_VALUE;
+    // Used when no healthy replica has a known latency.
+    InetSocketAddress fallback = null;
+    long fallbackUntil = Long.MAX_VALUE;
+    for (InetSocketAddress server : servers) {
+      if (excludeServers != null && excludeServers.contains(server)) {
+        continue;
+      }
+      ReplicaStats stats = getStats(server, now);
+      checkTimeout(server, stats, now);
+      long unhealthyUntil = stats.unhealthyUntilNanos;
+      if (fallback == null || unhealthyUntil - fallbackUntil < 0) {
+        fallback = server;
+        fallbackUntil = unhealthyUntil;
+      }
+      if (unhealthyUntil - now > 0) {
+        continue;
+      }
+      double responseTime = stats.getResponseTime();
+      if (responseTime < 0) {
+        long ping = pingLatency.applyAsLong(server);
+        if (ping == LNSNodeConfig.INVALID_PING_LATENCY) {
+          continue;
+        }
+        responseTime = ping;
+      }
+      // Keeps a replica with a zero latency from hiding how busy it is.
+      double score = (responseTime + 1) * (stats.outstanding.get() + 1);
+      if (score < bestScore) {
+        bestScore = score;
+        best = server;
+      }
+    }
+    if (best == null) {
+      best = fallback;
+    }
+    LocalNameServer.LOGGER.log(Level.FINE, "Selected replica {0} with score {1}",
+            new Object[]{best, bestScore});
+    return best;
+  }
+
+  // Forgets the requests of a replica that has stopped answering and backs off from it.
+  private void checkTimeout(InetSocketAddress replica, ReplicaStats stats, long now) {
+    if (stats.outstanding.get() > 0 && now - stats.lastProgressNanos > timeoutNanos) {
+      stats.outstanding.set(0);
+      stats.failures.incrementAndGet();
+      stats.lastProgressNanos = now;
+      stats.unhealthyUntilNanos = now + backoffNanos;
+      LocalNameServer.LOGGER.log(Level.INFO, "Replica {0} has not answered for {1}ms",
+              new Object[]{replica, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)});
+    }
+  }
+
+  /**
+   * Records that a request was sent to a replica. If the request was sent
+   * to another replica before, that one is no longer expected to answer.
+   *
+   * @param requestInfo
+   * @param replica
+   */
+  public void requestSent(LNSRequestInfo requestInfo, InetSocketAddress replica) {
+    if (replica == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    ReplicaStats stats = getStats(replica, now);
+    if (stats.outstanding.getAndIncrement() == 0) {
+      stats.lastProgressNanos = now;
+    }
+    InetSocketAddress previous = requestInfo.setReplica(replica, now);
+    if (previous != null) {
+      getStats(previous, now).decrementOutstanding();
+    }
+  }
+
+  /**
+   * Records the answer to a request, {@code success} is false if the
+   * replica returned an error rather than a response.
+   *
+   * @param requestInfo
+   * @param success
+   */
+  public void responseReceived(LNSRequestInfo requestInfo, boolean success) {
+    InetSocketAddress replica;
+    long sentNanos;
+    synchronized (requestInfo) {
+      replica = requestInfo.getReplica();
+      sentNanos = requestInfo.getReplicaSentNanos();
+      requestInfo.setReplica(null, 0);
+    }
+    if (replica == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    ReplicaStats stats = getStats(replica, now);
+    stats.decrementOutstanding();
+    stats.lastProgressNanos = now;
+    if (success) {
+      stats.addResponseTime((now - sentNanos) / 1000000.0, weight);
+      stats.failures.set(0);
+      stats.unhealthyUntilNanos = now;
+    } else if (stats.failures.incrementAndGet() >= maxFailures) {
+      stats.unhealthyUntilNanos = now + backoffNanos;
+      LocalNameServer.LOGGER.log(Level.INFO, "Replica {0} returned {1} errors in a row",
+              new Object[]{replica, stats.failures.get()});
+    }
+  }
+
+  /**
+   * Returns what is known about each replica for the admin interface.
+   *
+   * @return a JSONObject
+   */
+  public JSONObject getStats() {
+    JSONObject json = new JSONObject();
+    long now = System.nanoTime();
+    try {
+      for (Map.Entry<InetSocketAddress, ReplicaStats> entry : replicas.entrySet()) {
+        ReplicaStats stats = entry.getValue();
+        JSONObject replica = new JSONObject();
+        replica.put("responseTime", stats.getResponseTime());
+        replica.put("outstanding", stats.outstanding.get());
+        replica.put("failures", stats.failures.get());
+        replica.put("healthy", stats.unhealthyUntilNanos - now <= 0);
+        json.put(entry.getKey().toString(), replica);
+      }
+    } catch (JSONException e) {
+      LocalNameServer.LOGGER.log(Level.SEVERE, "Unable to format replica stats: {0}", e);
+    }
+    return json;
+  }
+}
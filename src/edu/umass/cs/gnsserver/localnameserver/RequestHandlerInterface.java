@@ -101,6 +101,13 @@ public interface RequestHandlerInterface {
    * @return an address
    */
   public InetSocketAddress getClosestReplica(Set<InetSocketAddress> serverIds, Set<InetSocketAddress> excludeServers);
+
+  /**
+   * Returns the selector that learns the response times of the active replicas.
+   *
+   * @return the replica selector
+   */
+  public ReplicaSelector getReplicaSelector();
   
   /**
    * Clears the cache.
@@ -93,6 +93,31 @@ public class GNSConfig {
      * interval ago) will be rejected by the server.
      */
     STALE_COMMAND_INTERVAL_IN_MINUTES(30),
+    /**
+     * The maximum number of successfully verified signatures remembered by
+     * the name server so that retransmitted or replayed commands don't
+     * have to be verified again.
+     */
+    VERIFIED_SIGNATURE_CACHE_SIZE(10000),
+    /**
+     * How long a successfully verified signature is remembered.
+     */
+    VERIFIED_SIGNATURE_CACHE_EXPIRY_IN_SECONDS(60),
+    /**
+     * The maximum number of guid public keys cached by the name server for
+     * authentication.
+     */
+    PUBLIC_KEY_CACHE_SIZE(100000),
+    /**
+     * How long a cached guid public key is used before it is read again.
+     * Keys are also invalidated when the guid is removed or its key reset.
+     */
+    PUBLIC_KEY_CACHE_EXPIRY_IN_SECONDS(600),
+    /**
+     * How long the name server remembers that a guid it was asked to
+     * authenticate doesn't exist. Zero disables negative caching.
+     */
+    PUBLIC_KEY_NEGATIVE_CACHE_EXPIRY_IN_SECONDS(10),
     /**
      * The default port used by mongo. 27017 is the default mongo uses.
      */
@@ -126,6 +151,18 @@ public class GNSConfig {
      * The class used to represent NoSQL records.
      */
     NOSQL_RECORDS_CLASS("edu.umass.cs.gnsserver.database.MongoRecords"),
+    /**
+     * The directory under which EmbeddedRecords keeps its log files.
+     * To use EmbeddedRecords set ENABLE_DISKMAP to false and
+     * NOSQL_RECORDS_CLASS to edu.umass.cs.gnsserver.database.EmbeddedRecords.
+     */
+    EMBEDDED_DB_DIRECTORY("./embedded_db"),
+    /**
+     * How often EmbeddedRecords forces writes to disk. 0 means every
+     * write is forced before it returns, a negative value means writes are
+     * never explicitly forced.
+     */
+    EMBEDDED_DB_SYNC_INTERVAL_MS(100),
     //
     // ACCOUNT GUIDS
     //
@@ -241,6 +278,40 @@ public class GNSConfig {
      * requests to DNS and GNS servers.
      */
     DNS_ONLY(false),
+    /**
+     * The number of threads the DNS server uses to answer queries.
+     */
+    DNS_SERVER_WORKER_THREADS(5),
+    /**
+     * The number of queries the DNS server queues while all its
+     * workers are busy. Queries that don't fit are dropped.
+     */
+    DNS_SERVER_QUEUE_SIZE(1024),
+    /**
+     * The number of threads the DNS server uses to look up names in
+     * the GNS and DNS at the same time. Zero means two per worker.
+     */
+    DNS_SERVER_LOOKUP_THREADS(0),
+    /**
+     * The largest UDP response, in bytes, the DNS server sends to clients
+     * that support EDNS0. Other clients get at most 512 bytes.
+     */
+    DNS_EDNS_PAYLOAD_SIZE(4096),
+    /**
+     * The maximum number of answers the DNS server caches from GNS
+     * records. Zero turns the cache off.
+     */
+    DNS_GNS_CACHE_SIZE(10000),
+    /**
+     * The longest time, in seconds, the DNS server caches an answer
+     * from GNS records, whatever the TTLs of the records are.
+     */
+    DNS_GNS_CACHE_MAX_TTL(300),
+    /**
+     * How long, in seconds, the DNS server caches that a domain or
+     * one of its record types doesn't exist in the GNS.
+     */
+    DNS_GNS_NEGATIVE_CACHE_TTL(30),
     //
     // Contect Name Service
     //
@@ -272,6 +343,11 @@ public class GNSConfig {
      * Temporary - The use of this will go away at some point.
      */
     DISABLE_ACTIVE_CODE(true),
+    /**
+     * The maximum number of guids whose active code a name server
+     * keeps in memory. Zero turns the cache off.
+     */
+    ACTIVE_CODE_CACHE_SIZE(10000),
     /**
      * The class name to use for doing sanity checks while updating GNS
      * record. Must extend {@link edu.umass.cs.gnsserver.extensions.sanitycheck.AbstractSanityCheck}
@@ -306,6 +382,38 @@ public class GNSConfig {
      * those GUIDs. 
      */
     SELECT_FETCH_SIZE(1000),
+    
+    /**
+     * The default and maximum number of records in one page of a 
+     * paged select.
+     */
+    SELECT_PAGE_SIZE(1000),
+    
+    /**
+     * How long a name server keeps the cursor of a paged select 
+     * open after a page has been fetched. A cursor that isn't 
+     * used again within this time is closed.
+     */
+    SELECT_CURSOR_LEASE_IN_SECONDS(60),
+    
+    /**
+     * The maximum number of records a name server keeps in its
+     * select result cache. Zero turns the cache off.
+     */
+    SELECT_RESULT_CACHE_SIZE(100000),
+    
+    /**
+     * How long a cached select result is used. Results are also
+     * removed when the fields they depend on are updated.
+     */
+    SELECT_RESULT_CACHE_EXPIRY_IN_SECONDS(60),
+    
+    /**
+     * The number of threads a name server uses to check the ACLs of
+     * and project the records of selects. Zero means one thread per
+     * processor.
+     */
+    SELECT_ACL_CHECK_THREADS(0),
         
     /**
      * Specifies the class name for a select response processor. 
@@ -27,11 +27,13 @@ import edu.umass.cs.gnscommon.GNSProtocol;
 import edu.umass.cs.gnscommon.exceptions.client.ClientException;
 import edu.umass.cs.gnscommon.packets.commandreply.NotificationStatsToIssuer;
 import edu.umass.cs.gnscommon.packets.commandreply.SelectHandleInfo;
+import edu.umass.cs.gnscommon.packets.commandreply.SelectResultPage;
 import edu.umass.cs.gnscommon.utils.RandomString;
 
 import edu.umass.cs.gnscommon.utils.StringUtil;
 import edu.umass.cs.gnsserver.gnsapp.selectnotification.examples.TestSelectNotification;
 import edu.umass.cs.gnsserver.utils.DefaultGNSTest;
+import edu.umass.cs.gnsserver.utils.JSONUtils;
 import edu.umass.cs.utils.Utils;
 import java.awt.geom.Point2D;
 import java.io.IOException;
@@ -220,6 +222,34 @@ public class SelectTest extends DefaultGNSTest {
     }
   }
 
+  /**
+   * Check that repeating a query select sees an update made in between
+   */
+  @Test
+  public void test_051_QuerySelectAfterUpdate() {
+    String fieldName = "testQueryAfterUpdate";
+    String query = "~" + fieldName + " : ($gt: 0)";
+    try {
+      String queryTestName = "queryTest-" + RandomString.randomString(12);
+      client.execute(GNSCommand.guidCreate(masterGuid, queryTestName));
+      GuidEntry testEntry = GuidUtils.getGUIDKeys(queryTestName);
+      CREATED_GUIDS.add(testEntry); // save them so we can delete them later
+      client.execute(GNSCommand.fieldReplaceOrCreateList(testEntry.getGuid(), fieldName,
+              new JSONArray(Arrays.asList(25)), testEntry));
+      waitSettle(WAIT_SETTLE);
+      JSONArray result = client.execute(GNSCommand.selectQuery(query)).getResultJSONArray();
+      Assert.assertTrue(JSONUtils.JSONArrayToArrayListString(result).contains(testEntry.getGuid()));
+      // The second select must not be answered with the first one's result
+      client.execute(GNSCommand.fieldReplaceOrCreateList(testEntry.getGuid(), fieldName,
+              new JSONArray(Arrays.asList(0)), testEntry));
+      waitSettle(WAIT_SETTLE);
+      result = client.execute(GNSCommand.selectQuery(query)).getResultJSONArray();
+      Assert.assertFalse(JSONUtils.JSONArrayToArrayListString(result).contains(testEntry.getGuid()));
+    } catch (ClientException | IOException | JSONException e) {
+      Utils.failWithStackTrace("Exception executing selectQuery: " + e);
+    }
+  }
+
   /**
    * Check a query select with world readable fields
    */
@@ -253,6 +283,56 @@ public class SelectTest extends DefaultGNSTest {
     }
   }
 
+  /**
+   * Check a paged query select using the guids from test_053
+   */
+  @Test
+  public void test_054_QuerySelectPaged() {
+    String fieldName = "testQueryWorldReadable";
+    try {
+      String query = "~" + fieldName + " : ($gt: 0)";
+      SelectResultPage page = SelectResultPage.fromJSON(client.execute(
+              GNSCommand.selectQueryPaged(query, null, 2)).getResultJSONObject());
+      Set<String> guids = new HashSet<>();
+      int pages = 1;
+      while (true) {
+        JSONArray pageGuids = page.getGuids();
+        for (int i = 0; i < pageGuids.length(); i++) {
+          guids.add(pageGuids.getString(i));
+        }
+        if (!page.hasMore()) {
+          break;
+        }
+        page = SelectResultPage.fromJSON(client.execute(
+                GNSCommand.selectNextPage(page.getSelectHandleInfo(), 2)).getResultJSONObject());
+        pages++;
+      }
+      // should be at least 5, but possibly more objects in results
+      Assert.assertThat(guids.size(), Matchers.greaterThanOrEqualTo(5));
+      Assert.assertThat(pages, Matchers.greaterThan(1));
+    } catch (ClientException | IOException | JSONException e) {
+      Utils.failWithStackTrace("Exception executing selectQueryPaged: " + e);
+    }
+  }
+
+  /**
+   * Check count and limit query selects using the guids from test_053
+   */
+  @Test
+  public void test_056_QuerySelectCountAndLimit() {
+    String fieldName = "testQueryWorldReadable";
+    try {
+      String query = "~" + fieldName + " : ($gt: 0)";
+      int count = client.execute(GNSCommand.selectCount(query)).getResultInt();
+      // should be at least 5, but possibly more objects in results
+      Assert.assertThat(count, Matchers.greaterThanOrEqualTo(5));
+      JSONArray result = client.execute(GNSCommand.selectLimit(query, null, 2)).getResultJSONArray();
+      Assert.assertThat(result.length(), Matchers.equalTo(2));
+    } catch (ClientException | IOException e) {
+      Utils.failWithStackTrace("Exception executing selectCount or selectLimit: " + e);
+    }
+  }
+
   /**
    * Check a query select with unreadable fields
    */
@@ -0,0 +1,115 @@
+/* Copyright (c) 2017 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnscommon.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Compares the time of {@link FieldPath} accesses with the equivalent
+ * {@link JSONDotNotation} calls.
+ *
+ * Typical incantation:
+
+ java -cp jars/GNS.jar:build/test/classes edu.umass.cs.gnscommon.utils.FieldPathBenchmark 1000000
+ *
+ * @author westy
+ */
+public class FieldPathBenchmark {
+
+  private static final String[] FIELDS = {"name", "flapjack.sammy",
+    "flapjack.sally.right", "flapjack.sally.missing", "a.b.c.d.e"};
+
+  // Keeps the JIT from throwing the work away.
+  private static int sink = 0;
+
+  private static JSONObject makeRecord() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("name", "frank");
+    json.put("occupation", "rocket scientist");
+    JSONObject sally = new JSONObject().put("right", "seven").put("left", "eight");
+    json.put("flapjack", new JSONObject().put("sammy", "green").put("sally", sally));
+    json.put("a", new JSONObject().put("b", new JSONObject().put("c",
+            new JSONObject().put("d", new JSONObject().put("e", 5)))));
+    return json;
+  }
+
+  private static long containsAndGetDotNotation(JSONObject json, int iterations) throws JSONException {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      String field = FIELDS[i % FIELDS.length];
+      if (JSONDotNotation.containsFieldDotNotation(field, json)) {
+        sink += JSONDotNotation.getWithDotNotation(field, json).hashCode();
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long getFieldPath(JSONObject json, int iterations) {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      Object value = FieldPath.get(FIELDS[i % FIELDS.length]).getValue(json);
+      if (value != null) {
+        sink += value.hashCode();
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long putDotNotation(JSONObject json, int iterations) throws JSONException {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      JSONDotNotation.putWithDotNotation(json, FIELDS[i % FIELDS.length], i);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long putFieldPath(JSONObject json, int iterations) throws JSONException {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      FieldPath.get(FIELDS[i % FIELDS.length]).put(json, i);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void report(String name, long nanos, int iterations) {
+    System.out.println(String.format("%-28s %8.1f ns/op", name, (double) nanos / iterations));
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args - optionally the number of iterations
+   * @throws JSONException
+   */
+  public static void main(String[] args) throws JSONException {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    // Warm up both versions before timing anything.
+    for (int round = 0; round < 2; round++) {
+      long dotGet = containsAndGetDotNotation(makeRecord(), iterations);
+      long pathGet = getFieldPath(makeRecord(), iterations);
+      long dotPut = putDotNotation(makeRecord(), iterations);
+      long pathPut = putFieldPath(makeRecord(), iterations);
+      if (round > 0) {
+        report("JSONDotNotation contains+get", dotGet, iterations);
+        report("FieldPath getValue", pathGet, iterations);
+        report("JSONDotNotation put", dotPut, iterations);
+        report("FieldPath put", pathPut, iterations);
+      }
+    }
+    System.out.println(sink != 0 ? "" : " ");
+  }
+}
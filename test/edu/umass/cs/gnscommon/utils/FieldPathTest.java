@@ -0,0 +1,163 @@
+/* Copyright (c) 2017 University of Massachusetts
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Initial developer(s): Westy */
+package edu.umass.cs.gnscommon.utils;
+
+import edu.umass.cs.gnsclient.jsonassert.JSONAssert;
+import edu.umass.cs.gnsclient.jsonassert.JSONCompareMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests for FieldPath.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class FieldPathTest {
+
+  private static JSONObject makeRecord() throws JSONException {
+    return new JSONObject()
+            .put("name", "frank")
+            .put("flapjack", new JSONObject()
+                    .put("sammy", "green")
+                    .put("sally", new JSONObject().put("right", "seven")));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Keys() {
+    FieldPath path = FieldPath.get("flapjack.sally.right");
+    assertSame(path, FieldPath.get("flapjack.sally.right"));
+    assertEquals("flapjack.sally.right", path.getField());
+    assertEquals(3, path.size());
+    assertEquals("sally", path.getKey(1));
+    assertEquals(Arrays.asList("flapjack", "sally", "right"), path.getKeys());
+    assertEquals(Arrays.asList("flapjack.sally.right", "flapjack.sally", "flapjack"),
+            path.getDottedParents());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_GetValue() {
+    try {
+      JSONObject json = makeRecord();
+      assertEquals("frank", FieldPath.get("name").getValue(json));
+      assertEquals("seven", FieldPath.get("flapjack.sally.right").getValue(json));
+      assertTrue(FieldPath.get("flapjack.sally").getValue(json) instanceof JSONObject);
+      // missing fields
+      assertNull(FieldPath.get("missing").getValue(json));
+      assertNull(FieldPath.get("flapjack.missing.right").getValue(json));
+      assertFalse(FieldPath.get("flapjack.sally.left").contains(json));
+      // an intermediate that isn't an object
+      assertNull(FieldPath.get("name.first").getValue(json));
+      assertNull(FieldPath.get("flapjack.sammy.color").getValue(json));
+      assertFalse(FieldPath.get("flapjack.sammy.color").contains(json));
+    } catch (JSONException e) {
+      fail("Problem during getValue " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_GetValueFromMap() {
+    Map<String, Object> sally = new HashMap<>();
+    sally.put("right", "seven");
+    Map<String, Object> flapjack = new HashMap<>();
+    flapjack.put("sally", sally);
+    Map<String, Object> map = new HashMap<>();
+    map.put("name", "frank");
+    map.put("flapjack", flapjack);
+    assertEquals("seven", FieldPath.get("flapjack.sally.right").getValue(map));
+    assertNull(FieldPath.get("flapjack.sally.left").getValue(map));
+    assertNull(FieldPath.get("name.first").getValue(map));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_Put() {
+    try {
+      JSONObject json = makeRecord();
+      assertTrue(FieldPath.get("flapjack.sally.left").put(json, "eight"));
+      assertEquals("eight", json.getJSONObject("flapjack").getJSONObject("sally").get("left"));
+      // missing parents are created
+      assertTrue(FieldPath.get("a.b.c").put(json, 5));
+      assertEquals(5, json.getJSONObject("a").getJSONObject("b").get("c"));
+    } catch (JSONException e) {
+      fail("Problem during put " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_PutThroughNonObject() {
+    try {
+      JSONObject json = makeRecord();
+      assertFalse(FieldPath.get("flapjack.sammy.color").put(json, "blue"));
+      assertFalse(FieldPath.get("name.first.initial").put(json, "f"));
+      JSONAssert.assertEquals(makeRecord(), json, JSONCompareMode.STRICT);
+    } catch (JSONException e) {
+      fail("Problem during put " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_Remove() {
+    try {
+      JSONObject json = makeRecord();
+      assertEquals("seven", FieldPath.get("flapjack.sally.right").remove(json));
+      assertFalse(json.getJSONObject("flapjack").getJSONObject("sally").has("right"));
+      assertTrue(json.getJSONObject("flapjack").has("sally"));
+    } catch (JSONException e) {
+      fail("Problem during remove " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_07_RemoveMissing() {
+    try {
+      JSONObject json = makeRecord();
+      assertNull(FieldPath.get("missing").remove(json));
+      assertNull(FieldPath.get("flapjack.missing.right").remove(json));
+      assertNull(FieldPath.get("flapjack.sammy.color").remove(json));
+      assertNull(FieldPath.get("name.first").remove(json));
+      JSONAssert.assertEquals(makeRecord(), json, JSONCompareMode.STRICT);
+    } catch (JSONException e) {
+      fail("Problem during remove " + e);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.database.DiskMapRecords;
+import edu.umass.cs.gnsserver.database.NoSQLRecords;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.ActiveCode;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.GNSRecordMap;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import edu.umass.cs.gnsserver.utils.ValuesMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests that the ActiveCodeCache serves the code it read until it is invalidated.
+ *
+ */
+public class ActiveCodeCacheTest {
+
+  private static final String NODE = "activeCodeCacheTestNode";
+  private static final String COLLECTION = "activeCodeCacheTestCollection";
+  private static NoSQLRecords instance;
+  private static GNSRecordMap<String> recordMap;
+
+  /**
+   * The ActiveCodeCacheTest.
+   */
+  public ActiveCodeCacheTest() {
+    if (instance == null) {
+      instance = new DiskMapRecords(NODE);
+      recordMap = new GNSRecordMap<>(instance, COLLECTION);
+    }
+  }
+
+  // Replaces the record of the guid, a null code leaves the field out.
+  private static void putCode(String guid, String readCode, String writeCode)
+          throws JSONException, FailedDBOperationException, RecordExistsException, RecordNotFoundException {
+    JSONObject json = new JSONObject();
+    json.put("someField", "some value");
+    if (readCode != null) {
+      json.put(ActiveCode.ON_READ, readCode);
+    }
+    if (writeCode != null) {
+      json.put(ActiveCode.ON_WRITE, writeCode);
+    }
+    if (instance.contains(COLLECTION, guid)) {
+      instance.removeEntireRecord(COLLECTION, guid);
+    }
+    NameRecord nameRecord = new NameRecord(recordMap, guid, new ValuesMap(json));
+    instance.insert(COLLECTION, guid, nameRecord.toJSONObject());
+  }
+
+  private static String uniqueGuid(String name) {
+    // The cache is static so each test uses its own guids.
+    return name + System.nanoTime();
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_ReadAndWriteCode() {
+    String guid = uniqueGuid("readAndWrite");
+    try {
+      putCode(guid, "readCode", "writeCode");
+      assertEquals("readCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      assertEquals("writeCode", ActiveCodeCache.getCode(guid, ActiveCode.WRITE_ACTION, recordMap));
+    } catch (JSONException | FailedDBOperationException | RecordExistsException | RecordNotFoundException e) {
+      fail("Problem during read and write code " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_NoCode() {
+    String guid = uniqueGuid("noCode");
+    try {
+      putCode(guid, null, null);
+      assertNull(ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      // The absence of code is cached too
+      putCode(guid, "readCode", null);
+      assertNull(ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      ActiveCodeCache.invalidate(guid);
+      assertEquals("readCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      assertNull(ActiveCodeCache.getCode(guid, ActiveCode.WRITE_ACTION, recordMap));
+    } catch (JSONException | FailedDBOperationException | RecordExistsException | RecordNotFoundException e) {
+      fail("Problem during no code " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_Invalidate() {
+    String guid = uniqueGuid("invalidate");
+    String other = uniqueGuid("invalidateOther");
+    try {
+      putCode(guid, "oldCode", null);
+      putCode(other, "otherCode", null);
+      assertEquals("oldCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      assertEquals("otherCode", ActiveCodeCache.getCode(other, ActiveCode.READ_ACTION, recordMap));
+      putCode(guid, "newCode", null);
+      putCode(other, "newOtherCode", null);
+      // Served from the cache until the guid is invalidated
+      assertEquals("oldCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      ActiveCodeCache.invalidate(guid);
+      assertEquals("newCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+      // Other guids are left alone
+      assertEquals("otherCode", ActiveCodeCache.getCode(other, ActiveCode.READ_ACTION, recordMap));
+      ActiveCodeCache.invalidateAll();
+      assertEquals("newOtherCode", ActiveCodeCache.getCode(other, ActiveCode.READ_ACTION, recordMap));
+    } catch (JSONException | FailedDBOperationException | RecordExistsException | RecordNotFoundException e) {
+      fail("Problem during invalidate " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_MissingRecord() {
+    String guid = uniqueGuid("missing");
+    assertNull(ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+    // A guid that couldn't be read isn't cached
+    try {
+      putCode(guid, "readCode", null);
+      assertEquals("readCode", ActiveCodeCache.getCode(guid, ActiveCode.READ_ACTION, recordMap));
+    } catch (JSONException | FailedDBOperationException | RecordExistsException | RecordNotFoundException e) {
+      fail("Problem during missing record " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_InvalidAction() {
+    try {
+      ActiveCodeCache.getCode(uniqueGuid("invalidAction"), "execute", recordMap);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
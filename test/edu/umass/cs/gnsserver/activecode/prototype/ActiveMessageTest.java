@@ -0,0 +1,132 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode.prototype;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests the serialization of ActiveMessage.
+ *
+ */
+public class ActiveMessageTest {
+
+  private static final String GUID = "activeMessageTestGuid";
+  private static final String ACCESSOR = "activeMessageTestField";
+  private static final String CODE = "function run(value, accessor, querier) { return value; }";
+  private static final String VALUE = "{\"string\":\"hello world\"}";
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Request() {
+    try {
+      ActiveMessage msg = new ActiveMessage(GUID, ACCESSOR, CODE, VALUE, 2, 500);
+      ActiveMessage copy = new ActiveMessage(msg.toBytes());
+      assertEquals(ActiveMessage.Type.REQUEST, copy.type);
+      assertEquals(msg.getId(), copy.getId());
+      assertEquals(2, copy.getTtl());
+      assertEquals(500, copy.getBudget());
+      assertEquals(GUID, copy.getGuid());
+      assertEquals(ACCESSOR, copy.getAccessor());
+      assertEquals(CODE, copy.getCode());
+      assertNull(copy.getCodeDigest());
+      assertTrue(copy.isCodeIncluded());
+      assertEquals(VALUE, copy.getValue());
+    } catch (Exception e) {
+      fail("Problem during request round trip " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_RequestWithDigest() {
+    try {
+      String digest = ActiveMessage.digest(CODE);
+      ActiveMessage msg = new ActiveMessage(GUID, ACCESSOR, CODE, digest, VALUE, 2, 500);
+      ActiveMessage copy = new ActiveMessage(msg.toBytes());
+      assertEquals(digest, copy.getCodeDigest());
+      assertTrue(copy.isCodeIncluded());
+      assertEquals(CODE, copy.getCode());
+      assertEquals(VALUE, copy.getValue());
+    } catch (Exception e) {
+      fail("Problem during request with digest round trip " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_RequestDigestOnly() {
+    try {
+      String digest = ActiveMessage.digest(CODE);
+      ActiveMessage msg = new ActiveMessage(GUID, ACCESSOR, CODE, digest, VALUE, 2, 500);
+      msg.setCodeIncluded(false);
+      byte[] bytes = msg.toBytes();
+      // The code is replaced by a length of -1
+      assertEquals(new ActiveMessage(GUID, ACCESSOR, CODE, digest, VALUE, 2, 500).toBytes().length
+              - CODE.length(), bytes.length);
+      ActiveMessage copy = new ActiveMessage(bytes);
+      assertEquals(ActiveMessage.Type.REQUEST, copy.type);
+      assertEquals(msg.getId(), copy.getId());
+      assertEquals(digest, copy.getCodeDigest());
+      assertFalse(copy.isCodeIncluded());
+      assertNull(copy.getCode());
+      assertEquals(GUID, copy.getGuid());
+      assertEquals(ACCESSOR, copy.getAccessor());
+      assertEquals(VALUE, copy.getValue());
+    } catch (Exception e) {
+      fail("Problem during digest only request round trip " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_CodeQuery() {
+    try {
+      String digest = ActiveMessage.digest(CODE);
+      ActiveMessage msg = new ActiveMessage(42, digest);
+      ActiveMessage copy = new ActiveMessage(msg.toBytes());
+      assertEquals(ActiveMessage.Type.CODE_QUERY, copy.type);
+      assertEquals(42, copy.getId());
+      assertEquals(digest, copy.getCodeDigest());
+      assertNull(copy.getCode());
+      assertNull(copy.getValue());
+    } catch (Exception e) {
+      fail("Problem during code query round trip " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_Digest() {
+    assertEquals(64, ActiveMessage.digest(CODE).length());
+    assertEquals(ActiveMessage.digest(CODE), ActiveMessage.digest(new String(CODE)));
+    assertNotEquals(ActiveMessage.digest(CODE), ActiveMessage.digest(CODE + " "));
+  }
+}
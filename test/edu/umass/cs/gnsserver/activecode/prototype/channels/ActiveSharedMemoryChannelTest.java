@@ -0,0 +1,205 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.activecode.prototype.channels;
+
+import edu.umass.cs.gnsserver.activecode.prototype.ActiveMessage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests a pair of ActiveSharedMemoryChannels connected to each other.
+ *
+ */
+public class ActiveSharedMemoryChannelTest {
+
+  private static final int CAPACITY = 1024;
+
+  private File dir;
+  private String ifile;
+  private String ofile;
+  private ActiveSharedMemoryChannel channel;
+  private ActiveSharedMemoryChannel peer;
+
+  /**
+   * Creates the rings and doorbells and opens both ends.
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("shm").toFile();
+    ifile = new File(dir, "in").getPath();
+    ofile = new File(dir, "out").getPath();
+    assertEquals(0, Runtime.getRuntime().exec("mkfifo " + ifile).waitFor());
+    assertEquals(0, Runtime.getRuntime().exec("mkfifo " + ofile).waitFor());
+    ActiveSharedMemoryChannel.createRing(ifile, CAPACITY);
+    ActiveSharedMemoryChannel.createRing(ofile, CAPACITY);
+
+    // Opening the doorbells blocks until both ends have opened them
+    final ActiveSharedMemoryChannel[] other = new ActiveSharedMemoryChannel[1];
+    Thread t = new Thread(() -> {
+      try {
+        other[0] = new ActiveSharedMemoryChannel(ofile, ifile);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    t.start();
+    channel = new ActiveSharedMemoryChannel(ifile, ofile);
+    t.join();
+    peer = other[0];
+    assertNotNull(peer);
+  }
+
+  /**
+   *
+   */
+  @After
+  public void tearDown() {
+    channel.close();
+    peer.close();
+    ActiveSharedMemoryChannel.deleteRing(ifile);
+    ActiveSharedMemoryChannel.deleteRing(ofile);
+    new File(ifile).delete();
+    new File(ofile).delete();
+    dir.delete();
+  }
+
+  private static ActiveMessage response(long id, String value) {
+    return new ActiveMessage(id, value, null);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_SendReceive() {
+    try {
+      channel.sendMessage(response(1, "{\"v\":1}"));
+      ActiveMessage msg = (ActiveMessage) peer.receiveMessage();
+      assertEquals(1, msg.getId());
+      assertEquals("{\"v\":1}", msg.getValue());
+
+      // And back the other way
+      peer.sendMessage(response(2, "{\"v\":2}"));
+      assertEquals(2, ((ActiveMessage) channel.receiveMessage()).getId());
+    } catch (IOException e) {
+      fail("Problem during send and receive " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_Batch() {
+    try {
+      List<ActiveMessage> batch = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        batch.add(response(i, "{\"v\":" + i + "}"));
+      }
+      channel.sendMessages(batch);
+      for (int i = 0; i < 10; i++) {
+        ActiveMessage msg = (ActiveMessage) peer.receiveMessage();
+        assertEquals(i, msg.getId());
+        assertEquals("{\"v\":" + i + "}", msg.getValue());
+      }
+    } catch (IOException e) {
+      fail("Problem during batch " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_WrapAround() {
+    // Many times the capacity of the ring, so the writer waits for the reader
+    final int n = 1000;
+    Thread sender = new Thread(() -> {
+      try {
+        for (int i = 0; i < n; i++) {
+          channel.sendMessage(response(i, "{\"v\":\"" + i + "\"}"));
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    sender.start();
+    try {
+      for (int i = 0; i < n; i++) {
+        ActiveMessage msg = (ActiveMessage) peer.receiveMessage();
+        assertEquals(i, msg.getId());
+        assertEquals("{\"v\":\"" + i + "\"}", msg.getValue());
+      }
+      sender.join();
+    } catch (IOException | InterruptedException e) {
+      fail("Problem during wrap around " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_MessageTooLarge() {
+    char[] big = new char[2 * CAPACITY];
+    Arrays.fill(big, 'a');
+    ActiveMessage large = response(2, "{\"v\":\"" + new String(big) + "\"}");
+    try {
+      channel.sendMessages(Arrays.asList(response(1, "{}"), large, response(3, "{}")));
+      fail("Expected a MessageTooLargeException");
+    } catch (ActiveSharedMemoryChannel.MessageTooLargeException e) {
+      assertEquals(1, e.getMessages().size());
+      assertSame(large, e.getMessages().get(0));
+    } catch (IOException e) {
+      fail("Problem during send " + e);
+    }
+    // The rest of the batch is still sent
+    try {
+      assertEquals(1, ((ActiveMessage) peer.receiveMessage()).getId());
+      assertEquals(3, ((ActiveMessage) peer.receiveMessage()).getId());
+    } catch (IOException e) {
+      fail("Problem during receive " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_Close() {
+    peer.close();
+    try {
+      // The other end sees the doorbell close once it has nothing to read
+      assertNull(channel.receiveMessage());
+    } catch (IOException e) {
+      fail("Problem during receive " + e);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnsclient.jsonassert.JSONAssert;
+import edu.umass.cs.gnsclient.jsonassert.JSONCompareMode;
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordExistsException;
+import edu.umass.cs.gnscommon.exceptions.server.RecordNotFoundException;
+import edu.umass.cs.gnsserver.gnsapp.clientCommandProcessor.commandSupport.AccountAccess;
+import edu.umass.cs.gnsserver.gnsapp.recordmap.NameRecord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests for the EmbeddedRecords NoSQLRecords implementation.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EmbeddedRecordsTest {
+
+  private static String node = "embeddedTestNode";
+  private static String collection = "testCollection";
+  private static String guid = "testGuid";
+  private static String field = "testField";
+  private static EmbeddedRecords instance;
+
+  /**
+   * The EmbeddedRecordsTest.
+   */
+  public EmbeddedRecordsTest() {
+    if (instance == null) {
+      instance = new EmbeddedRecords(node);
+    }
+  }
+
+  private static JSONObject makeRecord(String name, int value) throws JSONException {
+    JSONObject valuesMap = new JSONObject();
+    valuesMap.put(AccountAccess.GUID_INFO, new JSONObject().put("name", name));
+    valuesMap.put(field, value);
+    return new JSONObject()
+            .put(NameRecord.NAME.getName(), name)
+            .put(NameRecord.VALUES_MAP.getName(), valuesMap);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Insert() {
+    try {
+      if (instance.contains(collection, guid)) {
+        instance.removeEntireRecord(collection, guid);
+      }
+      instance.insert(collection, guid, makeRecord(guid, 1));
+    } catch (FailedDBOperationException | JSONException | RecordExistsException e) {
+      fail("Problem during insert " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_InsertDuplicate() {
+    try {
+      instance.insert(collection, guid, makeRecord(guid, 1));
+      fail("Insert of an existing record should fail");
+    } catch (RecordExistsException e) {
+
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during insert " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_LookupEntireRecord() {
+    try {
+      JSONAssert.assertEquals(makeRecord(guid, 1),
+              instance.lookupEntireRecord(collection, guid),
+              JSONCompareMode.STRICT);
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during LookupEntireRecord: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_UpdateIndividualFields() {
+    try {
+      instance.updateIndividualFields(collection, guid,
+              NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField("map.key", ColumnFieldType.USER_JSON))),
+              new ArrayList<>(Arrays.asList("value")));
+    } catch (FailedDBOperationException e) {
+      fail("Problem during update " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_LookupSomeDottedFields() {
+    try {
+      Map<ColumnField, Object> actual = instance.lookupSomeFields(
+              collection, guid,
+              NameRecord.NAME,
+              NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField("map.key",
+                      ColumnFieldType.USER_JSON))));
+      assertEquals(guid, actual.get(NameRecord.NAME));
+      assertEquals("value",
+              ((JSONObject) actual.get(NameRecord.VALUES_MAP)).get("map.key"));
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during LookupSomeFields: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_RemoveMapKeys() {
+    try {
+      instance.removeMapKeys(collection, guid,
+              NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(
+                      new ColumnField("map", ColumnFieldType.USER_JSON),
+                      new ColumnField("missing", ColumnFieldType.USER_JSON))));
+      JSONAssert.assertEquals(makeRecord(guid, 1),
+              instance.lookupEntireRecord(collection, guid),
+              JSONCompareMode.STRICT);
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during removeMapKeys: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_10_SelectRecordsQuery() {
+    try {
+      for (int i = 2; i <= 5; i++) {
+        if (!instance.contains(collection, guid + i)) {
+          instance.insert(collection, guid + i, makeRecord(guid + i, i));
+        }
+      }
+      AbstractRecordCursor cursor = instance.selectRecordsQuery(collection, NameRecord.VALUES_MAP,
+              "~" + field + " : ($gt: 3)", new ArrayList<>(Arrays.asList(field)));
+      int count = 0;
+      while (cursor.hasNext()) {
+        JSONObject record = cursor.nextJSONObject();
+        assertTrue(record.getJSONObject(NameRecord.VALUES_MAP.getName()).getInt(field) > 3);
+        count++;
+      }
+      assertEquals(2, count);
+    } catch (FailedDBOperationException | JSONException | RecordExistsException e) {
+      fail("Problem during select " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_11_SelectRecords() {
+    try {
+      AbstractRecordCursor cursor = instance.selectRecords(collection, NameRecord.VALUES_MAP, field, 2);
+      assertTrue(cursor.hasNext());
+      assertEquals(guid + 2, cursor.nextJSONObject().getString(NameRecord.NAME.getName()));
+      assertFalse(cursor.hasNext());
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during select " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_12_SelectRecordsQueryWithIndex() {
+    instance.createIndex(collection, field, "1");
+    try {
+      instance.updateIndividualFields(collection, guid + 5,
+              NameRecord.VALUES_MAP,
+              new ArrayList<>(Arrays.asList(new ColumnField(field, ColumnFieldType.USER_JSON))),
+              new ArrayList<>(Arrays.asList((Object) 0)));
+      AbstractRecordCursor cursor = instance.selectRecordsQuery(collection, NameRecord.VALUES_MAP,
+              "~" + field + " : ($gt: 3)", null);
+      assertTrue(cursor.hasNext());
+      assertEquals(guid + 4, cursor.nextJSONObject().getString(NameRecord.NAME.getName()));
+      assertFalse(cursor.hasNext());
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during select " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_20_Reopen() {
+    instance.close();
+    instance = new EmbeddedRecords(node);
+    try {
+      JSONAssert.assertEquals(makeRecord(guid, 1),
+              instance.lookupEntireRecord(collection, guid),
+              JSONCompareMode.STRICT);
+    } catch (RecordNotFoundException | FailedDBOperationException | JSONException e) {
+      fail("Problem during LookupEntireRecord after reopen: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_21_RemoveEntireRecord() {
+    try {
+      instance.removeEntireRecord(collection, guid);
+      for (int i = 2; i <= 5; i++) {
+        instance.removeEntireRecord(collection, guid + i);
+      }
+    } catch (FailedDBOperationException e) {
+      fail("Problem while deleting record: " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_22_CheckForRecordGone() {
+    try {
+      JSONObject json = instance.lookupEntireRecord(collection, guid);
+      fail("Record should not exist: " + json);
+    } catch (RecordNotFoundException | FailedDBOperationException e) {
+
+    }
+  }
+}
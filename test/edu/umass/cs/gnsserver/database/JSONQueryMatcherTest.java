@@ -0,0 +1,204 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests for the JSONQueryMatcher which evaluates mongo queries in process.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class JSONQueryMatcherTest {
+
+  private static JSONObject makeRecord() throws JSONException {
+    return new JSONObject()
+            .put("name", "alice")
+            .put("age", 30)
+            .put("tags", new JSONArray().put("red").put("blue"))
+            .put("address", new JSONObject().put("city", "Amherst").put("zip", "01003"))
+            .put("friends", new JSONArray()
+                    .put(new JSONObject().put("name", "bob").put("age", 25))
+                    .put(new JSONObject().put("name", "carol").put("age", 35)));
+  }
+
+  private static boolean matches(String query) throws JSONException {
+    return JSONQueryMatcher.parse(query).matches(makeRecord());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Equals() {
+    try {
+      assertTrue(matches("{name: 'alice'}"));
+      assertFalse(matches("{name: 'bob'}"));
+      assertTrue(matches("{age: {$eq: 30}}"));
+      assertFalse(matches("{missing: 'alice'}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_Comparisons() {
+    try {
+      assertTrue(matches("{age: {$gt: 29}}"));
+      assertFalse(matches("{age: {$gt: 30}}"));
+      assertTrue(matches("{age: {$gte: 30, $lt: 31}}"));
+      // Comparisons only match values of the same type
+      assertFalse(matches("{age: {$gt: '29'}}"));
+      assertFalse(matches("{missing: {$gt: 0}}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_In() {
+    try {
+      assertTrue(matches("{age: {$in: [10, 30]}}"));
+      assertFalse(matches("{age: {$in: [10, 20]}}"));
+      assertTrue(matches("{age: {$nin: [10, 20]}}"));
+      assertFalse(matches("{name: {$in: []}}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_Exists() {
+    try {
+      assertTrue(matches("{age: {$exists: true}}"));
+      assertFalse(matches("{age: {$exists: false}}"));
+      assertTrue(matches("{missing: {$exists: false}}"));
+      assertFalse(matches("{'address.country': {$exists: true}}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_AndOr() {
+    try {
+      assertTrue(matches("{$and: [{name: 'alice'}, {age: {$gt: 20}}]}"));
+      assertFalse(matches("{$and: [{name: 'alice'}, {age: {$gt: 40}}]}"));
+      assertTrue(matches("{$or: [{name: 'bob'}, {age: {$gt: 20}}]}"));
+      assertFalse(matches("{$or: [{name: 'bob'}, {age: {$gt: 40}}]}"));
+      assertTrue(matches("{$and: [{$or: [{name: 'bob'}, {name: 'alice'}]}, {age: 30}]}"));
+      assertTrue(matches("{$nor: [{name: 'bob'}]}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_DottedPaths() {
+    try {
+      assertTrue(matches("{'address.city': 'Amherst'}"));
+      assertFalse(matches("{'address.city': 'Boston'}"));
+      assertFalse(matches("{'address.city.name': 'Amherst'}"));
+      assertFalse(matches("{'name.first': 'alice'}"));
+      assertTrue(matches("{'address.zip': {$in: ['01002', '01003']}}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_07_ArrayFields() {
+    try {
+      // A condition on an array matches if any element matches
+      assertTrue(matches("{tags: 'red'}"));
+      assertFalse(matches("{tags: 'green'}"));
+      assertTrue(matches("{tags: {$in: ['green', 'blue']}}"));
+      assertTrue(matches("{tags: {$all: ['blue', 'red']}}"));
+      assertTrue(matches("{tags: {$size: 2}}"));
+      // Paths are resolved through the objects in an array
+      assertTrue(matches("{'friends.name': 'carol'}"));
+      assertTrue(matches("{'friends.age': {$gt: 30}}"));
+      assertFalse(matches("{'friends.age': {$gt: 40}}"));
+      assertTrue(matches("{'friends.1.name': 'carol'}"));
+      assertFalse(matches("{'friends.0.name': 'carol'}"));
+      assertTrue(matches("{friends: {$elemMatch: {name: 'bob', age: 25}}}"));
+      assertFalse(matches("{friends: {$elemMatch: {name: 'bob', age: 35}}}"));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_08_ForValue() {
+    try {
+      assertTrue(JSONQueryMatcher.forValue("address.city", "Amherst").matches(makeRecord()));
+      assertTrue(JSONQueryMatcher.forValue("tags", "blue").matches(makeRecord()));
+      assertFalse(JSONQueryMatcher.forValue("age", 31).matches(makeRecord()));
+    } catch (JSONException e) {
+      fail("Problem during match " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_09_UnsupportedOperator() {
+    try {
+      JSONQueryMatcher.parse("{age: {$where: 'true'}}");
+      fail("Parsing a query with an unsupported operator should fail");
+    } catch (JSONException e) {
+
+    }
+    try {
+      JSONQueryMatcher.parse("{$text: {$search: 'alice'}}");
+      fail("Parsing a query with an unsupported operator should fail");
+    } catch (JSONException e) {
+
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.database;
+
+import edu.umass.cs.gnscommon.exceptions.server.FailedDBOperationException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static org.junit.Assert.*;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests for the SecondaryIndexes used to narrow down the records a select checks.
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SecondaryIndexesTest {
+
+  private static final String NAME = "name";
+
+  private final Map<String, JSONObject> records = new LinkedHashMap<>();
+  private final SecondaryIndexes indexes = new SecondaryIndexes(NAME);
+
+  /**
+   * The SecondaryIndexesTest.
+   *
+   * @throws JSONException
+   */
+  public SecondaryIndexesTest() throws JSONException {
+    addRecord("a", 10, "red", new JSONArray().put("x").put("y"));
+    addRecord("b", 20, "blue", new JSONArray().put("y"));
+    addRecord("c", 30, "red", new JSONArray());
+    addRecord("d", 40, "green", new JSONArray().put("z"));
+  }
+
+  private void addRecord(String name, int age, String color, JSONArray tags) throws JSONException {
+    records.put(name, new JSONObject()
+            .put(NAME, name)
+            .put("age", age)
+            .put("tags", tags)
+            .put("info", new JSONObject().put("color", color)));
+  }
+
+  private void createIndex(String path, String type) throws FailedDBOperationException {
+    indexes.createIndex(path, type, () -> new EmbeddedRecordCursor(
+            (collection, name) -> records.get(name), "collection",
+            records.keySet().iterator(), null, null, false));
+  }
+
+  private Collection<String> getCandidates(String query) throws JSONException {
+    return indexes.getCandidates(new JSONObject(query));
+  }
+
+  private static void assertCandidates(Collection<String> actual, String... expected) {
+    assertNotNull(actual);
+    assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(actual));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_NoIndexes() {
+    try {
+      assertTrue(indexes.isEmpty());
+      assertNull(getCandidates("{\"age\": 10}"));
+    } catch (JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_SortedIndex() {
+    try {
+      createIndex("age", "1");
+      assertFalse(indexes.isEmpty());
+      assertCandidates(getCandidates("{\"age\": 20}"), "b");
+      assertCandidates(getCandidates("{\"age\": 25}"));
+      assertCandidates(getCandidates("{\"age\": {\"$gt\": 20}}"), "c", "d");
+      assertCandidates(getCandidates("{\"age\": {\"$gte\": 20, \"$lt\": 40}}"), "b", "c");
+      assertCandidates(getCandidates("{\"age\": {\"$lte\": 10}}"), "a");
+      assertCandidates(getCandidates("{\"age\": {\"$in\": [10, 40, 50]}}"), "a", "d");
+      // Comparisons only match values of the same type
+      assertCandidates(getCandidates("{\"age\": {\"$gt\": \"10\"}}"));
+      // The index can't help with these
+      assertNull(getCandidates("{\"age\": {\"$exists\": true}}"));
+      assertNull(getCandidates("{\"other\": 10}"));
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_HashedIndexOnDottedPath() {
+    try {
+      createIndex("info.color", "hashed");
+      assertCandidates(getCandidates("{\"info.color\": \"red\"}"), "a", "c");
+      assertCandidates(getCandidates("{\"info.color\": {\"$in\": [\"blue\", \"green\"]}}"), "b", "d");
+      // A hash index doesn't support ranges
+      assertNull(getCandidates("{\"info.color\": {\"$gt\": \"blue\"}}"));
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_ArrayField() {
+    try {
+      createIndex("tags", "1");
+      assertCandidates(getCandidates("{\"tags\": \"y\"}"), "a", "b");
+      assertCandidates(getCandidates("{\"tags\": {\"$in\": [\"x\", \"z\"]}}"), "a", "d");
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_AndNarrowsToSmallest() {
+    try {
+      createIndex("age", "1");
+      createIndex("info.color", "hashed");
+      assertCandidates(getCandidates(
+              "{\"$and\": [{\"age\": {\"$gt\": 0}}, {\"info.color\": \"blue\"}]}"), "b");
+      assertCandidates(getCandidates(
+              "{\"age\": {\"$gte\": 20}, \"info.color\": \"red\", \"other\": 1}"), "a", "c");
+      // An unindexed clause doesn't widen the candidates of the others
+      assertCandidates(getCandidates(
+              "{\"$and\": [{\"other\": 1}, {\"info.color\": \"green\"}]}"), "d");
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_OrUnion() {
+    try {
+      createIndex("age", "1");
+      createIndex("info.color", "hashed");
+      assertCandidates(getCandidates(
+              "{\"$or\": [{\"age\": 10}, {\"info.color\": \"green\"}]}"), "a", "d");
+      // Any record might match an unindexed clause
+      assertNull(getCandidates("{\"$or\": [{\"age\": 10}, {\"other\": 1}]}"));
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_07_Update() {
+    try {
+      createIndex("age", "1");
+      JSONObject before = records.get("a");
+      JSONObject after = new JSONObject(before.toString()).put("age", 50);
+      indexes.update("a", before, after);
+      assertCandidates(getCandidates("{\"age\": 10}"));
+      assertCandidates(getCandidates("{\"age\": {\"$gt\": 40}}"), "a");
+
+      indexes.update("e", null, new JSONObject().put(NAME, "e").put("age", 50));
+      assertCandidates(getCandidates("{\"age\": 50}"), "a", "e");
+
+      indexes.update("a", after, null);
+      assertCandidates(getCandidates("{\"age\": 50}"), "e");
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during update " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_08_GeoIndex() {
+    try {
+      records.get("a").put("location", new JSONArray().put(1.5).put(1.5));
+      records.get("b").put("location", new JSONArray().put(10.5).put(10.5));
+      createIndex("location", "2d");
+      assertCandidates(getCandidates(
+              "{\"location\": {\"$geoWithin\": {\"$box\": [[0, 0], [2, 2]]}}}"), "a");
+      assertCandidates(getCandidates(
+              "{\"location\": {\"$near\": [10, 10], \"$maxDistance\": 1}}"), "b");
+    } catch (FailedDBOperationException | JSONException e) {
+      fail("Problem during getCandidates " + e);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.nio.ByteBuffer;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the DnsBufferPool.
+ *
+ */
+public class DnsBufferPoolTest {
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_AcquireRelease() {
+    DnsBufferPool pool = new DnsBufferPool(512, 2);
+    ByteBuffer buffer = pool.acquire();
+    assertEquals(512, buffer.capacity());
+    assertEquals(512, pool.getBufferSize());
+    buffer.put((byte) 1).flip();
+    pool.release(buffer);
+    ByteBuffer reused = pool.acquire();
+    assertSame(buffer, reused);
+    // A reused buffer is cleared
+    assertEquals(0, reused.position());
+    assertEquals(512, reused.limit());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_MaxPooled() {
+    DnsBufferPool pool = new DnsBufferPool(512, 2);
+    ByteBuffer a = pool.acquire();
+    ByteBuffer b = pool.acquire();
+    ByteBuffer c = pool.acquire();
+    pool.release(a);
+    pool.release(b);
+    // The pool is full so this one is dropped
+    pool.release(c);
+    ByteBuffer first = pool.acquire();
+    ByteBuffer second = pool.acquire();
+    ByteBuffer third = pool.acquire();
+    assertSame(a, first);
+    assertSame(b, second);
+    assertNotSame(c, third);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_ReleaseForeignBuffer() {
+    DnsBufferPool pool = new DnsBufferPool(512, 2);
+    ByteBuffer other = ByteBuffer.allocate(1024);
+    pool.release(other);
+    pool.release(null);
+    assertNotSame(other, pool.acquire());
+  }
+}
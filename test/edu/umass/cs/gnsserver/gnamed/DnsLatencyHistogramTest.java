@@ -0,0 +1,74 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the DnsLatencyHistogram.
+ *
+ */
+public class DnsLatencyHistogramTest {
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Empty() {
+    DnsLatencyHistogram histogram = new DnsLatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(0.5));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_Percentiles() {
+    DnsLatencyHistogram histogram = new DnsLatencyHistogram();
+    // 98 fast queries of 100us and 2 slow ones of 5ms
+    for (int i = 0; i < 98; i++) {
+      histogram.record(100_000);
+    }
+    histogram.record(5_000_000);
+    histogram.record(5_000_000);
+    assertEquals(100, histogram.getCount());
+    // Percentiles are the upper bound of the power of two bucket
+    assertEquals(128, histogram.getPercentile(0.5));
+    assertEquals(128, histogram.getPercentile(0.9));
+    assertEquals(8192, histogram.getPercentile(0.99));
+    assertEquals(8192, histogram.getPercentile(1.0));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_Bounds() {
+    DnsLatencyHistogram histogram = new DnsLatencyHistogram();
+    histogram.record(-1);
+    histogram.record(500);
+    assertEquals(1, histogram.getPercentile(1.0));
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(3, histogram.getCount());
+    assertEquals(1L << 32, histogram.getPercentile(1.0));
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnamed;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the GnsDnsCache of answers built from GNS records.
+ * Each test uses its own names since the cache is shared.
+ *
+ */
+public class GnsDnsCacheTest {
+
+  private static Message makeQuery(String domainName) throws TextParseException {
+    return Message.newQuery(Record.newRecord(Name.fromString(domainName), Type.A, DClass.IN));
+  }
+
+  private static Message makeAnswer(Message query, long ttl)
+          throws TextParseException, UnknownHostException {
+    Message response = NameResolution.newResponse(query);
+    response.addRecord(new ARecord(query.getQuestion().getName(), DClass.IN, ttl,
+            InetAddress.getByName("10.0.0.1")), Section.ANSWER);
+    return response;
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_PutAndGet() {
+    try {
+      String domain = "put.cache.test.";
+      Message query = makeQuery(domain);
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 60), "putGuid",
+              GnsDnsCache.getGeneration());
+      Message cached = GnsDnsCache.get(query, domain, Type.A);
+      assertNotNull(cached);
+      assertEquals(Rcode.NOERROR, cached.getRcode());
+      assertEquals(query.getHeader().getID(), cached.getHeader().getID());
+      Record[] answers = cached.getSectionArray(Section.ANSWER);
+      assertEquals(1, answers.length);
+      assertTrue(answers[0].getTTL() <= 60);
+      // The exact name is the key
+      assertNull(GnsDnsCache.get(makeQuery("PUT.cache.test."), "PUT.cache.test.", Type.A));
+      assertNull(GnsDnsCache.get(query, domain, Type.MX));
+    } catch (TextParseException | UnknownHostException e) {
+      fail("Problem during put " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_TTLExpiry() {
+    try {
+      String domain = "expiry.cache.test.";
+      Message query = makeQuery(domain);
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 1), "expiryGuid",
+              GnsDnsCache.getGeneration());
+      assertNotNull(GnsDnsCache.get(query, domain, Type.A));
+      Thread.sleep(1100);
+      assertNull(GnsDnsCache.get(query, domain, Type.A));
+    } catch (TextParseException | UnknownHostException | InterruptedException e) {
+      fail("Problem during expiry " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_ZeroTTLNotCached() {
+    try {
+      String domain = "zero.cache.test.";
+      Message query = makeQuery(domain);
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 0), "zeroGuid",
+              GnsDnsCache.getGeneration());
+      assertNull(GnsDnsCache.get(query, domain, Type.A));
+    } catch (TextParseException | UnknownHostException e) {
+      fail("Problem during put " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_NegativeAnswer() {
+    try {
+      String domain = "missing.cache.test.";
+      Message query = makeQuery(domain);
+      GnsDnsCache.put(domain, Type.A, NameResolution.errorMessage(query, Rcode.NXDOMAIN), null,
+              GnsDnsCache.getGeneration());
+      Message cached = GnsDnsCache.get(query, domain, Type.A);
+      assertNotNull(cached);
+      assertEquals(Rcode.NXDOMAIN, cached.getRcode());
+      // Failures are not answers about the name
+      String failed = "failed.cache.test.";
+      Message failedQuery = makeQuery(failed);
+      GnsDnsCache.put(failed, Type.A, NameResolution.errorMessage(failedQuery, Rcode.SERVFAIL), null,
+              GnsDnsCache.getGeneration());
+      assertNull(GnsDnsCache.get(failedQuery, failed, Type.A));
+    } catch (TextParseException e) {
+      fail("Problem during put " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_InvalidateName() {
+    try {
+      String domain = "invalidate.cache.test.";
+      Message query = makeQuery(domain);
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 60), "invalidateGuid",
+              GnsDnsCache.getGeneration());
+      assertNotNull(GnsDnsCache.get(query, domain, Type.A));
+      // An update of the guid's record removes the answer
+      GnsDnsCache.invalidateName("invalidateGuid");
+      assertNull(GnsDnsCache.get(query, domain, Type.A));
+
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 60), "invalidateGuid",
+              GnsDnsCache.getGeneration());
+      // So does one of the HRN record
+      GnsDnsCache.invalidateName(domain);
+      assertNull(GnsDnsCache.get(query, domain, Type.A));
+    } catch (TextParseException | UnknownHostException e) {
+      fail("Problem during invalidate " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_StaleGeneration() {
+    try {
+      String domain = "stale.cache.test.";
+      Message query = makeQuery(domain);
+      long generation = GnsDnsCache.getGeneration();
+      // The record changes while the answer is being built from it
+      GnsDnsCache.invalidateName("staleGuid");
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 60), "staleGuid", generation);
+      assertNull(GnsDnsCache.get(query, domain, Type.A));
+      // An answer built after the change is cached
+      GnsDnsCache.put(domain, Type.A, makeAnswer(query, 60), "staleGuid",
+              GnsDnsCache.getGeneration());
+      assertNotNull(GnsDnsCache.get(query, domain, Type.A));
+    } catch (TextParseException | UnknownHostException e) {
+      fail("Problem during put " + e);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.gnsapp;
+
+import edu.umass.cs.gnsserver.gnsapp.packet.SelectRequestPacket;
+import java.util.Arrays;
+import java.util.Collections;
+import org.json.JSONArray;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests the keys of the SelectResultCache and invalidation by field.
+ *
+ */
+public class SelectResultCacheTest {
+
+  private static final String NODE = "testNode";
+  private static final String READER = "testReader";
+
+  private static String queryKey(String query) {
+    return SelectResultCache.getKey(NODE, SelectRequestPacket.makeQueryRequest(READER, query, null));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_WhiteSpace() {
+    String key = queryKey("~a > 5 && ~b < 6");
+    assertEquals(key, queryKey("~a  >  5 && ~b < 6"));
+    assertEquals(key, queryKey(" ~a > 5\n&&\t~b < 6 "));
+    // White space between tokens still separates them
+    assertNotEquals(key, queryKey("~a > 5 && ~b < 65"));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_QuotedWhiteSpace() {
+    assertNotEquals(queryKey("~name = \"a b\""), queryKey("~name = \"a  b\""));
+    assertNotEquals(queryKey("~name = 'a b'"), queryKey("~name = 'a  b'"));
+    // An escaped quote doesn't end the string
+    assertNotEquals(queryKey("~name = \"a\\\" b\""), queryKey("~name = \"a\\\"  b\""));
+    // But white space after the string is collapsed
+    assertEquals(queryKey("~name = \"a  b\" && ~c > 1"), queryKey("~name = \"a  b\"   && ~c > 1"));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_OtherParts() {
+    String query = "~a > 5";
+    String key = queryKey(query);
+    assertNotEquals(key, SelectResultCache.getKey("otherNode",
+            SelectRequestPacket.makeQueryRequest(READER, query, null)));
+    assertNotEquals(key, SelectResultCache.getKey(NODE,
+            SelectRequestPacket.makeQueryRequest("otherReader", query, null)));
+    assertNotEquals(key, SelectResultCache.getKey(NODE,
+            SelectRequestPacket.makeQueryRequest(READER, query, Arrays.asList("a"))));
+    assertNotEquals(key, SelectResultCache.getKey(NODE,
+            SelectRequestPacket.makeCountRequest(READER, query)));
+    assertNotEquals(SelectResultCache.getKey(NODE, SelectRequestPacket.makeLimitRequest(READER, query, null, 1)),
+            SelectResultCache.getKey(NODE, SelectRequestPacket.makeLimitRequest(READER, query, null, 2)));
+    assertNotEquals(SelectResultCache.getKey(NODE, SelectRequestPacket.makeTopKRequest(READER, query, null, "a", 3, false)),
+            SelectResultCache.getKey(NODE, SelectRequestPacket.makeTopKRequest(READER, query, null, "a", 3, true)));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_InvalidateFields() {
+    String key = queryKey("~cacheTestField.inner > 5");
+    JSONArray records = new JSONArray().put("record");
+    SelectResultCache.put(key, records, Collections.singleton("cacheTestField.inner"),
+            SelectResultCache.getGeneration());
+    assertSame(records, SelectResultCache.get(key));
+    SelectResultCache.invalidateFields(Collections.singleton("cacheTestOtherField"));
+    assertSame(records, SelectResultCache.get(key));
+    // A write to any part of the top level field drops the result
+    SelectResultCache.invalidateFields(Collections.singleton("cacheTestField.other"));
+    assertNull(SelectResultCache.get(key));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_StaleGeneration() {
+    String key = queryKey("~cacheTestStale > 5");
+    long generation = SelectResultCache.getGeneration();
+    SelectResultCache.invalidateFields(Collections.singleton("cacheTestUnrelated"));
+    // Read before the invalidation so it isn't cached
+    SelectResultCache.put(key, new JSONArray(), Collections.singleton("cacheTestStale"), generation);
+    assertNull(SelectResultCache.get(key));
+  }
+}
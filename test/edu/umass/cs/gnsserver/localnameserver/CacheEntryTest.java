@@ -0,0 +1,95 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the CacheEntry of the local name server.
+ *
+ */
+public class CacheEntryTest {
+
+  private static final String NAME = "cacheEntryTestName";
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_Empty() {
+    CacheEntry entry = new CacheEntry(NAME);
+    assertEquals(NAME, entry.getName());
+    assertFalse(entry.isValidValue());
+    assertFalse(entry.isValidActives());
+    assertNull(entry.getValueIfValid());
+    assertNull(entry.getActiveNameServersIfValid());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_FreshValue() {
+    CacheEntry entry = new CacheEntry(NAME, "value");
+    assertTrue(entry.isValidValue());
+    assertEquals("value", entry.getValueIfValid());
+    assertEquals(LocalNameServer.getValueCacheTTL(), entry.getTimeToLive());
+    assertTrue(entry.timeSinceValueCached(null) < entry.getTimeToLive());
+    // The actives are cached separately
+    assertFalse(entry.isValidActives());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_FreshActives() {
+    Set<InetSocketAddress> actives = new HashSet<>(Arrays.asList(
+            new InetSocketAddress("127.0.0.1", 24403), new InetSocketAddress("127.0.0.1", 24404)));
+    CacheEntry entry = new CacheEntry(NAME, actives);
+    assertTrue(entry.isValidActives());
+    assertEquals(actives, entry.getActiveNameServersIfValid());
+    assertEquals(LocalNameServer.getActivesCacheTTL(), entry.getActivesTimeToLive());
+    assertFalse(entry.isValidValue());
+
+    entry.updateCacheEntry("value");
+    assertTrue(entry.isValidValue());
+    assertTrue(entry.isValidActives());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_UpdateValue() {
+    CacheEntry entry = new CacheEntry(NAME, "old");
+    entry.updateCacheEntry("new");
+    assertEquals("new", entry.getValueIfValid());
+    // A null value is never fresh
+    entry.updateCacheEntry((String) null);
+    assertFalse(entry.isValidValue());
+    assertNull(entry.getValueIfValid());
+  }
+}
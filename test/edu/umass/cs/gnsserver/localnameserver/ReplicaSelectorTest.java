@@ -0,0 +1,171 @@
+/*
+ *
+ *  Copyright (c) 2017 University of Massachusetts
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ *  Initial developer(s): Westy
+ *
+ */
+package edu.umass.cs.gnsserver.localnameserver;
+
+import edu.umass.cs.gnsserver.localnameserver.nodeconfig.LNSNodeConfig;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the ReplicaSelector of the local name server.
+ *
+ */
+public class ReplicaSelectorTest {
+
+  private static final InetSocketAddress SENDER = new InetSocketAddress("127.0.0.1", 24398);
+  private static final InetSocketAddress A = new InetSocketAddress("127.0.0.1", 24401);
+  private static final InetSocketAddress B = new InetSocketAddress("127.0.0.1", 24402);
+  private static final Set<InetSocketAddress> REPLICAS = new HashSet<>(Arrays.asList(A, B));
+
+  private final Map<InetSocketAddress, Long> pings = new HashMap<>();
+  private final ReplicaSelector selector = new ReplicaSelector(
+          replica -> pings.getOrDefault(replica, LNSNodeConfig.INVALID_PING_LATENCY));
+  private long requestId = 0;
+
+  private LNSRequestInfo send(InetSocketAddress replica) {
+    LNSRequestInfo request = new LNSRequestInfo(requestId++, null, SENDER);
+    selector.requestSent(request, replica);
+    return request;
+  }
+
+  // Answers a request to the replica after about delay ms.
+  private void answer(InetSocketAddress replica, long delay, boolean success)
+          throws InterruptedException {
+    LNSRequestInfo request = send(replica);
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+    selector.responseReceived(request, success);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_01_NoServers() {
+    assertNull(selector.select(null, null));
+    assertNull(selector.select(Collections.<InetSocketAddress>emptySet(), null));
+    assertNull(selector.select(REPLICAS, REPLICAS));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_02_PingLatency() {
+    pings.put(A, 50L);
+    pings.put(B, 10L);
+    assertEquals(B, selector.select(REPLICAS, null));
+    assertEquals(A, selector.select(REPLICAS, Collections.singleton(B)));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_03_UnknownLatency() {
+    // Replicas without a ping or a response are only used if there is nothing else
+    pings.put(A, 50L);
+    assertEquals(A, selector.select(REPLICAS, null));
+    pings.clear();
+    assertNotNull(selector.select(REPLICAS, null));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_04_OutstandingRequests() {
+    pings.put(A, 10L);
+    pings.put(B, 30L);
+    assertEquals(A, selector.select(REPLICAS, null));
+    // (10 + 1) * (3 + 1) > (30 + 1) * (0 + 1)
+    for (int i = 0; i < 3; i++) {
+      send(A);
+    }
+    assertEquals(B, selector.select(REPLICAS, null));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_05_ResponseTime() {
+    try {
+      // The measured response times take over from the pings
+      pings.put(A, 1L);
+      pings.put(B, 1000L);
+      answer(A, 100, true);
+      answer(B, 0, true);
+      assertEquals(B, selector.select(REPLICAS, null));
+      // Until B is busy enough to be slower than A
+      for (int i = 0; i < 200; i++) {
+        send(B);
+      }
+      assertEquals(A, selector.select(REPLICAS, null));
+    } catch (InterruptedException e) {
+      fail("Interrupted " + e);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_06_ResendMovesOutstanding() {
+    pings.put(A, 10L);
+    pings.put(B, 30L);
+    LNSRequestInfo request = send(A);
+    send(A);
+    send(A);
+    assertEquals(B, selector.select(REPLICAS, null));
+    // A request resent to B is no longer expected from A
+    selector.requestSent(request, B);
+    assertEquals(A, selector.select(REPLICAS, null));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void test_07_Failures() {
+    try {
+      pings.put(A, 50L);
+      pings.put(B, 10L);
+      answer(B, 0, false);
+      answer(B, 0, false);
+      assertEquals(B, selector.select(REPLICAS, null));
+      // Three errors in a row make B unhealthy
+      answer(B, 0, false);
+      assertEquals(A, selector.select(REPLICAS, null));
+      // It is still used if there is no other choice
+      assertEquals(B, selector.select(REPLICAS, Collections.singleton(A)));
+    } catch (InterruptedException e) {
+      fail("Interrupted " + e);
+    }
+  }
+}